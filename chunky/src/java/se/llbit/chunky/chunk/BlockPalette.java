@@ -108,6 +108,18 @@ public class BlockPalette {
     };
   }
 
+  /**
+   * Make the palette thread safe for writer threads again, after
+   * <code>{@link BlockPalette#unsynchronize()}</code> was called.
+   * <p>
+   * This is used when chunks are loaded into a scene that already uses the palette. Blocks are
+   * only added to the palette, so the IDs that are in use stay valid.
+   */
+  public void synchronize() {
+    palette = new CopyOnWriteArrayList<>(palette);
+    lock = new ReentrantLock();
+  }
+
   /**
    * Adds a new block to the palette and returns the palette index.
    *
@@ -139,16 +139,12 @@ public class Chunky {
     renderManager.setSnapshotControl(SnapshotControl.DEFAULT);
     renderManager.setOnFrameCompleted((scene, spp) -> {
       if (renderManager.getSnapshotControl().saveSnapshot(scene, spp)) {
-        scene.saveSnapshot(new File(getRenderContext().getSceneDirectory(), "snapshots"), taskTracker);
+        sceneManager.saveSnapshotInBackground(scene, new File(getRenderContext().getSceneDirectory(), "snapshots"));
       }
 
       if (renderManager.getSnapshotControl().saveRenderDump(scene, spp)) {
         // Save the scene description and current render dump.
-        try {
-          sceneManager.saveScene(getRenderContext().getSceneDirectory());
-        } catch (InterruptedException e) {
-          throw new Error(e);
-        }
+        sceneManager.saveSceneInBackground(getRenderContext().getSceneDirectory());
       }
     });
     renderManager.setRenderTask(taskTracker.backgroundTask());
@@ -182,6 +178,7 @@ public class Chunky {
 
       renderManager.start();
       renderManager.join();
+      sceneManager.awaitBackgroundSaves();
       return 0;
     } catch (FileNotFoundException e) {
       System.err.format("Scene \"%s\" not found!%n", options.sceneName);
@@ -6,6 +6,7 @@ import se.llbit.chunky.resources.Texture;
 import se.llbit.math.AABB;
 import se.llbit.math.Ray;
 import se.llbit.math.Vector3;
+import se.llbit.math.Vector4;
 
 import java.util.Arrays;
 import java.util.Objects;
@@ -206,11 +207,14 @@ public abstract class AABBModel implements BlockModel {
       }
     }
 
-    float[] color = texture.getColor(ray.u, ray.v);
-    if (color[3] > Ray.EPSILON) {
-      ray.color.set(color);
+    Vector4 color = ray.color;
+    double r = color.x, g = color.y, b = color.z, a = color.w;
+    texture.getColor(ray.u, ray.v, ray.getFootprint(ray.tNext), color);
+    if (color.w > Ray.EPSILON) {
       return true;
     }
+    // Keep the color of a previous hit when this face is transparent.
+    color.set(r, g, b, a);
     return false;
   }
 
@@ -115,15 +115,23 @@ public abstract class QuadModel implements BlockModel {
     Texture[] textures = getTextures();
     Tint[] tintedQuads = getTints();
 
-    float[] color = null;
+    // The texture color is sampled into the ray color. These hold the color of the closest
+    // visible hit, which is restored when a closer hit is transparent.
+    Vector4 color = ray.color;
+    double r = color.x, g = color.y, b = color.z, a = color.w;
     Tint tint = Tint.NONE;
     for (int i = 0; i < quads.length; ++i) {
       Quad quad = quads[i];
       if (quad.intersect(ray)) {
-        float[] c = textures[i].getColor(ray.u, ray.v);
-        if (c[3] > Ray.EPSILON) {
+        textures[i].getColor(ray.u, ray.v, color);
+        if (color.w <= Ray.EPSILON) {
+          color.set(r, g, b, a);
+        } else {
+          r = color.x;
+          g = color.y;
+          b = color.z;
+          a = color.w;
           tint = tintedQuads == null ? Tint.NONE : tintedQuads[i];
-          color = c;
           ray.t = ray.tNext;
           if (quad.doubleSided)
             ray.orientNormal(quad.n);
@@ -143,7 +151,6 @@ public abstract class QuadModel implements BlockModel {
         return false;
       }
 
-      ray.color.set(color);
       tint.tint(ray.color, ray, scene);
       ray.distance += ray.t;
       ray.o.scaleAdd(ray.t, ray.d);
@@ -22,6 +22,7 @@ import se.llbit.chunky.plugin.PluginApi;
 import se.llbit.chunky.renderer.postprocessing.PixelPostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PreviewFilter;
+import se.llbit.chunky.renderer.scene.IterativePathTracer;
 import se.llbit.chunky.renderer.scene.PathTracer;
 import se.llbit.chunky.renderer.scene.PreviewRayTracer;
 import se.llbit.chunky.renderer.scene.Scene;
@@ -73,10 +74,14 @@ public class DefaultRenderManager extends Thread implements RenderManager {
    */
   public static final String ChunkyPathTracerID = "PathTracingRenderer";
   public static final String ChunkyPreviewID = "PreviewRenderer";
+  public static final String ChunkyIterativePathTracerID = "IterativePathTracingRenderer";
 
   static {
     addRenderer(new PathTracingRenderer(ChunkyPathTracerID, "Chunky Path Tracer",
         "A photorealistic Path Tracing renderer.", new PathTracer()));
+    addRenderer(new PathTracingRenderer(ChunkyIterativePathTracerID, "Chunky Iterative Path Tracer",
+        "Path Tracing renderer that ends dark paths early, faster for high ray depths.",
+        new IterativePathTracer()));
     addPreviewRenderer(new PreviewRenderer(ChunkyPreviewID, "Chunky Preview",
         "A simple ray marching preview renderer.", new PreviewRayTracer()));
   }
@@ -93,7 +98,7 @@ public class DefaultRenderManager extends Thread implements RenderManager {
    *
    * Render workers should:
    *  * Increment {@code bufferedScene.spp} after rendering each frame
-   *  * Merge the new frame with {@code bufferedScene.getSampleBuffer()}
+   *  * Merge the new frame with {@code bufferedScene.getSamples()}
    *
    * Render workers should not otherwise modify this.
    */
@@ -425,7 +430,7 @@ public class DefaultRenderManager extends Thread implements RenderManager {
         int height = bufferedScene.canvasConfig.getHeight();
         int totalPixelCount = bufferedScene.canvasConfig.getPixelCount();
 
-        double[] sampleBuffer = bufferedScene.getSampleBuffer();
+        SampleBuffer sampleBuffer = pixelFilter.prepareFrame(bufferedScene.getSamples());
         double exposure = bufferedScene.getExposure();
 
         // Split up to 10 tasks per thread
@@ -577,7 +582,7 @@ public class DefaultRenderManager extends Thread implements RenderManager {
   @Override
   public void withSampleBufferProtected(SampleBufferConsumer consumer) {
     synchronized (bufferedScene) {
-      consumer.accept(bufferedScene.getSampleBuffer(),
+      consumer.accept(bufferedScene.getSamples(),
         bufferedScene.canvasConfig.getWidth(), bufferedScene.canvasConfig.getHeight());
     }
   }
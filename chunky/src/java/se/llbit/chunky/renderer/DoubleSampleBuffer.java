@@ -0,0 +1,74 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+/**
+ * Sample buffer backed by a double array.
+ */
+public class DoubleSampleBuffer extends SampleBuffer {
+  private final double[] samples;
+
+  public DoubleSampleBuffer(int pixelCount) {
+    this(new double[pixelCount * 3]);
+  }
+
+  /**
+   * Wrap an existing sample array. The array is not copied.
+   */
+  public DoubleSampleBuffer(double[] samples) {
+    this.samples = samples;
+  }
+
+  @Override
+  public int length() {
+    return samples.length;
+  }
+
+  @Override
+  public SamplePrecision getPrecision() {
+    return SamplePrecision.DOUBLE;
+  }
+
+  @Override
+  public double get(int index) {
+    return samples[index];
+  }
+
+  @Override
+  public void set(int index, double value) {
+    samples[index] = value;
+  }
+
+  @Override
+  public SampleBuffer copy() {
+    return new DoubleSampleBuffer(samples.clone());
+  }
+
+  @Override
+  public void copyFrom(SampleBuffer other) {
+    if (other instanceof DoubleSampleBuffer && other.length() == samples.length) {
+      System.arraycopy(((DoubleSampleBuffer) other).samples, 0, samples, 0, samples.length);
+    } else {
+      super.copyFrom(other);
+    }
+  }
+
+  @Override
+  public double[] toDoubleArray() {
+    return samples;
+  }
+}
@@ -6,7 +6,8 @@ public enum EmitterSamplingStrategy implements Registerable {
   NONE("None", "No emitter sampling."),
   ONE("One", "Sample a single face."),
   ONE_BLOCK("One Block", "Sample all the faces on a single emitter block."),
-  ALL("All", "Sample all faces on all emitter blocks.");
+  ALL("All", "Sample all faces on all emitter blocks."),
+  LIGHT_TREE("Light Tree", "Sample a single face of one emitter, chosen from all emitters by its estimated contribution.");
 
   private final String name;
   private final String description;
@@ -0,0 +1,80 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+/**
+ * Sample buffer backed by a float array. Samples are rounded to single precision
+ * when stored, which is enough for the accumulated running mean of a pixel and
+ * halves the memory used by the sample buffer.
+ */
+public class FloatSampleBuffer extends SampleBuffer {
+  private final float[] samples;
+
+  public FloatSampleBuffer(int pixelCount) {
+    this(new float[pixelCount * 3]);
+  }
+
+  /**
+   * Wrap an existing sample array. The array is not copied.
+   */
+  public FloatSampleBuffer(float[] samples) {
+    this.samples = samples;
+  }
+
+  @Override
+  public int length() {
+    return samples.length;
+  }
+
+  @Override
+  public SamplePrecision getPrecision() {
+    return SamplePrecision.FLOAT;
+  }
+
+  @Override
+  public double get(int index) {
+    return samples[index];
+  }
+
+  @Override
+  public void set(int index, double value) {
+    samples[index] = (float) value;
+  }
+
+  @Override
+  public SampleBuffer copy() {
+    return new FloatSampleBuffer(samples.clone());
+  }
+
+  @Override
+  public void copyFrom(SampleBuffer other) {
+    if (other instanceof FloatSampleBuffer && other.length() == samples.length) {
+      System.arraycopy(((FloatSampleBuffer) other).samples, 0, samples, 0, samples.length);
+    } else {
+      super.copyFrom(other);
+    }
+  }
+
+  @Override
+  public double[] toDoubleArray() {
+    double[] result = new double[samples.length];
+    for (int i = 0; i < samples.length; ++i) {
+      result[i] = samples[i];
+    }
+    return result;
+  }
+}
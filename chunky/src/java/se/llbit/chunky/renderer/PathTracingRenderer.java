@@ -65,45 +65,132 @@ public class PathTracingRenderer extends TileBasedRenderer {
     Camera cam = scene.camera();
     double halfWidth = fullWidth / (2.0 * fullHeight);
     double invHeight = 1.0 / fullHeight;
+    double pixelSpread = scene.getTextureFiltering() ? cam.getPixelSpread(fullHeight) : 0;
 
-    double[] sampleBuffer = scene.getSampleBuffer();
+    SampleBuffer sampleBuffer = scene.getSamples();
+    SampleStatistics statistics = scene.getSampleStatistics();
+    boolean adaptive = false;
+    double threshold = 0;
 
     while (scene.spp < scene.getTargetSpp()) {
       int spp = scene.spp;
       int branchCount = (tracer instanceof PathTracer) ? scene.getCurrentBranchCount() : 1;
-      double sinv = 1.0 / (sppPerPass * branchCount + spp);
-
-      submitTiles(manager, (state, pixel) -> {
-        int x = pixel.firstInt();
-        int y = pixel.secondInt();
-
-        double sr = 0;
-        double sg = 0;
-        double sb = 0;
-
-        for (int k = 0; k < sppPerPass; k++) {
-          double ox = state.random.nextDouble();
-          double oy = state.random.nextDouble();
-
-          cam.calcViewRay(state.ray, state.random,
-              -halfWidth + (x + ox + cropX) * invHeight,
-              -0.5 + (y + oy + cropY) * invHeight);
-          scene.rayTrace(tracer, state);
-
-          sr += state.ray.color.x * branchCount;
-          sg += state.ray.color.y * branchCount;
-          sb += state.ray.color.z * branchCount;
+      int passSamples = sppPerPass * branchCount;
+      SamplerType samplerType = scene.getSamplerType();
+
+      if (!scene.isAdaptiveSampling()) {
+        if (adaptive || statistics.hasData()) {
+          // The uniform sample count of the scene is used from now on.
+          statistics.clear();
+          adaptive = false;
         }
 
-        int offset = 3 * (y*width + x);
-        sampleBuffer[offset + 0] = (sampleBuffer[offset + 0] * spp + sr) * sinv;
-        sampleBuffer[offset + 1] = (sampleBuffer[offset + 1] * spp + sg) * sinv;
-        sampleBuffer[offset + 2] = (sampleBuffer[offset + 2] * spp + sb) * sinv;
-      });
-
-      manager.pool.awaitEmpty();
-      scene.spp += sppPerPass * branchCount;
+        double sinv = 1.0 / (passSamples + spp);
+        int firstSample = spp / branchCount;
+
+        submitTiles(manager, (state, x, y) -> {
+          double sr = 0;
+          double sg = 0;
+          double sb = 0;
+
+          Sampler sampler = state.useSampler(samplerType);
+          for (int k = 0; k < sppPerPass; k++) {
+            sampler.startSample(x, y, firstSample + k);
+            traceSample(state, cam, x, y, cropX, cropY, halfWidth, invHeight, pixelSpread, scene);
+            sampler.finishSample();
+
+            sr += state.ray.color.x * branchCount;
+            sg += state.ray.color.y * branchCount;
+            sb += state.ray.color.z * branchCount;
+          }
+
+          int offset = 3 * (y*width + x);
+          sampleBuffer.set(offset + 0, (sampleBuffer.get(offset + 0) * spp + sr) * sinv);
+          sampleBuffer.set(offset + 1, (sampleBuffer.get(offset + 1) * spp + sg) * sinv);
+          sampleBuffer.set(offset + 2, (sampleBuffer.get(offset + 2) * spp + sb) * sinv);
+        });
+
+        manager.pool.awaitEmpty();
+        scene.spp += passSamples;
+      } else {
+        if (!adaptive || threshold != scene.getAdaptiveThreshold()) {
+          // Re-evaluate every tile when adaptive sampling is (re-)enabled or the threshold changes.
+          resetConvergedTiles();
+          threshold = scene.getAdaptiveThreshold();
+          adaptive = true;
+        }
+        if (spp == 0 || statistics.getPixelCount() != sampleBuffer.getPixelCount()) {
+          statistics.start(sampleBuffer.getPixelCount(), spp);
+        }
+        double maxError = threshold;
+
+        int active = submitTiles(manager, (state, x, y) -> {
+          double sr = 0;
+          double sg = 0;
+          double sb = 0;
+          double luminanceSquareSum = 0;
+
+          int pixel = y*width + x;
+          int n = statistics.getSampleCount(pixel);
+          Sampler sampler = state.useSampler(samplerType);
+          for (int k = 0; k < sppPerPass; k++) {
+            sampler.startSample(x, y, n / branchCount + k);
+            traceSample(state, cam, x, y, cropX, cropY, halfWidth, invHeight, pixelSpread, scene);
+            sampler.finishSample();
+
+            double r = state.ray.color.x;
+            double g = state.ray.color.y;
+            double b = state.ray.color.z;
+            sr += r * branchCount;
+            sg += g * branchCount;
+            sb += b * branchCount;
+            double luminance = SampleStatistics.luminance(r, g, b);
+            luminanceSquareSum += luminance * luminance;
+          }
+
+          int offset = 3 * pixel;
+          double sinv = 1.0 / (n + passSamples);
+          sampleBuffer.set(offset + 0, (sampleBuffer.get(offset + 0) * n + sr) * sinv);
+          sampleBuffer.set(offset + 1, (sampleBuffer.get(offset + 1) * n + sg) * sinv);
+          sampleBuffer.set(offset + 2, (sampleBuffer.get(offset + 2) * n + sb) * sinv);
+          statistics.addSamples(pixel, passSamples, sppPerPass, luminanceSquareSum);
+        }, tile -> {
+          for (int y = tile.y0; y < tile.y1; ++y) {
+            for (int x = tile.x0; x < tile.x1; ++x) {
+              int pixel = y*width + x;
+              int offset = 3 * pixel;
+              double luminance = SampleStatistics.luminance(sampleBuffer.get(offset + 0),
+                  sampleBuffer.get(offset + 1), sampleBuffer.get(offset + 2));
+              if (statistics.getRelativeError(pixel, luminance) > maxError) {
+                return false;
+              }
+            }
+          }
+          return true;
+        });
+
+        manager.pool.awaitEmpty();
+        if (active == 0) {
+          // Every tile has converged, so the render is complete.
+          scene.spp = Math.max(spp, scene.getTargetSpp());
+        } else {
+          // The scene sample count is the number of samples of the pixels that are still rendered.
+          scene.spp += passSamples;
+        }
+      }
       if (postRender.getAsBoolean()) break;
     }
   }
+
+  private void traceSample(WorkerState state, Camera cam, int x, int y, int cropX, int cropY,
+      double halfWidth, double invHeight, double pixelSpread, Scene scene) {
+    double ox = state.random.nextDouble();
+    double oy = state.random.nextDouble();
+
+    cam.calcViewRay(state.ray, state.random,
+        -halfWidth + (x + ox + cropX) * invHeight,
+        -0.5 + (y + oy + cropY) * invHeight);
+    state.ray.pixelSpread = pixelSpread;
+    scene.rayTrace(tracer, state);
+  }
 }
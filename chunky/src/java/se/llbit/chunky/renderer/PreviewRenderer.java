@@ -75,14 +75,12 @@ public class PreviewRenderer extends TileBasedRenderer {
     int ty = (int) Math.floor(target.o.y + target.d.y * Ray.OFFSET);
     int tz = (int) Math.floor(target.o.z + target.d.z * Ray.OFFSET);
 
-    double[] sampleBuffer = scene.getSampleBuffer();
+    SampleBuffer sampleBuffer = scene.getSamples();
 
     for (int i = 0; i < 2; i++) {
       int sampleNum = i;
 
-      submitTiles(manager, (state, pixel) -> {
-        int sx = pixel.firstInt();
-        int sy = pixel.secondInt();
+      submitTiles(manager, (state, sx, sy) -> {
         int x = sx + cropX;
         int y = sy + cropY;
 
@@ -94,9 +92,9 @@ public class PreviewRenderer extends TileBasedRenderer {
         // Draw crosshairs
         if (x == fullWidth / 2 && (y >= fullHeight / 2 - 5 && y <= fullHeight / 2 + 5) || y == fullHeight / 2 && (
             x >= fullWidth / 2 - 5 && x <= fullWidth / 2 + 5)) {
-          sampleBuffer[offset + 0] = 0xFF;
-          sampleBuffer[offset + 1] = 0xFF;
-          sampleBuffer[offset + 2] = 0xFF;
+          sampleBuffer.set(offset + 0, 0xFF);
+          sampleBuffer.set(offset + 1, 0xFF);
+          sampleBuffer.set(offset + 2, 0xFF);
           return;
         }
 
@@ -116,14 +114,14 @@ public class PreviewRenderer extends TileBasedRenderer {
           state.ray.color.w = 1;
         }
 
-        sampleBuffer[offset + 0] = state.ray.color.x;
-        sampleBuffer[offset + 1] = state.ray.color.y;
-        sampleBuffer[offset + 2] = state.ray.color.z;
+        sampleBuffer.set(offset + 0, state.ray.color.x);
+        sampleBuffer.set(offset + 1, state.ray.color.y);
+        sampleBuffer.set(offset + 2, state.ray.color.z);
 
         if (sampleNum == 0 && x < (width - 1)) {
-          sampleBuffer[offset + 3] = state.ray.color.x;
-          sampleBuffer[offset + 4] = state.ray.color.y;
-          sampleBuffer[offset + 5] = state.ray.color.z;
+          sampleBuffer.set(offset + 3, state.ray.color.x);
+          sampleBuffer.set(offset + 4, state.ray.color.y);
+          sampleBuffer.set(offset + 5, state.ray.color.z);
         }
       });
 
@@ -0,0 +1,41 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import java.util.Random;
+
+/**
+ * Sampler that uses independent pseudo random numbers for every sample dimension.
+ */
+public class RandomSampler extends Sampler {
+  public RandomSampler(Random prng) {
+    super(prng);
+  }
+
+  @Override
+  public SamplerType getType() {
+    return SamplerType.RANDOM;
+  }
+
+  @Override
+  public void startSample(int x, int y, int index) {
+  }
+
+  @Override
+  public void finishSample() {
+  }
+}
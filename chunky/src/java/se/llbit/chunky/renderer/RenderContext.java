@@ -17,6 +17,7 @@
  */
 package se.llbit.chunky.renderer;
 
+import se.llbit.chunky.PersistentSettings;
 import se.llbit.chunky.main.Chunky;
 import se.llbit.chunky.main.ChunkyOptions;
 
@@ -31,7 +32,10 @@ public class RenderContext implements SceneIOProvider {
 
     protected final Chunky chunky;
     protected final ChunkyOptions config;
-    public RenderWorkerPool.Factory renderPoolFactory = RenderWorkerPool::new;
+    public RenderWorkerPool.Factory renderPoolFactory =
+        PersistentSettings.getRenderWorkerPool().equals("WORK_STEALING")
+            ? WorkStealingRenderWorkerPool::new
+            : RenderWorkerPool::new;
     private File sceneDirectory;
 
     /**
@@ -136,6 +136,6 @@ public interface RenderManager {
   void shutdown();
 
   interface SampleBufferConsumer {
-    void accept(double[] samples, int width, int height);
+    void accept(SampleBuffer samples, int width, int height);
   }
 }
@@ -18,6 +18,8 @@
 package se.llbit.chunky.renderer;
 
 import se.llbit.log.Log;
+import se.llbit.math.Ray;
+import se.llbit.util.FastRandom;
 
 import java.util.ArrayList;
 import java.util.Random;
@@ -48,14 +50,16 @@ public class RenderWorkerPool {
     private long lastSleep;
     private long sleepTime = 0;
 
-    private boolean running = true;
+    private volatile boolean running = true;
+
+    private WorkerState state = null;
 
     public RenderWorker(RenderWorkerPool pool, int id, long seed) {
       super("3D Render Worker " + id);
 
       this.pool = pool;
       this.id = id;
-      this.random = new Random(seed);
+      this.random = new FastRandom(seed);
 
       lastSleep = System.currentTimeMillis();
     }
@@ -64,6 +68,19 @@ public class RenderWorkerPool {
       this.running = false;
     }
 
+    /**
+     * Get the render state of this worker. The state is created on first use and then
+     * reused for every job run by this worker, so it must not be shared with other threads.
+     */
+    public WorkerState getWorkerState() {
+      if (state == null) {
+        state = new WorkerState();
+        state.ray = new Ray();
+        state.random = random;
+      }
+      return state;
+    }
+
     /**
      * Sleep to manage CPU usage.
      */
@@ -130,6 +147,22 @@ public class RenderWorkerPool {
     setThreadCount(threads);
   }
 
+  /**
+   * Create a pool without starting any workers. Subclasses that need to initialize
+   * their own state before workers start should use this constructor and call
+   * {@link #setThreadCount(int)} at the end of their constructor.
+   */
+  protected RenderWorkerPool(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Create a new worker for this pool. The worker is started by the caller.
+   */
+  protected RenderWorker createWorker(int id, long seed) {
+    return new RenderWorker(this, id, seed);
+  }
+
   /**
    * Get an approximation of the number workers in this pool.
    */
@@ -154,14 +187,18 @@ public class RenderWorkerPool {
 
       // Not enough workers
       while (workers.size() < threads) {
-        RenderWorker worker = new RenderWorker(this, workerId++, this.seed++);
+        RenderWorker worker = createWorker(workerId++, this.seed++);
         workers.add(worker);
         worker.start();
       }
     }
   }
 
-  private void work(RenderWorker worker) throws Throwable {
+  /**
+   * Run (at most) one job on the given worker. This is called repeatedly by each worker
+   * until the worker is shut down or interrupted.
+   */
+  protected void work(RenderWorker worker) throws Throwable {
     worker.pauseSleep();
     synchronized (workQueue) {
       if (workQueue.isEmpty()) {
@@ -46,7 +46,7 @@ public interface Renderer extends Registerable {
    * Generally the render loop will look like:
    * {@code
    *   while (scene.spp < scene.getTargetSpp()) {
-   *     submitTiles(manager, (state, pixel) -> {});
+   *     submitTiles(manager, (state, x, y) -> {});
    *     manager.pool.awaitEmpty();
    *     scene.spp += 1; // update spp
    *     if (postRender.getAsBoolean()) break;
@@ -0,0 +1,89 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+/**
+ * Accumulated RGB samples of a frame. The samples of pixel {@code i} are stored at
+ * the indices {@code 3*i}, {@code 3*i + 1} and {@code 3*i + 2}.
+ *
+ * <p>Different pixels may be read and written concurrently from multiple threads.
+ */
+public abstract class SampleBuffer {
+  /**
+   * @return the number of samples in this buffer, three per pixel
+   */
+  public abstract int length();
+
+  /**
+   * @return the precision used to store the samples
+   */
+  public abstract SamplePrecision getPrecision();
+
+  public abstract double get(int index);
+
+  public abstract void set(int index, double value);
+
+  /**
+   * @return a copy of this buffer with the same precision
+   */
+  public abstract SampleBuffer copy();
+
+  /**
+   * Copy all samples from another buffer of the same length into this buffer.
+   */
+  public void copyFrom(SampleBuffer other) {
+    if (other.length() != length()) {
+      throw new IllegalArgumentException("Sample buffer size mismatch");
+    }
+    for (int i = 0; i < length(); ++i) {
+      set(i, other.get(i));
+    }
+  }
+
+  /**
+   * Get the samples as a double array. For double precision buffers
+   * this is the backing array, otherwise the samples are copied into a new array.
+   */
+  public abstract double[] toDoubleArray();
+
+  /**
+   * @return the number of pixels in this buffer
+   */
+  public int getPixelCount() {
+    return length() / 3;
+  }
+
+  /**
+   * Read the RGB samples of a pixel.
+   */
+  public void getPixel(int pixel, double[] rgb) {
+    int offset = pixel * 3;
+    rgb[0] = get(offset + 0);
+    rgb[1] = get(offset + 1);
+    rgb[2] = get(offset + 2);
+  }
+
+  /**
+   * Write the RGB samples of a pixel.
+   */
+  public void setPixel(int pixel, double r, double g, double b) {
+    int offset = pixel * 3;
+    set(offset + 0, r);
+    set(offset + 1, g);
+    set(offset + 2, b);
+  }
+}
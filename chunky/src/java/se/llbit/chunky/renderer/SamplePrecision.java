@@ -0,0 +1,63 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import se.llbit.util.Registerable;
+
+/**
+ * Storage precision of the accumulated samples of a scene.
+ */
+public enum SamplePrecision implements Registerable {
+  DOUBLE("Double", "Store samples as 64-bit floating point numbers."),
+  FLOAT("Float", "Store samples as 32-bit floating point numbers. Uses half the memory of double precision.");
+
+  private final String name;
+  private final String description;
+
+  SamplePrecision(String name, String description) {
+    this.name = name;
+    this.description = description;
+  }
+
+  /**
+   * Create a zeroed sample buffer with this precision.
+   */
+  public SampleBuffer createBuffer(int pixelCount) {
+    switch (this) {
+      case FLOAT:
+        return new FloatSampleBuffer(pixelCount);
+      case DOUBLE:
+      default:
+        return new DoubleSampleBuffer(pixelCount);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+  @Override
+  public String getId() {
+    return this.name();
+  }
+}
@@ -0,0 +1,230 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Per-pixel sample statistics used for adaptive sampling.
+ *
+ * <p>For every pixel this tracks the number of samples accumulated in the sample buffer,
+ * the number of observations (traced paths) contributing to the luminance moment, and the
+ * mean of the squared luminance of the observations. Together with the pixel mean from the
+ * sample buffer this gives an estimate of the variance of the pixel.
+ *
+ * <p>The statistics are empty until {@link #start(int, int)} is called. Different pixels
+ * may be updated concurrently from multiple threads.
+ */
+public class SampleStatistics {
+  /**
+   * Minimum number of observations before the error estimate of a pixel is trusted.
+   */
+  public static final int MIN_OBSERVATIONS = 16;
+
+  private int[] sampleCounts;
+  private int[] observationCounts;
+  private float[] luminanceMoments;
+
+  /**
+   * @return {@code true} if statistics are being tracked
+   */
+  public boolean hasData() {
+    return sampleCounts != null;
+  }
+
+  /**
+   * @return the number of pixels, or zero if there are no statistics
+   */
+  public int getPixelCount() {
+    return sampleCounts == null ? 0 : sampleCounts.length;
+  }
+
+  /**
+   * Start tracking statistics for a render where every pixel has the same number of samples.
+   * The luminance moments are unknown, so every pixel starts without observations.
+   */
+  public synchronized void start(int pixelCount, int spp) {
+    if (sampleCounts == null || sampleCounts.length != pixelCount) {
+      sampleCounts = new int[pixelCount];
+      observationCounts = new int[pixelCount];
+      luminanceMoments = new float[pixelCount];
+    }
+    Arrays.fill(sampleCounts, spp);
+    Arrays.fill(observationCounts, 0);
+    Arrays.fill(luminanceMoments, 0);
+  }
+
+  /**
+   * Stop tracking statistics and release the buffers.
+   */
+  public synchronized void clear() {
+    sampleCounts = null;
+    observationCounts = null;
+    luminanceMoments = null;
+  }
+
+  public int getSampleCount(int pixel) {
+    return sampleCounts[pixel];
+  }
+
+  public int getObservationCount(int pixel) {
+    return observationCounts[pixel];
+  }
+
+  /**
+   * Add the observations of a render pass to a pixel.
+   *
+   * @param samples            number of samples added to the sample buffer
+   * @param observations       number of traced paths
+   * @param luminanceSquareSum sum of the squared luminance of the traced paths
+   */
+  public void addSamples(int pixel, int samples, int observations, double luminanceSquareSum) {
+    int n = observationCounts[pixel];
+    luminanceMoments[pixel] = (float) ((luminanceMoments[pixel] * (double) n + luminanceSquareSum)
+        / (n + observations));
+    observationCounts[pixel] = n + observations;
+    sampleCounts[pixel] += samples;
+  }
+
+  /**
+   * Estimate the error of a pixel relative to the square root of its mean luminance,
+   * which roughly matches how noise is perceived after gamma correction.
+   *
+   * @param meanLuminance the luminance of the current pixel value
+   * @return the estimated relative error, or positive infinity if the pixel has
+   * too few observations
+   */
+  public double getRelativeError(int pixel, double meanLuminance) {
+    int n = observationCounts[pixel];
+    if (n < MIN_OBSERVATIONS) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double variance = Math.max(0, luminanceMoments[pixel] - meanLuminance * meanLuminance);
+    return Math.sqrt(variance / n) / Math.sqrt(meanLuminance + 1e-4);
+  }
+
+  /**
+   * Merge the statistics of another render of the same size into these statistics.
+   */
+  public void merge(SampleStatistics other) {
+    if (other.getPixelCount() != getPixelCount()) {
+      throw new IllegalArgumentException("Sample statistics size mismatch");
+    }
+    for (int i = 0; i < sampleCounts.length; ++i) {
+      int n1 = observationCounts[i];
+      int n2 = other.observationCounts[i];
+      if (n1 + n2 > 0) {
+        luminanceMoments[i] = (float) (((double) luminanceMoments[i] * n1
+            + (double) other.luminanceMoments[i] * n2) / (n1 + n2));
+      }
+      observationCounts[i] = n1 + n2;
+      sampleCounts[i] += other.sampleCounts[i];
+    }
+  }
+
+  /**
+   * @return a deep copy of these statistics
+   */
+  public synchronized SampleStatistics copy() {
+    SampleStatistics copy = new SampleStatistics();
+    if (sampleCounts != null) {
+      copy.sampleCounts = sampleCounts.clone();
+      copy.observationCounts = observationCounts.clone();
+      copy.luminanceMoments = luminanceMoments.clone();
+    }
+    return copy;
+  }
+
+  /**
+   * Write the statistics as the pixel count followed by a deflate compressed block.
+   */
+  public void write(DataOutputStream out) throws IOException {
+    int pixels = getPixelCount();
+    out.writeInt(pixels);
+    if (pixels == 0) {
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try (DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 1 << 16))) {
+      for (int i = 0; i < pixels; ++i) {
+        data.writeInt(sampleCounts[i]);
+      }
+      for (int i = 0; i < pixels; ++i) {
+        data.writeInt(observationCounts[i]);
+      }
+      for (int i = 0; i < pixels; ++i) {
+        data.writeFloat(luminanceMoments[i]);
+      }
+    } finally {
+      deflater.end();
+    }
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+  }
+
+  /**
+   * Read statistics written by {@link #write(DataOutputStream)}, replacing the current statistics.
+   */
+  public void read(DataInputStream in) throws IOException {
+    int pixels = in.readInt();
+    if (pixels < 0) {
+      throw new IOException("Invalid pixel count in sample statistics: " + pixels);
+    }
+    if (pixels == 0) {
+      clear();
+      return;
+    }
+    byte[] compressed = new byte[in.readInt()];
+    in.readFully(compressed);
+    int[] samples = new int[pixels];
+    int[] observations = new int[pixels];
+    float[] moments = new float[pixels];
+    try (DataInputStream data = new DataInputStream(
+        new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+      for (int i = 0; i < pixels; ++i) {
+        samples[i] = data.readInt();
+      }
+      for (int i = 0; i < pixels; ++i) {
+        observations[i] = data.readInt();
+      }
+      for (int i = 0; i < pixels; ++i) {
+        moments[i] = data.readFloat();
+      }
+    }
+    synchronized (this) {
+      sampleCounts = samples;
+      observationCounts = observations;
+      luminanceMoments = moments;
+    }
+  }
+
+  /**
+   * Relative luminance of a linear RGB color.
+   */
+  public static double luminance(double r, double g, double b) {
+    return 0.2126 * r + 0.7152 * g + 0.0722 * b;
+  }
+}
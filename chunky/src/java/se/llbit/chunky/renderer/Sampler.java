@@ -0,0 +1,100 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import java.util.Random;
+
+/**
+ * Generates the random numbers for the samples of a render worker.
+ *
+ * <p>A sampler is used as the {@link WorkerState#random} of a worker, so every
+ * sampling decision that takes a {@link Random} draws from the sampler.
+ * For each pixel sample the renderer calls {@link #startSample(int, int, int)} before
+ * tracing the sample and {@link #finishSample()} after it. Between these calls
+ * {@link #nextDouble()} and {@link #nextFloat()} return successive dimensions of the sample.
+ * All other numbers, and all numbers drawn outside of a pixel sample, come from
+ * the underlying pseudo random number generator.
+ */
+public abstract class Sampler extends Random {
+  protected final Random prng;
+
+  protected Sampler(Random prng) {
+    this.prng = prng;
+  }
+
+  public abstract SamplerType getType();
+
+  /**
+   * Start generating the sample with the given index in a pixel.
+   */
+  public abstract void startSample(int x, int y, int index);
+
+  /**
+   * Finish the current pixel sample. Later numbers come from the pseudo random number generator.
+   */
+  public abstract void finishSample();
+
+  /**
+   * @return the pseudo random number generator used by this sampler
+   */
+  public Random getPrng() {
+    return prng;
+  }
+
+  @Override
+  public void setSeed(long seed) {
+    // Called by the Random constructor before the generator is set.
+    if (prng != null) {
+      prng.setSeed(seed);
+    }
+  }
+
+  @Override
+  protected int next(int bits) {
+    return prng.nextInt() >>> (32 - bits);
+  }
+
+  @Override
+  public int nextInt() {
+    return prng.nextInt();
+  }
+
+  @Override
+  public int nextInt(int bound) {
+    return prng.nextInt(bound);
+  }
+
+  @Override
+  public long nextLong() {
+    return prng.nextLong();
+  }
+
+  @Override
+  public boolean nextBoolean() {
+    return prng.nextBoolean();
+  }
+
+  @Override
+  public double nextDouble() {
+    return prng.nextDouble();
+  }
+
+  @Override
+  public float nextFloat() {
+    return prng.nextFloat();
+  }
+}
@@ -0,0 +1,77 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import se.llbit.util.Registerable;
+
+import java.util.Random;
+
+/**
+ * The sampler used to generate the random numbers of the pixel samples.
+ */
+public enum SamplerType implements Registerable {
+  RANDOM("Random", "Independent pseudo random numbers for every sample."),
+  SOBOL("Sobol", "Scrambled Sobol sequence for the first dimensions of the samples in each pixel. "
+      + "Gives less noise at the same sample count.");
+
+  private final String name;
+  private final String description;
+
+  SamplerType(String name, String description) {
+    this.name = name;
+    this.description = description;
+  }
+
+  /**
+   * @return the sampler type with the given id, or {@link #RANDOM} if the id is unknown
+   */
+  public static SamplerType get(String id) {
+    try {
+      return valueOf(id);
+    } catch (IllegalArgumentException | NullPointerException e) {
+      return RANDOM;
+    }
+  }
+
+  /**
+   * Create a sampler of this type that falls back to the given pseudo random number generator.
+   */
+  public Sampler createSampler(Random prng) {
+    switch (this) {
+      case SOBOL:
+        return new SobolSampler(prng);
+      case RANDOM:
+      default:
+        return new RandomSampler(prng);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String getDescription() {
+    return description;
+  }
+
+  @Override
+  public String getId() {
+    return this.name();
+  }
+}
@@ -0,0 +1,140 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import java.util.Random;
+
+/**
+ * Sampler using an Owen scrambled Sobol sequence for the first dimensions of each pixel sample.
+ *
+ * <p>Dimensions are generated in pairs from the first two Sobol dimensions. Each pair uses an
+ * independently shuffled sample index and independent scrambling, seeded by the pixel position,
+ * so the pairs are decorrelated from each other and from neighbouring pixels. This is the
+ * hash-based Owen scrambling described by Burley in "Practical Hash-based Owen Scrambling" (2020).
+ *
+ * <p>Only the first {@link #DIMENSIONS} dimensions of a sample are stratified. These cover the
+ * sub-pixel position, the aperture sample and the first bounce. Later dimensions use the
+ * pseudo random number generator.
+ */
+public class SobolSampler extends Sampler {
+  /**
+   * Number of low discrepancy dimensions per sample.
+   */
+  public static final int DIMENSIONS = 8;
+
+  /**
+   * Direction numbers of the second Sobol dimension.
+   */
+  private static final int[] SOBOL_DIRECTIONS = new int[32];
+
+  static {
+    SOBOL_DIRECTIONS[0] = 1 << 31;
+    for (int i = 1; i < 32; ++i) {
+      SOBOL_DIRECTIONS[i] = SOBOL_DIRECTIONS[i - 1] ^ (SOBOL_DIRECTIONS[i - 1] >>> 1);
+    }
+  }
+
+  private int pixelSeed;
+  private int index;
+  private int dimension = DIMENSIONS;
+  private int nextY;
+
+  public SobolSampler(Random prng) {
+    super(prng);
+  }
+
+  @Override
+  public SamplerType getType() {
+    return SamplerType.SOBOL;
+  }
+
+  @Override
+  public void startSample(int x, int y, int index) {
+    pixelSeed = hash(hash(x) ^ (y * 0x9E3779B9));
+    this.index = index;
+    dimension = 0;
+  }
+
+  @Override
+  public void finishSample() {
+    dimension = DIMENSIONS;
+  }
+
+  /**
+   * @return the next dimension of the sample as 32 fixed point bits
+   */
+  private int nextBits() {
+    if ((dimension & 1) != 0) {
+      dimension += 1;
+      return nextY;
+    }
+    int seed = hash(pixelSeed + dimension);
+    int shuffled = nestedUniformScramble(index, seed);
+    int x = nestedUniformScramble(Integer.reverse(shuffled), hash(seed ^ 0x5BD1E995));
+    nextY = nestedUniformScramble(sobol(shuffled), hash(seed ^ 0x27D4EB2D));
+    dimension += 1;
+    return x;
+  }
+
+  @Override
+  public double nextDouble() {
+    if (dimension >= DIMENSIONS) {
+      return prng.nextDouble();
+    }
+    return (nextBits() & 0xFFFFFFFFL) * 0x1.0p-32;
+  }
+
+  @Override
+  public float nextFloat() {
+    if (dimension >= DIMENSIONS) {
+      return prng.nextFloat();
+    }
+    return (nextBits() >>> 8) * 0x1.0p-24f;
+  }
+
+  private static int sobol(int index) {
+    int result = 0;
+    for (int bit = 0; index != 0; ++bit, index >>>= 1) {
+      if ((index & 1) != 0) {
+        result ^= SOBOL_DIRECTIONS[bit];
+      }
+    }
+    return result;
+  }
+
+  private static int nestedUniformScramble(int x, int seed) {
+    return Integer.reverse(laineKarrasPermutation(Integer.reverse(x), seed));
+  }
+
+  private static int laineKarrasPermutation(int x, int seed) {
+    x += seed;
+    x ^= x * 0x6C50B47C;
+    x ^= x * 0xB82F1E52;
+    x ^= x * 0xC7AFE638;
+    x ^= x * 0x8D22F6E6;
+    return x;
+  }
+
+  private static int hash(int x) {
+    x ^= x >>> 16;
+    x *= 0x7FEB352D;
+    x ^= x >>> 15;
+    x *= 0x846CA68B;
+    x ^= x >>> 16;
+    return x;
+  }
+}
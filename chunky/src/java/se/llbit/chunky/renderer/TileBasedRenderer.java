@@ -20,11 +20,11 @@ import it.unimi.dsi.fastutil.ints.IntIntMutablePair;
 import it.unimi.dsi.fastutil.ints.IntIntPair;
 import org.apache.commons.math3.util.FastMath;
 import se.llbit.chunky.renderer.scene.Scene;
-import se.llbit.math.Ray;
 
 import java.util.ArrayList;
 import java.util.function.BiConsumer;
 import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 /**
  * A tile based renderer. Simply call {@code submitTiles} to submit a frame's worth of tiles to the work queue.
@@ -37,6 +37,9 @@ public abstract class TileBasedRenderer implements Renderer {
   protected BooleanSupplier postRender = () -> true;
 
   private final ArrayList<RenderTile> cachedTiles = new ArrayList<>();
+  private final ArrayList<RenderWorkerPool.RenderJob> cachedJobs = new ArrayList<>();
+  private volatile PixelRenderer perPixel = (state, x, y) -> {};
+  private volatile Predicate<RenderTile> convergence = null;
   private int prevWidth = -1;
   private int prevHeight = -1;
 
@@ -44,6 +47,12 @@ public abstract class TileBasedRenderer implements Renderer {
     public int x0, x1;
     public int y0, y1;
 
+    /**
+     * Set when the tile has converged and is skipped by
+     * {@link #submitTiles(DefaultRenderManager, PixelRenderer, Predicate)}.
+     */
+    public boolean converged = false;
+
     public RenderTile(int x0, int x1, int y0, int y1) {
       this.x0 = x0;
       this.x1 = x1;
@@ -52,38 +61,104 @@ public abstract class TileBasedRenderer implements Renderer {
     }
   }
 
+  /**
+   * Renders a single pixel.
+   */
+  @FunctionalInterface
+  public interface PixelRenderer {
+    /**
+     * @param state The render state of the worker. This is reused for every pixel rendered by the worker.
+     * @param x     Pixel x coordinate
+     * @param y     Pixel y coordinate
+     */
+    void renderPixel(WorkerState state, int x, int y);
+  }
+
   @Override
   public void setPostRender(BooleanSupplier callback) {
     postRender = callback;
   }
 
+  /**
+   * Create and submit tiles to the rendering pool.
+   * Await for these tiles to finish rendering with {@code manager.pool.awaitEmpty()}.
+   *
+   * <p>The tile jobs are cached and every worker reuses its own {@link WorkerState},
+   * so submitting tiles does not allocate any per-tile render state.
+   *
+   * @param perPixel This is called on every pixel with the worker state and the pixel coordinates.
+   */
+  protected void submitTiles(DefaultRenderManager manager, PixelRenderer perPixel) {
+    initTiles(manager);
+
+    // The pool's work queue makes this write visible to the workers.
+    this.perPixel = perPixel;
+    this.convergence = null;
+    cachedJobs.forEach(manager.pool::submit);
+  }
+
+  /**
+   * Submit the tiles that have not converged to the rendering pool.
+   * After a tile is rendered the convergence test is run on the worker thread
+   * and the tile is skipped by later calls once the test returns {@code true}.
+   *
+   * @param perPixel    This is called on every pixel with the worker state and the pixel coordinates.
+   * @param convergence Tests if a tile has converged after it was rendered.
+   * @return the number of submitted tiles
+   */
+  protected int submitTiles(DefaultRenderManager manager, PixelRenderer perPixel,
+      Predicate<RenderTile> convergence) {
+    initTiles(manager);
+
+    this.perPixel = perPixel;
+    this.convergence = convergence;
+    int submitted = 0;
+    for (int i = 0; i < cachedTiles.size(); ++i) {
+      if (!cachedTiles.get(i).converged) {
+        manager.pool.submit(cachedJobs.get(i));
+        submitted += 1;
+      }
+    }
+    return submitted;
+  }
+
+  /**
+   * Mark all tiles as not converged.
+   */
+  protected void resetConvergedTiles() {
+    cachedTiles.forEach(tile -> tile.converged = false);
+  }
+
   /**
    * Create and submit tiles to the rendering pool.
    * Await for these tiles to finish rendering with {@code manager.pool.awaitEmpty()}.
    *
    * @param perPixel This is called on every pixel. The first argument is the worker state.
    *                 The second argument is the current pixel (x, y).
+   * @deprecated Use {@link #submitTiles(DefaultRenderManager, PixelRenderer)} instead,
+   *             which does not allocate a pixel pair per tile.
    */
+  @Deprecated
   protected void submitTiles(DefaultRenderManager manager, BiConsumer<WorkerState, IntIntPair> perPixel) {
-    initTiles(manager);
+    ThreadLocal<IntIntMutablePair> pixel = ThreadLocal.withInitial(() -> new IntIntMutablePair(0, 0));
+    submitTiles(manager, (state, x, y) -> perPixel.accept(state, pixel.get().left(x).right(y)));
+  }
+
+  private void renderTile(RenderWorkerPool.RenderWorker worker, RenderTile tile) {
+    WorkerState state = worker.getWorkerState();
+    state.ray.setNormal(0, 0, -1);
+    PixelRenderer perPixel = this.perPixel;
 
-    cachedTiles.forEach(tile ->
-        manager.pool.submit(worker -> {
-          WorkerState state = new WorkerState();
-          state.ray = new Ray();
-          state.ray.setNormal(0, 0, -1);
-          state.random = worker.random;
-
-          IntIntMutablePair pair = new IntIntMutablePair(0, 0);
-
-          for (int i = tile.x0; i < tile.x1; i++) {
-            for (int j = tile.y0; j < tile.y1; j++) {
-              pair.left(i).right(j);
-              perPixel.accept(state, pair);
-            }
-          }
-        })
-    );
+    for (int i = tile.x0; i < tile.x1; i++) {
+      for (int j = tile.y0; j < tile.y1; j++) {
+        perPixel.renderPixel(state, i, j);
+      }
+    }
+
+    Predicate<RenderTile> convergence = this.convergence;
+    if (convergence != null) {
+      tile.converged = convergence.test(tile);
+    }
   }
 
   private void initTiles(DefaultRenderManager manager) {
@@ -96,11 +171,14 @@ public abstract class TileBasedRenderer implements Renderer {
       prevWidth = width;
       prevHeight = height;
       cachedTiles.clear();
+      cachedJobs.clear();
 
       for (int i = 0; i < width; i += tileWidth) {
         for (int j = 0; j < height; j += tileWidth) {
-          cachedTiles.add(new RenderTile(i, FastMath.min(i + tileWidth, width),
-              j, FastMath.min(j + tileWidth, height)));
+          RenderTile tile = new RenderTile(i, FastMath.min(i + tileWidth, width),
+              j, FastMath.min(j + tileWidth, height));
+          cachedTiles.add(tile);
+          cachedJobs.add(worker -> renderTile(worker, tile));
         }
       }
     }
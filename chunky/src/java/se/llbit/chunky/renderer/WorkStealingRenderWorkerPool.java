@@ -0,0 +1,221 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A render worker pool where every worker owns a job deque. Submitted jobs are
+ * distributed round-robin over the worker deques. A worker takes jobs from the
+ * head of its own deque and steals from the tail of other deques when its own
+ * deque is empty. Idle workers are parked and only woken when new work arrives.
+ *
+ * <p>Instead of signalling a shared monitor after every finished job, the pass
+ * barrier only notifies waiters when the last outstanding job finishes.
+ */
+public class WorkStealingRenderWorkerPool extends RenderWorkerPool {
+
+  /**
+   * Maximum time a parked worker sleeps before checking for work again.
+   * Workers are normally woken explicitly, this is only a safety net.
+   */
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  protected static class StealingWorker extends RenderWorker {
+    protected final ConcurrentLinkedDeque<RenderJobFuture> deque = new ConcurrentLinkedDeque<>();
+    protected volatile boolean parked = false;
+    protected volatile boolean retired = false;
+
+    public StealingWorker(RenderWorkerPool pool, int id, long seed) {
+      super(pool, id, seed);
+    }
+  }
+
+  /** Snapshot of the live workers, used for job distribution and stealing. */
+  private volatile StealingWorker[] queues = new StealingWorker[0];
+
+  private final AtomicInteger nextQueue = new AtomicInteger(0);
+  private final AtomicInteger idleWorkers = new AtomicInteger(0);
+
+  /** Number of submitted jobs that have not yet finished. */
+  private final AtomicLong pending = new AtomicLong(0);
+  private final Object passBarrier = new Object();
+
+  public WorkStealingRenderWorkerPool(int threads, long seed) {
+    super(seed);
+    setThreadCount(threads);
+  }
+
+  @Override
+  protected RenderWorker createWorker(int id, long seed) {
+    return new StealingWorker(this, id, seed);
+  }
+
+  @Override
+  public void setThreadCount(int threads) {
+    synchronized (workers) {
+      StealingWorker[] previous = queues;
+      super.setThreadCount(threads);
+
+      StealingWorker[] current = new StealingWorker[workers.size()];
+      for (int i = 0; i < current.length; i++) {
+        current[i] = (StealingWorker) workers.get(i);
+      }
+
+      // Retire removed workers before publishing the new snapshot so that
+      // concurrent submits can detect that they pushed to a retired deque.
+      for (StealingWorker worker : previous) {
+        if (!workers.contains(worker)) {
+          worker.retired = true;
+        }
+      }
+      queues = current;
+
+      // Hand remaining jobs of retired workers over to the live workers.
+      for (StealingWorker worker : previous) {
+        if (worker.retired) {
+          RenderJobFuture job;
+          while ((job = worker.deque.pollFirst()) != null) {
+            enqueue(job);
+          }
+          LockSupport.unpark(worker);
+        }
+      }
+    }
+  }
+
+  @Override
+  public RenderJobFuture submit(RenderJob task) {
+    RenderJobFuture future = new RenderJobFuture(task);
+    pending.incrementAndGet();
+    enqueue(future);
+    return future;
+  }
+
+  private void enqueue(RenderJobFuture job) {
+    while (true) {
+      StealingWorker[] snapshot = queues;
+      StealingWorker target = snapshot[Math.floorMod(nextQueue.getAndIncrement(), snapshot.length)];
+      target.deque.addLast(job);
+      if (target.retired && target.deque.removeLastOccurrence(job)) {
+        // The worker was retired while we were pushing to it. Try again with the new snapshot.
+        continue;
+      }
+      break;
+    }
+    if (idleWorkers.get() > 0) {
+      for (StealingWorker worker : queues) {
+        if (worker.parked) {
+          LockSupport.unpark(worker);
+        }
+      }
+    }
+  }
+
+  /**
+   * Find a job for the given worker: first from its own deque, then by stealing
+   * from the other workers, starting at a random victim.
+   */
+  private RenderJobFuture take(StealingWorker worker) {
+    RenderJobFuture job = worker.deque.pollFirst();
+    if (job != null) {
+      return job;
+    }
+    StealingWorker[] snapshot = queues;
+    int n = snapshot.length;
+    if (n == 0) {
+      return null;
+    }
+    int start = ThreadLocalRandom.current().nextInt(n);
+    for (int i = 0; i < n; i++) {
+      StealingWorker victim = snapshot[(start + i) % n];
+      if (victim != worker) {
+        job = victim.deque.pollLast();
+        if (job != null) {
+          return job;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  protected void work(RenderWorker renderWorker) throws Throwable {
+    StealingWorker worker = (StealingWorker) renderWorker;
+    RenderJobFuture job = take(worker);
+    if (job == null) {
+      worker.pauseSleep();
+      worker.parked = true;
+      idleWorkers.incrementAndGet();
+      try {
+        // Check again after announcing that we are idle, to not miss a wake-up.
+        job = take(worker);
+        if (job == null) {
+          if (worker.retired) {
+            worker.shutdown();
+            return;
+          }
+          LockSupport.parkNanos(this, MAX_PARK_NANOS);
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+        }
+      } finally {
+        idleWorkers.decrementAndGet();
+        worker.parked = false;
+        worker.resumeSleep();
+      }
+      if (job == null) {
+        return;
+      }
+    }
+
+    try {
+      job.task.accept(worker);
+      job.finished();
+    } finally {
+      if (pending.decrementAndGet() == 0) {
+        synchronized (passBarrier) {
+          passBarrier.notifyAll();
+        }
+      }
+    }
+
+    worker.workSleep();
+  }
+
+  @Override
+  public void awaitEmpty() throws InterruptedException {
+    synchronized (passBarrier) {
+      while (pending.get() != 0) {
+        passBarrier.wait();
+      }
+    }
+  }
+
+  @Override
+  public void interrupt() {
+    synchronized (workers) {
+      workers.forEach(RenderWorker::interrupt);
+    }
+  }
+}
@@ -16,6 +16,8 @@
  */
 package se.llbit.chunky.renderer;
 
+import se.llbit.chunky.renderer.scene.IterativePathTracer;
+import se.llbit.math.Octree;
 import se.llbit.math.Ray;
 import se.llbit.math.Vector4;
 
@@ -27,5 +29,58 @@ import java.util.Random;
 public class WorkerState {
   public Ray ray;
   public Vector4 attenuation = new Vector4();
+
+  /**
+   * Source of all random numbers used by the worker. While a renderer uses a sampler
+   * this is the sampler, see {@link #useSampler(SamplerType)}.
+   */
   public Random random;
+
+  /**
+   * The sampler used for pixel samples, or {@code null} if no sampler has been selected.
+   */
+  public Sampler sampler;
+
+  /**
+   * Scratch rays used for octree intersection tests in {@code Scene.intersect(Ray, WorkerState)}.
+   */
+  public Ray intersectionStart = new Ray();
+  public Ray intersectionRay = new Ray();
+
+  /**
+   * Scratch state for octree ray marching.
+   */
+  public Octree.Traversal octreeTraversal = new Octree.Traversal();
+
+  /**
+   * Scratch state for {@code IterativePathTracer}, created on first use.
+   */
+  public IterativePathTracer.PathState pathState;
+
+  private static final ThreadLocal<WorkerState> intersectionScratch =
+      ThreadLocal.withInitial(WorkerState::new);
+
+  /**
+   * Get a per-thread worker state for intersection tests by callers that have no worker state.
+   * Only the intersection scratch fields of the returned state are used. The state is shared
+   * by all such callers on the same thread, so it must not be kept after the call.
+   */
+  public static WorkerState intersectionScratch() {
+    return intersectionScratch.get();
+  }
+
+  /**
+   * Select the sampler used for the pixel samples of this worker. The sampler
+   * replaces {@link #random} and draws from the previous pseudo random number generator.
+   *
+   * @return the sampler
+   */
+  public Sampler useSampler(SamplerType type) {
+    if (sampler == null || sampler.getType() != type) {
+      Random prng = sampler != null ? sampler.getPrng() : random;
+      sampler = type.createSampler(prng);
+      random = sampler;
+    }
+    return sampler;
+  }
 }
@@ -1,6 +1,8 @@
 package se.llbit.chunky.renderer.postprocessing;
 
 import se.llbit.chunky.plugin.PluginApi;
+import se.llbit.chunky.renderer.DoubleSampleBuffer;
+import se.llbit.chunky.renderer.SampleBuffer;
 
 /**
  * Post-processing filter that supports processing one pixel at a time.
@@ -18,4 +20,43 @@ public interface PixelPostProcessingFilter extends PostProcessingFilter {
    * @param output The output buffer for the processed pixel
    */
   void processPixel(int width, int height, double[] input, int x, int y, double exposure, double[] output);
+
+  /**
+   * Get the samples to pass to
+   * {@link #processPixel(int, int, SampleBuffer, int, int, double, double[])} for all pixels
+   * of a frame. This is called once per frame, before the pixels are processed.
+   *
+   * <p>The default implementation converts buffers that do not store the samples as doubles
+   * into a double precision copy, so that the default {@code processPixel} can pass the whole
+   * image to {@link #processPixel(int, int, double[], int, int, double, double[])}. Filters
+   * that read the samples through the {@link SampleBuffer} should return the samples as they are.
+   *
+   * @param samples The input linear image
+   * @return The samples to process the frame with
+   */
+  default SampleBuffer prepareFrame(SampleBuffer samples) {
+    if (samples instanceof DoubleSampleBuffer) {
+      return samples;
+    }
+    return new DoubleSampleBuffer(samples.toDoubleArray());
+  }
+
+  /**
+   * Post process a single pixel
+   *
+   * <p>The default implementation passes the samples as a double array to
+   * {@link #processPixel(int, int, double[], int, int, double, double[])}. The samples are
+   * only passed without copying if the input was prepared by {@link #prepareFrame(SampleBuffer)}.
+   *
+   * @param width The width of the image
+   * @param height The height of the image
+   * @param input The input linear image, as returned by {@link #prepareFrame(SampleBuffer)}
+   * @param x The x position of the pixel to process
+   * @param y The y position of the pixel to process
+   * @param exposure The exposure value
+   * @param output The output buffer for the processed pixel
+   */
+  default void processPixel(int width, int height, SampleBuffer input, int x, int y, double exposure, double[] output) {
+    processPixel(width, height, input.toDoubleArray(), x, y, exposure, output);
+  }
 }
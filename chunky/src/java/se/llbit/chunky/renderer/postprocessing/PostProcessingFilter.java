@@ -1,6 +1,7 @@
 package se.llbit.chunky.renderer.postprocessing;
 
 import se.llbit.chunky.plugin.PluginApi;
+import se.llbit.chunky.renderer.SampleBuffer;
 import se.llbit.chunky.resources.BitmapImage;
 import se.llbit.util.Registerable;
 import se.llbit.util.TaskTracker;
@@ -27,6 +28,24 @@ public interface PostProcessingFilter extends Registerable {
    */
   void processFrame(int width, int height, double[] input, BitmapImage output, double exposure, TaskTracker.Task task);
 
+  /**
+   * Post process the entire frame
+   *
+   * <p>The default implementation passes the samples as a double array to
+   * {@link #processFrame(int, int, double[], BitmapImage, double, TaskTracker.Task)},
+   * which copies them if the buffer does not store the samples as doubles.
+   *
+   * @param width The width of the image
+   * @param height The height of the image
+   * @param input The input linear image, exposure has not been applied
+   * @param output The output image
+   * @param exposure The exposure value
+   * @param task Task
+   */
+  default void processFrame(int width, int height, SampleBuffer input, BitmapImage output, double exposure, TaskTracker.Task task) {
+    processFrame(width, height, input.toDoubleArray(), output, exposure, task);
+  }
+
   /**
    * Get description of the post processing filter
    * @return The description of the post processing filter
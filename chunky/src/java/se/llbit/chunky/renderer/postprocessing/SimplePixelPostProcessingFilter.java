@@ -18,6 +18,8 @@
 package se.llbit.chunky.renderer.postprocessing;
 
 import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.DoubleSampleBuffer;
+import se.llbit.chunky.renderer.SampleBuffer;
 import se.llbit.chunky.resources.BitmapImage;
 import se.llbit.math.ColorUtil;
 import se.llbit.util.TaskTracker;
@@ -41,6 +43,15 @@ public abstract class SimplePixelPostProcessingFilter implements PixelPostProces
     int width, int height,
     double[] input, BitmapImage output,
     double exposure, TaskTracker.Task task
+  ) {
+    processFrame(width, height, new DoubleSampleBuffer(input), output, exposure, task);
+  }
+
+  @Override
+  public void processFrame(
+    int width, int height,
+    SampleBuffer input, BitmapImage output,
+    double exposure, TaskTracker.Task task
   ) {
     task.update(height, 0);
     AtomicInteger done = new AtomicInteger(0);
@@ -57,7 +68,7 @@ public abstract class SimplePixelPostProcessingFilter implements PixelPostProces
           for (int x = 0; x < width; x++) {
             int pixelOffset = (rowOffset + x) * 3;
             for(int i = 0; i < 3; ++i) {
-              pixelBuffer[i] = input[pixelOffset + i] * exposure;
+              pixelBuffer[i] = input.get(pixelOffset + i) * exposure;
             }
             processPixel(pixelBuffer);
             for(int i = 0; i < 3; ++i) {
@@ -86,4 +97,24 @@ public abstract class SimplePixelPostProcessingFilter implements PixelPostProces
     }
     processPixel(output);
   }
+
+  @Override
+  public SampleBuffer prepareFrame(SampleBuffer samples) {
+    return samples;
+  }
+
+  @Override
+  public void processPixel(
+    int width, int height,
+    SampleBuffer input,
+    int x, int y,
+    double exposure,
+    double[] output
+  ) {
+    int index = (y * width + x) * 3;
+    for(int i = 0; i < 3; ++i) {
+      output[i] = input.get(index + i) * exposure;
+    }
+    processPixel(output);
+  }
 }
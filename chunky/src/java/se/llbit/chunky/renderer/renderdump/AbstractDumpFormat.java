@@ -16,6 +16,7 @@
  */
 package se.llbit.chunky.renderer.renderdump;
 
+import se.llbit.chunky.renderer.SampleBuffer;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.util.TaskTracker;
 
@@ -32,7 +33,8 @@ abstract class AbstractDumpFormat implements DumpFormat {
    *
    * @param inputStream   Stream to read samples from.
    * @param scene         Scene this dump is a part of. Do not modify.
-   * @param consumer      Pixel consumer. Does not need to be in order.
+   * @param consumer      Pixel consumer. Does not need to be in order, and may be called
+   *                      concurrently from multiple threads for different pixels.
    * @param pixelProgress Progress consumer. Inputs to this must be increasing and end at
    *                      {@code scene.width * scene.height}.
    */
@@ -63,16 +65,12 @@ abstract class AbstractDumpFormat implements DumpFormat {
   @Override
   public void load(DataInputStream inputStream, Scene scene, TaskTracker taskTracker)
       throws IOException, IllegalStateException {
-    double[] samples = scene.getSampleBuffer();
+    SampleBuffer samples = scene.getSamples();
 
     try (TaskTracker.Task task = taskTracker.task("Loading render dump", scene.canvasConfig.getPixelCount())) {
       readHeader(inputStream, scene);
-      readSamples(inputStream, scene, (index, r, g, b) -> {
-        int offset = index * 3;
-        samples[offset + 0] = r;
-        samples[offset + 1] = g;
-        samples[offset + 2] = b;
-      }, i -> task.updateInterval(i, scene.canvasConfig.getWidth()));
+      readSamples(inputStream, scene, samples::setPixel,
+          i -> task.updateInterval(i, scene.canvasConfig.getWidth()));
     }
   }
 
@@ -92,7 +90,7 @@ abstract class AbstractDumpFormat implements DumpFormat {
       int sceneSpp = scene.spp;
       long previousRenderTime = scene.renderTime;
 
-      double[] samples = scene.getSampleBuffer();
+      SampleBuffer samples = scene.getSamples();
 
       readHeader(inputStream, scene);
 
@@ -101,9 +99,9 @@ abstract class AbstractDumpFormat implements DumpFormat {
 
       readSamples(inputStream, scene, (index, r, g, b) -> {
         int offset = index * 3;
-        samples[offset + 0] = (samples[offset + 0] * sceneSpp + r * dumpSpp) * sinv;
-        samples[offset + 1] = (samples[offset + 1] * sceneSpp + g * dumpSpp) * sinv;
-        samples[offset + 2] = (samples[offset + 2] * sceneSpp + b * dumpSpp) * sinv;
+        samples.set(offset + 0, (samples.get(offset + 0) * sceneSpp + r * dumpSpp) * sinv);
+        samples.set(offset + 1, (samples.get(offset + 1) * sceneSpp + g * dumpSpp) * sinv);
+        samples.set(offset + 2, (samples.get(offset + 2) * sceneSpp + b * dumpSpp) * sinv);
       }, i -> task.updateInterval(i, scene.canvasConfig.getWidth()));
 
       scene.spp += sceneSpp;
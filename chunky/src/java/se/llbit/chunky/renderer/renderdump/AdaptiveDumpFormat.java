@@ -0,0 +1,133 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.renderdump;
+
+import se.llbit.chunky.renderer.SampleBuffer;
+import se.llbit.chunky.renderer.SampleStatistics;
+import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.util.TaskTracker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Banded FPC dump format that also stores the per-pixel sample statistics of an
+ * adaptively sampled render. The statistics are stored between the header and the samples.
+ *
+ * <p>Pixels of an adaptive render have different sample counts, so merging weights
+ * every pixel by its own sample count instead of the sample count of the scene.
+ */
+public class AdaptiveDumpFormat extends BandedDumpFormat {
+  public static final AdaptiveDumpFormat INSTANCE = new AdaptiveDumpFormat();
+
+  private AdaptiveDumpFormat() {}
+
+  @Override
+  public int getVersion() {
+    return 6;
+  }
+
+  @Override
+  public String getName() {
+    return "Adaptive Banded Floating Point Compressor";
+  }
+
+  @Override
+  public String getDescription() {
+    return "Banded FPC compressed dump format with per-pixel sample counts for adaptive sampling.";
+  }
+
+  @Override
+  public String getId() {
+    return "AdaptiveDumpFormat";
+  }
+
+  @Override
+  public void load(DataInputStream inputStream, Scene scene, TaskTracker taskTracker)
+      throws IOException, IllegalStateException {
+    SampleBuffer samples = scene.getSamples();
+
+    try (TaskTracker.Task task = taskTracker.task("Loading render dump", scene.canvasConfig.getPixelCount())) {
+      readHeader(inputStream, scene);
+      readStatistics(inputStream, scene, scene.getSampleStatistics());
+      readSamples(inputStream, scene, samples::setPixel,
+          i -> task.updateInterval(i, scene.canvasConfig.getWidth()));
+    }
+  }
+
+  @Override
+  public void save(DataOutputStream outputStream, Scene scene, TaskTracker taskTracker)
+      throws IOException {
+    try (TaskTracker.Task task = taskTracker.task("Saving render dump", scene.canvasConfig.getPixelCount())) {
+      writeHeader(outputStream, scene);
+      scene.getSampleStatistics().write(outputStream);
+      writeSamples(outputStream, scene, i -> task.updateInterval(i, scene.canvasConfig.getWidth()));
+    }
+  }
+
+  @Override
+  public void merge(DataInputStream inputStream, Scene scene, TaskTracker taskTracker)
+      throws IOException, IllegalStateException {
+    try (TaskTracker.Task task = taskTracker.task("Merging render dump", scene.canvasConfig.getPixelCount())) {
+      int sceneSpp = scene.spp;
+      long previousRenderTime = scene.renderTime;
+
+      SampleBuffer samples = scene.getSamples();
+      SampleStatistics statistics = scene.getSampleStatistics();
+      if (statistics.getPixelCount() != scene.canvasConfig.getPixelCount()) {
+        // The scene was rendered without adaptive sampling, every pixel has the same sample count.
+        statistics.start(scene.canvasConfig.getPixelCount(), sceneSpp);
+      }
+
+      readHeader(inputStream, scene);
+
+      int dumpSpp = scene.spp;
+      SampleStatistics dumpStatistics = new SampleStatistics();
+      readStatistics(inputStream, scene, dumpStatistics);
+      if (!dumpStatistics.hasData()) {
+        dumpStatistics.start(scene.canvasConfig.getPixelCount(), dumpSpp);
+      }
+
+      readSamples(inputStream, scene, (index, r, g, b) -> {
+        int sceneCount = statistics.getSampleCount(index);
+        int dumpCount = dumpStatistics.getSampleCount(index);
+        if (sceneCount + dumpCount == 0) {
+          return;
+        }
+        double sinv = 1.0 / (sceneCount + dumpCount);
+        int offset = index * 3;
+        samples.set(offset + 0, (samples.get(offset + 0) * sceneCount + r * dumpCount) * sinv);
+        samples.set(offset + 1, (samples.get(offset + 1) * sceneCount + g * dumpCount) * sinv);
+        samples.set(offset + 2, (samples.get(offset + 2) * sceneCount + b * dumpCount) * sinv);
+      }, i -> task.updateInterval(i, scene.canvasConfig.getWidth()));
+
+      statistics.merge(dumpStatistics);
+      scene.spp += sceneSpp;
+      scene.renderTime += previousRenderTime;
+    }
+  }
+
+  private static void readStatistics(DataInputStream inputStream, Scene scene,
+      SampleStatistics statistics) throws IOException, IllegalStateException {
+    statistics.read(inputStream);
+    if (statistics.hasData() && statistics.getPixelCount() != scene.canvasConfig.getPixelCount()) {
+      statistics.clear();
+      throw new IllegalStateException("Sample statistics size does not match dump size");
+    }
+  }
+}
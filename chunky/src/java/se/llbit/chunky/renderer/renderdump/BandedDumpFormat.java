@@ -0,0 +1,154 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.renderdump;
+
+import se.llbit.chunky.main.Chunky;
+import se.llbit.chunky.renderer.SampleBuffer;
+import se.llbit.chunky.renderer.scene.Scene;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * FPC compressed dump format where the canvas is split into bands of rows that are
+ * compressed independently. The bands are compressed and decompressed in parallel on
+ * the common threads, and decompressed bands are written straight into the sample buffer.
+ *
+ * <p>After the header, the dump contains the number of rows per band followed by every
+ * band as its compressed length and the FPC compressed samples of the band. The lengths
+ * form an index that can be used to skip to any band without decompressing the previous ones.
+ */
+public class BandedDumpFormat extends AbstractDumpFormat {
+  public static final BandedDumpFormat INSTANCE = new BandedDumpFormat();
+
+  /**
+   * Approximate number of pixels in a band.
+   */
+  private static final int BAND_PIXELS = 1 << 16;
+
+  protected BandedDumpFormat() {}
+
+  @Override
+  public int getVersion() {
+    return 5;
+  }
+
+  @Override
+  public String getName() {
+    return "Banded Floating Point Compressor";
+  }
+
+  @Override
+  public String getDescription() {
+    return "FPC compressed dump format that is compressed and decompressed in parallel.";
+  }
+
+  @Override
+  public String getId() {
+    return "BandedDumpFormat";
+  }
+
+  @Override
+  protected void readSamples(DataInputStream inputStream, Scene scene,
+                             PixelConsumer consumer, IntConsumer pixelProgress)
+      throws IOException {
+    int width = scene.canvasConfig.getWidth();
+    int height = scene.canvasConfig.getHeight();
+    int rowsPerBand = inputStream.readInt();
+    if (rowsPerBand <= 0) {
+      throw new IOException("Invalid band size in render dump: " + rowsPerBand);
+    }
+    int bands = (height + rowsPerBand - 1) / rowsPerBand;
+
+    ForkJoinPool threads = Chunky.getCommonThreads();
+    int maxPending = 2 * threads.getParallelism();
+    ArrayDeque<Future<?>> pending = new ArrayDeque<>();
+    int nextBand = 0;
+    for (int band = 0; band < bands; ++band) {
+      // Read ahead and decompress a few bands while waiting for the current one.
+      while (nextBand < bands && pending.size() < maxPending) {
+        byte[] data = new byte[inputStream.readInt()];
+        inputStream.readFully(data);
+        int firstPixel = nextBand * rowsPerBand * width;
+        int pixels = (Math.min(height, (nextBand + 1) * rowsPerBand) - nextBand * rowsPerBand) * width;
+        pending.add(threads.submit(() -> {
+          FloatingPointCompressorDumpFormat.decompress(new ByteArrayInputStream(data),
+              firstPixel, pixels, consumer, i -> {});
+          return null;
+        }));
+        nextBand += 1;
+      }
+      await(pending.poll());
+      pixelProgress.accept(Math.min(height, (band + 1) * rowsPerBand) * width);
+    }
+  }
+
+  @Override
+  protected void writeSamples(DataOutputStream outputStream, Scene scene,
+                              IntConsumer pixelProgress)
+      throws IOException {
+    SampleBuffer samples = scene.getSamples();
+    int width = scene.canvasConfig.getWidth();
+    int height = scene.canvasConfig.getHeight();
+    int rowsPerBand = Math.max(1, BAND_PIXELS / width);
+    int bands = (height + rowsPerBand - 1) / rowsPerBand;
+    outputStream.writeInt(rowsPerBand);
+
+    ForkJoinPool threads = Chunky.getCommonThreads();
+    int maxPending = 2 * threads.getParallelism();
+    ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    int nextBand = 0;
+    for (int band = 0; band < bands; ++band) {
+      while (nextBand < bands && pending.size() < maxPending) {
+        int firstPixel = nextBand * rowsPerBand * width;
+        int pixels = (Math.min(height, (nextBand + 1) * rowsPerBand) - nextBand * rowsPerBand) * width;
+        pending.add(threads.submit(() -> {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream(pixels * 3 * Double.BYTES / 2);
+          FloatingPointCompressorDumpFormat.compress(samples, firstPixel, pixels, bytes, i -> {});
+          return bytes.toByteArray();
+        }));
+        nextBand += 1;
+      }
+      byte[] data = await(pending.poll());
+      outputStream.writeInt(data.length);
+      outputStream.write(data);
+      pixelProgress.accept(Math.min(height, (band + 1) * rowsPerBand) * width);
+    }
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to process render dump band", e.getCause());
+    }
+  }
+}
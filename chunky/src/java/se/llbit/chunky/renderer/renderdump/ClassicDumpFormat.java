@@ -16,6 +16,7 @@
  */
 package se.llbit.chunky.renderer.renderdump;
 
+import se.llbit.chunky.renderer.SampleBuffer;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.util.io.IsolatedOutputStream;
 import se.llbit.util.TaskTracker;
@@ -85,7 +86,7 @@ public class ClassicDumpFormat extends AbstractDumpFormat {
   protected void writeSamples(DataOutputStream outputStream, Scene scene,
                               IntConsumer pixelProgress)
       throws IOException {
-    double[] samples = scene.getSampleBuffer();
+    SampleBuffer samples = scene.getSamples();
     int offset;
     int done = 0;
 
@@ -93,9 +94,9 @@ public class ClassicDumpFormat extends AbstractDumpFormat {
     for (int x = 0; x < scene.canvasConfig.getWidth(); ++x) {
       for (int y = 0; y < scene.canvasConfig.getHeight(); ++y) {
         offset = (y * scene.canvasConfig.getWidth() + x) * 3;
-        outputStream.writeDouble(samples[offset + 0]);
-        outputStream.writeDouble(samples[offset + 1]);
-        outputStream.writeDouble(samples[offset + 2]);
+        outputStream.writeDouble(samples.get(offset + 0));
+        outputStream.writeDouble(samples.get(offset + 1));
+        outputStream.writeDouble(samples.get(offset + 2));
         pixelProgress.accept(done++);
       }
     }
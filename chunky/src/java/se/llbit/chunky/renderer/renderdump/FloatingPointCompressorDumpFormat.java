@@ -16,6 +16,7 @@
  */
 package se.llbit.chunky.renderer.renderdump;
 
+import se.llbit.chunky.renderer.SampleBuffer;
 import se.llbit.chunky.renderer.scene.Scene;
 
 import java.io.*;
@@ -55,17 +56,32 @@ public class FloatingPointCompressorDumpFormat extends AbstractDumpFormat {
   protected void readSamples(DataInputStream inputStream, Scene scene,
                              PixelConsumer consumer, IntConsumer pixelProgress)
       throws IOException {
-    decompress(inputStream, scene.getSampleBuffer().length, consumer, pixelProgress);
+    assert scene.getSamples().length() % 3 == 0;
+    decompress(inputStream, 0, scene.getSamples().length() / 3, consumer, pixelProgress);
   }
 
   @Override
   protected void writeSamples(DataOutputStream outputStream, Scene scene,
                               IntConsumer pixelProgress)
       throws IOException {
-    double[] samples = scene.getSampleBuffer();
-    assert samples.length % 3 == 0;
+    SampleBuffer samples = scene.getSamples();
+    assert samples.length() % 3 == 0;
 
-    int pixels = samples.length / 3;
+    compress(samples, 0, samples.length() / 3, outputStream, pixelProgress);
+  }
+
+  /**
+   * Compress a range of pixels of a sample buffer.
+   *
+   * @param samples       Sample buffer.
+   * @param firstPixel    Index of the first pixel to compress.
+   * @param pixels        Number of pixels to compress.
+   * @param outputStream  Stream to write to.
+   * @param pixelProgress Progress consumer, called with pixel indices relative to {@code firstPixel}.
+   */
+  static void compress(SampleBuffer samples, int firstPixel, int pixels, OutputStream outputStream,
+                       IntConsumer pixelProgress)
+      throws IOException {
     int size = pixels - 1;
 
     EncoderDecoder rEncoder = new EncoderDecoder();
@@ -73,29 +89,35 @@ public class FloatingPointCompressorDumpFormat extends AbstractDumpFormat {
     EncoderDecoder bEncoder = new EncoderDecoder();
 
     for (int i = 0; i < size; i += 2) {
-      int idx = 3 * i;
-      rEncoder.encodePair(samples[idx], samples[idx + 3], outputStream);
-      gEncoder.encodePair(samples[idx + 1], samples[idx + 4], outputStream);
-      bEncoder.encodePair(samples[idx + 2], samples[idx + 5], outputStream);
+      int idx = 3 * (firstPixel + i);
+      rEncoder.encodePair(samples.get(idx), samples.get(idx + 3), outputStream);
+      gEncoder.encodePair(samples.get(idx + 1), samples.get(idx + 4), outputStream);
+      bEncoder.encodePair(samples.get(idx + 2), samples.get(idx + 5), outputStream);
       pixelProgress.accept(i);
     }
 
     // Add the last one and a special terminator if there is an odd number
     if (pixels % 2 == 1) {
-      int idx = 3 * size;
-      rEncoder.encodeSingleWithOddTerminator(samples[idx], outputStream);
-      gEncoder.encodeSingleWithOddTerminator(samples[idx + 1], outputStream);
-      bEncoder.encodeSingleWithOddTerminator(samples[idx + 2], outputStream);
+      int idx = 3 * (firstPixel + size);
+      rEncoder.encodeSingleWithOddTerminator(samples.get(idx), outputStream);
+      gEncoder.encodeSingleWithOddTerminator(samples.get(idx + 1), outputStream);
+      bEncoder.encodeSingleWithOddTerminator(samples.get(idx + 2), outputStream);
       pixelProgress.accept(size);
     }
   }
 
-  private void decompress(InputStream inputStream, int bufferLength,
-                          PixelConsumer consumer, IntConsumer pixelProgress)
+  /**
+   * Decompress a range of pixels.
+   *
+   * @param inputStream   Stream to read from.
+   * @param firstPixel    Index of the first pixel in the stream.
+   * @param pixels        Number of pixels to decompress.
+   * @param consumer      Pixel consumer, called with absolute pixel indices.
+   * @param pixelProgress Progress consumer, called with pixel indices relative to {@code firstPixel}.
+   */
+  static void decompress(InputStream inputStream, int firstPixel, int pixels,
+                         PixelConsumer consumer, IntConsumer pixelProgress)
       throws IOException {
-    assert bufferLength % 3 == 0;
-
-    int pixels = bufferLength / 3;
     int size = pixels - 1;
 
     EncoderDecoder rDecoder = new EncoderDecoder();
@@ -121,8 +143,8 @@ public class FloatingPointCompressorDumpFormat extends AbstractDumpFormat {
       double b1 = bDecoder.decodeSingle(bFirstHeader, inputStream);
       double b2 = bDecoder.decodeSingle(bSecondHeader, inputStream);
 
-      consumer.consume(i, r1, g1, b1);
-      consumer.consume(i+1, r2,  g2, b2);
+      consumer.consume(firstPixel + i, r1, g1, b1);
+      consumer.consume(firstPixel + i + 1, r2,  g2, b2);
       pixelProgress.accept(i);
     }
 
@@ -146,7 +168,7 @@ public class FloatingPointCompressorDumpFormat extends AbstractDumpFormat {
       double b = bDecoder.decodeSingle(bFirstHeader, inputStream);
       bDecoder.decodeSingle(bSecondHeader, inputStream); // discard
 
-      consumer.consume(size, r, g, b);
+      consumer.consume(firstPixel + size, r, g, b);
       pixelProgress.accept(size);
     }
   }
@@ -1,5 +1,6 @@
 package se.llbit.chunky.renderer.renderdump;
 
+import se.llbit.chunky.renderer.SampleBuffer;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.util.io.IsolatedOutputStream;
 
@@ -40,7 +41,7 @@ public class HuffmanDumpFormat extends AbstractDumpFormat {
       throws IOException {
     DataInputStream in = new DataInputStream(new InflaterInputStream(inputStream));
 
-    int numPixels = scene.getSampleBuffer().length / 3;
+    int numPixels = scene.getSamples().length() / 3;
     for (int pixelIndex = 0; pixelIndex < numPixels; pixelIndex++) {
       double r = in.readDouble();
       double g = in.readDouble();
@@ -57,13 +58,13 @@ public class HuffmanDumpFormat extends AbstractDumpFormat {
     Deflater deflater = new Deflater(Deflater.HUFFMAN_ONLY);
     try (DataOutputStream out = new DataOutputStream(
         new DeflaterOutputStream(new IsolatedOutputStream(outputStream), deflater))) {
-      double[] samples = scene.getSampleBuffer();
-      int numPixels = samples.length / 3;
+      SampleBuffer samples = scene.getSamples();
+      int numPixels = samples.length() / 3;
       for (int pixelIndex = 0; pixelIndex < numPixels; pixelIndex++) {
         int offset = pixelIndex * 3;
-        out.writeDouble(samples[offset + 0]);
-        out.writeDouble(samples[offset + 1]);
-        out.writeDouble(samples[offset + 2]);
+        out.writeDouble(samples.get(offset + 0));
+        out.writeDouble(samples.get(offset + 1));
+        out.writeDouble(samples.get(offset + 2));
         pixelProgress.accept(pixelIndex);
       }
     }
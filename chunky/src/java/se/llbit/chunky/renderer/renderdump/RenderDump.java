@@ -37,7 +37,7 @@ import java.util.HashMap;
  */
 public class RenderDump {
   public static final byte[] DUMP_FORMAT_MAGIC_NUMBER = {0x44, 0x55, 0x4D, 0x50};
-  private static final int DEFAULT_DUMP_FORMAT = 1;  // FPC compressor
+  private static final int DEFAULT_DUMP_FORMAT = 5;  // Banded FPC compressor
 
   private static final HashMap<Integer, DumpFormat> RENDER_DUMP_FORMATS = new HashMap<>();
 
@@ -57,6 +57,8 @@ public class RenderDump {
     RenderDump.addRenderDumpFormat(UncompressedDumpFormat.INSTANCE);            // 2
     RenderDump.addRenderDumpFormat(HuffmanDumpFormat.INSTANCE);                 // 3
     RenderDump.addRenderDumpFormat(GzipDumpFormat.INSTANCE);                    // 4
+    RenderDump.addRenderDumpFormat(BandedDumpFormat.INSTANCE);                  // 5
+    RenderDump.addRenderDumpFormat(AdaptiveDumpFormat.INSTANCE);                // 6
   }
 
   private static DumpFormat getDumpFormat(int version) {
@@ -93,6 +95,8 @@ public class RenderDump {
       throws IOException, IllegalStateException {
     DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
     DumpFormat format = readDumpFormat(dataInputStream);
+    // Only adaptive dumps contain per-pixel sample counts.
+    scene.getSampleStatistics().clear();
     format.load(dataInputStream, scene, taskTracker);
   }
 
@@ -107,10 +111,16 @@ public class RenderDump {
     DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
     DumpFormat format = readDumpFormat(dataInputStream);
     format.merge(dataInputStream, scene, taskTracker);
+    if (format != AdaptiveDumpFormat.INSTANCE) {
+      // The per-pixel sample counts do not include the merged samples.
+      scene.getSampleStatistics().clear();
+    }
   }
 
   public static void save(OutputStream outputStream, Scene scene, TaskTracker taskTracker) throws IOException {
-    save(outputStream, scene, taskTracker, DEFAULT_DUMP_FORMAT);
+    save(outputStream, scene, taskTracker, scene.getSampleStatistics().hasData()
+        ? AdaptiveDumpFormat.INSTANCE.getVersion()
+        : DEFAULT_DUMP_FORMAT);
   }
 
   @PluginApi
@@ -1,5 +1,6 @@
 package se.llbit.chunky.renderer.renderdump;
 
+import se.llbit.chunky.renderer.SampleBuffer;
 import se.llbit.chunky.renderer.scene.Scene;
 
 import java.io.DataInputStream;
@@ -36,7 +37,7 @@ public class UncompressedDumpFormat extends AbstractDumpFormat {
   protected void readSamples(DataInputStream inputStream, Scene scene,
                              PixelConsumer consumer, IntConsumer pixelProgress)
       throws IOException {
-    int numPixels = scene.getSampleBuffer().length / 3;
+    int numPixels = scene.getSamples().length() / 3;
     for (int pixelIndex = 0; pixelIndex < numPixels; pixelIndex++) {
       double r = inputStream.readDouble();
       double g = inputStream.readDouble();
@@ -50,13 +51,13 @@ public class UncompressedDumpFormat extends AbstractDumpFormat {
   protected void writeSamples(DataOutputStream outputStream, Scene scene,
                               IntConsumer pixelProgress)
       throws IOException {
-    double[] samples = scene.getSampleBuffer();
-    int numPixels = samples.length / 3;
+    SampleBuffer samples = scene.getSamples();
+    int numPixels = samples.length() / 3;
     for (int pixelIndex = 0; pixelIndex < numPixels; pixelIndex++) {
       int offset = pixelIndex * 3;
-      outputStream.writeDouble(samples[offset + 0]);
-      outputStream.writeDouble(samples[offset + 1]);
-      outputStream.writeDouble(samples[offset + 2]);
+      outputStream.writeDouble(samples.get(offset + 0));
+      outputStream.writeDouble(samples.get(offset + 1));
+      outputStream.writeDouble(samples.get(offset + 2));
       pixelProgress.accept(pixelIndex);
     }
   }
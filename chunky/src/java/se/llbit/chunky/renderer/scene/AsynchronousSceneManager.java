@@ -165,6 +165,37 @@ public class AsynchronousSceneManager extends Thread implements SceneManager {
     });
   }
 
+  /**
+   * Save the scene description and render dump on a background thread.
+   * Unlike {@link #saveScene(File)} the samples are copied on the calling thread,
+   * so this should be called from the frame completion callback.
+   */
+  public void saveSceneInBackground(File sceneDirectory) {
+    sceneManager.saveSceneInBackground(sceneDirectory);
+  }
+
+  /**
+   * Save a snapshot of the given scene on a background thread.
+   * The samples are copied on the calling thread.
+   */
+  public void saveSnapshotInBackground(Scene scene, File directory) {
+    sceneManager.saveSnapshotInBackground(scene, directory);
+  }
+
+  /**
+   * @return {@code true} if all background saves have been written
+   */
+  public boolean backgroundSavesDone() {
+    return sceneManager.backgroundSavesDone();
+  }
+
+  /**
+   * Wait until all background saves have been written.
+   */
+  public void awaitBackgroundSaves() throws InterruptedException {
+    sceneManager.awaitBackgroundSaves();
+  }
+
   /**
    * Save the current scene.
    * @param newName Name of the scene copy
@@ -224,6 +255,14 @@ public class AsynchronousSceneManager extends Thread implements SceneManager {
     enqueueTask(sceneManager::reloadChunks);
   }
 
+  /**
+   * Reload the chunks that have changed since they were loaded
+   */
+  @Override
+  public void refreshChangedChunks() {
+    enqueueTask(sceneManager::refreshChangedChunks);
+  }
+
   /**
    * Merge a render dump into the current render.
    */
@@ -0,0 +1,130 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import se.llbit.chunky.renderer.SampleBuffer;
+import se.llbit.log.Log;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Saves scenes on a background thread so that rendering can continue while the
+ * render dump is compressed and written to disk.
+ *
+ * <p>Scenes are captured with {@link Scene#captureForSaving(SampleBuffer)}, which copies
+ * the sample buffer and takes the octree references while the scene is locked. The capture
+ * should be taken while the render workers are not writing to the sample buffer, for example
+ * from the frame completion callback.
+ *
+ * <p>Saves are performed one at a time in submission order. If a new save of the same kind
+ * is submitted before the previous one has started, only the newest capture is written.
+ * The sample buffer of a written capture is reused for the next capture.
+ */
+public class BackgroundSceneSaver {
+  private static class Job {
+    final Scene scene;
+    final Consumer<Scene> save;
+
+    Job(Scene scene, Consumer<Scene> save) {
+      this.scene = scene;
+      this.save = save;
+    }
+  }
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "Scene Saver");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final AtomicReference<Job> pendingDump = new AtomicReference<>();
+  private final AtomicReference<Job> pendingSnapshot = new AtomicReference<>();
+  private final AtomicReference<SampleBuffer> spareSamples = new AtomicReference<>();
+
+  /** Number of saves that have been queued and are not finished yet. */
+  private final AtomicInteger unfinishedSaves = new AtomicInteger();
+
+  /**
+   * Capture the scene and run the save action for the render dump on the background thread.
+   * Replaces a pending render dump save that has not started yet.
+   */
+  public void saveDump(Scene scene, Consumer<Scene> save) {
+    submit(pendingDump, capture(scene), save);
+  }
+
+  /**
+   * Capture the scene and run the save action for a snapshot on the background thread.
+   * Replaces a pending snapshot save that has not started yet.
+   */
+  public void saveSnapshot(Scene scene, Consumer<Scene> save) {
+    submit(pendingSnapshot, capture(scene), save);
+  }
+
+  /**
+   * @return {@code true} if all submitted saves have been written
+   */
+  public boolean isIdle() {
+    return unfinishedSaves.get() == 0;
+  }
+
+  /**
+   * Wait until all submitted saves have been written.
+   */
+  public void awaitIdle() throws InterruptedException {
+    try {
+      executor.submit(() -> {}).get();
+    } catch (ExecutionException e) {
+      // The task does nothing, it cannot fail.
+      throw new Error(e);
+    }
+  }
+
+  private Scene capture(Scene scene) {
+    return scene.captureForSaving(spareSamples.getAndSet(null));
+  }
+
+  private void submit(AtomicReference<Job> slot, Scene scene, Consumer<Scene> save) {
+    Job previous = slot.getAndSet(new Job(scene, save));
+    if (previous != null) {
+      // The previous capture was never written and a task to write the slot is already queued.
+      spareSamples.set(previous.scene.getSamples());
+      return;
+    }
+    unfinishedSaves.incrementAndGet();
+    executor.execute(() -> {
+      Job job = slot.getAndSet(null);
+      try {
+        if (job != null) {
+          try {
+            job.save.accept(job.scene);
+          } catch (Throwable e) {
+            Log.error("Failed to save scene in the background", e);
+          } finally {
+            spareSamples.set(job.scene.getSamples());
+          }
+        }
+      } finally {
+        unfinishedSaves.decrementAndGet();
+      }
+    });
+  }
+}
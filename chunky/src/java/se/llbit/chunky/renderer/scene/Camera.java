@@ -352,6 +352,28 @@ public class Camera implements JsonSerializable {
     return fov;
   }
 
+  /**
+   * Approximate angle, in radians, covered by one pixel at the center of the image.
+   *
+   * @param imageHeight height of the image in pixels
+   * @return the pixel angle, or zero for the parallel projection where the pixel
+   * footprint does not grow with distance
+   */
+  public double getPixelSpread(int imageHeight) {
+    switch (projectionMode) {
+      case PARALLEL:
+        return 0;
+      case PINHOLE:
+        return clampedFovTan(fov) / imageHeight;
+      case ODS_LEFT:
+      case ODS_RIGHT:
+      case ODS_STACKED:
+        return Math.PI / imageHeight;
+      default:
+        return QuickMath.degToRad(fov) / imageHeight;
+    }
+  }
+
   /**
    * Set the subject distance
    */
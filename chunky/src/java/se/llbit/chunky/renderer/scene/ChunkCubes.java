@@ -0,0 +1,404 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import se.llbit.chunky.block.Block;
+import se.llbit.chunky.block.minecraft.Air;
+import se.llbit.chunky.block.minecraft.Lava;
+import se.llbit.chunky.block.minecraft.Water;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.chunk.ChunkData;
+import se.llbit.chunky.chunk.ChunkLoadingException;
+import se.llbit.chunky.chunk.EmptyChunkData;
+import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.entity.Lectern;
+import se.llbit.chunky.entity.Poseable;
+import se.llbit.chunky.renderer.scene.biome.ChunkBiomeBlendingHelper;
+import se.llbit.chunky.world.Chunk;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.chunky.world.biome.BiomePalette;
+import se.llbit.math.Grid;
+import se.llbit.math.Octree;
+import se.llbit.math.Vector3;
+import se.llbit.math.Vector3i;
+import se.llbit.util.Mutable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The 16³ block cubes of one chunk, built from the chunk data on a loader thread.
+ *
+ * <p>Building the cubes classifies every block of the chunk (hidden block culling,
+ * water and lava corner levels, block entities and emitters) without touching the
+ * scene octrees, so many chunks can be built in parallel. Everything that has to
+ * be added to the scene is recorded, in the same order as the blocks were visited,
+ * and is merged into the scene by the loading thread.
+ *
+ * <p>Instances are reused for many chunks to avoid reallocating the chunk data
+ * and cube arrays.
+ */
+class ChunkCubes {
+  /**
+   * Palette IDs of the water and lava blocks built by the cubes. This is created once before
+   * chunks are loaded in parallel and shared by the loader threads, so that the threads do not
+   * build a block spec and lock the palette for every fluid block.
+   *
+   * <p>The full and flat blocks are resolved up front. There are too many blocks with corner
+   * levels to add all of them to the palette, so those are resolved on first use.
+   */
+  static final class FluidIds {
+    private final BlockPalette palette;
+    final int fullWater;
+    final int fullLava;
+    private final int[] water = new int[16];
+    /** Palette ID + 1 of the water blocks with corner levels, 0 if not resolved yet. */
+    private final AtomicIntegerArray cornerWater = new AtomicIntegerArray(16 << 12);
+    /** Palette ID + 1 of the lava blocks with corner levels, 0 if not resolved yet. */
+    private final AtomicIntegerArray cornerLava = new AtomicIntegerArray(16 << 12);
+
+    FluidIds(BlockPalette palette) {
+      this.palette = palette;
+      fullWater = palette.getWaterId(0, 1 << Water.FULL_BLOCK);
+      fullLava = palette.getLavaId(0, 1 << Water.FULL_BLOCK);
+      for (int level = 0; level < 16; ++level) {
+        water[level] = palette.getWaterId(level, 0);
+      }
+    }
+
+    /**
+     * @return the palette ID of a water block without corner levels
+     */
+    int water(int level) {
+      return water[level];
+    }
+
+    /**
+     * @return the palette ID of a water block with the given corner levels (0 to 7)
+     */
+    int water(int level, int cornerSW, int cornerSE, int cornerNE, int cornerNW) {
+      int key = cornerKey(level, cornerSW, cornerSE, cornerNE, cornerNW);
+      int id = cornerWater.get(key) - 1;
+      if (id < 0) {
+        id = palette.getWaterId(level, cornerData(cornerSW, cornerSE, cornerNE, cornerNW));
+        cornerWater.set(key, id + 1);
+      }
+      return id;
+    }
+
+    /**
+     * @return the palette ID of a lava block with the given corner levels (0 to 7)
+     */
+    int lava(int level, int cornerSW, int cornerSE, int cornerNE, int cornerNW) {
+      int key = cornerKey(level, cornerSW, cornerSE, cornerNE, cornerNW);
+      int id = cornerLava.get(key) - 1;
+      if (id < 0) {
+        id = palette.getLavaId(level, cornerData(cornerSW, cornerSE, cornerNE, cornerNW));
+        cornerLava.set(key, id + 1);
+      }
+      return id;
+    }
+
+    private static int cornerKey(int level, int cornerSW, int cornerSE, int cornerNE, int cornerNW) {
+      return (level << 12) | (cornerSW << 9) | (cornerSE << 6) | (cornerNE << 3) | cornerNW;
+    }
+
+    private static int cornerData(int cornerSW, int cornerSE, int cornerNE, int cornerNW) {
+      return (cornerSW << Water.CORNER_SW)
+          | (cornerSE << Water.CORNER_SE)
+          | (cornerNE << Water.CORNER_NE)
+          | (cornerNW << Water.CORNER_NW);
+    }
+  }
+
+  private final BlockPalette palette;
+  private final FluidIds fluidIds;
+  private final BiomePalette biomePalette;
+  private final SceneEntities sceneEntities;
+  private final Vector3i origin;
+  private final int yMin;
+  private final int yMax;
+  private final boolean collectEmitters;
+
+  /** Index of the lowest cube, in cube coordinates. */
+  final int yCubeMin;
+
+  ChunkPosition position;
+  ChunkData chunkData;
+  final int[][] worldCubes;
+  final int[][] waterCubes;
+  ChunkBiomeBlendingHelper biomeHelper;
+  boolean didLoadVisibleBlocks;
+
+  /** Region file timestamp of the loaded chunk data. */
+  int timestamp;
+
+  /** Region file location table entry of the loaded chunk data. */
+  int location;
+
+  /** Block entities that should be added as actors. */
+  final List<Entity> actors = new ArrayList<>();
+
+  /** Block entities that should be added as entities. */
+  final List<Entity> entities = new ArrayList<>();
+
+  /** Emitter positions in octree coordinates, in the order they should be added to the emitter grid. */
+  final List<Grid.EmitterPosition> emitters = new ArrayList<>();
+
+  private final Mutable<ChunkData> reuseChunkData = new Mutable<>(null);
+
+  ChunkCubes(BlockPalette palette, FluidIds fluidIds, BiomePalette biomePalette,
+      SceneEntities sceneEntities, Vector3i origin, int yMin, int yMax, boolean collectEmitters) {
+    this.palette = palette;
+    this.fluidIds = fluidIds;
+    this.biomePalette = biomePalette;
+    this.sceneEntities = sceneEntities;
+    this.origin = origin;
+    this.yMin = yMin;
+    this.yMax = yMax;
+    this.collectEmitters = collectEmitters;
+    yCubeMin = Math.floorDiv(yMin, 16); // round towards -infinity
+    int yCubeMax = (yMax + 15) / 16;
+    worldCubes = new int[yCubeMax - yCubeMin][16 * 16 * 16];
+    waterCubes = new int[yCubeMax - yCubeMin][16 * 16 * 16];
+  }
+
+  /**
+   * Load the chunk data for the given chunk and build its cubes.
+   */
+  void load(ChunkPosition position, Chunk chunk) throws ChunkLoadingException {
+    this.position = position;
+    reuseChunkData.set(chunkData);
+    chunk.getChunkData(reuseChunkData, palette, biomePalette, yMin, yMax);
+    chunkData = reuseChunkData.get();
+    timestamp = chunk.getDataTimestamp();
+    location = chunk.getDataLocation();
+    build(chunkData != null ? chunkData : EmptyChunkData.INSTANCE);
+  }
+
+  private void build(ChunkData chunkData) {
+    ChunkPosition cp = position;
+    biomeHelper = new ChunkBiomeBlendingHelper();
+    didLoadVisibleBlocks = false;
+    actors.clear();
+    entities.clear();
+    emitters.clear();
+
+    for (int cube = 0; cube < worldCubes.length; ++cube) {
+      int yCube = yCubeMin + cube;
+      int[] cubeWorldBlocks = worldCubes[cube];
+      int[] cubeWaterBlocks = waterCubes[cube];
+      // Reset the cubes
+      Arrays.fill(cubeWorldBlocks, 0);
+      Arrays.fill(cubeWaterBlocks, 0);
+      for(int cy = 0; cy < 16; ++cy) { //Uses chunk min and max, rather than global - minor optimisation for pre1.13 worlds
+        int y = yCube * 16 + cy;
+        if(y < yMin || y >= yMax)
+          continue;
+        for(int cz = 0; cz < 16; ++cz) {
+          int z = cz + cp.z * 16 - origin.z;
+          for(int cx = 0; cx < 16; ++cx) {
+            int x = cx + cp.x * 16 - origin.x;
+
+            int cubeIndex = (cz * 16 + cy) * 16 + cx;
+
+            // Change the type of hidden blocks to ANY_TYPE
+            boolean onEdge = y <= yMin || y >= yMax - 1 || chunkData.isBlockOnEdge(cx, y, cz);
+            boolean isHidden = !onEdge
+              && palette.get(chunkData.getBlockAt(cx + 1, y, cz)).opaque
+              && palette.get(chunkData.getBlockAt(cx - 1, y, cz)).opaque
+              && palette.get(chunkData.getBlockAt(cx, y + 1, cz)).opaque
+              && palette.get(chunkData.getBlockAt(cx, y - 1, cz)).opaque
+              && palette.get(chunkData.getBlockAt(cx, y, cz + 1)).opaque
+              && palette.get(chunkData.getBlockAt(cx, y, cz - 1)).opaque;
+
+            if (isHidden) {
+              cubeWorldBlocks[cubeIndex] = Octree.ANY_TYPE;
+            } else {
+              int currentBlock = chunkData.getBlockAt(cx, y, cz);
+              int octNode = currentBlock;
+              Block block = palette.get(currentBlock);
+
+              if (block.isBiomeDependant()) {
+                biomeHelper.makeBiomeRelevant(y);
+              }
+
+              if (block.isEntity()) {
+                Vector3 position = new Vector3(cx + cp.x * 16, y, cz + cp.z * 16);
+                Entity entity = block.toEntity(position);
+
+                if (sceneEntities.shouldLoad(entity)) {
+                  if (entity instanceof Poseable && !(entity instanceof Lectern && !((Lectern) entity).hasBook())) {
+                    actors.add(entity);
+                  } else {
+                    entities.add(entity);
+                    if (collectEmitters) {
+                      for (Grid.EmitterPosition emitterPos : entity.getEmitterPosition()) {
+                        emitterPos.x -= origin.x;
+                        emitterPos.y -= origin.y;
+                        emitterPos.z -= origin.z;
+                        emitters.add(emitterPos);
+                      }
+                    }
+                  }
+
+                  if (!block.isBlockWithEntity()) {
+                    if (block.isWaterlogged()) {
+                      block = palette.water;
+                      octNode = palette.waterId;
+                    } else {
+                      block = Air.INSTANCE;
+                      octNode = palette.airId;
+                    }
+                  }
+                }
+              }
+
+              if(block.isWaterFilled()) {
+                int waterNode = palette.waterId;
+                if(y + 1 < yMax) {
+                  if(palette.get(chunkData.getBlockAt(cx, y + 1, cz)).isWaterFilled()) {
+                    waterNode = fluidIds.fullWater;
+                  }
+                }
+                if(block.isWater()) {
+                  // Move plain water blocks to the water octree.
+                  octNode = palette.airId;
+
+                  if (!onEdge) {
+                    // Perform water computation now for water blocks that are not on th edge of the chunk
+                    // Test if the block has not already be marked as full
+                    if (((Water) palette.get(waterNode)).data == 0) {
+                      int level0 = 8 - ((Water) block).level;
+                      int cornerSW = level0;
+                      int cornerSE = level0;
+                      int cornerNE = level0;
+                      int cornerNW = level0;
+
+                      // west
+                      int level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz, level0);
+                      cornerNW += level;
+                      cornerSW += level;
+
+                      // south west
+                      level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz + 1, level0);
+                      cornerSW += level;
+
+                      // south
+                      level = Chunk.waterLevelAt(chunkData, palette, cx, y, cz + 1, level0);
+                      cornerSW += level;
+                      cornerSE += level;
+
+                      // south east
+                      level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz + 1, level0);
+                      cornerSE += level;
+
+                      // east
+                      level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz, level0);
+                      cornerSE += level;
+                      cornerNE += level;
+
+                      // north east
+                      level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz - 1, level0);
+                      cornerNE += level;
+
+                      // north
+                      level = Chunk.waterLevelAt(chunkData, palette, cx, y, cz - 1, level0);
+                      cornerNE += level;
+                      cornerNW += level;
+
+                      // north west
+                      level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz - 1, level0);
+                      cornerNW += level;
+
+                      cornerSW = Math.min(7, 8 - (cornerSW / 4));
+                      cornerSE = Math.min(7, 8 - (cornerSE / 4));
+                      cornerNE = Math.min(7, 8 - (cornerNE / 4));
+                      cornerNW = Math.min(7, 8 - (cornerNW / 4));
+                      waterNode = fluidIds.water(((Water) block).level,
+                        cornerSW, cornerSE, cornerNE, cornerNW);
+                    }
+                  } else {
+                    // Water computation for water blocks on the edge of a chunk is done by the OctreeFinalizer but we need the water level information
+                    waterNode = fluidIds.water(((Water) block).level);
+                  }
+                }
+                cubeWaterBlocks[cubeIndex] = waterNode;
+              } else if (y + 1 < yMax && block instanceof Lava) {
+                if (palette.get(chunkData.getBlockAt(cx, y + 1, cz)) instanceof Lava) {
+                  octNode = fluidIds.fullLava;
+                } else if (!onEdge) {
+                  // Compute lava level for blocks not on edge
+                  Lava lava = (Lava) block;
+                  int level0 = 8 - lava.level;
+                  int corner0 = level0;
+                  int corner1 = level0;
+                  int corner2 = level0;
+                  int corner3 = level0;
+
+                  int level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz, level0);
+                  corner3 += level;
+                  corner0 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz + 1, level0);
+                  corner0 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx, y, cz + 1, level0);
+                  corner0 += level;
+                  corner1 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz + 1, level0);
+                  corner1 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz, level0);
+                  corner1 += level;
+                  corner2 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz - 1, level0);
+                  corner2 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx, y, cz - 1, level0);
+                  corner2 += level;
+                  corner3 += level;
+
+                  level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz - 1, level0);
+                  corner3 += level;
+
+                  corner0 = Math.min(7, 8 - (corner0 / 4));
+                  corner1 = Math.min(7, 8 - (corner1 / 4));
+                  corner2 = Math.min(7, 8 - (corner2 / 4));
+                  corner3 = Math.min(7, 8 - (corner3 / 4));
+                  octNode = fluidIds.lava(lava.level, corner0, corner1, corner2, corner3);
+                }
+              }
+              cubeWorldBlocks[cubeIndex] = octNode;
+
+              if (collectEmitters && block.emittance > 1e-4) {
+                // X and Z are Chunky position but Y is world position
+                emitters.add(new Grid.EmitterPosition(x, y - origin.y, z, block));
+              }
+
+              didLoadVisibleBlocks = didLoadVisibleBlocks || !block.invisible;
+            }
+          }
+        }
+      }
+    }
+  }
+}
@@ -1,4 +1,321 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
 package se.llbit.chunky.renderer.scene;
 
-public class ChunkFinalizer {
+import se.llbit.chunky.block.legacy.LegacyBlocksFinalizer;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.renderer.scene.biome.BiomeBlendingUtility;
+import se.llbit.chunky.renderer.scene.biome.BiomeStructure;
+import se.llbit.chunky.renderer.scene.biome.BiomeStructureRecorder;
+import se.llbit.chunky.renderer.scene.biome.ChunkBiomeBlendingHelper;
+import se.llbit.chunky.world.Chunk;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.chunky.world.biome.Biome;
+import se.llbit.chunky.world.biome.BiomePalette;
+import se.llbit.math.Octree;
+import se.llbit.math.Vector3i;
+import se.llbit.math.structures.Position2IntStructure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Blends the biome colors of a chunk and finalizes the blocks at the edges of the chunk.
+ *
+ * <p>A recording finalizer records the biome colors and block changes instead of writing
+ * them to the scene, so that many chunks can be finalized in parallel while the scene
+ * octrees and biome structures are only read. The recorded changes are applied by the
+ * loading thread with {@link #apply()}.
+ *
+ * <p>Instances are reused for many chunks.
+ */
+class ChunkFinalizer {
+  private final BlockPalette palette;
+  private final BiomePalette biomePalette;
+  private final Position2IntStructure biomePaletteIdxStructure;
+  private final Map<ChunkPosition, ChunkBiomeBlendingHelper> biomeBlendingHelper;
+  private final Set<ChunkPosition> nonEmptyChunks;
+  private final Set<ChunkPosition> loadedChunks;
+  private final Set<ChunkPosition> legacyChunks;
+  private final Vector3i origin;
+  private final int yMin;
+  private final int yMax;
+  private final int biomeBlendingRadius;
+  private final boolean use3dBiomes;
+
+  private final Octree worldOctree;
+  private final Octree waterOctree;
+  private final BiomeStructure[] biomeStructures;
+
+  /** Octrees and biome structures written by this finalizer, or recorders for them. */
+  private final Octree worldTree;
+  private final Octree waterTree;
+  private final BiomeStructure grassColors;
+  private final BiomeStructure foliageColors;
+  private final BiomeStructure dryFoliageColors;
+  private final BiomeStructure waterColors;
+
+  /**
+   * @param record {@code true} to record the changes, {@code false} to write them directly
+   * to the scene octrees and biome structures
+   */
+  ChunkFinalizer(Scene scene, BiomePalette biomePalette,
+      Position2IntStructure biomePaletteIdxStructure,
+      Map<ChunkPosition, ChunkBiomeBlendingHelper> biomeBlendingHelper,
+      Set<ChunkPosition> nonEmptyChunks, Set<ChunkPosition> loadedChunks,
+      Set<ChunkPosition> legacyChunks, boolean use3dBiomes, boolean record) {
+    this.palette = scene.getPalette();
+    this.biomePalette = biomePalette;
+    this.biomePaletteIdxStructure = biomePaletteIdxStructure;
+    this.biomeBlendingHelper = biomeBlendingHelper;
+    this.nonEmptyChunks = nonEmptyChunks;
+    this.loadedChunks = loadedChunks;
+    this.legacyChunks = legacyChunks;
+    this.origin = scene.origin;
+    this.yMin = scene.yMin;
+    this.yMax = scene.yMax;
+    this.biomeBlendingRadius = scene.biomeBlendingRadius;
+    this.use3dBiomes = use3dBiomes;
+    worldOctree = scene.getWorldOctree();
+    waterOctree = scene.getWaterOctree();
+    biomeStructures = new BiomeStructure[] {
+        scene.grassTexture, scene.foliageTexture, scene.dryFoliageTexture, scene.waterTexture
+    };
+    if (record) {
+      worldTree = worldOctree.recordChanges();
+      waterTree = waterOctree.recordChanges();
+      grassColors = new BiomeStructureRecorder();
+      foliageColors = new BiomeStructureRecorder();
+      dryFoliageColors = new BiomeStructureRecorder();
+      waterColors = new BiomeStructureRecorder();
+    } else {
+      worldTree = worldOctree;
+      waterTree = waterOctree;
+      grassColors = biomeStructures[0];
+      foliageColors = biomeStructures[1];
+      dryFoliageColors = biomeStructures[2];
+      waterColors = biomeStructures[3];
+    }
+  }
+
+  /**
+   * Split chunks into four classes by the parity of their coordinates, like a checkerboard.
+   * Chunks of the same class are not adjacent, so they can be finalized concurrently.
+   */
+  static List<List<ChunkPosition>> checkerboard(Collection<ChunkPosition> chunks) {
+    List<List<ChunkPosition>> classes = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      classes.add(new ArrayList<>());
+    }
+    for (ChunkPosition cp : chunks) {
+      classes.get((cp.x & 1) | (cp.z & 1) << 1).add(cp);
+    }
+    return classes;
+  }
+
+  /**
+   * Apply the changes recorded since the last call to the scene. Does nothing if this
+   * finalizer writes to the scene directly.
+   */
+  void apply() {
+    if (worldTree != worldOctree) {
+      worldOctree.applyChanges(worldTree);
+      waterOctree.applyChanges(waterTree);
+      ((BiomeStructureRecorder) grassColors).applyTo(biomeStructures[0]);
+      ((BiomeStructureRecorder) foliageColors).applyTo(biomeStructures[1]);
+      ((BiomeStructureRecorder) dryFoliageColors).applyTo(biomeStructures[2]);
+      ((BiomeStructureRecorder) waterColors).applyTo(biomeStructures[3]);
+    }
+  }
+
+  /**
+   * Blend the biome colors of the chunk and finalize the blocks at its edges.
+   */
+  void finalizeChunk(ChunkPosition cp) {
+//        TODO: make this less special cased in some way, having 2 ifs for biomeBlending and use3dBiomes is quite awful to read and maintain
+
+//        Finalize grass and foliage textures.
+//        3x3 box blur.
+    ChunkBiomeBlendingHelper chunkBiomeHelper = biomeBlendingHelper.get(cp);
+    boolean biomeUsed = chunkBiomeHelper.isBiomeUsed();
+    if (biomeBlendingRadius > 0) {
+      if (use3dBiomes) {
+        ChunkBiomeBlendingHelper[] neighboringChunks = new ChunkBiomeBlendingHelper[]{
+          biomeBlendingHelper.get(new ChunkPosition(cp.x - 1, cp.z - 1)),
+          biomeBlendingHelper.get(new ChunkPosition(cp.x - 1, cp.z)),
+          biomeBlendingHelper.get(new ChunkPosition(cp.x - 1, cp.z + 1)),
+          biomeBlendingHelper.get(new ChunkPosition(cp.x, cp.z - 1)),
+          biomeBlendingHelper.get(new ChunkPosition(cp.x, cp.z + 1)),
+          biomeBlendingHelper.get(new ChunkPosition(cp.x + 1, cp.z - 1)),
+          biomeBlendingHelper.get(new ChunkPosition(cp.x + 1, cp.z)),
+          biomeBlendingHelper.get(new ChunkPosition(cp.x + 1, cp.z + 1))
+        };
+
+        int[] combinedBiomeTransitions = chunkBiomeHelper.combineAndTrimTransitions(neighboringChunks, biomeBlendingRadius);
+
+        // When doing 3D blur we use the list of (vertical) biome transition
+        // in the chunk or in neighboring ones
+        // If there is no transition, a 2D blur is enough, otherwise we only
+        // need to compute the colors around the transitions
+
+        // For example, if loading from y=0 to y=200 with a biome transition at y=20
+        // and another one at y=50 and with a blur radius of 2 (5*5*5 box)
+        // We can compute a 2D blur at y=0 and use those color for up to y=17
+        // For y in [18, 21] we need to compute the real 3D blur (because of the biome transition
+        // at y=20 and the blur radius of 2)
+        // Then we can compute the 2D blur at y=22 and use those colors for up to y=47
+        // And so on, 3D blur for y in [48, 51] and 2D blur for y in [52,200]
+
+        // As such, in spirit every transition make us compute an additional 16*16*(2*biomeBlendingRadius) 3D blur
+        // and a 16*16 2D blur (that can be combined in a 16*16*(2*biomeBlendingRadius+1) 3D blur)
+        // (ignoring cases where transition are close to one another which are handled by the code)
+
+        // Note that having a single (x, y) column that effectively has a biome transition
+        // in the chunk are a neighboring chunk causes us to compute the 3D blur for the whole 16*16
+        // vertical slice of the chunk. Because vertical biome transition are pretty rare,
+        // that's probably ok.
+        int nextY = chunkBiomeHelper.getyMinBiomeRelevant();
+
+        for(int i = 0; i < combinedBiomeTransitions.length; ++i) {
+          int transition = combinedBiomeTransitions[i];
+          if(nextY < transition - biomeBlendingRadius) {
+            // Do a 2d blur to fill up to the height affected by the transition
+            BiomeBlendingUtility.chunk2DBlur(
+              cp,
+              biomeBlendingRadius,
+              nextY,
+              transition - biomeBlendingRadius,
+              origin,
+              biomePaletteIdxStructure,
+              biomePalette,
+              nonEmptyChunks,
+              grassColors,
+              foliageColors,
+              dryFoliageColors,
+              waterColors);
+            nextY = transition - biomeBlendingRadius;
+          }
+
+          // Do a 3D blur to fill the next 2*biomeBlendingRadius layers
+          // or more if the next transition is close by, in which case
+          // both transition (or even more) are handled by a bigger 3D blur
+          int maxYWorkedOn = transition + biomeBlendingRadius;
+          while(i < combinedBiomeTransitions.length - 1 && maxYWorkedOn >= combinedBiomeTransitions[i + 1] - biomeBlendingRadius) {
+            // Extends the 3D blur to enclose the next transition as well
+            maxYWorkedOn = combinedBiomeTransitions[i + 1] + biomeBlendingRadius;
+            ++i;
+          }
+          int maxYWorkedOnClamped = Math.min(maxYWorkedOn, chunkBiomeHelper.getyMaxBiomeRelevant());
+          BiomeBlendingUtility.chunk3DBlur(
+            cp,
+            biomeBlendingRadius,
+            nextY,
+            maxYWorkedOnClamped + 1,
+            origin,
+            biomePaletteIdxStructure,
+            biomePalette,
+            nonEmptyChunks,
+            grassColors,
+            foliageColors,
+            dryFoliageColors,
+            waterColors);
+          nextY = maxYWorkedOnClamped + 1;
+        }
+
+        // Last 2D blur that extent up to the top
+        if(nextY <= chunkBiomeHelper.getyMaxBiomeRelevant()) {
+          BiomeBlendingUtility.chunk2DBlur(
+            cp,
+            biomeBlendingRadius,
+            nextY,
+            chunkBiomeHelper.getyMaxBiomeRelevant() + 1,
+            origin,
+            biomePaletteIdxStructure,
+            biomePalette,
+            nonEmptyChunks,
+            grassColors,
+            foliageColors,
+            dryFoliageColors,
+            waterColors);
+        }
+      } else {
+        BiomeBlendingUtility.chunk2DBlur(
+          cp,
+          biomeBlendingRadius,
+          0, 1,
+          origin,
+          biomePaletteIdxStructure,
+          biomePalette,
+          nonEmptyChunks,
+          grassColors,
+          foliageColors,
+          dryFoliageColors,
+          waterColors);
+      }
+    } else {
+      if(use3dBiomes) {
+        for(int sectionY = yMin >> 4; sectionY < (yMax - 1 >> 4) + 1; sectionY++) {
+          for(int y = 0; y < 16; y++) {
+            int wy = sectionY * 16 + y;
+            for(int x = 0; x < 16; ++x) {
+              int wx = cp.x * Chunk.X_MAX + x;
+              for(int z = 0; z < 16; ++z) {
+                int wz = cp.z * Chunk.Z_MAX + z;
+
+                int id = biomePaletteIdxStructure.get(wx, wy, wz);
+
+                Biome biome = biomePalette.get(id);
+                if (biomeUsed) {
+                  grassColors.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.grassColorLinear);
+                  foliageColors.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.foliageColorLinear);
+                  dryFoliageColors.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.dryFoliageColorLinear);
+                }
+                // the water texture is used to check for loaded chunks and tint the water plane, so we always need that one
+                waterColors.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.waterColorLinear);
+              }
+            }
+          }
+        }
+      } else {
+        for(int x = 0; x < 16; ++x) {
+          int wx = cp.x * 16 + x;
+          for(int z = 0; z < 16; ++z) {
+            int wz = cp.z * 16 + z;
+
+            int id = biomePaletteIdxStructure.get(wx, 0, wz);
+            Biome biome = biomePalette.get(id);
+            if (biomeUsed) {
+              grassColors.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.grassColorLinear);
+              foliageColors.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.foliageColorLinear);
+              dryFoliageColors.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.dryFoliageColorLinear);
+            }
+            // the water texture is used to check for loaded chunks and tint the water plane, so we always need that one
+            waterColors.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.waterColorLinear);
+          }
+        }
+      }
+    }
+    OctreeFinalizer.finalizeChunk(worldTree, waterTree, palette, loadedChunks, origin, cp, yMin, yMax);
+    if (legacyChunks.contains(cp)) {
+      LegacyBlocksFinalizer
+          .finalizeChunk(worldTree, waterTree, palette, origin, cp, yMin, yMax);
+    }
+  }
 }
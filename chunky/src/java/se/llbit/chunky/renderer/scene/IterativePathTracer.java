@@ -0,0 +1,388 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import se.llbit.chunky.block.minecraft.Air;
+import se.llbit.chunky.block.minecraft.Water;
+import se.llbit.chunky.renderer.EmitterSamplingStrategy;
+import se.llbit.chunky.renderer.WorkerState;
+import se.llbit.chunky.world.Material;
+import se.llbit.math.*;
+
+import java.util.Random;
+
+/**
+ * Path tracer that follows each path in a loop instead of recursing once per bounce.
+ *
+ * <p>The light found along the path is accumulated directly, weighted by the path throughput:
+ * the product of the surface colors and transmission factors of the previous bounces.
+ * All scratch rays and vectors are kept in the {@link PathState} of the worker, so no objects
+ * are allocated while tracing.
+ *
+ * <p>After {@link #getRouletteDepth()} bounces, paths are terminated with Russian roulette:
+ * a path survives with a probability equal to its largest throughput component, and the
+ * throughput of surviving paths is divided by that probability. This does not change the
+ * expected result, but dark paths stop early instead of always running to the ray depth limit.
+ *
+ * <p>The shading matches {@link PathTracer}, except that light transmitted through
+ * translucent materials with a transmissivity cap above 1 is normalized assuming
+ * white incoming light, since the color of the rest of the path is not known yet.
+ */
+public class IterativePathTracer extends PathTracer {
+  /**
+   * Number of bounces before Russian roulette is used.
+   */
+  public static final int DEFAULT_ROULETTE_DEPTH = 3;
+
+  /**
+   * Scratch state for one render worker.
+   */
+  public static class PathState {
+    final Ray ray = new Ray();
+    final Ray next = new Ray();
+    final Ray branch = new Ray();
+    final Ray shadow = new Ray();
+    final Ray emitter = new Ray();
+    final Ray fog = new Ray();
+
+    final Vector3 radiance = new Vector3();
+    final Vector3 throughput = new Vector3();
+    final Vector3 branchThroughput = new Vector3();
+    final Vector4 branchColor = new Vector4();
+    final Vector3 origin = new Vector3();
+    final Vector3 direction = new Vector3();
+    final Vector3 transmission = new Vector3();
+    final Vector4 emitterColor = new Vector4();
+    final Vector4 emitterSample = new Vector4();
+    final EmitterLightTree.Selection emitterSelection = new EmitterLightTree.Selection();
+    final Vector2 skymapSample = new Vector2();
+  }
+
+  /**
+   * Incoming light assumed for translucent surfaces. Never modified.
+   */
+  private static final Vector4 WHITE = new Vector4(1, 1, 1, 1);
+
+  private final int rouletteDepth;
+
+  public IterativePathTracer() {
+    this(DEFAULT_ROULETTE_DEPTH);
+  }
+
+  /**
+   * @param rouletteDepth number of bounces before Russian roulette is used,
+   * {@code Integer.MAX_VALUE} to always trace paths to the ray depth limit
+   */
+  public IterativePathTracer(int rouletteDepth) {
+    this.rouletteDepth = rouletteDepth;
+  }
+
+  public int getRouletteDepth() {
+    return rouletteDepth;
+  }
+
+  @Override public void trace(Scene scene, WorkerState state) {
+    if (state.pathState == null) {
+      state.pathState = new PathState();
+    }
+    PathState path = state.pathState;
+    Ray ray = path.ray;
+    ray.setCopy(state.ray);
+    if (scene.isInWater(ray)) {
+      ray.setCurrentMaterial(Water.INSTANCE);
+    } else {
+      ray.setCurrentMaterial(Air.INSTANCE);
+    }
+    path.radiance.set(0, 0, 0);
+    path.throughput.set(1, 1, 1);
+
+    if (nextInteraction(scene, state, path, ray, true)) {
+      // The first interaction is shared by several paths, see PathTracer.pathTrace.
+      int count = scene.getCurrentBranchCount();
+      if (count == 1) {
+        tracePath(scene, state, path, ray);
+      } else {
+        path.branch.setCopy(ray);
+        path.branchColor.set(ray.color);
+        path.branchThroughput.set(path.throughput);
+        path.branchThroughput.scale(1.0 / count);
+        for (int i = 0; i < count; i++) {
+          ray.setCopy(path.branch);
+          ray.color.set(path.branchColor);
+          path.throughput.set(path.branchThroughput);
+          tracePath(scene, state, path, ray);
+        }
+      }
+    }
+
+    Vector3 radiance = path.radiance;
+    state.ray.color.set(radiance.x, radiance.y, radiance.z, 1);
+  }
+
+  /**
+   * Continue a path from an interaction until it is terminated.
+   */
+  private void tracePath(Scene scene, WorkerState state, PathState path, Ray ray) {
+    Random random = state.random;
+    Vector3 throughput = path.throughput;
+    while (true) {
+      Ray next = (ray == path.ray) ? path.next : path.ray;
+      scatter(scene, state, path, ray, next);
+
+      double survival = Math.max(throughput.x, Math.max(throughput.y, throughput.z));
+      if (survival <= 0) {
+        return;
+      }
+      if (next.depth >= rouletteDepth && survival < 1) {
+        if (random.nextDouble() >= survival) {
+          return;
+        }
+        throughput.scale(1 / survival);
+      }
+
+      ray = next;
+      if (!nextInteraction(scene, state, path, ray, false)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Trace the ray to the next surface where it is reflected or refracted.
+   * Fog and water absorption along the way are applied to the path.
+   *
+   * @return {@code true} if the ray stopped at an interaction, {@code false}
+   * if the path ended and its final contribution has been added
+   */
+  private static boolean nextInteraction(Scene scene, WorkerState state, PathState path,
+      Ray ray, boolean firstReflection) {
+    Vector3 ox = path.origin;
+    Vector3 od = path.direction;
+    ox.set(ray.o);
+    od.set(ray.d);
+    double airDistance = 0;
+    boolean hit = false;
+
+    while (true) {
+      if (!PreviewRayTracer.nextIntersection(scene, ray, state)) {
+        if (ray.getPrevMaterial().isWater()) {
+          ray.color.set(0, 0, 0, 1);
+          hit = true;
+        } else if (ray.depth == 0) {
+          // Direct sky hit.
+          if (!scene.transparentSky()) {
+            scene.sky.getSkyColorInterpolated(ray);
+            addSkyFog(scene, ray, state, ox, od, path.shadow);
+            hit = true;
+          }
+        } else if (ray.specular) {
+          // Indirect sky hit - specular color.
+          scene.sky.getSkyColor(ray, true);
+          addSkyFog(scene, ray, state, ox, od, path.shadow);
+          hit = true;
+        } else {
+          // Indirect sky hit - diffuse color.
+          scene.sky.getSkyColorDiffuseSun(ray, scene.getSunSamplingStrategy().isDiffuseSun(), ray.skymapWeight);
+          hit = true;
+        }
+        break;
+      }
+
+      Material currentMat = ray.getCurrentMaterial();
+      Material prevMat = ray.getPrevMaterial();
+
+      if (!(scene.getCurrentWaterShader() instanceof StillWaterShader) && ray.getNormal().y != 0 &&
+          ((currentMat.isWater() && prevMat == Air.INSTANCE)
+              || (currentMat == Air.INSTANCE && prevMat.isWater()))) {
+        scene.getCurrentWaterShader().doWaterShading(ray, scene.getAnimationTime());
+        if (currentMat == Air.INSTANCE) {
+          ray.invertNormal();
+        }
+      }
+
+      if (prevMat == Air.INSTANCE || prevMat.isWater()) {
+        airDistance = ray.distance;
+      }
+
+      if (ray.color.w + currentMat.specular < Ray.EPSILON && prevMat.ior == currentMat.ior) {
+        // Transmission without refraction.
+        continue;
+      }
+      if (ray.depth + 1 >= scene.rayDepth) {
+        break;
+      }
+      ray.depth += 1;
+
+      // The fog and water absorption apply to all light reflected from this point.
+      Vector3 throughput = path.throughput;
+      if (airDistance > 0 && scene.fog.fogEnabled()) {
+        Ray fog = path.fog;
+        fog.o.set(ray.o);
+        fog.d.set(ray.d);
+        fog.distance = ray.distance;
+        fog.color.set(0, 0, 0, 1);
+        double offset = addGroundFog(scene, fog, state, ox, od, airDistance, path.shadow);
+        path.radiance.x += throughput.x * fog.color.x;
+        path.radiance.y += throughput.y * fog.color.y;
+        path.radiance.z += throughput.z * fog.color.z;
+        double inscatter = fog.color.x;
+        // The extinction is the same for all color channels.
+        fog.color.set(1, 1, 1, 1);
+        scene.fog.addGroundFog(fog, ox, airDistance, state.attenuation, offset);
+        throughput.scale(fog.color.x - inscatter);
+      }
+      if (prevMat.isWater()) {
+        if (scene.waterVisibility == 0) {
+          throughput.set(0, 0, 0);
+        } else {
+          throughput.scale(Math.exp(-ray.distance / scene.waterVisibility));
+        }
+      }
+      return true;
+    }
+
+    if (!hit) {
+      ray.color.set(0, 0, 0, 1);
+      if (firstReflection) {
+        airDistance = ray.distance;
+      }
+    }
+    if (airDistance > 0 && scene.fog.fogEnabled()) {
+      addGroundFog(scene, ray, state, ox, od, airDistance, path.shadow);
+    }
+    Vector3 throughput = path.throughput;
+    path.radiance.x += throughput.x * ray.color.x;
+    path.radiance.y += throughput.y * ray.color.y;
+    path.radiance.z += throughput.z * ray.color.z;
+    return false;
+  }
+
+  /**
+   * Pick the next direction of the path at an interaction. Light emitted or sampled at the
+   * interaction is added to the path, and the throughput is updated for the next ray.
+   */
+  private static void scatter(Scene scene, WorkerState state, PathState path, Ray ray, Ray next) {
+    Random random = state.random;
+    Vector3 throughput = path.throughput;
+    Material currentMat = ray.getCurrentMaterial();
+    Material prevMat = ray.getPrevMaterial();
+
+    float pSpecular = currentMat.specular;
+    double pDiffuse = scene.fancierTranslucency ? 1 - Math.pow(1 - ray.color.w, Math.max(ray.color.x, Math.max(ray.color.y, ray.color.z))) : ray.color.w;
+    double pAbsorb = scene.fancierTranslucency ? 1 - (1 - ray.color.w)/(1 - pDiffuse + Ray.EPSILON) : ray.color.w;
+    float n1 = prevMat.ior;
+    float n2 = currentMat.ior;
+    float pMetal = currentMat.metalness;
+
+    next.setCopy(ray);
+    boolean doMetal = pMetal > Ray.EPSILON && random.nextFloat() < pMetal;
+    if (doMetal || (pSpecular > Ray.EPSILON && random.nextFloat() < pSpecular)) {
+      next.specularReflection(ray, random);
+      if (doMetal) {
+        // use the albedo color as specular color
+        throughput.x *= ray.color.x;
+        throughput.y *= ray.color.y;
+        throughput.z *= ray.color.z;
+      }
+    } else if (random.nextFloat() < pDiffuse) {
+      diffuseReflection(scene, state, path, ray, next, currentMat);
+    } else if (n1 != n2) {
+      if (!reflectOrRefract(ray, next, currentMat, prevMat, n1, n2, random)) {
+        translucentThroughput(scene, path, ray, pAbsorb);
+      }
+    } else {
+      next.o.scaleAdd(Ray.OFFSET, next.d);
+      translucentThroughput(scene, path, ray, pAbsorb);
+    }
+  }
+
+  private static void diffuseReflection(Scene scene, WorkerState state, PathState path,
+      Ray ray, Ray next, Material currentMat) {
+    Random random = state.random;
+    Vector3 throughput = path.throughput;
+    Vector3 radiance = path.radiance;
+    Vector4 indirectEmitterColor = path.emitterColor;
+    indirectEmitterColor.set(0, 0, 0, 0);
+
+    if (scene.emittersEnabled && (!scene.isPreventNormalEmitterWithSampling() || scene.getEmitterSamplingStrategy() == EmitterSamplingStrategy.NONE || ray.depth == 1) && currentMat.emittance > Ray.EPSILON) {
+      // Quadratic emittance mapping, see PathTracer.doDiffuseReflection.
+      double scale = currentMat.emittance * scene.emitterIntensity;
+      radiance.x += throughput.x * ray.color.x * ray.color.x * scale;
+      radiance.y += throughput.y * ray.color.y * ray.color.y * scale;
+      radiance.z += throughput.z * ray.color.z * ray.color.z * scale;
+    } else if (scene.emittersEnabled && scene.emitterSamplingStrategy != EmitterSamplingStrategy.NONE && scene.getEmitterGrid() != null) {
+      // Sample emitter
+      sampleEmitters(scene, ray, path.emitter, path.emitterSample, path.emitterSelection,
+          indirectEmitterColor, random, state);
+    }
+
+    if (scene.sky.isSkymapImportanceSampled()) {
+      sampleSkymap(scene, ray, path.shadow, path.skymapSample, indirectEmitterColor, random, state);
+    }
+
+    double directLightR = 0;
+    double directLightG = 0;
+    double directLightB = 0;
+    if (scene.getSunSamplingStrategy().doSunSampling()) {
+      Ray sun = path.shadow;
+      sun.setCopy(ray);
+      scene.sun.getRandomSunDirection(sun, random);
+
+      boolean frontLight = sun.d.dot(ray.getNormal()) > 0;
+      if (frontLight || (currentMat.subSurfaceScattering
+          && random.nextFloat() < Scene.fSubSurface)) {
+        if (!frontLight) {
+          sun.o.scaleAdd(-Ray.OFFSET, ray.getNormal());
+        }
+        sun.setCurrentMaterial(sun.getPrevMaterial(), sun.getPrevData());
+
+        getDirectLightAttenuation(scene, sun, state);
+
+        Vector4 attenuation = state.attenuation;
+        if (attenuation.w > 0) {
+          double mult = QuickMath.abs(sun.d.dot(ray.getNormal())) * (scene.getSunSamplingStrategy().isSunLuminosity() ? scene.sun().getLuminosityPdf() : 1);
+          Vector3 sunEmittance = scene.sun().getEmittance();
+          directLightR = attenuation.x * attenuation.w * mult * sunEmittance.x;
+          directLightG = attenuation.y * attenuation.w * mult * sunEmittance.y;
+          directLightB = attenuation.z * attenuation.w * mult * sunEmittance.z;
+        }
+      }
+    }
+
+    // The diffuse reflection may weight the surface color for sun importance sampling.
+    next.diffuseReflection(ray, random, scene);
+    setSkymapWeight(scene, ray, next);
+    radiance.x += throughput.x * ray.color.x * (directLightR + indirectEmitterColor.x);
+    radiance.y += throughput.y * ray.color.y * (directLightG + indirectEmitterColor.y);
+    radiance.z += throughput.z * ray.color.z * (directLightB + indirectEmitterColor.z);
+    throughput.x *= ray.color.x;
+    throughput.y *= ray.color.y;
+    throughput.z *= ray.color.z;
+  }
+
+  /**
+   * Multiply the throughput by the transmission color of a translucent surface.
+   * The rest of the path is not known yet, so energy gain is avoided assuming white light.
+   */
+  private static void translucentThroughput(Scene scene, PathState path, Ray ray, double absorption) {
+    Vector3 rgbTrans = path.transmission;
+    translucentTransmission(scene, ray, absorption, WHITE, rgbTrans);
+    path.throughput.x *= rgbTrans.x;
+    path.throughput.y *= rgbTrans.y;
+    path.throughput.z *= rgbTrans.z;
+  }
+}
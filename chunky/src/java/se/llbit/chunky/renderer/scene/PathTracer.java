@@ -65,7 +65,7 @@ public class PathTracer implements RayTracer {
 
     while (true) {
 
-      if (!PreviewRayTracer.nextIntersection(scene, ray)) {
+      if (!PreviewRayTracer.nextIntersection(scene, ray, state)) {
         if (ray.getPrevMaterial().isWater()) {
           ray.color.set(0, 0, 0, 1);
           hit = true;
@@ -73,17 +73,17 @@ public class PathTracer implements RayTracer {
           // Direct sky hit.
           if (!scene.transparentSky()) {
             scene.sky.getSkyColorInterpolated(ray);
-            addSkyFog(scene, ray, state, ox, od);
+            addSkyFog(scene, ray, state, ox, od, new Ray());
             hit = true;
           }
         } else if (ray.specular) {
           // Indirect sky hit - specular color.
           scene.sky.getSkyColor(ray, true);
-          addSkyFog(scene, ray, state, ox, od);
+          addSkyFog(scene, ray, state, ox, od, new Ray());
           hit = true;
         } else {
           // Indirect sky hit - diffuse color.
-          scene.sky.getSkyColorDiffuseSun(ray, scene.getSunSamplingStrategy().isDiffuseSun());
+          scene.sky.getSkyColorDiffuseSun(ray, scene.getSunSamplingStrategy().isDiffuseSun(), ray.skymapWeight);
           // Skip sky fog - likely not noticeable in diffuse reflection.
           hit = true;
         }
@@ -173,31 +173,8 @@ public class PathTracer implements RayTracer {
       }
     }
 
-    // This is a simplistic fog model which gives greater artistic freedom but
-    // less realism. The user can select fog color and density; in a more
-    // realistic model color would depend on viewing angle and sun color/position.
     if (airDistance > 0 && scene.fog.fogEnabled()) {
-
-      // Pick point between ray origin and intersected object.
-      // The chosen point is used to test if the sun is lighting the
-      // fog between the camera and the first diffuse ray target.
-      // The sun contribution will be proportional to the amount of
-      // sunlit fog areas in the ray path, thus giving an approximation
-      // of the sun inscatter leading to effects like god rays.
-      // The way the sun contribution point is chosen is not
-      // entirely correct because the original ray may have
-      // travelled through glass or other materials between air gaps.
-      // However, the results are probably close enough to not be distracting,
-      // so this seems like a reasonable approximation.
-      Ray atmos = new Ray();
-      double offset = scene.fog.sampleGroundScatterOffset(ray, ox, random);
-      atmos.o.scaleAdd(offset, od, ox);
-      scene.sun.getRandomSunDirection(atmos, random);
-      atmos.setCurrentMaterial(Air.INSTANCE);
-
-      // Check sun visibility at random point to determine inscatter brightness.
-      getDirectLightAttenuation(scene, atmos, state);
-      scene.fog.addGroundFog(ray, ox, airDistance, state.attenuation, offset);
+      addGroundFog(scene, ray, state, ox, od, airDistance, new Ray());
     }
 
     return hit;
@@ -238,24 +215,12 @@ public class PathTracer implements RayTracer {
       hit = true;
     } else if (scene.emittersEnabled && scene.emitterSamplingStrategy != EmitterSamplingStrategy.NONE && scene.getEmitterGrid() != null) {
       // Sample emitter
-      switch (scene.emitterSamplingStrategy) {
-        case ONE:
-        case ONE_BLOCK: {
-          Grid.EmitterPosition pos = scene.getEmitterGrid().sampleEmitterPosition((int) ray.o.x, (int) ray.o.y, (int) ray.o.z, random);
-          if (pos != null) {
-            indirectEmitterColor.scaleAdd(Math.PI, sampleEmitter(scene, ray, pos, random));
-          }
-          break;
-        }
-        case ALL: {
-          List<Grid.EmitterPosition> positions = scene.getEmitterGrid().getEmitterPositions((int) ray.o.x, (int) ray.o.y, (int) ray.o.z);
-          double sampleScaler = Math.PI / positions.size();
-          for (Grid.EmitterPosition pos : positions) {
-            indirectEmitterColor.scaleAdd(sampleScaler, sampleEmitter(scene, ray, pos, random));
-          }
-          break;
-        }
-      }
+      sampleEmitters(scene, ray, new Ray(), new Vector4(), new EmitterLightTree.Selection(),
+          indirectEmitterColor, random, state);
+    }
+
+    if (scene.sky.isSkymapImportanceSampled()) {
+      sampleSkymap(scene, ray, new Ray(), new Vector2(), indirectEmitterColor, random, state);
     }
 
     if (scene.getSunSamplingStrategy().doSunSampling()) {
@@ -290,6 +255,7 @@ public class PathTracer implements RayTracer {
       }
       
       next.diffuseReflection(ray, random, scene);
+      setSkymapWeight(scene, ray, next);
       hit = pathTrace(scene, next, state, false) || hit;
       if (hit) {
         Vector3 sunEmittance = scene.sun().getEmittance();
@@ -307,6 +273,7 @@ public class PathTracer implements RayTracer {
       // If diffuse sun sampling is performed, then ray.color will be altered, but it should be the same on each iteration of ray branching
       Vector4 rayColor = new Vector4(ray.color);
       next.diffuseReflection(ray, random, scene);
+      setSkymapWeight(scene, ray, next);
 
       hit = pathTrace(scene, next, state, false) || hit;
       if (hit) {
@@ -326,6 +293,32 @@ public class PathTracer implements RayTracer {
 
   private static boolean doRefraction(Ray ray, Ray next, Material currentMat, Material prevMat, Vector4 cumulativeColor, float n1, float n2, double pAbsorb, Random random, WorkerState state, Scene scene) {
     boolean hit = false;
+    if (reflectOrRefract(ray, next, currentMat, prevMat, n1, n2, random)) {
+      if (pathTrace(scene, next, state, false)) {
+
+        cumulativeColor.x += next.color.x;
+        cumulativeColor.y += next.color.y;
+        cumulativeColor.z += next.color.z;
+        hit = true;
+      }
+    } else if (pathTrace(scene, next, state, false)) {
+      // Calculate the color and emittance of the refracted ray
+      translucentRayColor(scene, ray, next, cumulativeColor, pAbsorb);
+      hit = true;
+    }
+    return hit;
+  }
+
+  /**
+   * Choose between reflection and transmission at a surface between materials with
+   * different indices of refraction, using total internal reflection and the Fresnel
+   * reflectance. The transmitted ray is refracted if either material is refractive.
+   *
+   * @param next set to the reflected or transmitted ray
+   * @return {@code true} if the ray was reflected
+   */
+  protected static boolean reflectOrRefract(Ray ray, Ray next, Material currentMat,
+      Material prevMat, float n1, float n2, Random random) {
     // TODO: make this decision dependent on the material properties:
     boolean doRefraction = currentMat.refractive || prevMat.refractive;
 
@@ -335,71 +328,52 @@ public class PathTracer implements RayTracer {
     if (doRefraction && radicand < Ray.EPSILON) {
       // Total internal reflection.
       next.specularReflection(ray, random);
-      if (pathTrace(scene, next, state, false)) {
+      return true;
+    }
+    next.set(ray);
 
-        cumulativeColor.x += next.color.x;
-        cumulativeColor.y += next.color.y;
-        cumulativeColor.z += next.color.z;
-        hit = true;
-      }
-    } else {
-      next.set(ray);
+    // Calculate angle-dependent reflectance using
+    // Fresnel equation approximation:
+    // R(cosineAngle) = R0 + (1 - R0) * (1 - cos(cosineAngle))^5
+    float a = (n1n2 - 1);
+    float b = (n1n2 + 1);
+    double R0 = a * a / (b * b);
+    double c = 1 - cosTheta;
+    double Rtheta = R0 + (1 - R0) * c * c * c * c * c;
 
-      // Calculate angle-dependent reflectance using
-      // Fresnel equation approximation:
-      // R(cosineAngle) = R0 + (1 - R0) * (1 - cos(cosineAngle))^5
-      float a = (n1n2 - 1);
-      float b = (n1n2 + 1);
-      double R0 = a * a / (b * b);
-      double c = 1 - cosTheta;
-      double Rtheta = R0 + (1 - R0) * c * c * c * c * c;
-
-      if (random.nextFloat() < Rtheta) {
-        next.specularReflection(ray, random);
-        if (pathTrace(scene, next, state, false)) {
-
-          cumulativeColor.x += next.color.x;
-          cumulativeColor.y += next.color.y;
-          cumulativeColor.z += next.color.z;
-          hit = true;
-        }
-      } else {
-        if (doRefraction) {
-
-          double t2 = FastMath.sqrt(radicand);
-          Vector3 n = ray.getNormal();
-          if (cosTheta > 0) {
-            next.d.x = n1n2 * ray.d.x + (n1n2 * cosTheta - t2) * n.x;
-            next.d.y = n1n2 * ray.d.y + (n1n2 * cosTheta - t2) * n.y;
-            next.d.z = n1n2 * ray.d.z + (n1n2 * cosTheta - t2) * n.z;
-          } else {
-            next.d.x = n1n2 * ray.d.x - (-n1n2 * cosTheta - t2) * n.x;
-            next.d.y = n1n2 * ray.d.y - (-n1n2 * cosTheta - t2) * n.y;
-            next.d.z = n1n2 * ray.d.z - (-n1n2 * cosTheta - t2) * n.z;
-          }
+    if (random.nextFloat() < Rtheta) {
+      next.specularReflection(ray, random);
+      return true;
+    }
 
-          next.d.normalize();
+    if (doRefraction) {
 
-          // See Ray.specularReflection for information on why this is needed
-          // This is the same thing but for refraction instead of reflection
-          // so this time we want the signs of the dot product to be the same
-          if (QuickMath.signum(next.getGeometryNormal().dot(next.d)) != QuickMath.signum(next.getGeometryNormal().dot(ray.d))) {
-            double factor = QuickMath.signum(next.getGeometryNormal().dot(ray.d)) * -Ray.EPSILON - next.d.dot(next.getGeometryNormal());
-            next.d.scaleAdd(factor, next.getGeometryNormal());
-            next.d.normalize();
-          }
+      double t2 = FastMath.sqrt(radicand);
+      Vector3 n = ray.getNormal();
+      if (cosTheta > 0) {
+        next.d.x = n1n2 * ray.d.x + (n1n2 * cosTheta - t2) * n.x;
+        next.d.y = n1n2 * ray.d.y + (n1n2 * cosTheta - t2) * n.y;
+        next.d.z = n1n2 * ray.d.z + (n1n2 * cosTheta - t2) * n.z;
+      } else {
+        next.d.x = n1n2 * ray.d.x - (-n1n2 * cosTheta - t2) * n.x;
+        next.d.y = n1n2 * ray.d.y - (-n1n2 * cosTheta - t2) * n.y;
+        next.d.z = n1n2 * ray.d.z - (-n1n2 * cosTheta - t2) * n.z;
+      }
 
-          next.o.scaleAdd(Ray.OFFSET, next.d);
-        }
+      next.d.normalize();
 
-        if (pathTrace(scene, next, state, false)) {
-          // Calculate the color and emittance of the refracted ray
-          translucentRayColor(scene, ray, next, cumulativeColor, pAbsorb);
-          hit = true;
-        }
+      // See Ray.specularReflection for information on why this is needed
+      // This is the same thing but for refraction instead of reflection
+      // so this time we want the signs of the dot product to be the same
+      if (QuickMath.signum(next.getGeometryNormal().dot(next.d)) != QuickMath.signum(next.getGeometryNormal().dot(ray.d))) {
+        double factor = QuickMath.signum(next.getGeometryNormal().dot(ray.d)) * -Ray.EPSILON - next.d.dot(next.getGeometryNormal());
+        next.d.scaleAdd(factor, next.getGeometryNormal());
+        next.d.normalize();
       }
+
+      next.o.scaleAdd(Ray.OFFSET, next.d);
     }
-    return hit;
+    return false;
   }
 
   private static boolean doTransmission(Ray ray, Ray next, Vector4 cumulativeColor, double pAbsorb, WorkerState state, Scene scene) {
@@ -416,17 +390,34 @@ public class PathTracer implements RayTracer {
   }
 
   private static void translucentRayColor(Scene scene, Ray ray, Ray next, Vector4 cumulativeColor, double absorption) {
-    Vector3 rgbTrans;
+    Vector3 rgbTrans = new Vector3();
+    translucentTransmission(scene, ray, absorption, next.color, rgbTrans);
+    // Scale color based on next ray
+    Vector4 outputColor = new Vector4(0, 0, 0, 0);
+    outputColor.multiplyEntrywise(new Vector4(rgbTrans, 1), next.color);
+    cumulativeColor.add(outputColor);
+  }
+
+  /**
+   * Calculate the fraction of each color channel that is transmitted through a
+   * translucent surface.
+   *
+   * @param light the light arriving through the surface, used to avoid energy gain
+   * when the transmissivity cap is above 1
+   * @param rgbTrans the transmitted fractions are stored here
+   */
+  protected static void translucentTransmission(Scene scene, Ray ray, double absorption,
+      Vector4 light, Vector3 rgbTrans) {
     if(scene.fancierTranslucency) {
       // Color-based transmission value
       double colorTrans = (ray.color.x + ray.color.y + ray.color.z) / 3;
       // Total amount of light we want to transmit (overall transparency of texture)
       double shouldTrans = 1 - absorption;
       // Amount of each color to transmit - default to overall transparency if RGB values add to 0 (e.g. regular glass)
-      rgbTrans = new Vector3(shouldTrans, shouldTrans, shouldTrans);
+      rgbTrans.set(shouldTrans, shouldTrans, shouldTrans);
       if (colorTrans > 0) {
         // Amount to transmit of each color is scaled so the total transmitted amount matches the texture's transparency
-        rgbTrans.set(ray.color.toVec3());
+        rgbTrans.set(ray.color.x, ray.color.y, ray.color.z);
         rgbTrans.scale(shouldTrans / colorTrans);
       }
       double transmissivityCap = scene.transmissivityCap;
@@ -455,8 +446,8 @@ public class PathTracer implements RayTracer {
       }
       // Don't need to check for energy gain if transmissivity cap is 1
       if (transmissivityCap > 1) {
-        double currentEnergy = rgbTrans.x * next.color.x + rgbTrans.y * next.color.y + rgbTrans.z * next.color.z;
-        double nextEnergy = next.color.x + next.color.y + next.color.z;
+        double currentEnergy = rgbTrans.x * light.x + rgbTrans.y * light.y + rgbTrans.z * light.z;
+        double nextEnergy = light.x + light.y + light.z;
         double energyRatio = nextEnergy / currentEnergy;
         // Normalize if there is net energy gain across all channels (more likely for higher transmissivityCap combined with high-saturation light source)
         if (energyRatio < 1) {
@@ -465,13 +456,11 @@ public class PathTracer implements RayTracer {
       }
     } else {
       // Old method (see https://github.com/chunky-dev/chunky/pull/1513)
-      rgbTrans = new Vector3(1 - absorption, 1 - absorption, 1 - absorption);
-      rgbTrans.scaleAdd(absorption, ray.color.toVec3());
+      rgbTrans.set(1 - absorption, 1 - absorption, 1 - absorption);
+      rgbTrans.x += absorption * ray.color.x;
+      rgbTrans.y += absorption * ray.color.y;
+      rgbTrans.z += absorption * ray.color.z;
     }
-    // Scale color based on next ray
-    Vector4 outputColor = new Vector4(0, 0, 0, 0);
-    outputColor.multiplyEntrywise(new Vector4(rgbTrans, 1), next.color);
-    cumulativeColor.add(outputColor);
   }
 
   private static double reassignTransmissivity(double from, double to, double other, double trans, double cap) {
@@ -480,11 +469,55 @@ public class PathTracer implements RayTracer {
     return (cap*(other - 2*to + from) + (3*trans)*(to - from))/(other + to - 2*from);
   }
 
-  private static void addSkyFog(Scene scene, Ray ray, WorkerState state, Vector3 ox, Vector3 od) {
+  /**
+   * Add ground fog to the color of the ray, with sun inscatter sampled at a random point
+   * along the ray.
+   *
+   * @param ox the origin of the ray path
+   * @param od the direction of the ray path
+   * @param atmos scratch ray for the sun visibility test
+   * @return the sampled scatter offset
+   */
+  protected static double addGroundFog(Scene scene, Ray ray, WorkerState state, Vector3 ox,
+      Vector3 od, double airDistance, Ray atmos) {
+    // This is a simplistic fog model which gives greater artistic freedom but
+    // less realism. The user can select fog color and density; in a more
+    // realistic model color would depend on viewing angle and sun color/position.
+
+    // Pick point between ray origin and intersected object.
+    // The chosen point is used to test if the sun is lighting the
+    // fog between the camera and the first diffuse ray target.
+    // The sun contribution will be proportional to the amount of
+    // sunlit fog areas in the ray path, thus giving an approximation
+    // of the sun inscatter leading to effects like god rays.
+    // The way the sun contribution point is chosen is not
+    // entirely correct because the original ray may have
+    // travelled through glass or other materials between air gaps.
+    // However, the results are probably close enough to not be distracting,
+    // so this seems like a reasonable approximation.
+    atmos.setDefault();
+    double offset = scene.fog.sampleGroundScatterOffset(ray, ox, state.random);
+    atmos.o.scaleAdd(offset, od, ox);
+    scene.sun.getRandomSunDirection(atmos, state.random);
+    atmos.setCurrentMaterial(Air.INSTANCE);
+
+    // Check sun visibility at random point to determine inscatter brightness.
+    getDirectLightAttenuation(scene, atmos, state);
+    scene.fog.addGroundFog(ray, ox, airDistance, state.attenuation, offset);
+    return offset;
+  }
+
+  /**
+   * Add sky fog to the color of a ray that escaped to the sky.
+   *
+   * @param atmos scratch ray for the sun visibility test of layered fog
+   */
+  protected static void addSkyFog(Scene scene, Ray ray, WorkerState state, Vector3 ox,
+      Vector3 od, Ray atmos) {
     if (scene.fog.mode == FogMode.UNIFORM) {
       scene.fog.addSkyFog(ray, null);
     } else if (scene.fog.mode == FogMode.LAYERED) {
-      Ray atmos = new Ray();
+      atmos.setDefault();
       double offset = scene.fog.sampleSkyScatterOffset(scene, ray, state.random);
       atmos.o.scaleAdd(offset, od, ox);
       scene.sun.getRandomSunDirection(atmos, state.random);
@@ -494,8 +527,46 @@ public class PathTracer implements RayTracer {
     }
   }
 
-  private static void sampleEmitterFace(Scene scene, Ray ray, Grid.EmitterPosition pos, int face, Vector4 result, double scaler, Random random) {
-    Ray emitterRay = new Ray(ray);
+  /**
+   * Sample the light from emitters reaching a diffuse surface, using the emitter sampling
+   * strategy of the scene.
+   *
+   * @param emitterRay scratch ray for the shadow rays
+   * @param emitterSample scratch color for the contribution of one emitter
+   * @param selection scratch selection for the emitter light tree
+   * @param result the emitter light is added to this color
+   */
+  protected static void sampleEmitters(Scene scene, Ray ray, Ray emitterRay,
+      Vector4 emitterSample, EmitterLightTree.Selection selection, Vector4 result,
+      Random random, WorkerState state) {
+    switch (scene.emitterSamplingStrategy) {
+      case ONE:
+      case ONE_BLOCK: {
+        Grid.EmitterPosition pos = scene.getEmitterGrid().sampleEmitterPosition((int) ray.o.x, (int) ray.o.y, (int) ray.o.z, random);
+        if (pos != null) {
+          result.scaleAdd(Math.PI, sampleEmitter(scene, ray, pos, emitterRay, emitterSample, random, state));
+        }
+        break;
+      }
+      case ALL: {
+        List<Grid.EmitterPosition> positions = scene.getEmitterGrid().getEmitterPositions((int) ray.o.x, (int) ray.o.y, (int) ray.o.z);
+        double sampleScaler = Math.PI / positions.size();
+        for (Grid.EmitterPosition pos : positions) {
+          result.scaleAdd(sampleScaler, sampleEmitter(scene, ray, pos, emitterRay, emitterSample, random, state));
+        }
+        break;
+      }
+      case LIGHT_TREE: {
+        if (scene.getEmitterGrid().getLightTree().sample(ray.o, ray.getNormal(), random, selection)) {
+          result.scaleAdd(Math.PI / selection.pdf, sampleEmitter(scene, ray, selection.emitter, emitterRay, emitterSample, random, state));
+        }
+        break;
+      }
+    }
+  }
+
+  private static void sampleEmitterFace(Scene scene, Ray ray, Grid.EmitterPosition pos, int face, Ray emitterRay, Vector4 result, double scaler, Random random, WorkerState state) {
+    emitterRay.setCopy(ray);
 
     pos.sampleFace(face, emitterRay.d, random);
     emitterRay.d.sub(emitterRay.o);
@@ -506,7 +577,7 @@ public class PathTracer implements RayTracer {
 
       emitterRay.o.scaleAdd(Ray.OFFSET, emitterRay.d);
       emitterRay.distance += Ray.OFFSET;
-      PreviewRayTracer.nextIntersection(scene, emitterRay);
+      PreviewRayTracer.nextIntersection(scene, emitterRay, state);
       if (Math.abs(emitterRay.distance - distance) < Ray.OFFSET) {
         double e = Math.abs(emitterRay.d.dot(emitterRay.getNormal()));
         e /= Math.max(distance * distance, 1);
@@ -526,23 +597,26 @@ public class PathTracer implements RayTracer {
    * @param scene The scene being rendered
    * @param ray The ray that generated the intersection
    * @param pos The position of the emitter to sample
+   * @param emitterRay Scratch ray for the shadow ray
+   * @param result Scratch color for the contribution
    * @param random RNG
-   * @return The contribution of the emitter
+   * @param state The worker state
+   * @return The contribution of the emitter, stored in result
    */
-  private static Vector4 sampleEmitter(Scene scene, Ray ray, Grid.EmitterPosition pos, Random random) {
-    Vector4 result = new Vector4();
+  private static Vector4 sampleEmitter(Scene scene, Ray ray, Grid.EmitterPosition pos, Ray emitterRay, Vector4 result, Random random, WorkerState state) {
     result.set(0, 0, 0, 1);
 
     switch (scene.getEmitterSamplingStrategy()) {
       default:
       case ONE:
-        sampleEmitterFace(scene, ray, pos, random.nextInt(pos.block.faceCount()), result, 1, random);
+      case LIGHT_TREE:
+        sampleEmitterFace(scene, ray, pos, random.nextInt(pos.block.faceCount()), emitterRay, result, 1, random, state);
         break;
       case ONE_BLOCK:
       case ALL:
         double scaler = 1.0 / pos.block.faceCount();
         for (int i = 0; i < pos.block.faceCount(); i++) {
-          sampleEmitterFace(scene, ray, pos, i, result, scaler, random);
+          sampleEmitterFace(scene, ray, pos, i, emitterRay, result, scaler, random, state);
         }
         break;
     }
@@ -550,6 +624,70 @@ public class PathTracer implements RayTracer {
     return result;
   }
 
+  /**
+   * Sample the skymap light reaching a diffuse surface. The sample is combined with diffuse
+   * reflection rays that escape to the sky using multiple importance sampling, see
+   * {@link #setSkymapWeight}.
+   *
+   * @param ray the ray that hit the surface
+   * @param skyRay scratch ray for the shadow ray
+   * @param uv scratch vector for the skymap sample
+   * @param result the weighted sky light is added to this color
+   */
+  static void sampleSkymap(Scene scene, Ray ray, Ray skyRay, Vector2 uv, Vector4 result,
+      Random random, WorkerState state) {
+    skyRay.setCopy(ray);
+    double skyPdf = scene.sky.sampleSkymapDirection(random, skyRay.d, uv);
+    if (skyPdf <= 0) {
+      return;
+    }
+    double cosTheta = skyRay.d.dot(ray.getNormal());
+    if (cosTheta <= 0) {
+      return;
+    }
+    skyRay.setCurrentMaterial(skyRay.getPrevMaterial(), skyRay.getPrevData());
+    if (!isSkyVisible(scene, skyRay, state)) {
+      return;
+    }
+    scene.sky.getSkyColorDiffuseSun(skyRay, false);
+    double diffusePdf = cosTheta / Math.PI;
+    double weight = skyPdf * skyPdf / (skyPdf * skyPdf + diffusePdf * diffusePdf);
+    result.scaleAdd(weight * diffusePdf / skyPdf, skyRay.color);
+  }
+
+  /**
+   * Set the weight of the skymap light for a diffuse reflection ray, using the power
+   * heuristic for the diffuse reflection and the skymap sampling densities.
+   * The weights only need to sum to one for each direction, so the cosine density is used
+   * even when the sun importance sampling changes the diffuse reflection density.
+   */
+  static void setSkymapWeight(Scene scene, Ray ray, Ray next) {
+    if (scene.sky.isSkymapImportanceSampled()) {
+      double diffusePdf = Math.max(0, next.d.dot(ray.getNormal())) / Math.PI;
+      double skyPdf = scene.sky.skymapDirectionPdf(next.d);
+      double sum = diffusePdf * diffusePdf + skyPdf * skyPdf;
+      next.skymapWeight = sum > 0 ? diffusePdf * diffusePdf / sum : 1;
+    }
+  }
+
+  /**
+   * Check if the ray reaches the sky. The ray may only pass through fully transparent
+   * surfaces, the same ones that a path passes through without scattering.
+   */
+  private static boolean isSkyVisible(Scene scene, Ray ray, WorkerState state) {
+    while (true) {
+      ray.o.scaleAdd(Ray.OFFSET, ray.d);
+      if (!PreviewRayTracer.nextIntersection(scene, ray, state)) {
+        return !ray.getPrevMaterial().isWater();
+      }
+      Material currentMat = ray.getCurrentMaterial();
+      if (ray.color.w + currentMat.specular >= Ray.EPSILON
+          || ray.getPrevMaterial().ior != currentMat.ior) {
+        return false;
+      }
+    }
+  }
+
   /**
    * Calculate direct lighting attenuation.
    */
@@ -562,7 +700,7 @@ public class PathTracer implements RayTracer {
     attenuation.w = 1;
     while (attenuation.w > 0) {
       ray.o.scaleAdd(Ray.OFFSET, ray.d);
-      if (!PreviewRayTracer.nextIntersection(scene, ray)) {
+      if (!PreviewRayTracer.nextIntersection(scene, ray, state)) {
         break;
       }
       double mult = 1 - ray.color.w;
@@ -19,18 +19,16 @@ package se.llbit.chunky.renderer.scene;
 
 import it.unimi.dsi.fastutil.io.FastBufferedInputStream;
 import it.unimi.dsi.fastutil.io.FastBufferedOutputStream;
-import it.unimi.dsi.fastutil.objects.ObjectObjectImmutablePair;
 import se.llbit.chunky.PersistentSettings;
 import se.llbit.chunky.block.minecraft.Air;
 import se.llbit.chunky.block.Block;
-import se.llbit.chunky.block.minecraft.Lava;
 import se.llbit.chunky.block.minecraft.Water;
-import se.llbit.chunky.block.legacy.LegacyBlocksFinalizer;
 import se.llbit.chunky.chunk.BlockPalette;
 import se.llbit.chunky.chunk.ChunkData;
 import se.llbit.chunky.chunk.EmptyChunkData;
 import se.llbit.chunky.chunk.biome.BiomeData;
 import se.llbit.chunky.entity.*;
+import se.llbit.chunky.main.Chunky;
 import se.llbit.chunky.plugin.PluginApi;
 import se.llbit.chunky.renderer.*;
 import se.llbit.chunky.renderer.export.PictureExportFormat;
@@ -41,7 +39,6 @@ import se.llbit.chunky.renderer.postprocessing.PreviewFilter;
 import se.llbit.chunky.renderer.projection.ParallelProjector;
 import se.llbit.chunky.renderer.projection.ProjectionMode;
 import se.llbit.chunky.renderer.renderdump.RenderDump;
-import se.llbit.chunky.renderer.scene.biome.BiomeBlendingUtility;
 import se.llbit.chunky.renderer.scene.biome.BiomeStructure;
 import se.llbit.chunky.renderer.scene.biome.ChunkBiomeBlendingHelper;
 import se.llbit.chunky.renderer.scene.sky.Sky;
@@ -49,10 +46,9 @@ import se.llbit.chunky.renderer.scene.sky.Sun;
 import se.llbit.chunky.resources.BitmapImage;
 import se.llbit.chunky.resources.OctreeFileFormat;
 import se.llbit.chunky.world.*;
-import se.llbit.chunky.world.biome.ArrayBiomePalette;
-import se.llbit.chunky.world.biome.Biome;
 import se.llbit.chunky.world.biome.BiomePalette;
 import se.llbit.chunky.world.biome.Biomes;
+import se.llbit.chunky.world.biome.ConcurrentBiomePalette;
 import se.llbit.chunky.world.region.MCRegion;
 import se.llbit.json.*;
 import se.llbit.log.Log;
@@ -70,11 +66,11 @@ import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.function.BiFunction;
+import java.util.function.IntFunction;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -132,6 +128,12 @@ public class Scene implements JsonSerializable {
    */
   public static final double DEFAULT_TRANSMISSIVITY_CAP = 1;
 
+  /**
+   * Default relative error at which a tile is considered converged
+   * when adaptive sampling is enabled.
+   */
+  public static final double DEFAULT_ADAPTIVE_THRESHOLD = 0.01;
+
   /**
    * Minimum transmissivity cap.
    */
@@ -201,6 +203,12 @@ public class Scene implements JsonSerializable {
   protected EmitterSamplingStrategy emitterSamplingStrategy = EmitterSamplingStrategy.NONE;
   protected boolean fancierTranslucency = true;
   protected double transmissivityCap = DEFAULT_TRANSMISSIVITY_CAP;
+  /** Enabled for new scenes, loaded scenes without this setting render unfiltered textures. */
+  protected boolean textureFiltering = true;
+  protected boolean adaptiveSampling = false;
+  protected double adaptiveThreshold = DEFAULT_ADAPTIVE_THRESHOLD;
+  /** Sobol for new scenes, loaded scenes without this setting use random sampling. */
+  protected SamplerType samplerType = SamplerType.SOBOL;
 
   protected SunSamplingStrategy sunSamplingStrategy = SunSamplingStrategy.FAST;
 
@@ -228,6 +236,19 @@ public class Scene implements JsonSerializable {
   protected int biomeBlendingRadius = 2;
   protected boolean transparentSky = false;
   protected Collection<ChunkPosition> chunks = new ArrayList<>();
+
+  /**
+   * Region file timestamps of the loaded chunks, used to find the chunks that have changed since
+   * they were loaded. Stored in the chunk list of the scene description.
+   */
+  private Map<ChunkPosition, Integer> chunkTimestamps = new HashMap<>();
+
+  /**
+   * Region file location table entries of the loaded chunks. A chunk saved twice within a second
+   * keeps its timestamp, but is usually moved or changes its length.
+   */
+  private Map<ChunkPosition, Integer> chunkLocations = new HashMap<>();
+
   protected JsonObject cameraPresets = new JsonObject();
   /**
    * Indicates if the render should be forced to reset.
@@ -273,10 +294,10 @@ public class Scene implements JsonSerializable {
    */
   private double animationTime = 0;
 
-  private BiomeStructure grassTexture;
-  private BiomeStructure foliageTexture;
-  private BiomeStructure dryFoliageTexture;
-  private BiomeStructure waterTexture;
+  protected BiomeStructure grassTexture;
+  protected BiomeStructure foliageTexture;
+  protected BiomeStructure dryFoliageTexture;
+  protected BiomeStructure waterTexture;
 
   /** This is the 8-bit channel frame buffer. */
   protected BitmapImage frontBuffer;
@@ -295,7 +316,18 @@ public class Scene implements JsonSerializable {
    * should really be moved somewhere else and not be so tightly
    * coupled to the scene settings.
    */
-  protected double[] samples;
+  protected SampleBuffer samples;
+
+  /**
+   * Precision of the sample buffer.
+   */
+  protected SamplePrecision samplePrecision = SamplePrecision.DOUBLE;
+
+  /**
+   * Per-pixel sample counts and luminance moments, tracked while adaptive sampling is enabled.
+   * Shared with scene copies that share the sample buffer.
+   */
+  protected SampleStatistics sampleStatistics = new SampleStatistics();
 
   private AlphaBuffer alphaBuffer = new AlphaBuffer();
 
@@ -386,7 +418,8 @@ public class Scene implements JsonSerializable {
     frontBuffer = new BitmapImage(canvasConfig.getWidth(), canvasConfig.getHeight());
     backBuffer = new BitmapImage(canvasConfig.getWidth(), canvasConfig.getHeight());
     alphaBuffer.reset();
-    samples = new double[canvasConfig.getPixelCount() * 3];
+    samples = samplePrecision.createBuffer(canvasConfig.getPixelCount());
+    sampleStatistics = new SampleStatistics();
   }
 
   /**
@@ -423,6 +456,8 @@ public class Scene implements JsonSerializable {
       yMax = other.yMax;
 
       chunks = other.chunks;
+      chunkTimestamps = other.chunkTimestamps;
+      chunkLocations = other.chunkLocations;
 
       emitterGrid = other.emitterGrid;
     }
@@ -448,6 +483,7 @@ public class Scene implements JsonSerializable {
     preventNormalEmitterWithSampling = other.preventNormalEmitterWithSampling;
     fancierTranslucency = other.fancierTranslucency;
     transmissivityCap = other.transmissivityCap;
+    textureFiltering = other.textureFiltering;
     transparentSky = other.transparentSky;
     yClipMin = other.yClipMin;
     yClipMax = other.yClipMax;
@@ -471,11 +507,13 @@ public class Scene implements JsonSerializable {
     finalized = false;
 
     canvasConfig.copyState(other.canvasConfig);
+    samplePrecision = other.samplePrecision;
     if (samples != other.samples) {
       backBuffer = other.backBuffer;
       frontBuffer = other.frontBuffer;
       samples = other.samples;
     }
+    sampleStatistics = other.sampleStatistics;
     // TODO: could we copy it without resetting if the export format and camera perspective didn't change?
     alphaBuffer.reset();
 
@@ -661,10 +699,25 @@ public class Scene implements JsonSerializable {
    * Find closest intersection between ray and scene.
    * This advances the ray by updating the ray origin if an intersection is found.
    *
+   * <p>This uses per-thread scratch storage for the octree intersection tests. Prefer
+   * {@link #intersect(Ray, WorkerState)} when a worker state is available.
+   *
    * @param ray ray to test against scene
    * @return <code>true</code> if an intersection was found
    */
   public boolean intersect(Ray ray) {
+    return intersect(ray, WorkerState.intersectionScratch());
+  }
+
+  /**
+   * Find closest intersection between ray and scene.
+   * This advances the ray by updating the ray origin if an intersection is found.
+   *
+   * @param ray ray to test against scene
+   * @param state worker state providing scratch storage for the octree intersection tests
+   * @return <code>true</code> if an intersection was found
+   */
+  public boolean intersect(Ray ray, WorkerState state) {
     boolean hit = false;
 
     if (Double.isNaN(ray.d.x) || Double.isNaN(ray.d.y) || Double.isNaN(ray.d.z) ||
@@ -682,7 +735,7 @@ public class Scene implements JsonSerializable {
     if (entities.intersect(ray)) {
       hit = true;
     }
-    if (worldIntersection(ray)) {
+    if (worldIntersection(ray, state)) {
       hit = true;
     }
     if (hit) {
@@ -698,50 +751,52 @@ public class Scene implements JsonSerializable {
    * Test whether the ray intersects any voxel before exiting the Octree.
    *
    * @param ray   the ray
+   * @param state worker state providing the scratch rays and leaf lookup storage
    * @return {@code true} if the ray intersects a voxel
    */
-  private boolean worldIntersection(Ray ray) {
-    Ray start = new Ray(ray);
+  private boolean worldIntersection(Ray ray, WorkerState state) {
+    Ray start = state.intersectionStart;
+    start.setCopy(ray);
     start.setCurrentMaterial(ray.getPrevMaterial(), ray.getPrevData());
     boolean hit = false;
-    Ray r = new Ray(start);
+    Ray r = state.intersectionRay;
+    r.setCopy(start);
     r.setCurrentMaterial(start.getPrevMaterial(), start.getPrevData());
-    if (worldOctree.enterBlock(this, r, palette) && r.distance < ray.t) {
-      ray.t = r.distance;
-      ray.setNormal(r.getNormal());
-      ray.color.set(r.color);
-      ray.setPrevMaterial(r.getPrevMaterial(), r.getPrevData());
-      ray.setCurrentMaterial(r.getCurrentMaterial(), r.getCurrentData());
+    if (worldOctree.enterBlock(this, r, palette, state.octreeTraversal) && r.distance < ray.t) {
+      copyIntersection(ray, r);
       hit = true;
     }
     if (start.getCurrentMaterial().isWater()) {
-      r = new Ray(start);
+      r.setCopy(start);
       r.setCurrentMaterial(start.getPrevMaterial(), start.getPrevData());
-      if(waterOctree.exitWater(this, r, palette) && r.distance < ray.t - Ray.EPSILON) {
-        ray.t = r.distance;
-        ray.setNormal(r.getNormal());
-        ray.color.set(r.color);
-        ray.setPrevMaterial(r.getPrevMaterial(), r.getPrevData());
-        ray.setCurrentMaterial(r.getCurrentMaterial(), r.getCurrentData());
+      if(waterOctree.exitWater(this, r, palette, state.octreeTraversal) && r.distance < ray.t - Ray.EPSILON) {
+        copyIntersection(ray, r);
         hit = true;
       } else if(ray.getPrevMaterial() == Air.INSTANCE) {
         ray.setPrevMaterial(Water.INSTANCE, 1 << Water.FULL_BLOCK);
       }
     } else {
-      r = new Ray(start);
+      r.setCopy(start);
       r.setCurrentMaterial(start.getPrevMaterial(), start.getPrevData());
-      if (waterOctree.enterBlock(this, r, palette) && r.distance < ray.t) {
-        ray.t = r.distance;
-        ray.setNormal(r.getNormal());
-        ray.color.set(r.color);
-        ray.setPrevMaterial(r.getPrevMaterial(), r.getPrevData());
-        ray.setCurrentMaterial(r.getCurrentMaterial(), r.getCurrentData());
+      if (waterOctree.enterBlock(this, r, palette, state.octreeTraversal) && r.distance < ray.t) {
+        copyIntersection(ray, r);
         hit = true;
       }
     }
     return hit;
   }
 
+  /**
+   * Copy the intersection found by an octree test back to the original ray.
+   */
+  private static void copyIntersection(Ray ray, Ray r) {
+    ray.t = r.distance;
+    ray.setNormal(r.getNormal());
+    ray.color.set(r.color);
+    ray.setPrevMaterial(r.getPrevMaterial(), r.getPrevData());
+    ray.setCurrentMaterial(r.getCurrentMaterial(), r.getCurrentData());
+  }
+
   public void updateOpacity(Ray ray) {
     if (ray.getCurrentMaterial().isWater() || (ray.getCurrentMaterial() == Air.INSTANCE
         && ray.getPrevMaterial().isWater())) {
@@ -772,6 +827,194 @@ public class Scene implements JsonSerializable {
     refresh();
   }
 
+  /**
+   * Reload only the chunks that have changed in the region files since they were loaded. A chunk
+   * has changed if its timestamp or its location table entry (sector offset and sector count)
+   * differs from the one it was loaded with.
+   *
+   * <p>The changed chunks are decoded again and their cubes are written to copies of the
+   * octrees and biome structures, because those are shared with the render scene. Finalizing a
+   * chunk changes the blocks at its borders and blends biome colors across chunk borders, so the
+   * chunks next to a changed chunk are rewritten and finalized again too. The chunks around those
+   * are only decoded for biome blending. The entities and emitters of the changed chunks are
+   * replaced, and the entity BVH is rebuilt.
+   *
+   * <p>All chunks are reloaded if the chunk timestamps are not known, if the loading settings
+   * have changed, or if the octree implementation can not be copied.
+   */
+  public synchronized void refreshChangedChunks(TaskTracker taskTracker) {
+    if (loadedWorld == EmptyWorld.INSTANCE) {
+      Log.warn("Can not refresh chunks for scene - world directory not found!");
+      return;
+    }
+    BiomeStructure.Factory biomeStructureFactory = BiomeStructure.get(this.biomeStructureImplementation);
+    if (!chunkTimestamps.keySet().containsAll(chunks)
+        || yMin != yClipMin || yMax != yClipMax
+        || (emitterGrid == null && emitterSamplingStrategy != EmitterSamplingStrategy.NONE)
+        || !biomeStructureFactory.getId().equals(grassTexture.biomeFormat())) {
+      reloadChunks(taskTracker);
+      return;
+    }
+
+    Dimension dimension = loadedWorld.currentDimension();
+    Set<ChunkPosition> loadedChunks = new HashSet<>(chunks);
+    Set<ChunkPosition> changedChunks = new HashSet<>();
+    try (TaskTracker.Task task = taskTracker.task("(1/5) Finding changed chunks")) {
+      task.update(2, 1);
+      Map<RegionPosition, List<ChunkPosition>> chunksByRegion = ChunkSelectionTracker.selectionByRegion(loadedChunks);
+      Chunky.getCommonThreads().submit(() -> chunksByRegion.keySet().parallelStream()
+        .forEach(region -> dimension.getRegion(region).parse(yMin, yMax))).join();
+      for (ChunkPosition cp : loadedChunks) {
+        if (dimension.getRegion(cp.getRegionPosition())
+            .chunkChangedSince(cp, chunkTimestamps.get(cp), chunkLocations.get(cp))) {
+          changedChunks.add(cp);
+        }
+      }
+    }
+    if (changedChunks.isEmpty()) {
+      Log.info("No chunks have changed");
+      return;
+    }
+
+    Octree newWorldOctree = null;
+    Octree newWaterOctree = null;
+    BiomeStructure[] newBiomeStructures = null;
+    try (TaskTracker.Task task = taskTracker.task("(2/5) Copying octree")) {
+      task.update(2, 1);
+      newWorldOctree = worldOctree.copy();
+      newWaterOctree = waterOctree.copy();
+      if (newWorldOctree != null && newWaterOctree != null) {
+        newBiomeStructures = new BiomeStructure[] {
+            grassTexture.copy(), foliageTexture.copy(), dryFoliageTexture.copy(), waterTexture.copy()
+        };
+      }
+    } catch (IOException e) {
+      Log.warn("Failed to copy the biome colors", e);
+    }
+    if (newBiomeStructures == null) {
+      Log.info("Can not copy the octrees of the scene, reloading all chunks");
+      reloadChunks(taskTracker);
+      return;
+    }
+
+    isLoading = true;
+
+    worldOctree = newWorldOctree;
+    waterOctree = newWaterOctree;
+    grassTexture = newBiomeStructures[0];
+    foliageTexture = newBiomeStructures[1];
+    dryFoliageTexture = newBiomeStructures[2];
+    waterTexture = newBiomeStructures[3];
+    palette.synchronize();
+
+    entities.removeEntitiesInChunks(changedChunks);
+    if (emitterGrid != null) {
+      emitterGrid = emitterGrid.filter(pos -> !changedChunks.contains(
+        new ChunkPosition((pos.x + origin.x) >> 4, (pos.z + origin.z) >> 4)));
+    }
+    int numActors = entities.getActors().size();
+
+    Set<ChunkPosition> rewrittenChunks = neighboringChunks(changedChunks, loadedChunks);
+    Set<ChunkPosition> decodedChunks = neighboringChunks(rewrittenChunks, loadedChunks);
+
+    BiomePalette biomePalette = new ConcurrentBiomePalette();
+
+    Set<ChunkPosition> nonEmptyChunks = new HashSet<>();
+    Set<ChunkPosition> legacyChunks = new HashSet<>();
+
+    Position2IntStructure biomePaletteIdxStructure = biomeStructureFactory.createIndexStructure();
+    boolean use3dBiomes = biomeStructureFactory.is3d();
+    Map<ChunkPosition, ChunkBiomeBlendingHelper> biomeBlendingHelper = new HashMap<>();
+
+    Map<ChunkPosition, Integer> newChunkTimestamps = new HashMap<>(chunkTimestamps);
+    Map<ChunkPosition, Integer> newChunkLocations = new HashMap<>(chunkLocations);
+
+    try (TaskTracker.Task task = taskTracker.task("(3/5) Loading changed chunks")) {
+      loadChunkCubes(task, dimension, new ArrayList<>(decodedChunks), biomePalette, cubes -> {
+        ChunkPosition cp = cubes.position;
+        ChunkData chunkData = cubes.chunkData;
+        if (chunkData == null) {
+          chunkData = EmptyChunkData.INSTANCE;
+        }
+        if (changedChunks.contains(cp)) {
+          newChunkTimestamps.put(cp, cubes.timestamp);
+          newChunkLocations.put(cp, cubes.location);
+        }
+
+        biomeBlendingHelper.put(cp, cubes.biomeHelper);
+        loadBiomePaletteIndices(cp, chunkData, cubes.biomeHelper, biomePaletteIdxStructure, use3dBiomes);
+
+        boolean didLoadVisibleBlocks = cubes.didLoadVisibleBlocks;
+        if (rewrittenChunks.contains(cp)) {
+          didLoadVisibleBlocks = mergeChunkCubes(cubes, chunkData, changedChunks.contains(cp));
+        }
+        if (!chunkData.isEmpty() && didLoadVisibleBlocks) {
+          nonEmptyChunks.add(cp);
+          if (dimension.getChunk(cp).getVersion() == ChunkVersion.PRE_FLATTENING) {
+            legacyChunks.add(cp);
+          }
+        }
+      });
+    }
+
+    entities.finalizeLoading();
+
+    try (TaskTracker.Task task = taskTracker.task("(4/5) Finalizing octree")) {
+      worldOctree.startFinalization();
+      waterOctree.startFinalization();
+
+      Set<ChunkPosition> chunksToFinalize = new HashSet<>(rewrittenChunks);
+      chunksToFinalize.retainAll(nonEmptyChunks);
+      finalizeChunks(task, chunksToFinalize, biomePalette, biomePaletteIdxStructure,
+          biomeBlendingHelper, nonEmptyChunks, loadedChunks, legacyChunks, use3dBiomes);
+
+      worldOctree.endFinalization();
+      waterOctree.endFinalization();
+
+      grassTexture.endFinalization();
+      foliageTexture.endFinalization();
+      dryFoliageTexture.endFinalization();
+      waterTexture.endFinalization();
+    }
+    palette.unsynchronize();
+
+    entities.loadDataFromOctree(worldOctree, palette, origin);
+
+    if (emitterGrid != null)
+      emitterGrid.prepare();
+
+    chunkTimestamps = newChunkTimestamps;
+    chunkLocations = newChunkLocations;
+    try (TaskTracker.Task task = taskTracker.task("(5/5) Building entity BVH")) {
+      buildBvh(task);
+      if (entities.getActors().size() != numActors) {
+        buildActorBvh(task);
+      }
+    }
+    Log.info(String.format("Refreshed %d changed chunks", changedChunks.size()));
+
+    isLoading = false;
+    refresh();
+  }
+
+  /**
+   * @return the loaded chunks that are one of the given chunks or next to one of them
+   */
+  private static Set<ChunkPosition> neighboringChunks(Set<ChunkPosition> chunks, Set<ChunkPosition> loadedChunks) {
+    Set<ChunkPosition> neighbors = new HashSet<>();
+    for (ChunkPosition cp : chunks) {
+      for (int x = -1; x <= 1; ++x) {
+        for (int z = -1; z <= 1; ++z) {
+          ChunkPosition neighbor = new ChunkPosition(cp.x + x, cp.z + z);
+          if (loadedChunks.contains(neighbor)) {
+            neighbors.add(neighbor);
+          }
+        }
+      }
+    }
+    return neighbors;
+  }
+
   @PluginApi
   public synchronized void loadChunks(TaskTracker taskTracker, World world, Collection<ChunkPosition> chunksToLoadByRegion) {
     loadChunks(taskTracker, world, ChunkSelectionTracker.selectionByRegion(chunksToLoadByRegion));
@@ -793,8 +1036,6 @@ public class Scene implements JsonSerializable {
     yMin = yClipMin;
     yMax = yClipMax;
 
-    int numChunks = 0;
-
     BiomeStructure.Factory biomeStructureFactory = BiomeStructure.get(this.biomeStructureImplementation);
 
     Dimension dimension = world.currentDimension();
@@ -814,6 +1055,8 @@ public class Scene implements JsonSerializable {
 
       // Create new octree to fit all chunks.
       palette = new BlockPalette();
+      chunkTimestamps = new HashMap<>();
+      chunkLocations = new HashMap<>();
       worldOctree = new Octree(octreeImplementation, requiredDepth);
       waterOctree = new Octree(octreeImplementation, requiredDepth);
 
@@ -825,16 +1068,15 @@ public class Scene implements JsonSerializable {
       if(emitterSamplingStrategy != EmitterSamplingStrategy.NONE)
         emitterGrid = new Grid(gridSize);
 
-      for (RegionPosition region : chunksToLoadByRegion.keySet()) {
-        dimension.getRegion(region).parse(yMin, yMax);
-      }
+      Chunky.getCommonThreads().submit(() -> chunksToLoadByRegion.keySet().parallelStream()
+        .forEach(region -> dimension.getRegion(region).parse(yMin, yMax))).join();
     }
 
     try (TaskTracker.Task task = taskTracker.task("(2/6) Loading entities")) {
      entities.loadPlayers(task, dimension);
     }
 
-    BiomePalette biomePalette = new ArrayBiomePalette();
+    BiomePalette biomePalette = new ConcurrentBiomePalette();
 
     Set<ChunkPosition> nonEmptyChunks = new HashSet<>();
     Set<ChunkPosition> legacyChunks = new HashSet<>();
@@ -843,586 +1085,47 @@ public class Scene implements JsonSerializable {
     boolean use3dBiomes = biomeStructureFactory.is3d();
     Map<ChunkPosition, ChunkBiomeBlendingHelper> biomeBlendingHelper = new HashMap<>();
 
-    Set<RegionPosition> loadedRegions = new HashSet<>();
     Set<ChunkPosition> loadedChunks = new HashSet<>();
 
     try (TaskTracker.Task task = taskTracker.task("(3/6) Loading chunks")) {
-      int done = 1;
-      int target = 0;
+      List<ChunkPosition> chunkPositions = new ArrayList<>();
       for (List<ChunkPosition> value : chunksToLoadByRegion.values()) {
-        target += value.size();
+        chunkPositions.addAll(value);
       }
 
-      RegionPosition[] regionPositions = chunksToLoadByRegion.keySet().toArray(new RegionPosition[0]);
-
-      int[] cubeWorldBlocks = new int[16*16*16];
-      int[] cubeWaterBlocks = new int[16*16*16];
-
-      ExecutorService executor = Executors.newSingleThreadExecutor();
-
-      ChunkData[] regionParsingDataArray = new ChunkData[MCRegion.CHUNKS_X * MCRegion.CHUNKS_Z];
-      ChunkData[] chunkLoadingDataArray = new ChunkData[MCRegion.CHUNKS_X * MCRegion.CHUNKS_Z];
-
-      BiFunction<RegionPosition, ChunkData[], Future<List<ObjectObjectImmutablePair<ChunkPosition, ChunkData>>>> createRegionDataFuture = (regionPosition, chunkDataArray) -> executor.submit(() -> {
-        List<ChunkPosition> chunkPositionsToLoad = chunksToLoadByRegion.get(regionPosition);
-        List<ObjectObjectImmutablePair<ChunkPosition, ChunkData>> chunkDataPairs = new ArrayList<>();
-
-        for (int i = 0, chunkPositionsToLoadSize = chunkPositionsToLoad.size(); i < chunkPositionsToLoadSize; i++) {
-          ChunkPosition chunkPosition = chunkPositionsToLoad.get(i);
-          Mutable<ChunkData> chunkData = new Mutable<>(chunkDataArray[i]);
-          dimension.getChunk(chunkPosition).getChunkData(chunkData, palette, biomePalette, yMin, yMax);
-          chunkDataArray[i] = chunkData.get();
-          chunkDataPairs.add(new ObjectObjectImmutablePair<>(chunkPosition, chunkData.get()));
-        }
-        return chunkDataPairs;
-      });
-
-      //Initialise first chunk data for the for loop
-      Future<List<ObjectObjectImmutablePair<ChunkPosition, ChunkData>>> nextRegionFuture = createRegionDataFuture.apply(regionPositions[0], regionParsingDataArray);
-
-      for (int i = 0; i < regionPositions.length; i++) {
-        RegionPosition regionPosition = regionPositions[i];
-
-        if (loadedRegions.contains(regionPosition)) {
-          continue;
-        }
-        loadedRegions.add(regionPosition);
-
-        List<ObjectObjectImmutablePair<ChunkPosition, ChunkData>> chunkDataPairs;
-        { // Get this data from active future, schedule next future
-          try {
-            chunkDataPairs = nextRegionFuture.get();
-
-            //swap the arrays
-            ChunkData[] temp = regionParsingDataArray;
-            regionParsingDataArray = chunkLoadingDataArray;
-            chunkLoadingDataArray = temp;
-          } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e.getCause());
-          }
-
-          if (i + 1 < regionPositions.length) {
-            nextRegionFuture = createRegionDataFuture.apply(regionPositions[i + 1], regionParsingDataArray);
-          }
-        }
-
-        for (ObjectObjectImmutablePair<ChunkPosition, ChunkData> chunkDataPair : chunkDataPairs) {
-          ChunkPosition cp = chunkDataPair.first();
-
-          task.updateEta(target, done);
-          done += 1;
-
-          if (loadedChunks.contains(cp)) {
-            continue;
-          }
-          loadedChunks.add(cp);
-
-          ChunkData chunkData = chunkDataPair.second();
-          boolean didLoadVisibleBlocksFromChunk = false;
+      loadChunkCubes(task, dimension, chunkPositions, biomePalette, cubes -> {
+        ChunkPosition cp = cubes.position;
+        if (loadedChunks.add(cp)) {
+          ChunkData chunkData = cubes.chunkData;
           if (chunkData == null) {
             chunkData = EmptyChunkData.INSTANCE;
           }
+          chunkTimestamps.put(cp, cubes.timestamp);
+          chunkLocations.put(cp, cubes.location);
 
-          numChunks += 1;
-
-          int wx0 = cp.x * 16; // Start of this chunk in world coordinates.
-          int wz0 = cp.z * 16;
-          BiomeData biomeData = chunkData.getBiomeData();
-          ChunkBiomeBlendingHelper chunkBiomeHelper = new ChunkBiomeBlendingHelper();
-          biomeBlendingHelper.put(cp, chunkBiomeHelper);
-
-          if (use3dBiomes) {
-            // We need to load biome data for the full height of the chunk
-            // and not only limited to the sections where there are blocks
-            // because it is possible that a neighboring chunks has blocks
-            // that will observe the biome color (via biome blending)
-            for (int y = chunkData.minY(); y < chunkData.maxY(); y++) {
-              for (int cz = 0; cz < 16; ++cz) {
-                int wz = cz + wz0;
-                for (int cx = 0; cx < 16; ++cx) {
-                  int wx = cx + wx0;
-                  int biomePaletteIdx = biomeData.getBiome(cx, y, cz);
-                  if(y != yMin) {
-                    int biomeUnder = biomeData.getBiome(cx, y-1, cz);
-                    if(biomeUnder != biomePaletteIdx)
-                      chunkBiomeHelper.addTransition(y);
-                  }
-                  biomePaletteIdxStructure.set(wx, y, wz, biomePaletteIdx);
-                }
-              }
-            }
-          } else {
-            for (int cz = 0; cz < 16; ++cz) {
-              int wz = cz + wz0;
-              for (int cx = 0; cx < 16; ++cx) {
-                int wx = cx + wx0;
-                int biomePaletteIdx = biomeData.getBiome(cx, chunkData.minY(), cz); // TODO: add an option to set the biome sample height?
-                biomePaletteIdxStructure.set(wx, chunkData.minY(), wz, biomePaletteIdx);
-              }
-            }
-          }
-
-          entities.loadEntitiesInChunk(this, chunkData);
-
-          int yCubeMin = Math.floorDiv(yMin, 16); // round towards -infinity
-          int yCubeMax = (yMax+15) / 16;
-          for(int yCube = yCubeMin; yCube < yCubeMax; ++yCube) {
-            // Reset the cubes
-            Arrays.fill(cubeWorldBlocks, 0);
-            Arrays.fill(cubeWaterBlocks, 0);
-            for(int cy = 0; cy < 16; ++cy) { //Uses chunk min and max, rather than global - minor optimisation for pre1.13 worlds
-              int y = yCube * 16 + cy;
-              if(y < yMin || y >= yMax)
-                continue;
-              for(int cz = 0; cz < 16; ++cz) {
-                int z = cz + cp.z * 16 - origin.z;
-                for(int cx = 0; cx < 16; ++cx) {
-                  int x = cx + cp.x * 16 - origin.x;
-
-                  int cubeIndex = (cz * 16 + cy) * 16 + cx;
-
-                  // Change the type of hidden blocks to ANY_TYPE
-                  boolean onEdge = y <= yMin || y >= yMax - 1 || chunkData.isBlockOnEdge(cx, y, cz);
-                  boolean isHidden = !onEdge
-                    && palette.get(chunkData.getBlockAt(cx + 1, y, cz)).opaque
-                    && palette.get(chunkData.getBlockAt(cx - 1, y, cz)).opaque
-                    && palette.get(chunkData.getBlockAt(cx, y + 1, cz)).opaque
-                    && palette.get(chunkData.getBlockAt(cx, y - 1, cz)).opaque
-                    && palette.get(chunkData.getBlockAt(cx, y, cz + 1)).opaque
-                    && palette.get(chunkData.getBlockAt(cx, y, cz - 1)).opaque;
-
-                  if (isHidden) {
-                    cubeWorldBlocks[cubeIndex] = Octree.ANY_TYPE;
-                  } else {
-                    int currentBlock = chunkData.getBlockAt(cx, y, cz);
-                    int octNode = currentBlock;
-                    Block block = palette.get(currentBlock);
-
-                    if (block.isBiomeDependant()) {
-                      chunkBiomeHelper.makeBiomeRelevant(y);
-                    }
-
-                    if (block.isEntity()) {
-                      Vector3 position = new Vector3(cx + cp.x * 16, y, cz + cp.z * 16);
-                      Entity entity = block.toEntity(position);
-
-                      if (entities.shouldLoad(entity)) {
-                        if (entity instanceof Poseable && !(entity instanceof Lectern && !((Lectern) entity).hasBook())) {
-                          entities.addActor(entity);
-                        } else {
-                          entities.addEntity(entity);
-                          if (emitterGrid != null) {
-                            for (Grid.EmitterPosition emitterPos : entity.getEmitterPosition()) {
-                              emitterPos.x -= origin.x;
-                              emitterPos.y -= origin.y;
-                              emitterPos.z -= origin.z;
-                              emitterGrid.addEmitter(emitterPos);
-                            }
-                          }
-                        }
-
-                        if (!block.isBlockWithEntity()) {
-                          if (block.isWaterlogged()) {
-                            block = palette.water;
-                            octNode = palette.waterId;
-                          } else {
-                            block = Air.INSTANCE;
-                            octNode = palette.airId;
-                          }
-                        }
-                      }
-                    }
-
-                    if(block.isWaterFilled()) {
-                      int waterNode = palette.waterId;
-                      if(y + 1 < yMax) {
-                        if(palette.get(chunkData.getBlockAt(cx, y + 1, cz)).isWaterFilled()) {
-                          waterNode = palette.getWaterId(0, 1 << Water.FULL_BLOCK);
-                        }
-                      }
-                      if(block.isWater()) {
-                        // Move plain water blocks to the water octree.
-                        octNode = palette.airId;
-
-                        if (!onEdge) {
-                          // Perform water computation now for water blocks that are not on th edge of the chunk
-                          // Test if the block has not already be marked as full
-                          if (((Water) palette.get(waterNode)).data == 0) {
-                            int level0 = 8 - ((Water) block).level;
-                            int cornerSW = level0;
-                            int cornerSE = level0;
-                            int cornerNE = level0;
-                            int cornerNW = level0;
-
-                            // west
-                            int level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz, level0);
-                            cornerNW += level;
-                            cornerSW += level;
-
-                            // south west
-                            level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz + 1, level0);
-                            cornerSW += level;
-
-                            // south
-                            level = Chunk.waterLevelAt(chunkData, palette, cx, y, cz + 1, level0);
-                            cornerSW += level;
-                            cornerSE += level;
-
-                            // south east
-                            level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz + 1, level0);
-                            cornerSE += level;
-
-                            // east
-                            level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz, level0);
-                            cornerSE += level;
-                            cornerNE += level;
-
-                            // north east
-                            level = Chunk.waterLevelAt(chunkData, palette, cx + 1, y, cz - 1, level0);
-                            cornerNE += level;
-
-                            // north
-                            level = Chunk.waterLevelAt(chunkData, palette, cx, y, cz - 1, level0);
-                            cornerNE += level;
-                            cornerNW += level;
-
-                            // north west
-                            level = Chunk.waterLevelAt(chunkData, palette, cx - 1, y, cz - 1, level0);
-                            cornerNW += level;
-
-                            cornerSW = Math.min(7, 8 - (cornerSW / 4));
-                            cornerSE = Math.min(7, 8 - (cornerSE / 4));
-                            cornerNE = Math.min(7, 8 - (cornerNE / 4));
-                            cornerNW = Math.min(7, 8 - (cornerNW / 4));
-                            waterNode = palette.getWaterId(((Water) block).level, (cornerSW << Water.CORNER_SW)
-                              | (cornerSE << Water.CORNER_SE)
-                              | (cornerNE << Water.CORNER_NE)
-                              | (cornerNW << Water.CORNER_NW));
-                          }
-                        } else {
-                          // Water computation for water blocks on the edge of a chunk is done by the OctreeFinalizer but we need the water level information
-                          waterNode = palette.getWaterId(((Water) block).level, 0);
-                        }
-                      }
-                      cubeWaterBlocks[cubeIndex] = waterNode;
-                    } else if (y + 1 < yMax && block instanceof Lava) {
-                      if (palette.get(chunkData.getBlockAt(cx, y + 1, cz)) instanceof Lava) {
-                        octNode = palette.getLavaId(0, 1 << Water.FULL_BLOCK);
-                      } else if (!onEdge) {
-                        // Compute lava level for blocks not on edge
-                        Lava lava = (Lava) block;
-                        int level0 = 8 - lava.level;
-                        int corner0 = level0;
-                        int corner1 = level0;
-                        int corner2 = level0;
-                        int corner3 = level0;
-
-                        int level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz, level0);
-                        corner3 += level;
-                        corner0 += level;
-
-                        level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz + 1, level0);
-                        corner0 += level;
-
-                        level = Chunk.lavaLevelAt(chunkData, palette, cx, y, cz + 1, level0);
-                        corner0 += level;
-                        corner1 += level;
-
-                        level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz + 1, level0);
-                        corner1 += level;
-
-                        level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz, level0);
-                        corner1 += level;
-                        corner2 += level;
-
-                        level = Chunk.lavaLevelAt(chunkData, palette, cx + 1, y, cz - 1, level0);
-                        corner2 += level;
-
-                        level = Chunk.lavaLevelAt(chunkData, palette, cx, y, cz - 1, level0);
-                        corner2 += level;
-                        corner3 += level;
-
-                        level = Chunk.lavaLevelAt(chunkData, palette, cx - 1, y, cz - 1, level0);
-                        corner3 += level;
-
-                        corner0 = Math.min(7, 8 - (corner0 / 4));
-                        corner1 = Math.min(7, 8 - (corner1 / 4));
-                        corner2 = Math.min(7, 8 - (corner2 / 4));
-                        corner3 = Math.min(7, 8 - (corner3 / 4));
-                        octNode = palette.getLavaId(
-                          lava.level,
-                          (corner0 << Water.CORNER_SW)
-                            | (corner1 << Water.CORNER_SE)
-                            | (corner2 << Water.CORNER_NE)
-                            | (corner3 << Water.CORNER_NW)
-                        );
-                      }
-                    }
-                    cubeWorldBlocks[cubeIndex] = octNode;
-
-                    if (emitterGrid != null && block.emittance > 1e-4) {
-                      // X and Z are Chunky position but Y is world position
-                      emitterGrid.addEmitter(new Grid.EmitterPosition(x, y - origin.y, z, block));
-                    }
-
-                    didLoadVisibleBlocksFromChunk = didLoadVisibleBlocksFromChunk || !block.invisible;
-                  }
-                }
-              }
-            }
-            worldOctree.setCube(4, cubeWorldBlocks, cp.x * 16 - origin.x, yCube * 16 - origin.y, cp.z * 16 - origin.z);
-            waterOctree.setCube(4, cubeWaterBlocks, cp.x * 16 - origin.x, yCube * 16 - origin.y, cp.z * 16 - origin.z);
-          }
-
-          // Block entities are also called "tile entities". These are extra bits of metadata
-          // about certain blocks or entities.
-          // Block entities are loaded after the base block data so that metadata can be updated.
-          for (CompoundTag entityTag : chunkData.getTileEntities()) {
-            int y = entityTag.get("y").intValue(0);
-            if (y >= yMin && y < yMax) {
-              int x = entityTag.get("x").intValue(0) - wx0; // Chunk-local coordinates.
-              int z = entityTag.get("z").intValue(0) - wz0;
-              if (x < 0 || x > 15 || z < 0 || z > 15) {
-                // Block entity is out of range (bad chunk data?), ignore it
-                continue;
-              }
-              Block block = palette.get(chunkData.getBlockAt(x, y, z));
-              // Metadata is the old block data (to be replaced in future Minecraft versions?).
-              Vector3 position = new Vector3(x + wx0, y, z + wz0);
-              if (block.isModifiedByBlockEntity()) {
-                Tag newTag = block.getNewTagWithBlockEntity(palette.getBlockSpec(chunkData.getBlockAt(x, y, z)).getTag(), entityTag);
-                if (newTag != null) {
-                  int id = palette.put(newTag);
-                  block = palette.get(id);
-                  chunkData.setBlockAt(x, y, z, id);
-                  worldOctree.set(id, cp.x * 16 + x - origin.x, y - origin.y, cp.z * 16 + z - origin.z);
-                  didLoadVisibleBlocksFromChunk = didLoadVisibleBlocksFromChunk || !block.invisible;
-                }
-              }
-              if (block.isBlockEntity()) {
-                Entity blockEntity = block.toBlockEntity(position, entityTag);
-                if (blockEntity == null) {
-                  continue;
-                }
-
-                if (entities.shouldLoad(blockEntity)) {
-                  if (blockEntity instanceof Poseable) {
-                    entities.addActor(blockEntity);
-                  } else {
-                    entities.addEntity(blockEntity);
-                    if (emitterGrid != null) {
-                      for (Grid.EmitterPosition emitterPos : blockEntity.getEmitterPosition()) {
-                        emitterPos.x -= origin.x;
-                        emitterPos.y -= origin.y;
-                        emitterPos.z -= origin.z;
-                        emitterGrid.addEmitter(emitterPos);
-                      }
-                    }
-                  }
-                }
-              }
-            }
-          }
+          biomeBlendingHelper.put(cp, cubes.biomeHelper);
+          loadBiomePaletteIndices(cp, chunkData, cubes.biomeHelper, biomePaletteIdxStructure, use3dBiomes);
 
-          if (!chunkData.isEmpty() && didLoadVisibleBlocksFromChunk) {
+          boolean didLoadVisibleBlocks = mergeChunkCubes(cubes, chunkData, true);
+          if (!chunkData.isEmpty() && didLoadVisibleBlocks) {
             nonEmptyChunks.add(cp);
             if (dimension.getChunk(cp).getVersion() == ChunkVersion.PRE_FLATTENING) {
               legacyChunks.add(cp);
             }
           }
         }
-      }
-      executor.shutdown();
+      });
     }
 
     entities.finalizeLoading();
-    palette.unsynchronize();
 
     try (TaskTracker.Task task = taskTracker.task("(4/6) Finalizing octree")) {
 
       worldOctree.startFinalization();
       waterOctree.startFinalization();
 
-      int done = 0;
-      int target = nonEmptyChunks.size();
-
-      for (ChunkPosition cp : nonEmptyChunks) {
-//        TODO: make this less special cased in some way, having 2 ifs for biomeBlending and use3dBiomes is quite awful to read and maintain
-
-//        Finalize grass and foliage textures.
-//        3x3 box blur.
-        ChunkBiomeBlendingHelper chunkBiomeHelper = biomeBlendingHelper.get(cp);
-        boolean biomeUsed = chunkBiomeHelper.isBiomeUsed();
-        if (biomeBlendingRadius > 0) {
-          if (use3dBiomes) {
-            ChunkBiomeBlendingHelper[] neighboringChunks = new ChunkBiomeBlendingHelper[]{
-              biomeBlendingHelper.get(new ChunkPosition(cp.x - 1, cp.z - 1)),
-              biomeBlendingHelper.get(new ChunkPosition(cp.x - 1, cp.z)),
-              biomeBlendingHelper.get(new ChunkPosition(cp.x - 1, cp.z + 1)),
-              biomeBlendingHelper.get(new ChunkPosition(cp.x, cp.z - 1)),
-              biomeBlendingHelper.get(new ChunkPosition(cp.x, cp.z + 1)),
-              biomeBlendingHelper.get(new ChunkPosition(cp.x + 1, cp.z - 1)),
-              biomeBlendingHelper.get(new ChunkPosition(cp.x + 1, cp.z)),
-              biomeBlendingHelper.get(new ChunkPosition(cp.x + 1, cp.z + 1))
-            };
-
-            int[] combinedBiomeTransitions = chunkBiomeHelper.combineAndTrimTransitions(neighboringChunks, biomeBlendingRadius);
-
-            // When doing 3D blur we use the list of (vertical) biome transition
-            // in the chunk or in neighboring ones
-            // If there is no transition, a 2D blur is enough, otherwise we only
-            // need to compute the colors around the transitions
-
-            // For example, if loading from y=0 to y=200 with a biome transition at y=20
-            // and another one at y=50 and with a blur radius of 2 (5*5*5 box)
-            // We can compute a 2D blur at y=0 and use those color for up to y=17
-            // For y in [18, 21] we need to compute the real 3D blur (because of the biome transition
-            // at y=20 and the blur radius of 2)
-            // Then we can compute the 2D blur at y=22 and use those colors for up to y=47
-            // And so on, 3D blur for y in [48, 51] and 2D blur for y in [52,200]
-
-            // As such, in spirit every transition make us compute an additional 16*16*(2*biomeBlendingRadius) 3D blur
-            // and a 16*16 2D blur (that can be combined in a 16*16*(2*biomeBlendingRadius+1) 3D blur)
-            // (ignoring cases where transition are close to one another which are handled by the code)
-
-            // Note that having a single (x, y) column that effectively has a biome transition
-            // in the chunk are a neighboring chunk causes us to compute the 3D blur for the whole 16*16
-            // vertical slice of the chunk. Because vertical biome transition are pretty rare,
-            // that's probably ok.
-            int nextY = chunkBiomeHelper.getyMinBiomeRelevant();
-
-            for(int i = 0; i < combinedBiomeTransitions.length; ++i) {
-              int transition = combinedBiomeTransitions[i];
-              if(nextY < transition - biomeBlendingRadius) {
-                // Do a 2d blur to fill up to the height affected by the transition
-                BiomeBlendingUtility.chunk2DBlur(
-                  cp,
-                  biomeBlendingRadius,
-                  nextY,
-                  transition - biomeBlendingRadius,
-                  origin,
-                  biomePaletteIdxStructure,
-                  biomePalette,
-                  nonEmptyChunks,
-                  grassTexture,
-                  foliageTexture,
-                  dryFoliageTexture,
-                  waterTexture);
-                nextY = transition - biomeBlendingRadius;
-              }
-
-              // Do a 3D blur to fill the next 2*biomeBlendingRadius layers
-              // or more if the next transition is close by, in which case
-              // both transition (or even more) are handled by a bigger 3D blur
-              int maxYWorkedOn = transition + biomeBlendingRadius;
-              while(i < combinedBiomeTransitions.length - 1 && maxYWorkedOn >= combinedBiomeTransitions[i + 1] - biomeBlendingRadius) {
-                // Extends the 3D blur to enclose the next transition as well
-                maxYWorkedOn = combinedBiomeTransitions[i + 1] + biomeBlendingRadius;
-                ++i;
-              }
-              int maxYWorkedOnClamped = Math.min(maxYWorkedOn, chunkBiomeHelper.getyMaxBiomeRelevant());
-              BiomeBlendingUtility.chunk3DBlur(
-                cp,
-                biomeBlendingRadius,
-                nextY,
-                maxYWorkedOnClamped + 1,
-                origin,
-                biomePaletteIdxStructure,
-                biomePalette,
-                nonEmptyChunks,
-                grassTexture,
-                foliageTexture,
-                dryFoliageTexture,
-                waterTexture);
-              nextY = maxYWorkedOnClamped + 1;
-            }
-
-            // Last 2D blur that extent up to the top
-            if(nextY <= chunkBiomeHelper.getyMaxBiomeRelevant()) {
-              BiomeBlendingUtility.chunk2DBlur(
-                cp,
-                biomeBlendingRadius,
-                nextY,
-                chunkBiomeHelper.getyMaxBiomeRelevant() + 1,
-                origin,
-                biomePaletteIdxStructure,
-                biomePalette,
-                nonEmptyChunks,
-                grassTexture,
-                foliageTexture,
-                dryFoliageTexture,
-                waterTexture);
-            }
-          } else {
-            BiomeBlendingUtility.chunk2DBlur(
-              cp,
-              biomeBlendingRadius,
-              0, 1,
-              origin,
-              biomePaletteIdxStructure,
-              biomePalette,
-              nonEmptyChunks,
-              grassTexture,
-              foliageTexture,
-              dryFoliageTexture,
-              waterTexture);
-          }
-        } else {
-          if(use3dBiomes) {
-            for(int sectionY = yMin >> 4; sectionY < (yMax - 1 >> 4) + 1; sectionY++) {
-              for(int y = 0; y < 16; y++) {
-                int wy = sectionY * 16 + y;
-                for(int x = 0; x < 16; ++x) {
-                  int wx = cp.x * Chunk.X_MAX + x;
-                  for(int z = 0; z < 16; ++z) {
-                    int wz = cp.z * Chunk.Z_MAX + z;
-
-                    int id = biomePaletteIdxStructure.get(wx, wy, wz);
-
-                    Biome biome = biomePalette.get(id);
-                    if (biomeUsed) {
-                      grassTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.grassColorLinear);
-                      foliageTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.foliageColorLinear);
-                      dryFoliageTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.dryFoliageColorLinear);
-                    }
-                    // the water texture is used to check for loaded chunks and tint the water plane, so we always need that one
-                    waterTexture.set(cp.x * 16 + x - origin.x, sectionY * 16 + y - origin.y, cp.z * 16 + z - origin.z, biome.waterColorLinear);
-                  }
-                }
-              }
-            }
-          } else {
-            for(int x = 0; x < 16; ++x) {
-              int wx = cp.x * 16 + x;
-              for(int z = 0; z < 16; ++z) {
-                int wz = cp.z * 16 + z;
-
-                int id = biomePaletteIdxStructure.get(wx, 0, wz);
-                Biome biome = biomePalette.get(id);
-                if (biomeUsed) {
-                  grassTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.grassColorLinear);
-                  foliageTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.foliageColorLinear);
-                  dryFoliageTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.dryFoliageColorLinear);
-                }
-                // the water texture is used to check for loaded chunks and tint the water plane, so we always need that one
-                waterTexture.set(cp.x * 16 + x - origin.x, 0, cp.z * 16 + z - origin.z, biome.waterColorLinear);
-              }
-            }
-          }
-        }
-        OctreeFinalizer.finalizeChunk(worldOctree, waterOctree, palette, loadedChunks, origin, cp, yMin, yMax);
-        if (legacyChunks.contains(cp)) {
-          LegacyBlocksFinalizer
-              .finalizeChunk(worldOctree, waterOctree, palette, origin, cp, yMin, yMax);
-        }
-        task.updateEta(target, done);
-        done += 1;
-
-        grassTexture.compact();
-        foliageTexture.compact();
-        dryFoliageTexture.compact();
-        waterTexture.compact();
-      }
+      finalizeChunks(task, nonEmptyChunks, biomePalette, biomePaletteIdxStructure,
+          biomeBlendingHelper, nonEmptyChunks, loadedChunks, legacyChunks, use3dBiomes);
 
       worldOctree.endFinalization();
       waterOctree.endFinalization();
@@ -1432,6 +1135,8 @@ public class Scene implements JsonSerializable {
       dryFoliageTexture.endFinalization();
       waterTexture.endFinalization();
     }
+    // The palette is modified by the finalizer threads, water and lava blocks get new IDs.
+    palette.unsynchronize();
 
     entities.loadDataFromOctree(worldOctree, palette, origin);
 
@@ -1446,7 +1151,7 @@ public class Scene implements JsonSerializable {
     try (TaskTracker.Task task = taskTracker.task("(6/6) Building actor BVH")) {
       buildActorBvh(task);
     }
-    Log.info(String.format("Loaded %d chunks", numChunks));
+    Log.info(String.format("Loaded %d chunks", loadedChunks.size()));
 
     importMaterials();
 
@@ -1461,6 +1166,263 @@ public class Scene implements JsonSerializable {
     isLoading = false;
   }
 
+  /**
+   * Load chunks and build their cubes on the common threads. The cubes are passed to the merge
+   * function on this thread, in the order of the chunk positions.
+   */
+  private void loadChunkCubes(TaskTracker.Task task, Dimension dimension,
+      List<ChunkPosition> chunkPositions, BiomePalette biomePalette, Consumer<ChunkCubes> merge) {
+    int target = chunkPositions.size();
+
+    // Chunks are parsed and converted to cubes on the common threads, up to a fixed number of
+    // chunks ahead of the chunk that is currently merged into the octrees. Merging happens on
+    // this thread in chunk order, so the result does not depend on the number of threads.
+    ForkJoinPool loaderThreads = Chunky.getCommonThreads();
+    int window = Math.min(target, 4 * loaderThreads.getParallelism());
+    ChunkCubes[] slots = new ChunkCubes[window];
+    ChunkCubes.FluidIds fluidIds = new ChunkCubes.FluidIds(palette);
+    IntFunction<Future<ChunkCubes>> submitChunk = index -> {
+      ChunkCubes slot = slots[index % window];
+      if (slot == null) {
+        slot = new ChunkCubes(palette, fluidIds, biomePalette, entities, origin, yMin, yMax,
+            emitterGrid != null);
+        slots[index % window] = slot;
+      }
+      ChunkCubes cubes = slot;
+      ChunkPosition chunkPosition = chunkPositions.get(index);
+      return loaderThreads.submit(() -> {
+        cubes.load(chunkPosition, dimension.getChunk(chunkPosition));
+        return cubes;
+      });
+    };
+
+    ArrayDeque<Future<ChunkCubes>> pendingChunks = new ArrayDeque<>(window);
+    for (int i = 0; i < window; i++) {
+      pendingChunks.add(submitChunk.apply(i));
+    }
+
+    for (int i = 0; i < target; i++) {
+      ChunkCubes cubes;
+      try {
+        cubes = pendingChunks.poll().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+
+      task.updateEta(target, i + 1);
+
+      merge.accept(cubes);
+
+      if (i + window < target) {
+        pendingChunks.add(submitChunk.apply(i + window));
+      }
+    }
+  }
+
+  /**
+   * Store the biome palette indices of a chunk for biome blending.
+   */
+  private void loadBiomePaletteIndices(ChunkPosition cp, ChunkData chunkData,
+      ChunkBiomeBlendingHelper chunkBiomeHelper, Position2IntStructure biomePaletteIdxStructure,
+      boolean use3dBiomes) {
+    int wx0 = cp.x * 16; // Start of this chunk in world coordinates.
+    int wz0 = cp.z * 16;
+    BiomeData biomeData = chunkData.getBiomeData();
+
+    if (use3dBiomes) {
+      // We need to load biome data for the full height of the chunk
+      // and not only limited to the sections where there are blocks
+      // because it is possible that a neighboring chunks has blocks
+      // that will observe the biome color (via biome blending)
+      for (int y = chunkData.minY(); y < chunkData.maxY(); y++) {
+        for (int cz = 0; cz < 16; ++cz) {
+          int wz = cz + wz0;
+          for (int cx = 0; cx < 16; ++cx) {
+            int wx = cx + wx0;
+            int biomePaletteIdx = biomeData.getBiome(cx, y, cz);
+            if(y != yMin) {
+              int biomeUnder = biomeData.getBiome(cx, y-1, cz);
+              if(biomeUnder != biomePaletteIdx)
+                chunkBiomeHelper.addTransition(y);
+            }
+            biomePaletteIdxStructure.set(wx, y, wz, biomePaletteIdx);
+          }
+        }
+      }
+    } else {
+      for (int cz = 0; cz < 16; ++cz) {
+        int wz = cz + wz0;
+        for (int cx = 0; cx < 16; ++cx) {
+          int wx = cx + wx0;
+          int biomePaletteIdx = biomeData.getBiome(cx, chunkData.minY(), cz); // TODO: add an option to set the biome sample height?
+          biomePaletteIdxStructure.set(wx, chunkData.minY(), wz, biomePaletteIdx);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write the cubes of a chunk to the octrees and apply the block entities of the chunk.
+   *
+   * @param loadEntities {@code false} to only update the blocks, without adding the entities,
+   * actors and emitters of the chunk to the scene
+   * @return {@code true} if the chunk has visible blocks
+   */
+  private boolean mergeChunkCubes(ChunkCubes cubes, ChunkData chunkData, boolean loadEntities) {
+    ChunkPosition cp = cubes.position;
+    boolean didLoadVisibleBlocksFromChunk = cubes.didLoadVisibleBlocks;
+    int wx0 = cp.x * 16; // Start of this chunk in world coordinates.
+    int wz0 = cp.z * 16;
+
+    if (loadEntities) {
+      entities.loadEntitiesInChunk(this, chunkData);
+
+      // Add the block entities and emitters that were found while building the cubes.
+      for (Entity actor : cubes.actors) {
+        entities.addActor(actor);
+      }
+      for (Entity entity : cubes.entities) {
+        entities.addEntity(entity);
+      }
+      if (emitterGrid != null) {
+        for (Grid.EmitterPosition emitterPos : cubes.emitters) {
+          emitterGrid.addEmitter(emitterPos);
+        }
+      }
+    }
+
+    for (int cube = 0; cube < cubes.worldCubes.length; ++cube) {
+      int yCube = cubes.yCubeMin + cube;
+      worldOctree.setCube(4, cubes.worldCubes[cube], cp.x * 16 - origin.x, yCube * 16 - origin.y, cp.z * 16 - origin.z);
+      waterOctree.setCube(4, cubes.waterCubes[cube], cp.x * 16 - origin.x, yCube * 16 - origin.y, cp.z * 16 - origin.z);
+    }
+
+    // Block entities are also called "tile entities". These are extra bits of metadata
+    // about certain blocks or entities.
+    // Block entities are loaded after the base block data so that metadata can be updated.
+    for (CompoundTag entityTag : chunkData.getTileEntities()) {
+      int y = entityTag.get("y").intValue(0);
+      if (y >= yMin && y < yMax) {
+        int x = entityTag.get("x").intValue(0) - wx0; // Chunk-local coordinates.
+        int z = entityTag.get("z").intValue(0) - wz0;
+        if (x < 0 || x > 15 || z < 0 || z > 15) {
+          // Block entity is out of range (bad chunk data?), ignore it
+          continue;
+        }
+        Block block = palette.get(chunkData.getBlockAt(x, y, z));
+        // Metadata is the old block data (to be replaced in future Minecraft versions?).
+        Vector3 position = new Vector3(x + wx0, y, z + wz0);
+        if (block.isModifiedByBlockEntity()) {
+          Tag newTag = block.getNewTagWithBlockEntity(palette.getBlockSpec(chunkData.getBlockAt(x, y, z)).getTag(), entityTag);
+          if (newTag != null) {
+            int id = palette.put(newTag);
+            block = palette.get(id);
+            chunkData.setBlockAt(x, y, z, id);
+            worldOctree.set(id, cp.x * 16 + x - origin.x, y - origin.y, cp.z * 16 + z - origin.z);
+            didLoadVisibleBlocksFromChunk = didLoadVisibleBlocksFromChunk || !block.invisible;
+          }
+        }
+        if (loadEntities && block.isBlockEntity()) {
+          Entity blockEntity = block.toBlockEntity(position, entityTag);
+          if (blockEntity == null) {
+            continue;
+          }
+
+          if (entities.shouldLoad(blockEntity)) {
+            if (blockEntity instanceof Poseable) {
+              entities.addActor(blockEntity);
+            } else {
+              entities.addEntity(blockEntity);
+              if (emitterGrid != null) {
+                for (Grid.EmitterPosition emitterPos : blockEntity.getEmitterPosition()) {
+                  emitterPos.x -= origin.x;
+                  emitterPos.y -= origin.y;
+                  emitterPos.z -= origin.z;
+                  emitterGrid.addEmitter(emitterPos);
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+
+    return didLoadVisibleBlocksFromChunk;
+  }
+
+  /**
+   * Finalize the given chunks. The finalization of the octrees must have been started.
+   */
+  private void finalizeChunks(TaskTracker.Task task, Collection<ChunkPosition> chunksToFinalize,
+      BiomePalette biomePalette, Position2IntStructure biomePaletteIdxStructure,
+      Map<ChunkPosition, ChunkBiomeBlendingHelper> biomeBlendingHelper,
+      Set<ChunkPosition> nonEmptyChunks, Set<ChunkPosition> loadedChunks,
+      Set<ChunkPosition> legacyChunks, boolean use3dBiomes) {
+    int done = 0;
+    int target = chunksToFinalize.size();
+
+    // Chunks are finalized on the common threads in batches of chunks that are not adjacent.
+    // The chunks are split into four classes by the parity of their coordinates, like a
+    // checkerboard, so the chunks of a class are at least one chunk apart. Finalizing a chunk
+    // only changes the chunk itself and reads the blocks right next to it, so no chunk of a
+    // batch reads blocks that are changed by another chunk of the batch. The recorded changes
+    // of a batch are applied on this thread before the next batch is started.
+    // Recording changes needs octree coordinates that fit in a packed key, otherwise the
+    // chunks are finalized one by one on this thread.
+    ForkJoinPool finalizerThreads = Chunky.getCommonThreads();
+    boolean parallel = worldOctree.getDepth() <= Octree.MAX_RECORDING_DEPTH;
+    int batchSize = parallel ? 4 * finalizerThreads.getParallelism() : 1;
+    List<List<ChunkPosition>> classes = ChunkFinalizer.checkerboard(chunksToFinalize);
+    ChunkFinalizer[] finalizers = new ChunkFinalizer[Math.min(batchSize, target)];
+    List<Future<?>> pendingChunks = new ArrayList<>(finalizers.length);
+    for (List<ChunkPosition> chunkClass : classes) {
+      for (int first = 0; first < chunkClass.size(); first += batchSize) {
+        int batchEnd = Math.min(chunkClass.size(), first + batchSize);
+        for (int i = first; i < batchEnd; ++i) {
+          ChunkFinalizer finalizer = finalizers[i - first];
+          if (finalizer == null) {
+            finalizer = new ChunkFinalizer(this, biomePalette, biomePaletteIdxStructure,
+                biomeBlendingHelper, nonEmptyChunks, loadedChunks, legacyChunks, use3dBiomes,
+                parallel);
+            finalizers[i - first] = finalizer;
+          }
+          ChunkFinalizer chunkFinalizer = finalizer;
+          ChunkPosition cp = chunkClass.get(i);
+          if (parallel) {
+            pendingChunks.add(finalizerThreads.submit(() -> chunkFinalizer.finalizeChunk(cp)));
+          } else {
+            chunkFinalizer.finalizeChunk(cp);
+          }
+        }
+        for (Future<?> pending : pendingChunks) {
+          try {
+            pending.get();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+          } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+          }
+        }
+        pendingChunks.clear();
+        for (int i = first; i < batchEnd; ++i) {
+          finalizers[i - first].apply();
+        }
+
+        done += batchEnd - first;
+        task.updateEta(target, done);
+
+        grassTexture.compact();
+        foliageTexture.compact();
+        dryFoliageTexture.compact();
+        waterTexture.compact();
+      }
+    }
+  }
+
   private void buildBvh(TaskTracker.Task task) {
     entities.buildBvh(task, origin);
   }
@@ -1486,6 +1448,17 @@ public class Scene implements JsonSerializable {
     refresh();
   }
 
+  /**
+   * Update the actors bounding volume hierarchy after an actor was moved or posed.
+   * The existing BVH is refit if possible, which is much faster than rebuilding it.
+   */
+  public void refitActorBvh(Entity actor) {
+    if (!entities.refitActorBvh(actor, origin)) {
+      buildActorBvh(TaskTracker.Task.NONE);
+    }
+    refresh();
+  }
+
   private int calculateOctreeOrigin(Map<RegionPosition, List<ChunkPosition>> chunksToLoadByRegion, boolean centerOctree) {
     int xmin = Integer.MAX_VALUE;
     int xmax = Integer.MIN_VALUE;
@@ -1736,7 +1709,7 @@ public class Scene implements JsonSerializable {
     ray.o.x -= origin.x;
     ray.o.y -= origin.y;
     ray.o.z -= origin.z;
-    while (PreviewRayTracer.nextIntersection(this, ray)) {
+    while (PreviewRayTracer.nextIntersection(this, ray, state)) {
       if (ray.getCurrentMaterial() != Air.INSTANCE) {
         return true;
       }
@@ -1962,6 +1935,9 @@ public class Scene implements JsonSerializable {
     finalizeBuffer = other.finalizeBuffer;
     animationTime = other.animationTime;
     additionalData = other.additionalData;
+    adaptiveSampling = other.adaptiveSampling;
+    adaptiveThreshold = other.adaptiveThreshold;
+    samplerType = other.samplerType;
   }
 
   /**
@@ -2084,6 +2060,33 @@ public class Scene implements JsonSerializable {
     return canvasConfig.getCropY();
   }
 
+  /**
+   * Create a copy of this scene that can be saved while rendering continues on this scene.
+   * Unlike {@link #Scene(Scene)} the copy has its own sample buffer and frame buffer.
+   *
+   * <p>The octrees, block palette and biome structures are shared with this scene. The references
+   * are taken while this scene is locked. Loading or refreshing chunks replaces the octrees of
+   * this scene instead of changing them, so the copy keeps the octrees it was captured with.
+   *
+   * @param sampleBuffer buffer to copy the samples into. A new buffer is allocated
+   *                     if this is {@code null} or has the wrong size.
+   */
+  public synchronized Scene captureForSaving(SampleBuffer sampleBuffer) {
+    Scene copy = new Scene(this);
+    if (sampleBuffer == null || sampleBuffer.length() != samples.length()
+        || sampleBuffer.getPrecision() != samples.getPrecision()) {
+      sampleBuffer = samples.copy();
+    } else {
+      sampleBuffer.copyFrom(samples);
+    }
+    copy.samples = sampleBuffer;
+    copy.sampleStatistics = sampleStatistics.copy();
+    copy.backBuffer = new BitmapImage(canvasConfig.getWidth(), canvasConfig.getHeight());
+    copy.frontBuffer = copy.backBuffer;
+    copy.finalized = false;
+    return copy;
+  }
+
   /**
    * Save a snapshot
    */
@@ -2192,7 +2195,7 @@ public class Scene implements JsonSerializable {
       Log.info("Saving octree " + fileName);
 
       boolean saved = false;
-      try (DataOutputStream out = new DataOutputStream(new FastBufferedOutputStream(new GZIPOutputStream(ioContext.getSceneFileOutputStream(fileName))))) {
+      try (OutputStream out = new FastBufferedOutputStream(ioContext.getSceneFileOutputStream(fileName))) {
         OctreeFileFormat.store(out, worldOctree, waterOctree, palette, grassTexture, foliageTexture, dryFoliageTexture, waterTexture);
         saved = true;
 
@@ -2233,6 +2236,21 @@ public class Scene implements JsonSerializable {
     }
   }
 
+  /**
+   * Load the octree file, using the block index of the file if it is stored in the scene directory.
+   */
+  private OctreeFileFormat.OctreeData loadOctreeData(SceneIOProvider ioContext, String fileName,
+      String octreeImpl, Consumer<String> stepConsumer, LongConsumer progress) throws IOException {
+    File file = ioContext.getSceneFile(fileName);
+    if (file.isFile()) {
+      return OctreeFileFormat.load(file, octreeImpl, this.biomeStructureImplementation, stepConsumer, progress);
+    }
+    try (InputStream in = new FastBufferedInputStream(
+        new PositionalInputStream(ioContext.getSceneFileInputStream(fileName), progress))) {
+      return OctreeFileFormat.load(in, octreeImpl, this.biomeStructureImplementation, stepConsumer);
+    }
+  }
+
   private synchronized boolean loadOctree(SceneIOProvider ioContext, TaskTracker taskTracker, Map<RegionPosition, List<ChunkPosition>> chunksToLoadByRegion) {
     String fileName = name + ".octree2";
     try (TaskTracker.Task task = taskTracker.task("(1/3) Loading octree", 2)) {
@@ -2247,18 +2265,14 @@ public class Scene implements JsonSerializable {
         long fileTimestamp = ioContext.fileTimestamp(fileName);
         OctreeFileFormat.OctreeData data;
         Consumer<String> stepConsumer = step -> task.update("(1/3) Loading octree (" + step + ")");
+        LongConsumer progress = pos -> task.updateInterval((int) (pos * progressScale), 1);
 
-        try (DataInputStream in = new DataInputStream(new FastBufferedInputStream(new GZIPInputStream(new PositionalInputStream(ioContext.getSceneFileInputStream(fileName), pos -> {
-          task.updateInterval((int) (pos * progressScale), 1);
-        }))))) {
-          data = OctreeFileFormat.load(in, octreeImplementation, this.biomeStructureImplementation, stepConsumer);
+        try {
+          data = loadOctreeData(ioContext, fileName, octreeImplementation, stepConsumer, progress);
         } catch (PackedOctree.OctreeTooBigException e) {
           // Octree too big, reload file and force loading as NodeBasedOctree
           Log.warn("Octree was too big when loading dump, reloading with old (slower and bigger) implementation.");
-          DataInputStream inRetry = new DataInputStream(new FastBufferedInputStream(new GZIPInputStream(new PositionalInputStream(ioContext.getSceneFileInputStream(fileName), pos -> {
-            task.updateInterval((int) (pos * progressScale), 1);
-          }))));
-          data = OctreeFileFormat.load(inRetry, "NODE", this.biomeStructureImplementation, stepConsumer);
+          data = loadOctreeData(ioContext, fileName, "NODE", stepConsumer, progress);
         }
 
         worldOctree = data.worldTree;
@@ -2339,7 +2353,9 @@ public class Scene implements JsonSerializable {
    */
   @Deprecated(forRemoval = true)
   public void copyPixel(int jobId, int offset) {
-    System.arraycopy(samples, jobId * 3, samples, (jobId + offset) * 3, 3);
+    for (int i = 0; i < 3; ++i) {
+      samples.set((jobId + offset) * 3 + i, samples.get(jobId * 3 + i));
+    }
   }
 
   /**
@@ -2404,14 +2420,50 @@ public class Scene implements JsonSerializable {
   }
 
   /**
-   * Get direct access to the sample buffer.
+   * Get the samples as a double array.
+   *
+   * <p>For scenes that store samples with double precision this is direct access to the sample
+   * buffer. Otherwise each call returns a detached snapshot: the samples are copied into a new
+   * array, which does not see later samples, and changes to the array do not affect the scene.
    *
    * @return The sample buffer for this scene
+   * @deprecated Use {@link #getSamples()}, which gives direct access to the samples for any
+   * sample precision.
    */
+  @Deprecated
   public double[] getSampleBuffer() {
+    return samples.toDoubleArray();
+  }
+
+  /**
+   * @return The sample buffer for this scene
+   */
+  public SampleBuffer getSamples() {
     return samples;
   }
 
+  /**
+   * @return The per-pixel sample statistics for this scene
+   */
+  public SampleStatistics getSampleStatistics() {
+    return sampleStatistics;
+  }
+
+  public SamplePrecision getSamplePrecision() {
+    return samplePrecision;
+  }
+
+  /**
+   * Change the precision of the sample buffer. This discards the current render.
+   */
+  public synchronized void setSamplePrecision(SamplePrecision samplePrecision) {
+    if (this.samplePrecision != samplePrecision) {
+      this.samplePrecision = samplePrecision;
+      initBuffers();
+      refresh();
+    }
+  }
+
   /**
    * Get the back buffer of the current frame (in ARGB format).
    *
@@ -2635,6 +2687,7 @@ public class Scene implements JsonSerializable {
       json.add("postprocessSettings", postprocessJson);
     }
     json.add("outputMode", pictureExportFormat.getName());
+    json.add("samplePrecision", samplePrecision.name());
     json.add("renderTime", renderTime);
     json.add("spp", spp);
     json.add("sppTarget", sppTarget);
@@ -2647,6 +2700,10 @@ public class Scene implements JsonSerializable {
     json.add("emitterIntensity", emitterIntensity);
     json.add("fancierTranslucency", fancierTranslucency);
     json.add("transmissivityCap", transmissivityCap);
+    json.add("textureFiltering", textureFiltering);
+    json.add("adaptiveSampling", adaptiveSampling);
+    json.add("adaptiveThreshold", adaptiveThreshold);
+    json.add("samplerType", samplerType.name());
     json.add("sunSamplingStrategy", sunSamplingStrategy.getId());
     json.add("waterShadingStrategy", waterShadingStrategy.getId());
     json.add("waterOpacity", waterOpacity);
@@ -2687,6 +2744,13 @@ public class Scene implements JsonSerializable {
       JsonArray chunk = new JsonArray();
       chunk.add(pos.x);
       chunk.add(pos.z);
+      Integer timestamp = chunkTimestamps.get(pos);
+      Integer location = chunkLocations.get(pos);
+      if (timestamp != null && location != null) {
+        // Used to refresh the changed chunks after the scene is loaded again.
+        chunk.add(timestamp);
+        chunk.add(location);
+      }
       chunkList.add(chunk);
     }
 
@@ -2868,7 +2932,10 @@ public class Scene implements JsonSerializable {
     int oldWidth = canvasConfig.getWidth();
     int oldHeight = canvasConfig.getHeight();
     canvasConfig.loadConfiguration(json);
-    if(oldWidth != canvasConfig.getWidth() || oldHeight != canvasConfig.getHeight() || samples == null) {
+    SamplePrecision oldPrecision = samplePrecision;
+    samplePrecision = SamplePrecision.valueOf(json.get("samplePrecision").asString(SamplePrecision.DOUBLE.name()));
+    if(oldWidth != canvasConfig.getWidth() || oldHeight != canvasConfig.getHeight() || samples == null
+        || oldPrecision != samplePrecision) {
       initBuffers();
     }
 
@@ -2909,7 +2976,13 @@ public class Scene implements JsonSerializable {
     emittersEnabled = json.get("emittersEnabled").boolValue(emittersEnabled);
     emitterIntensity = json.get("emitterIntensity").doubleValue(emitterIntensity);
     fancierTranslucency = json.get("fancierTranslucency").boolValue(fancierTranslucency);
+    // Scenes saved before texture filtering existed were rendered without it.
+    textureFiltering = json.get("textureFiltering").boolValue(false);
     transmissivityCap = json.get("transmissivityCap").doubleValue(transmissivityCap);
+    adaptiveSampling = json.get("adaptiveSampling").boolValue(adaptiveSampling);
+    adaptiveThreshold = json.get("adaptiveThreshold").doubleValue(adaptiveThreshold);
+    // Scenes saved before the sampler setting existed were rendered with random sampling.
+    samplerType = SamplerType.get(json.get("samplerType").asString(SamplerType.RANDOM.name()));
 
     if (json.get("sunSamplingStrategy").isUnknown()) {
       boolean sunSampling = json.get("sunEnabled").boolValue(false);
@@ -3030,12 +3103,19 @@ public class Scene implements JsonSerializable {
     if (json.get("chunkList").isArray()) {
       JsonArray chunkList = json.get("chunkList").array();
       chunks.clear();
+      chunkTimestamps = new HashMap<>();
+      chunkLocations = new HashMap<>();
       for (JsonValue elem : chunkList) {
         JsonArray chunk = elem.array();
         int x = chunk.get(0).intValue(Integer.MAX_VALUE);
         int z = chunk.get(1).intValue(Integer.MAX_VALUE);
         if (x != Integer.MAX_VALUE && z != Integer.MAX_VALUE) {
-          chunks.add(new ChunkPosition(x, z));
+          ChunkPosition pos = new ChunkPosition(x, z);
+          chunks.add(pos);
+          if (chunk.size() >= 4) {
+            chunkTimestamps.put(pos, chunk.get(2).intValue(0));
+            chunkLocations.put(pos, chunk.get(3).intValue(0));
+          }
         }
       }
     }
@@ -3466,4 +3546,47 @@ public class Scene implements JsonSerializable {
     transmissivityCap = value;
     refresh();
   }
+
+  public boolean getTextureFiltering() {
+    return textureFiltering;
+  }
+
+  /**
+   * Enable or disable filtering of block textures with mip levels selected from the pixel
+   * footprint of camera rays.
+   */
+  public void setTextureFiltering(boolean value) {
+    textureFiltering = value;
+    refresh();
+  }
+
+  public boolean isAdaptiveSampling() {
+    return adaptiveSampling;
+  }
+
+  /**
+   * Enable or disable adaptive sampling. Takes effect without restarting the render.
+   */
+  public void setAdaptiveSampling(boolean value) {
+    adaptiveSampling = value;
+  }
+
+  public double getAdaptiveThreshold() {
+    return adaptiveThreshold;
+  }
+
+  public void setAdaptiveThreshold(double value) {
+    adaptiveThreshold = value;
+  }
+
+  public SamplerType getSamplerType() {
+    return samplerType;
+  }
+
+  /**
+   * Change the sampler used for new samples. Takes effect without restarting the render.
+   */
+  public void setSamplerType(SamplerType value) {
+    samplerType = value;
+  }
 }
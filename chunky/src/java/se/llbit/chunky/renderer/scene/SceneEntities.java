@@ -4,6 +4,7 @@ import se.llbit.chunky.PersistentSettings;
 import se.llbit.chunky.chunk.BlockPalette;
 import se.llbit.chunky.chunk.ChunkData;
 import se.llbit.chunky.entity.*;
+import se.llbit.chunky.world.ChunkPosition;
 import se.llbit.chunky.world.Dimension;
 import se.llbit.json.JsonArray;
 import se.llbit.json.JsonObject;
@@ -14,6 +15,8 @@ import se.llbit.math.Ray;
 import se.llbit.math.Vector3;
 import se.llbit.math.Vector3i;
 import se.llbit.math.bvh.BVH;
+import se.llbit.math.bvh.BinaryBVH;
+import se.llbit.math.primitive.Primitive;
 import se.llbit.nbt.CompoundTag;
 import se.llbit.nbt.ListTag;
 import se.llbit.nbt.Tag;
@@ -28,10 +31,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 /**
@@ -61,6 +66,11 @@ public class SceneEntities {
   private BVH bvh = BVH.EMPTY;
   private BVH actorBvh = BVH.EMPTY;
 
+  /**
+   * The primitives of each actor in the actor BVH, used to refit the BVH when an actor changes.
+   */
+  private Map<Entity, Primitive[]> actorPrimitives = new IdentityHashMap<>();
+
   /**
    * The BVH implementation to use
    */
@@ -79,6 +89,7 @@ public class SceneEntities {
 
     bvh = other.bvh;
     actorBvh = other.actorBvh;
+    actorPrimitives = new IdentityHashMap<>(other.actorPrimitives);
 
     bvhImplementation = other.bvhImplementation;
   }
@@ -263,7 +274,47 @@ public class SceneEntities {
 
   public void buildActorBvh(TaskTracker.Task task, Vector3i origin) {
     Vector3 worldOffset = new Vector3(-origin.x, -origin.y, -origin.z);
-    actorBvh = BVH.Factory.create(bvhImplementation, actors, worldOffset, task);
+    actorPrimitives = new IdentityHashMap<>();
+    actorBvh = BVH.Factory.create(bvhImplementation, actors, worldOffset, task, actorPrimitives);
+  }
+
+  /**
+   * Update the actor BVH after the actor was moved or posed, without rebuilding the BVH.
+   * The BVH is copied before it is refit because it may be shared with the render scene.
+   *
+   * @return {@code false} if the actor BVH could not be refit and must be rebuilt
+   */
+  public boolean refitActorBvh(Entity actor, Vector3i origin) {
+    Primitive[] oldPrimitives = actorPrimitives.get(actor);
+    if (oldPrimitives == null || !(actorBvh instanceof BinaryBVH)) {
+      return false;
+    }
+    Vector3 worldOffset = new Vector3(-origin.x, -origin.y, -origin.z);
+    Primitive[] newPrimitives = actor.primitives(worldOffset).toArray(new Primitive[0]);
+    BinaryBVH refit = ((BinaryBVH) actorBvh).copy();
+    if (!refit.refit(oldPrimitives, newPrimitives)) {
+      return false;
+    }
+    actorBvh = refit;
+    actorPrimitives.put(actor, newPrimitives);
+    return true;
+  }
+
+  /**
+   * Remove the entities in the given chunks, before the chunks are loaded again.
+   * Actors are kept, like when all chunks are reloaded.
+   * The entity list is replaced instead of changed because it may be shared with the render scene.
+   */
+  public void removeEntitiesInChunks(Set<ChunkPosition> chunks) {
+    ArrayList<Entity> remaining = new ArrayList<>(entities.size());
+    for (Entity entity : entities) {
+      ChunkPosition cp = new ChunkPosition(
+        (int) Math.floor(entity.position.x) >> 4, (int) Math.floor(entity.position.z) >> 4);
+      if (!chunks.contains(cp)) {
+        remaining.add(entity);
+      }
+    }
+    entities = remaining;
   }
 
   public void finalizeLoading() {
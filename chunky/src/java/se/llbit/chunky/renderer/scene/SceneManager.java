@@ -82,6 +82,11 @@ public interface SceneManager {
    */
   void reloadChunks();
 
+  /**
+   * Reload only the chunks that have changed since they were loaded.
+   */
+  void refreshChangedChunks();
+
   /**
    * This should only be used by the render controls dialog controller.
    * Modifications to the scene must always be protected by the intrinsic
@@ -79,6 +79,15 @@ public class SynchronousSceneManager implements SceneProvider, SceneManager {
 
   private final Set<BiConsumer<ResetReason, Scene>> resetListeners = new CopyOnWriteArraySet<>();
 
+  private final BackgroundSceneSaver backgroundSaver = new BackgroundSceneSaver();
+
+  /**
+   * Held while scene files are written, so that a background save and a save of the stored
+   * scene do not write the same files at the same time.
+   * Lock order: storedScene -> saveLock.
+   */
+  private final Object saveLock = new Object();
+
   public SynchronousSceneManager(RenderContext context, RenderManager renderManager) {
     this.context = context;
     this.renderManager = renderManager;
@@ -151,7 +160,65 @@ public class SynchronousSceneManager implements SceneProvider, SceneManager {
     saveScene(resolveSceneDirectory(newName));
   }
 
+  /**
+   * Save the scene description and render dump on a background thread.
+   *
+   * <p>The current samples are copied before this method returns, rendering
+   * can continue while the copy is written. This should be called when the render
+   * workers are not writing to the sample buffer, e.g. from the frame completion callback.
+   */
+  public void saveSceneInBackground(File sceneDirectory) {
+    SceneIOProvider ioContext = () -> sceneDirectory;
+    synchronized (storedScene) {
+      context.setSceneDirectory(sceneDirectory);
+      RenderStatus status = renderManager.getRenderStatus();
+      storedScene.renderTime = status.getRenderTime();
+      storedScene.spp = status.getSpp();
+      backgroundSaver.saveDump(storedScene, copy -> {
+        try {
+          saveScene(ioContext, copy, false);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+  }
+
+  /**
+   * Save a snapshot of the given scene on a background thread.
+   * The samples are copied before this method returns.
+   */
+  public void saveSnapshotInBackground(Scene scene, File directory) {
+    backgroundSaver.saveSnapshot(scene, copy -> copy.saveSnapshot(directory, taskTracker));
+  }
+
+  /**
+   * @return {@code true} if all background saves have been written
+   */
+  public boolean backgroundSavesDone() {
+    return backgroundSaver.isIdle();
+  }
+
+  /**
+   * Wait until all background saves have been written.
+   */
+  public void awaitBackgroundSaves() throws InterruptedException {
+    backgroundSaver.awaitIdle();
+  }
+
   public void saveScene(SceneIOProvider ioContext, Scene scene) throws InterruptedException {
+    saveScene(ioContext, scene, true);
+  }
+
+  private void saveScene(SceneIOProvider ioContext, Scene scene, boolean copyRenderStatus)
+      throws InterruptedException {
+    synchronized (saveLock) {
+      writeScene(ioContext, scene, copyRenderStatus);
+    }
+  }
+
+  private void writeScene(SceneIOProvider ioContext, Scene scene, boolean copyRenderStatus)
+      throws InterruptedException {
     try {
       String sceneName = scene.name();
       Log.info("Saving scene " + sceneName);
@@ -171,10 +238,12 @@ public class SynchronousSceneManager implements SceneProvider, SceneManager {
       scene.backupFile(sceneDir, new File(sceneDir, sceneName + Scene.EXTENSION));
       scene.backupFile(sceneDir, new File(sceneDir, sceneName + ".dump"));
 
-      // Copy render status over from the renderManager.
-      RenderStatus status = renderManager.getRenderStatus();
-      scene.renderTime = status.getRenderTime();
-      scene.spp = status.getSpp();
+      if (copyRenderStatus) {
+        // Copy render status over from the renderManager.
+        RenderStatus status = renderManager.getRenderStatus();
+        scene.renderTime = status.getRenderTime();
+        scene.spp = status.getSpp();
+      }
       scene.saveScene(ioContext, taskTracker);
       Log.info("Scene saved");
       this.onSceneSaved.run();
@@ -277,6 +346,16 @@ public class SynchronousSceneManager implements SceneProvider, SceneManager {
     onChunksLoaded.run();
   }
 
+  @Override public void refreshChangedChunks() {
+    synchronized (scene) {
+      scene.refreshChangedChunks(taskTracker);
+      scene.setResetReason(ResetReason.SCENE_LOADED);
+      scene.setRenderMode(RenderMode.PREVIEW);
+      scene.refresh();
+    }
+    onChunksLoaded.run();
+  }
+
   @Override public ResetReason awaitSceneStateChange() throws InterruptedException {
     ResetReason reason;
     synchronized (scene) {
@@ -12,6 +12,8 @@ import se.llbit.math.structures.Position3d2IntPackedArray;
 import se.llbit.util.Registerable;
 import se.llbit.util.annotation.NotNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -82,6 +84,20 @@ public interface BiomeStructure extends Position2ReferenceStructure<float[]> {
    */
   void store(DataOutputStream out) throws IOException;
 
+  /**
+   * Create an independent copy of this structure, so that one of them can be modified while the
+   * other one is rendered. The default implementation stores the structure and loads it again.
+   */
+  default BiomeStructure copy() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      store(out);
+    }
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return get(biomeFormat()).load(in);
+    }
+  }
+
   /**
    * This method is called to tell the implementation to shrink its size. Called when throughout insertion of new biomes.
    */
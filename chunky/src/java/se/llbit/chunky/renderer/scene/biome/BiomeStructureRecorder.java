@@ -0,0 +1,70 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene.biome;
+
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+/**
+ * Biome structure that records writes so that they can be applied to another structure later.
+ * Biome structures are not thread safe, so this is used to blend the biomes of several chunks
+ * in parallel. Recorded values can't be read back.
+ */
+public class BiomeStructureRecorder implements BiomeStructure {
+  private int[] positions = new int[3 * 16 * 16];
+  private float[][] values = new float[16 * 16][];
+  private int size = 0;
+
+  @Override
+  public void set(int x, int y, int z, float[] data) {
+    if (size == values.length) {
+      positions = Arrays.copyOf(positions, 2 * positions.length);
+      values = Arrays.copyOf(values, 2 * values.length);
+    }
+    positions[3 * size] = x;
+    positions[3 * size + 1] = y;
+    positions[3 * size + 2] = z;
+    values[size] = data;
+    size += 1;
+  }
+
+  /**
+   * Apply the recorded writes, in order, to the given structure and clear this recorder.
+   */
+  public void applyTo(BiomeStructure target) {
+    for (int i = 0; i < size; ++i) {
+      target.set(positions[3 * i], positions[3 * i + 1], positions[3 * i + 2], values[i]);
+      values[i] = null;
+    }
+    size = 0;
+  }
+
+  @Override
+  public float[] get(int x, int y, int z) {
+    throw new UnsupportedOperationException("Recorded biome values can't be read");
+  }
+
+  @Override
+  public void store(DataOutputStream out) {
+    throw new UnsupportedOperationException("Recorded biome values can't be stored");
+  }
+
+  @Override
+  public String biomeFormat() {
+    throw new UnsupportedOperationException("Recorded biome values have no format");
+  }
+}
@@ -21,6 +21,7 @@ import org.apache.commons.math3.util.FastMath;
 import se.llbit.chunky.block.minecraft.Air;
 import se.llbit.chunky.renderer.SceneIOProvider;
 import se.llbit.chunky.renderer.scene.Scene;
+import se.llbit.chunky.resources.AbstractHdriTexture;
 import se.llbit.chunky.resources.HDRTexture;
 import se.llbit.chunky.resources.PFMTexture;
 import se.llbit.chunky.resources.Texture;
@@ -184,6 +185,19 @@ public class Sky implements JsonSerializable {
 
   private final SkyCache skyCache;
 
+  /**
+   * Maximum size of the skymap importance sampling distribution. Larger skymaps are
+   * sampled in blocks of pixels.
+   */
+  private static final int SKYMAP_DISTRIBUTION_WIDTH = 2048;
+  private static final int SKYMAP_DISTRIBUTION_HEIGHT = 1024;
+
+  /**
+   * Luminance distribution over the skymap texture, used to importance sample
+   * HDR skymaps. Null if the skymap is not importance sampled.
+   */
+  @Nullable private Distribution2D skymapDistribution = null;
+
   public Sky(Scene sceneDescription) {
     this.scene = sceneDescription;
     makeDefaultGradient(gradient);
@@ -219,6 +233,7 @@ public class Sky implements JsonSerializable {
   public void loadSkymap(SceneIOProvider ioContext, String fileName) {
     skymapFileName = fileName;
     skymap = loadSkyTexture(ioContext, fileName, skymap);
+    updateSkymapDistribution();
     scene.refresh();
   }
 
@@ -231,6 +246,7 @@ public class Sky implements JsonSerializable {
     cloudSize = other.cloudSize;
     skymapFileName = other.skymapFileName;
     skymap = other.skymap;
+    skymapDistribution = other.skymapDistribution;
     yaw = other.yaw;
     pitch = other.pitch;
     roll = other.roll;
@@ -469,13 +485,127 @@ public class Sky implements JsonSerializable {
   }
 
   public void getSkyColorDiffuseSun(Ray ray, boolean diffuseSun) {
+    getSkyColorDiffuseSun(ray, diffuseSun, 1);
+  }
+
+  /**
+   * Sky color for a diffuse ray, with the sky scaled by the given weight.
+   * The weight does not apply to the sun.
+   */
+  public void getSkyColorDiffuseSun(Ray ray, boolean diffuseSun, double skyWeight) {
     getSkyDiffuseColorInner(ray);
-    ray.color.scale(skyExposure);
-    ray.color.scale(skyLightModifier);
+    ray.color.scale(skyExposure * skyLightModifier * skyWeight);
     if (diffuseSun) addSunColorDiffuseSun(ray);
     ray.color.w = 1;
   }
 
+  /**
+   * Build the luminance distribution used to importance sample the skymap.
+   * Only equirectangular HDR skymaps are importance sampled. Each cell is weighted
+   * by the solid angle it covers so that the distribution is proportional to the
+   * light coming from the cell.
+   */
+  private void updateSkymapDistribution() {
+    skymapDistribution = null;
+    if (!(skymap instanceof AbstractHdriTexture)) {
+      return;
+    }
+    AbstractHdriTexture hdri = (AbstractHdriTexture) skymap;
+    int width = hdri.getWidth();
+    int height = hdri.getHeight();
+    int cellsX = Math.min(width, SKYMAP_DISTRIBUTION_WIDTH);
+    int cellsY = Math.min(height, SKYMAP_DISTRIBUTION_HEIGHT);
+    float[] weights = new float[cellsX * cellsY];
+    for (int cy = 0; cy < cellsY; ++cy) {
+      int y0 = (int) ((long) cy * height / cellsY);
+      int y1 = (int) ((long) (cy + 1) * height / cellsY);
+      double cosLatitude = Math.cos(skymapLatitude((cy + 0.5) / cellsY));
+      for (int cx = 0; cx < cellsX; ++cx) {
+        int x0 = (int) ((long) cx * width / cellsX);
+        int x1 = (int) ((long) (cx + 1) * width / cellsX);
+        weights[cy * cellsX + cx] =
+            (float) (hdri.getAverageLuminance(x0, y0, x1, y1) * cosLatitude);
+      }
+    }
+    Distribution2D distribution = new Distribution2D(weights, cellsX, cellsY);
+    if (distribution.isValid()) {
+      skymapDistribution = distribution;
+    }
+  }
+
+  /**
+   * @return the latitude, in skymap space, of the given equirectangular texture coordinate.
+   * For a mirrored sky this is the latitude above the horizon.
+   */
+  private double skymapLatitude(double v) {
+    return mirrored ? v * Constants.HALF_PI : v * Math.PI - Constants.HALF_PI;
+  }
+
+  /**
+   * @return {@code true} if sky light can be sampled with {@link #sampleSkymapDirection}
+   */
+  public boolean isSkymapImportanceSampled() {
+    return mode == SkyMode.SKYMAP_EQUIRECTANGULAR && skymapDistribution != null;
+  }
+
+  /**
+   * Sample a direction towards the skymap, proportionally to the light coming from it.
+   *
+   * @param d stores the sampled direction, in world space
+   * @param uv scratch vector for the sampled texture coordinates
+   * @return the probability density of the direction, per unit solid angle, or zero if no
+   * direction could be sampled
+   */
+  public double sampleSkymapDirection(Random random, Vector3 d, Vector2 uv) {
+    double pdf = skymapDistribution.sample(random.nextDouble(), random.nextDouble(), uv);
+    if (pdf <= 0) {
+      return 0;
+    }
+    double latitude = skymapLatitude(uv.y);
+    if (mirrored && random.nextBoolean()) {
+      latitude = -latitude;
+    }
+    double cosLatitude = Math.cos(latitude);
+    if (cosLatitude < Ray.EPSILON) {
+      return 0;
+    }
+    double longitude = uv.x * Constants.TAU;
+    d.set(cosLatitude * FastMath.cos(longitude), FastMath.sin(latitude),
+        cosLatitude * FastMath.sin(longitude));
+    rotation.transformTranspose(d);
+    return skymapPdf(pdf, cosLatitude);
+  }
+
+  /**
+   * @return the probability density per unit solid angle that {@link #sampleSkymapDirection}
+   * samples the given direction
+   */
+  public double skymapDirectionPdf(Vector3 d) {
+    double x = rotation.transformX(d);
+    double y = rotation.transformY(d);
+    double z = rotation.transformZ(d);
+    double cosLatitude = Math.sqrt(Math.max(0, 1 - y * y));
+    if (cosLatitude < Ray.EPSILON) {
+      return 0;
+    }
+    double u = FastMath.atan2(z, x) / Constants.TAU;
+    u = (u % 1 + 1) % 1;
+    double v = mirrored
+        ? Math.abs(Math.asin(y)) / Constants.HALF_PI
+        : (Math.asin(y) + Constants.HALF_PI) / Math.PI;
+    return skymapPdf(skymapDistribution.pdf(u, v), cosLatitude);
+  }
+
+  /**
+   * Convert a density over the equirectangular texture to a density per unit solid angle.
+   * A texel at latitude L covers a solid angle of 2 pi^2 cos(L) times its area for a full
+   * sky. A mirrored sky covers half the latitudes, but each texel is used for two directions,
+   * which gives the same factor.
+   */
+  private static double skymapPdf(double texturePdf, double cosLatitude) {
+    return texturePdf / (2 * Math.PI * Math.PI * cosLatitude);
+  }
+
   public void addSunColorDiffuseSun(Ray ray) {
     double r = ray.color.x;
     double g = ray.color.y;
@@ -545,6 +675,7 @@ public class Sky implements JsonSerializable {
   public void setMirrored(boolean b) {
     if (b != mirrored) {
       mirrored = b;
+      updateSkymapDistribution();
       scene.refresh();
     }
   }
@@ -565,6 +696,7 @@ public class Sky implements JsonSerializable {
       if (newMode != SkyMode.SKYMAP_EQUIRECTANGULAR && newMode != SkyMode.SKYMAP_ANGULAR) {
         skymapFileName = "";
         skymap = Texture.EMPTY_TEXTURE;
+        skymapDistribution = null;
       }
       if (newMode != SkyMode.SKYBOX) {
         for (int i = 0; i < 6; ++i) {
@@ -60,6 +60,21 @@ public class AbstractHdriTexture extends Texture {
     c.set(buf[offset + 0], buf[offset + 1], buf[offset + 2], 1);
   }
 
+  /**
+   * Get the average luminance of the pixels in the rectangle [x0, x1) x [y0, y1).
+   */
+  public double getAverageLuminance(int x0, int y0, int x1, int y1) {
+    double sum = 0;
+    for (int y = y0; y < y1; ++y) {
+      int offset = (y * width + x0) * 3;
+      for (int x = x0; x < x1; ++x) {
+        sum += 0.2126 * buf[offset] + 0.7152 * buf[offset + 1] + 0.0722 * buf[offset + 2];
+        offset += 3;
+      }
+    }
+    return sum / Math.max(1, (x1 - x0) * (y1 - y0));
+  }
+
   /**
    * Clamp image coordinate.
    */
@@ -17,6 +17,7 @@
 package se.llbit.chunky.resources;
 
 import se.llbit.math.Ray;
+import se.llbit.math.Vector4;
 
 /**
  * Basic animated texture extension.
@@ -42,6 +43,11 @@ public class AnimatedTexture extends Texture {
     return getColor(u, v, 0);
   }
 
+  @Override
+  public void getColor(double u, double v, Vector4 c) {
+    getColor((int) (u * width - Ray.EPSILON), (int) ((1 - v) * frameHeight - Ray.EPSILON), c);
+  }
+
   /**
    * Get color for animation frame.
    */
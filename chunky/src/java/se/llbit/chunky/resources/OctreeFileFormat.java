@@ -16,26 +16,62 @@
  */
 package se.llbit.chunky.resources;
 
+import it.unimi.dsi.fastutil.io.FastBufferedInputStream;
 import it.unimi.dsi.fastutil.io.FastBufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
 
 import se.llbit.chunky.block.Block;
 import se.llbit.chunky.block.minecraft.Lava;
 import se.llbit.chunky.block.minecraft.Water;
 import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.main.Chunky;
 import se.llbit.log.Log;
 import se.llbit.math.Octree;
 import se.llbit.chunky.renderer.scene.biome.BiomeStructure;
+import se.llbit.util.io.BlockIndex;
+import se.llbit.util.io.ParallelDeflaterOutputStream;
+import se.llbit.util.io.ParallelInflaterInputStream;
+import se.llbit.util.io.PositionalInputStream;
 
 public class OctreeFileFormat {
 
   private static final int MIN_OCTREE_VERSION = 3;
-  private static final int OCTREE_VERSION = 8;
+  private static final int OCTREE_VERSION = 9;
+
+  /**
+   * Starting with octree v9 the file is no longer wrapped in a single gzip stream. Instead the
+   * version number is stored uncompressed, followed by the payload in independently compressed
+   * blocks (see {@link ParallelDeflaterOutputStream}) which are compressed and decompressed on
+   * the common threads. The blocks are followed by an index of the blocks for random access:
+   *
+   * <pre>
+   * int version
+   * blocks, ending with an empty block
+   * block index (see {@link BlockIndex}), offsets relative to the first block
+   * long offset of the block index in the file
+   * </pre>
+   *
+   * Streams are read block by block and ignore the index. Files are read using the index, so
+   * that the blocks are read and decompressed in parallel.
+   */
+  private static final int BLOCK_COMPRESSED_VERSION = 9;
 
   /**
    * In octree v3-v4, the top bit of the type field in a serialized octree node is reserved for
@@ -46,6 +82,121 @@ public class OctreeFileFormat {
   /**
    * Load octrees and grass/foliage textures from a file.
    *
+   * Both the gzip compressed files of octree v3-v8 and the block compressed files of octree v9
+   * can be loaded. The input stream is closed when this method returns, also if loading fails,
+   * so that no more blocks are decompressed in the background.
+   *
+   * @param in   input stream for the file to load the scene from.
+   * @param octreeImpl The octree implementation to use
+   * @param legacyBiomeImpl The biome structure implementation to use to load any legacy WorldTextures
+   * @param stepConsumer A consumer that will be called with a string describing the current loading step
+   */
+  public static OctreeData load(InputStream in, String octreeImpl, String legacyBiomeImpl, Consumer<String> stepConsumer) throws IOException {
+    PushbackInputStream pushback = new PushbackInputStream(in, 2);
+    int b0 = pushback.read();
+    int b1 = pushback.read();
+    if (b1 != -1) pushback.unread(b1);
+    if (b0 != -1) pushback.unread(b0);
+    if (b0 == (GZIPInputStream.GZIP_MAGIC & 0xFF) && b1 == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+      // Octree v8 and older are stored in a single gzip stream.
+      try (DataInputStream gzipIn = new DataInputStream(
+          new FastBufferedInputStream(new GZIPInputStream(pushback)))) {
+        return load(gzipIn, octreeImpl, legacyBiomeImpl, stepConsumer);
+      }
+    }
+
+    DataInputStream rawIn = new DataInputStream(pushback);
+    int version = rawIn.readInt();
+    if (version < BLOCK_COMPRESSED_VERSION || version > OCTREE_VERSION) {
+      throw new IOException(String.format(
+          "Incompatible octree format: wrong version number (expected %d up to %d, was %d).",
+          BLOCK_COMPRESSED_VERSION, OCTREE_VERSION, version));
+    }
+    ForkJoinPool threads = Chunky.getCommonThreads();
+    try (DataInputStream payload = new DataInputStream(new FastBufferedInputStream(
+        new ParallelInflaterInputStream(rawIn, threads, 2 * threads.getParallelism())))) {
+      return loadPayload(version, payload, octreeImpl, legacyBiomeImpl, stepConsumer);
+    }
+  }
+
+  /**
+   * Load octrees and grass/foliage textures from a file. The blocks of octree v9 files are read
+   * and decompressed on the common threads using the block index. Files without a valid index
+   * are read as a stream.
+   *
+   * @param file the file to load the scene from.
+   * @param octreeImpl The octree implementation to use
+   * @param legacyBiomeImpl The biome structure implementation to use to load any legacy WorldTextures
+   * @param stepConsumer A consumer that will be called with a string describing the current loading step
+   * @param progress A consumer that will be called with the approximate number of bytes of the
+   * file that have been loaded
+   */
+  public static OctreeData load(File file, String octreeImpl, String legacyBiomeImpl,
+      Consumer<String> stepConsumer, LongConsumer progress) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    BlockIndex index = null;
+    int version = 0;
+    try {
+      version = readFully(channel, 0, Integer.BYTES).getInt();
+      if (version >= BLOCK_COMPRESSED_VERSION && version <= OCTREE_VERSION) {
+        index = readIndex(channel);
+      }
+    } catch (IOException e) {
+      // Not a block compressed file, or no valid index. Read the file as a stream.
+    }
+    if (index == null) {
+      channel.close();
+      return load(new FastBufferedInputStream(new PositionalInputStream(new FileInputStream(file), progress)),
+          octreeImpl, legacyBiomeImpl, stepConsumer);
+    }
+
+    long length = file.length();
+    double progressScale = index.getUncompressedSize() > 0
+        ? length / (double) index.getUncompressedSize()
+        : 0;
+    ForkJoinPool threads = Chunky.getCommonThreads();
+    try (DataInputStream payload = new DataInputStream(new FastBufferedInputStream(
+        new PositionalInputStream(
+            new ParallelInflaterInputStream(channel, Integer.BYTES, index, threads, 2 * threads.getParallelism()),
+            pos -> progress.accept((long) (pos * progressScale)))))) {
+      return loadPayload(version, payload, octreeImpl, legacyBiomeImpl, stepConsumer);
+    }
+  }
+
+  /**
+   * Read the block index at the end of an octree v9 file.
+   */
+  private static BlockIndex readIndex(FileChannel channel) throws IOException {
+    long length = channel.size();
+    long indexOffset = readFully(channel, length - Long.BYTES, Long.BYTES).getLong();
+    if (indexOffset < Integer.BYTES || indexOffset > length - Long.BYTES
+        || length - Long.BYTES - indexOffset > Integer.MAX_VALUE) {
+      throw new IOException("Corrupt block index offset");
+    }
+    ByteBuffer data = readFully(channel, indexOffset, (int) (length - Long.BYTES - indexOffset));
+    return BlockIndex.read(
+        new DataInputStream(new ByteArrayInputStream(data.array())), indexOffset - Integer.BYTES);
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int length)
+      throws IOException {
+    if (position < 0 || length < 0) {
+      throw new IOException("Position outside of the file");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Load octrees and grass/foliage textures from an uncompressed octree v3-v8 stream.
+   *
    * @param in   input stream for the file to load the scene from.
    * @param octreeImpl The octree implementation to use
    * @param legacyBiomeImpl The biome structure implementation to use to load any legacy WorldTextures
@@ -53,11 +204,15 @@ public class OctreeFileFormat {
    */
   public static OctreeData load(DataInputStream in, String octreeImpl, String legacyBiomeImpl, Consumer<String> stepConsumer) throws IOException {
     int version = in.readInt();
-    if (version < MIN_OCTREE_VERSION || version > OCTREE_VERSION) {
+    if (version < MIN_OCTREE_VERSION || version >= BLOCK_COMPRESSED_VERSION) {
       throw new IOException(String.format(
           "Incompatible octree format: wrong version number (expected %d up to %d, was %d).",
-          MIN_OCTREE_VERSION, OCTREE_VERSION, version));
+          MIN_OCTREE_VERSION, BLOCK_COMPRESSED_VERSION - 1, version));
     }
+    return loadPayload(version, in, octreeImpl, legacyBiomeImpl, stepConsumer);
+  }
+
+  private static OctreeData loadPayload(int version, DataInputStream in, String octreeImpl, String legacyBiomeImpl, Consumer<String> stepConsumer) throws IOException {
     OctreeData data = new OctreeData();
     stepConsumer.accept("block palette");
     data.palette = BlockPalette.read(in);
@@ -175,39 +330,42 @@ public class OctreeFileFormat {
 
   /**
    * Save octrees and grass/foliage/water textures to a file.
+   * The payload is compressed in independent blocks on the common threads.
    */
-  public static void store(DataOutputStream out, Octree octree,
+  public static void store(OutputStream output, Octree octree,
                            Octree waterTree, BlockPalette palette,
                            BiomeStructure grassColors,
                            BiomeStructure foliageColors,
                            BiomeStructure dryFoliageColors,
                            BiomeStructure waterColors)
       throws IOException {
-    out.writeInt(OCTREE_VERSION);
+    DataOutputStream rawOut = new DataOutputStream(output);
+    rawOut.writeInt(OCTREE_VERSION);
+    ForkJoinPool threads = Chunky.getCommonThreads();
+    ParallelDeflaterOutputStream compressed =
+        new ParallelDeflaterOutputStream(rawOut, threads, 2 * threads.getParallelism());
+    DataOutputStream out = new DataOutputStream(new FastBufferedOutputStream(compressed));
+
     palette.write(out);
     octree.store(out);
     waterTree.store(out);
-    if (grassColors != null) {
-      out.writeUTF(grassColors.biomeFormat());
-      grassColors.store(out);
-    } else {
-      out.writeUTF("NONE");
-    }
-    if (foliageColors != null) {
-      out.writeUTF(foliageColors.biomeFormat());
-      foliageColors.store(out);
-    } else {
-      out.writeUTF("NONE");
-    }
-    if (dryFoliageColors != null) {
-      out.writeUTF(dryFoliageColors.biomeFormat());
-      dryFoliageColors.store(out);
-    } else {
-      out.writeUTF("NONE");
-    }
-    if (waterColors != null) {
-      out.writeUTF(waterColors.biomeFormat());
-      waterColors.store(out);
+    storeBiomeStructure(out, grassColors);
+    storeBiomeStructure(out, foliageColors);
+    storeBiomeStructure(out, dryFoliageColors);
+    storeBiomeStructure(out, waterColors);
+    out.flush();
+    compressed.finish();
+
+    long indexOffset = Integer.BYTES + compressed.getCompressedSize();
+    compressed.getIndex().write(rawOut);
+    rawOut.writeLong(indexOffset);
+    rawOut.flush();
+  }
+
+  private static void storeBiomeStructure(DataOutputStream out, BiomeStructure biomeStructure) throws IOException {
+    if (biomeStructure != null) {
+      out.writeUTF(biomeStructure.biomeFormat());
+      biomeStructure.store(out);
     } else {
       out.writeUTF("NONE");
     }
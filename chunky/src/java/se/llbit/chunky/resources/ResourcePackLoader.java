@@ -184,6 +184,7 @@ public class ResourcePackLoader {
     if (!loadResources(loaders)) {
       Log.info(buildMissingResourcesErrorMessage(loaders));
     }
+    TextureAtlas.build();
   }
 
   /**
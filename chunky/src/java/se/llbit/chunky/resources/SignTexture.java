@@ -21,6 +21,7 @@ import se.llbit.chunky.resources.texturepack.FontTexture.Glyph;
 import se.llbit.json.JsonArray;
 import se.llbit.json.JsonValue;
 import se.llbit.math.Ray;
+import se.llbit.math.Vector4;
 import se.llbit.util.annotation.Nullable;
 
 public class SignTexture extends Texture {
@@ -148,6 +149,11 @@ public class SignTexture extends Texture {
     v0 = y0;
   }
 
+  @Override
+  public void getColor(double u, double v, Vector4 c) {
+    c.set(getColor(u, v));
+  }
+
   @Override
   public float[] getColor(double u, double v) {
     if (textColor != null) {
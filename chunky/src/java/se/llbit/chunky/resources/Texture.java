@@ -1769,6 +1769,7 @@ public class Texture {
   public static final Texture armorStand = new Texture();
 
   protected static boolean useAverageColor = PersistentSettings.getSingleColorTextures();
+  protected static boolean compactTexels = PersistentSettings.getCompactTextures();
 
   @NotNull protected BitmapImage image;
   protected int width;
@@ -1777,6 +1778,15 @@ public class Texture {
   private float[] avgColorLinear;
   private float[] avgColorFlat;
 
+  /**
+   * Linear RGBA components of every texel, decoded once when the texture is set.
+   * This is {@code null} in compact mode, where texels are decoded on every lookup.
+   *
+   * <p>The texels are replaced as a whole when the texture is moved into the
+   * {@link TextureAtlas}, so that rendering threads see either the old or the new texels.
+   */
+  private volatile Texels texels;
+
   private Image fxImage = null;
 
   public Texture() {
@@ -1805,16 +1815,21 @@ public class Texture {
     width = image.width;
     height = image.height;
     float[] pixelBuffer = new float[4];
+    float[] linearTexels = compactTexels ? null : new float[width * height * 4];
     for (int y = 0; y < height; ++y) {
       for (int x = 0; x < width; ++x) {
         int index = width * y + x;
         ColorUtil.getRGBAComponentsGammaCorrected(data[index], pixelBuffer);
+        if (linearTexels != null) {
+          System.arraycopy(pixelBuffer, 0, linearTexels, index * 4, 4);
+        }
         avgColorLinear[0] += pixelBuffer[3] * pixelBuffer[0];
         avgColorLinear[1] += pixelBuffer[3] * pixelBuffer[1];
         avgColorLinear[2] += pixelBuffer[3] * pixelBuffer[2];
         avgColorLinear[3] += pixelBuffer[3];
       }
     }
+    texels = linearTexels != null ? new Texels(linearTexels, 0, null) : null;
 
     avgColorFlat = new float[4];
     if (avgColorLinear[3] > 0.001) {
@@ -1838,7 +1853,56 @@ public class Texture {
    * Get linear color values.
    */
   public void getColor(double u, double v, Vector4 c) {
-    c.set(getColor(u, v));
+    getColor((int) (u * width - Ray.EPSILON), (int) ((1 - v) * height - Ray.EPSILON), c);
+  }
+
+  /**
+   * Get linear color values filtered for a lookup that covers a region of the given width,
+   * in blocks, on the texture. Uses the mip level matching the footprint if this texture is
+   * in the texture atlas, otherwise the full resolution texture is sampled.
+   *
+   * @param footprint approximate width of the lookup, see {@link Ray#getFootprint(double)}
+   */
+  public void getColor(double u, double v, double footprint, Vector4 c) {
+    Texels texels = this.texels;
+    int level = getMipLevel(texels, footprint);
+    if (level == 0) {
+      getColor(u, v, c);
+      return;
+    }
+    int x = (int) (u * width - Ray.EPSILON);
+    int y = (int) ((1 - v) * height - Ray.EPSILON);
+    if (x < 0 || x >= width || y < 0 || y >= height) {
+      c.set(0, 0, 0, 0);
+      return;
+    }
+    float[] data = texels.data;
+    int levelWidth = Math.max(1, width >> level);
+    int levelHeight = Math.max(1, height >> level);
+    int offset = texels.mipOffsets[level]
+        + 4 * (levelWidth * Math.min(y >> level, levelHeight - 1)
+        + Math.min(x >> level, levelWidth - 1));
+    // Only the color is filtered. The alpha of the full resolution texel is kept so that
+    // cutout textures keep their shape at a distance.
+    c.set(data[offset], data[offset + 1], data[offset + 2],
+        data[texels.offset + 4 * (width * y + x) + 3]);
+  }
+
+  /**
+   * @return the mip level to use for a lookup with the given footprint width
+   */
+  private int getMipLevel(Texels texels, double footprint) {
+    if (texels == null || texels.mipOffsets == null || useAverageColor) {
+      return 0;
+    }
+    int[] mips = texels.mipOffsets;
+    // Texels of the full resolution texture covered by the footprint.
+    double covered = footprint * Math.max(width, height);
+    if (covered < 2) {
+      return 0;
+    }
+    int level = 31 - Integer.numberOfLeadingZeros((int) Math.min(covered, 1 << 30));
+    return Math.min(level, mips.length - 1);
   }
 
   /**
@@ -1869,13 +1933,70 @@ public class Texture {
       return avgColorFlat;
     int index = width * y + x;
     float[] result = new float[4];
-    if(index < 0 || index > image.data.length) {
+    if(index < 0 || index >= image.data.length) {
       return result;
     }
-    ColorUtil.getRGBAComponentsGammaCorrected(image.data[index], result);
+    Texels texels = this.texels;
+    if (texels != null) {
+      System.arraycopy(texels.data, texels.offset + index * 4, result, 0, 4);
+    } else {
+      ColorUtil.getRGBAComponentsGammaCorrected(image.data[index], result);
+    }
     return result;
   }
 
+  /**
+   * Get linear color values without allocating.
+   */
+  public void getColor(int x, int y, Vector4 c) {
+    if (useAverageColor) {
+      c.set(avgColorFlat);
+      return;
+    }
+    int index = width * y + x;
+    Texels texels = this.texels;
+    if (index < 0 || index >= image.data.length) {
+      c.set(0, 0, 0, 0);
+    } else if (texels != null) {
+      float[] data = texels.data;
+      int offset = texels.offset + index * 4;
+      c.set(data[offset], data[offset + 1], data[offset + 2], data[offset + 3]);
+    } else {
+      int argb = image.data[index];
+      c.set(ColorUtil.toLinear(0xFF & (argb >> 16)), ColorUtil.toLinear(0xFF & (argb >> 8)),
+          ColorUtil.toLinear(0xFF & argb), (argb >>> 24) / 255.0f);
+    }
+  }
+
+  /**
+   * Add the weighted linear RGB components of a texel to a color.
+   */
+  private void addWeighted(int x, int y, double weight, Vector4 c) {
+    if (useAverageColor) {
+      c.x += weight * avgColorFlat[0];
+      c.y += weight * avgColorFlat[1];
+      c.z += weight * avgColorFlat[2];
+      return;
+    }
+    int index = width * y + x;
+    if (index < 0 || index >= image.data.length) {
+      return;
+    }
+    Texels texels = this.texels;
+    if (texels != null) {
+      float[] data = texels.data;
+      int offset = texels.offset + index * 4;
+      c.x += weight * data[offset];
+      c.y += weight * data[offset + 1];
+      c.z += weight * data[offset + 2];
+    } else {
+      int argb = image.data[index];
+      c.x += weight * ColorUtil.toLinear(0xFF & (argb >> 16));
+      c.y += weight * ColorUtil.toLinear(0xFF & (argb >> 8));
+      c.z += weight * ColorUtil.toLinear(0xFF & argb);
+    }
+  }
+
   /**
    * Get bilinear interpolated color value.
    */
@@ -1889,26 +2010,17 @@ public class Texture {
     int fy = (int) QuickMath.floor(y);
     int cy = (int) QuickMath.ceil(y);
 
-    float[] rgb = getColor(fx, fy);
+    c.x = 0;
+    c.y = 0;
+    c.z = 0;
     weight = (1 - (y - fy)) * (1 - (x - fx));
-    c.x = weight * rgb[0];
-    c.y = weight * rgb[1];
-    c.z = weight * rgb[2];
-    rgb = getColor(cx, fy);
+    addWeighted(fx, fy, weight, c);
     weight = (1 - (y - fy)) * (1 - (cx - x));
-    c.x += weight * rgb[0];
-    c.y += weight * rgb[1];
-    c.z += weight * rgb[2];
-    rgb = getColor(fx, cy);
+    addWeighted(cx, fy, weight, c);
     weight = (1 - (cy - y)) * (1 - (x - fx));
-    c.x += weight * rgb[0];
-    c.y += weight * rgb[1];
-    c.z += weight * rgb[2];
-    rgb = getColor(cx, cy);
+    addWeighted(fx, cy, weight, c);
     weight = (1 - (cy - y)) * (1 - (cx - x));
-    c.x += weight * rgb[0];
-    c.y += weight * rgb[1];
-    c.z += weight * rgb[2];
+    addWeighted(cx, cy, weight, c);
   }
 
   public int getColorWrapped(int u, int v) {
@@ -1973,7 +2085,129 @@ public class Texture {
     return image;
   }
 
+  /**
+   * @return the number of floats needed to store this texture with all mip levels, or zero if
+   * this texture has no decoded texels
+   */
+  int getMipChainSize() {
+    if (texels == null) {
+      return 0;
+    }
+    int size = 0;
+    for (int level = 0; level < getMipLevelCount(); ++level) {
+      size += 4 * Math.max(1, width >> level) * Math.max(1, height >> level);
+    }
+    return size;
+  }
+
+  private int getMipLevelCount() {
+    int levels = 1;
+    while ((width >> levels) > 0 || (height >> levels) > 0) {
+      levels += 1;
+    }
+    return levels;
+  }
+
+  /**
+   * Move the texels of this texture into the given atlas buffer, followed by box filtered
+   * mip levels.
+   *
+   * @param atlas atlas buffer with room for {@link #getMipChainSize()} floats at the offset
+   * @param offset start of this texture in the atlas
+   */
+  void moveToAtlas(float[] atlas, int offset) {
+    Texels texels = this.texels;
+    int levels = getMipLevelCount();
+    int[] mips = new int[levels];
+    System.arraycopy(texels.data, texels.offset, atlas, offset, width * height * 4);
+    mips[0] = offset;
+    int levelWidth = width;
+    int levelHeight = height;
+    int next = offset + width * height * 4;
+    for (int level = 1; level < levels; ++level) {
+      int mipWidth = Math.max(1, levelWidth >> 1);
+      int mipHeight = Math.max(1, levelHeight >> 1);
+      mips[level] = next;
+      downsample(atlas, mips[level - 1], levelWidth, levelHeight, next, mipWidth, mipHeight);
+      next += 4 * mipWidth * mipHeight;
+      levelWidth = mipWidth;
+      levelHeight = mipHeight;
+    }
+    this.texels = new Texels(atlas, offset, mips);
+  }
+
+  /**
+   * Box filter a mip level to half its size. The color is weighted by alpha so that
+   * transparent texels do not darken the edges of cutout textures.
+   */
+  private static void downsample(float[] texels, int src, int srcWidth, int srcHeight,
+      int dst, int dstWidth, int dstHeight) {
+    for (int y = 0; y < dstHeight; ++y) {
+      for (int x = 0; x < dstWidth; ++x) {
+        float r = 0, g = 0, b = 0, a = 0;
+        float fr = 0, fg = 0, fb = 0;
+        int samples = 0;
+        for (int sy = 2 * y; sy < Math.min(2 * y + 2, srcHeight); ++sy) {
+          for (int sx = 2 * x; sx < Math.min(2 * x + 2, srcWidth); ++sx) {
+            int i = src + 4 * (srcWidth * sy + sx);
+            float alpha = texels[i + 3];
+            r += alpha * texels[i];
+            g += alpha * texels[i + 1];
+            b += alpha * texels[i + 2];
+            a += alpha;
+            fr += texels[i];
+            fg += texels[i + 1];
+            fb += texels[i + 2];
+            samples += 1;
+          }
+        }
+        int i = dst + 4 * (dstWidth * y + x);
+        if (a > 0) {
+          texels[i] = r / a;
+          texels[i + 1] = g / a;
+          texels[i + 2] = b / a;
+        } else {
+          texels[i] = fr / samples;
+          texels[i + 1] = fg / samples;
+          texels[i + 2] = fb / samples;
+        }
+        texels[i + 3] = a / samples;
+      }
+    }
+  }
+
   public static void setUseAverageColor(boolean useAverageColor) {
     Texture.useAverageColor = useAverageColor;
   }
+
+  /**
+   * Store only the encoded texels of textures that are loaded from now on, and decode them on
+   * every lookup. Uses a quarter of the memory of the decoded texels, at the cost of slower lookups.
+   */
+  public static void setCompactTexels(boolean compactTexels) {
+    Texture.compactTexels = compactTexels;
+  }
+
+  /**
+   * Decoded texels of a texture. Instances are never modified after construction.
+   */
+  private static final class Texels {
+    /** Linear RGBA components, possibly shared with other textures in the atlas. */
+    final float[] data;
+
+    /** Start of the full resolution texels in {@link #data}. */
+    final int offset;
+
+    /**
+     * Offsets of the mip levels in {@link #data}, starting with the full resolution level.
+     * This is {@code null} for textures without mip levels.
+     */
+    final int[] mipOffsets;
+
+    Texels(float[] data, int offset, int[] mipOffsets) {
+      this.data = data;
+      this.offset = offset;
+      this.mipOffsets = mipOffsets;
+    }
+  }
 }
@@ -0,0 +1,125 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.resources;
+
+import se.llbit.log.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Packs the decoded texels of the block textures into large shared buffers, together with
+ * box filtered mip levels for each texture.
+ *
+ * <p>Block textures are small and otherwise spread over hundreds of arrays on the heap.
+ * Keeping them in a few pages improves memory locality when rendering, and the mip levels
+ * are used to filter textures on distant blocks.
+ *
+ * <p>Only textures that have been {@link #register registered} are packed. Textures are
+ * registered when they are loaded from a resource pack by a
+ * {@link se.llbit.chunky.resources.texturepack.SimpleTexture} loader. Subclasses, such as
+ * animated or entity textures, keep their own texels and have no mip levels.
+ */
+public class TextureAtlas {
+  /**
+   * Number of floats in one atlas page (16 MiB). The atlas is split into pages so that
+   * building it never needs one huge allocation while the texels of the textures are still
+   * held in their own arrays.
+   */
+  static final int PAGE_SIZE = 1 << 22;
+
+  /** Registered textures. Textures that are no longer used elsewhere are dropped. */
+  private static final Set<Texture> registered =
+      Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  private TextureAtlas() {}
+
+  /**
+   * Register a texture to be packed into the atlas the next time it is built.
+   * Only plain {@link Texture} instances are packed.
+   */
+  public static void register(Texture texture) {
+    if (texture.getClass() == Texture.class) {
+      registered.add(texture);
+    }
+  }
+
+  /**
+   * Build the atlas from the registered textures. This should be called after the resource
+   * packs have been loaded, and replaces the texels of previously packed textures.
+   */
+  public static void build() {
+    List<Texture> textures;
+    synchronized (registered) {
+      textures = new ArrayList<>(registered);
+    }
+    int pages = pack(textures, PAGE_SIZE);
+    if (pages > 0) {
+      Log.infof("Packed %d textures into the texture atlas (%d pages)", textures.size(), pages);
+    }
+  }
+
+  /**
+   * Pack textures into atlas pages of the given size. Textures are filled into a page in
+   * order and a new page is started when the next texture does not fit. A texture that is
+   * larger than a page gets a page of its own.
+   *
+   * @return the number of pages allocated
+   */
+  static int pack(Collection<Texture> textures, int pageSize) {
+    int pages = 0;
+    List<Texture> page = new ArrayList<>();
+    int size = 0;
+    for (Texture texture : textures) {
+      int chainSize = texture.getMipChainSize();
+      if (chainSize == 0) {
+        continue;
+      }
+      if (size + chainSize > pageSize && !page.isEmpty()) {
+        fillPage(page, size);
+        pages += 1;
+        page.clear();
+        size = 0;
+      }
+      page.add(texture);
+      size += chainSize;
+    }
+    if (!page.isEmpty()) {
+      fillPage(page, size);
+      pages += 1;
+    }
+    return pages;
+  }
+
+  /**
+   * Allocate one page and move the given textures into it. The previous texels of the
+   * textures can be collected as soon as the page is filled.
+   */
+  private static void fillPage(List<Texture> textures, int size) {
+    float[] atlas = new float[size];
+    int offset = 0;
+    for (Texture texture : textures) {
+      int chainSize = texture.getMipChainSize();
+      texture.moveToAtlas(atlas, offset);
+      offset += chainSize;
+    }
+  }
+}
@@ -19,6 +19,7 @@ package se.llbit.chunky.resources.texturepack;
 import se.llbit.chunky.resources.BitmapImage;
 import se.llbit.chunky.resources.LayeredResourcePacks;
 import se.llbit.chunky.resources.Texture;
+import se.llbit.chunky.resources.TextureAtlas;
 import se.llbit.resources.ImageLoader;
 
 import java.io.IOException;
@@ -59,6 +60,7 @@ public class SimpleTexture extends TextureLoader {
     } else {
       texture.setTexture(image);
     }
+    TextureAtlas.register(texture);
     return true;
   }
 
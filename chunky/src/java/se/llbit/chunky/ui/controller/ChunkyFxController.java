@@ -148,6 +148,9 @@ public class ChunkyFxController
 
   private File saveFrameDirectory = new File(System.getProperty("user.dir"));
 
+  /** Set when Chunky quits as soon as the background saves are done. */
+  private boolean quitting = false;
+
   public final DecimalFormat decimalFormat = new DecimalFormat();
   {
     decimalFormat.setGroupingSize(3);
@@ -361,12 +364,12 @@ public class ChunkyFxController
     renderManager.setSnapshotControl(SnapshotControl.DEFAULT);
     renderManager.setOnFrameCompleted((scene1, spp) -> {
       if (renderManager.getSnapshotControl().saveSnapshot(scene1, spp)) {
-        scene1.saveSnapshot(new File(renderController.getContext().getSceneDirectory(), "snapshots"), taskTracker);
+        asyncSceneManager.saveSnapshotInBackground(scene1, new File(renderController.getContext().getSceneDirectory(), "snapshots"));
       }
 
       if (renderManager.getSnapshotControl().saveRenderDump(scene1, spp)) {
         // Save the scene description and current render dump.
-        asyncSceneManager.saveScene(renderController.getContext().getSceneDirectory());
+        asyncSceneManager.saveSceneInBackground(renderController.getContext().getSceneDirectory());
       }
     });
 
@@ -725,12 +728,37 @@ public class ChunkyFxController
     Dialogs.setDefaultButton(confirmQuit, ButtonType.CANCEL);
     ButtonType result = confirmQuit.showAndWait().orElse(ButtonType.CANCEL);
     if(result.getButtonData() == ButtonBar.ButtonData.YES) {
-      Platform.exit();
+      if (asyncSceneManager.backgroundSavesDone()) {
+        Platform.exit();
+      } else {
+        // Don't cut off a render dump that is currently being written. The window stays open
+        // and shows the progress of the save until it is done.
+        event.consume();
+        quitAfterBackgroundSaves();
+      }
     } else {
       event.consume();
     }
   }
 
+  private void quitAfterBackgroundSaves() {
+    if (quitting) {
+      return;
+    }
+    quitting = true;
+    progressLbl.setText("Waiting for the scene to be saved before quitting");
+    Thread waitThread = new Thread(() -> {
+      try {
+        asyncSceneManager.awaitBackgroundSaves();
+      } catch (InterruptedException ignored) {
+        // Ignored.
+      }
+      Platform.runLater(Platform::exit);
+    }, "Quit after saving");
+    waitThread.setDaemon(true);
+    waitThread.start();
+  }
+
   public void openSceneChooser() {
     try {
       if (this.sceneChooser == null) {
@@ -30,6 +30,8 @@ import se.llbit.chunky.main.Chunky;
 import se.llbit.chunky.renderer.EmitterSamplingStrategy;
 import se.llbit.chunky.renderer.RenderController;
 import se.llbit.chunky.renderer.RenderManager;
+import se.llbit.chunky.renderer.SamplePrecision;
+import se.llbit.chunky.renderer.SamplerType;
 import se.llbit.chunky.renderer.export.PictureExportFormat;
 import se.llbit.chunky.renderer.export.PictureExportFormats;
 import se.llbit.chunky.renderer.scene.AsynchronousSceneManager;
@@ -70,9 +72,14 @@ public class AdvancedTab extends ScrollPane implements RenderControlsTab, Initia
   @FXML private CheckBox fastFog;
   @FXML private CheckBox fancierTranslucency;
   @FXML private DoubleAdjuster transmissivityCap;
+  @FXML private CheckBox textureFiltering;
   @FXML private IntegerAdjuster cacheResolution;
   @FXML private DoubleAdjuster animationTime;
   @FXML private ChoiceBox<PictureExportFormat> outputMode;
+  @FXML private ChoiceBox<SamplePrecision> samplePrecision;
+  @FXML private ChoiceBox<SamplerType> samplerType;
+  @FXML private CheckBox adaptiveSampling;
+  @FXML private DoubleAdjuster adaptiveThreshold;
   @FXML private ChoiceBox<String> octreeImplementation;
   @FXML private Button octreeSwitchImplementation;
   @FXML private ChoiceBox<String> bvhMethod;
@@ -150,12 +157,75 @@ public class AdvancedTab extends ScrollPane implements RenderControlsTab, Initia
     });
     outputMode.getSelectionModel().selectedItemProperty()
             .addListener((observable, oldValue, newValue) -> scene.setPictureExportFormat(newValue));
+    samplePrecision.getItems().addAll(SamplePrecision.values());
+    samplePrecision.setConverter(new StringConverter<SamplePrecision>() {
+      @Override
+      public String toString(SamplePrecision object) {
+        return object == null ? null : object.getName();
+      }
+
+      @Override
+      public SamplePrecision fromString(String string) {
+        return SamplePrecision.valueOf(string);
+      }
+    });
+    samplePrecision.setTooltip(new Tooltip(
+        "Precision of the accumulated samples. Float precision uses half the memory.\n"
+            + "Changing this resets the render."));
+    samplePrecision.getSelectionModel().selectedItemProperty()
+            .addListener((observable, oldValue, newValue) -> {
+              if (newValue != null) {
+                scene.setSamplePrecision(newValue);
+              }
+            });
+    samplerType.getItems().addAll(SamplerType.values());
+    samplerType.setConverter(new StringConverter<SamplerType>() {
+      @Override
+      public String toString(SamplerType object) {
+        return object == null ? null : object.getName();
+      }
+
+      @Override
+      public SamplerType fromString(String string) {
+        return SamplerType.valueOf(string);
+      }
+    });
+    samplerType.setTooltip(new Tooltip(
+        "Method used to pick the random numbers of the samples.\n"
+            + "Sobol gives less noise at the same sample count."));
+    samplerType.getSelectionModel().selectedItemProperty()
+            .addListener((observable, oldValue, newValue) -> {
+              if (newValue != null) {
+                scene.setSamplerType(newValue);
+              }
+            });
+    adaptiveSampling.setTooltip(new Tooltip(
+        "Stop rendering tiles whose estimated noise is below the noise threshold."));
+    adaptiveSampling.selectedProperty()
+      .addListener((observable, oldValue, newValue) -> {
+        scene.setAdaptiveSampling(newValue);
+        adaptiveThreshold.setVisible(newValue);
+        adaptiveThreshold.setManaged(newValue);
+      });
+    boolean thresholdVisible = scene != null && scene.isAdaptiveSampling();
+    adaptiveThreshold.setVisible(thresholdVisible);
+    adaptiveThreshold.setManaged(thresholdVisible);
+    adaptiveThreshold.setName("Noise threshold");
+    adaptiveThreshold.setRange(0.001, 0.1);
+    adaptiveThreshold.makeLogarithmic();
+    adaptiveThreshold.clampMin();
+    adaptiveThreshold.setTooltip("Estimated relative noise at which a tile stops being rendered.\nLower values give cleaner images but take longer.");
+    adaptiveThreshold.onValueChange(value -> scene.setAdaptiveThreshold(value));
     if(!ShutdownAlert.canShutdown()) {
       shutdown.setDisable(true);
     }
     fastFog.setTooltip(new Tooltip("Enable faster fog rendering algorithm."));
     fastFog.selectedProperty()
             .addListener((observable, oldValue, newValue) -> scene.setFastFog(newValue));
+    textureFiltering.setTooltip(new Tooltip(
+        "Filter the textures of distant blocks to reduce noise and aliasing."));
+    textureFiltering.selectedProperty()
+        .addListener((observable, oldValue, newValue) -> scene.setTextureFiltering(newValue));
     fancierTranslucency.setTooltip(new Tooltip("Enable more sophisticated algorithm for computing color changes through translucent materials."));
     fancierTranslucency.selectedProperty()
       .addListener((observable, oldValue, newValue) -> {
@@ -333,9 +403,14 @@ public class AdvancedTab extends ScrollPane implements RenderControlsTab, Initia
   @Override
   public void update(Scene scene) {
     outputMode.getSelectionModel().select(scene.getPictureExportFormat());
+    samplePrecision.getSelectionModel().select(scene.getSamplePrecision());
+    samplerType.getSelectionModel().select(scene.getSamplerType());
+    adaptiveSampling.setSelected(scene.isAdaptiveSampling());
+    adaptiveThreshold.set(scene.getAdaptiveThreshold());
     fastFog.setSelected(scene.fog.fastFog());
     fancierTranslucency.setSelected(scene.getFancierTranslucency());
     transmissivityCap.set(scene.getTransmissivityCap());
+    textureFiltering.setSelected(scene.getTextureFiltering());
     renderThreads.set(PersistentSettings.getNumThreads());
     cpuLoad.set(PersistentSettings.getCPULoad());
     rayDepth.set(scene.getRayDepth());
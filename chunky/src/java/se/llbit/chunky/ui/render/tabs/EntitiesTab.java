@@ -297,7 +297,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
           openingAngle.setRange(0, 180);
           openingAngle.onValueChange(value -> {
             book.setOpenAngle(Math.toRadians(value));
-            scene.rebuildActorBvh();
+            scene.refitActorBvh(entity);
           });
           controls.getChildren().add(openingAngle);
 
@@ -308,7 +308,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
           page1Angle.setRange(0, 180);
           page1Angle.onValueChange(value -> {
             book.setPageAngleA(Math.toRadians(value));
-            scene.rebuildActorBvh();
+            scene.refitActorBvh(entity);
           });
           controls.getChildren().add(page1Angle);
 
@@ -319,7 +319,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
           page2Angle.setRange(0, 180);
           page2Angle.onValueChange(value -> {
             book.setPageAngleB(Math.toRadians(value));
-            scene.rebuildActorBvh();
+            scene.refitActorBvh(entity);
           });
           controls.getChildren().add(page2Angle);
         }
@@ -466,22 +466,22 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
         withEntity(e -> {
           Vector3 currentPosition = e.getPosition();
           e.setPosition(new Vector3(newValue.doubleValue(), currentPosition.y, currentPosition.z));
+          scene.refitActorBvh(e);
         });
-        scene.rebuildActorBvh();
       });
       posY.valueProperty().addListener((observable, oldValue, newValue) -> {
         withEntity(e -> {
           Vector3 currentPosition = e.getPosition();
           e.setPosition(new Vector3(currentPosition.x, newValue.doubleValue(), currentPosition.z));
+          scene.refitActorBvh(e);
         });
-        scene.rebuildActorBvh();
       });
       posZ.valueProperty().addListener((observable, oldValue, newValue) -> {
         withEntity(e -> {
           Vector3 currentPosition = e.getPosition();
           e.setPosition(new Vector3(currentPosition.x, currentPosition.y, newValue.doubleValue()));
+          scene.refitActorBvh(e);
         });
-        scene.rebuildActorBvh();
       });
 
       controls.getChildren().add(position);
@@ -494,7 +494,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
       scale.setRange(0.1, 10);
       scale.onValueChange(value -> {
         poseable.setScale(value);
-        scene.rebuildActorBvh();
+        scene.refitActorBvh(entity);
       });
       controls.getChildren().add(scale);
 
@@ -506,7 +506,7 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
         headScale.setRange(0.1, 10);
         headScale.onValueChange(value -> {
           poseable.setHeadScale(value);
-          scene.rebuildActorBvh();
+          scene.refitActorBvh(entity);
         });
         controls.getChildren().add(headScale);
       }
@@ -551,19 +551,19 @@ public class EntitiesTab extends ScrollPane implements RenderControlsTab, Initia
         withPose(entity, partList.getValue(), partPose -> {
           partPose.set(0, Json.of(Math.toRadians(value)));
         });
-        scene.rebuildActorBvh();
+        scene.refitActorBvh(entity);
       });
       yaw.onValueChange(value -> {
         withPose(entity, partList.getValue(), partPose -> {
           partPose.set(1, Json.of(Math.toRadians(value)));
         });
-        scene.rebuildActorBvh();
+        scene.refitActorBvh(entity);
       });
       roll.onValueChange(value -> {
         withPose(entity, partList.getValue(), partPose -> {
           partPose.set(2, Json.of(Math.toRadians(value)));
         });
-        scene.rebuildActorBvh();
+        scene.refitActorBvh(entity);
       });
 
       if (partNames.length > 0) {
@@ -71,6 +71,7 @@ public class GeneralTab extends ScrollPane implements RenderControlsTab, Initial
   @FXML private Button restoreDefaults;
   @FXML private Button loadSelectedChunks;
   @FXML private Button reloadChunks;
+  @FXML private Button refreshChangedChunks;
   @FXML private Label canvasSizeLabel;
   @FXML private SizeInput canvasSizeInput;
   @FXML private Button applySize;
@@ -157,6 +158,7 @@ public class GeneralTab extends ScrollPane implements RenderControlsTab, Initial
     saveSnapshots.setSelected(scene.shouldSaveSnapshots());
     reloadChunks.setTooltip(new Tooltip("Reload the currently-loaded chunks."));
     reloadChunks.setDisable(scene.numberOfChunks() == 0);
+    refreshChangedChunks.setDisable(scene.numberOfChunks() == 0);
     loadSelectedChunks.setTooltip(new Tooltip("Load chunks selected in the map view."));
     loadSelectedChunks.setDisable(
       mapLoader.getWorld() instanceof EmptyWorld ||
@@ -484,12 +486,17 @@ public class GeneralTab extends ScrollPane implements RenderControlsTab, Initial
       controller.getSceneManager()
           .loadChunks(mapLoader.getWorld(), chunkyFxController.getChunkSelection().getSelectionByRegion());
       reloadChunks.setDisable(chunkyFxController.getChunkSelection().isEmpty());
+      refreshChangedChunks.setDisable(chunkyFxController.getChunkSelection().isEmpty());
     });
 
     reloadChunks.setTooltip(new Tooltip("Reload all chunks in the scene."));
     reloadChunks.setGraphic(new ImageView(Icon.reload.fxImage()));
     reloadChunks.setOnAction(e -> controller.getSceneManager().reloadChunks());
 
+    refreshChangedChunks.setTooltip(new Tooltip("Reload only the chunks that have changed in the world since they were loaded."));
+    refreshChangedChunks.setGraphic(new ImageView(Icon.reload.fxImage()));
+    refreshChangedChunks.setOnAction(e -> controller.getSceneManager().refreshChangedChunks());
+
     canvasSizeLabel.setGraphic(new ImageView(Icon.scale.fxImage()));
     canvasSizeInput.getSize().addListener(this::updateCanvasSize);
 
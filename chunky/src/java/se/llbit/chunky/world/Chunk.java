@@ -39,6 +39,7 @@ import se.llbit.util.BitBuffer;
 import se.llbit.util.Mutable;
 import se.llbit.util.annotation.NotNull;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -90,6 +91,7 @@ public class Chunk {
   private final Dimension dimension;
 
   protected int dataTimestamp = 0;
+  protected int dataLocation = 0;
   protected int surfaceTimestamp = 0;
   protected int biomesTimestamp = 0;
 
@@ -125,19 +127,25 @@ public class Chunk {
   }
 
   /**
-   * @param request fresh request set
-   * @return loaded data, or null if something went wrong
+   * Reset the rendered layers in this chunk.
    */
-  private Map<String, Tag> getEntityTags(Set<String> request) throws ChunkLoadingException {
-    MCRegion region = (MCRegion) dimension.getRegion(position.getRegionPosition());
-    return region.getEntityTags(this.position, request);
+  public synchronized void reset() {
+    surface = IconLayer.UNKNOWN;
   }
 
   /**
-   * Reset the rendered layers in this chunk.
+   * @return the region file timestamp of the chunk data that was last read for this chunk
    */
-  public synchronized void reset() {
-    surface = IconLayer.UNKNOWN;
+  public synchronized int getDataTimestamp() {
+    return dataTimestamp;
+  }
+
+  /**
+   * @return the region file location table entry of the chunk data that was last read for this
+   * chunk, 0 if not known
+   */
+  public synchronized int getDataLocation() {
+    return dataLocation;
   }
 
   /**
@@ -446,17 +454,53 @@ public class Chunk {
    * @throws ChunkLoadingException If there is an issue loading the chunk, and it should be aborted
    */
   public synchronized void getChunkData(@NotNull Mutable<ChunkData> reuseChunkData, BlockPalette palette, BiomePalette biomePalette, int minY, int maxY) throws ChunkLoadingException {
-    Set<String> request = new HashSet<>();
-    request.add(DATAVERSION);
-    request.add(LEVEL_SECTIONS);
-    request.add(SECTIONS_POST_21W39A);
-    request.add(LEVEL_BIOMES);
-    request.add(BIOMES_POST_21W39A);
-    request.add(LEVEL_ENTITIES);
-    request.add(LEVEL_TILEENTITIES);
-    request.add(BLOCK_ENTITIES_POST_21W43A);
-    Map<String, Tag> dataMap = getChunkTags(request);
+    MCRegion region = (MCRegion) dimension.getRegion(position.getRegionPosition());
+    ChunkDataSource source = region.getChunkDataSource(this.position);
+    this.dataTimestamp = source.timestamp;
+    this.dataLocation = source.location;
     // TODO: improve error handling here.
+    if (!source.hasData()) {
+      throw new ChunkLoadingException(String.format("Got null data for chunk %s", this.position));
+    }
+
+    StreamingChunkDecoder decoder = StreamingChunkDecoder.get();
+    int dataVersion;
+    try {
+      if (decoder.parse(source, minY, maxY)) {
+        // 1.18+ chunks are decoded straight from the NBT stream.
+        dataVersion = decoder.getDataVersion();
+        version = ChunkVersion.POST_FLATTENING;
+        ChunkData chunkData = prepareChunkData(reuseChunkData, decoder.inclusiveChunkBounds());
+        decoder.load(chunkData, palette, biomePalette);
+      } else {
+        dataVersion = loadChunkDataFromTags(source, reuseChunkData, palette, biomePalette, minY, maxY);
+      }
+    } catch (IOException e) {
+      throw new ChunkLoadingException(String.format("Failed to read chunk %s from region file!", position), e);
+    }
+
+    // post 20w45A entities
+    if (dataVersion >= DATAVERSION_20W45A) {
+      ChunkDataSource entities = region.getEntityDataSource(this.position);
+      if (entities.hasData()) {
+        try {
+          decoder.loadEntities(entities, reuseChunkData.get());
+        } catch (IOException e) {
+          throw new ChunkLoadingException(String.format("Failed to read chunk %s from region file!", position), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Load chunk data from NBT tag trees, used for chunks that are not handled by the
+   * {@link StreamingChunkDecoder}.
+   *
+   * @return the data version of the chunk
+   */
+  private int loadChunkDataFromTags(ChunkDataSource source, Mutable<ChunkData> reuseChunkData,
+      BlockPalette palette, BiomePalette biomePalette, int minY, int maxY) throws ChunkLoadingException {
+    Map<String, Tag> dataMap = MCRegion.parseNbtFromChunkDataSource(this.position, chunkTagRequest(), source);
     if (dataMap == null) {
       throw new ChunkLoadingException(String.format("Got null data for chunk %s", this.position));
     }
@@ -464,16 +508,35 @@ public class Chunk {
 
     int dataVersion = data.get(DATAVERSION).intValue();
 
-    IntIntImmutablePair chunkBounds = inclusiveChunkBounds(data);
-
-    if(reuseChunkData.get() == null || reuseChunkData.get() instanceof EmptyChunkData) {
-      reuseChunkData.set(dimension.createChunkData(reuseChunkData.get(), chunkBounds.leftInt(), chunkBounds.rightInt()));
-    } else {
-      reuseChunkData.get().clear();
-    }
-    ChunkData chunkData = reuseChunkData.get(); //unwrap mutable, for ease of use
+    ChunkData chunkData = prepareChunkData(reuseChunkData, inclusiveChunkBounds(data));
 
     version = chunkVersion(data);
+    loadChunkTags(data, chunkData, palette, biomePalette, minY, maxY);
+    return dataVersion;
+  }
+
+  /**
+   * @return the tags that are read from a chunk by the tag tree loader
+   */
+  static Set<String> chunkTagRequest() {
+    Set<String> request = new HashSet<>();
+    request.add(DATAVERSION);
+    request.add(LEVEL_SECTIONS);
+    request.add(SECTIONS_POST_21W39A);
+    request.add(LEVEL_BIOMES);
+    request.add(BIOMES_POST_21W39A);
+    request.add(LEVEL_ENTITIES);
+    request.add(LEVEL_TILEENTITIES);
+    request.add(BLOCK_ENTITIES_POST_21W43A);
+    return request;
+  }
+
+  /**
+   * Load the biomes, blocks, entities and block entities of a chunk tag tree into the
+   * chunk data.
+   */
+  static void loadChunkTags(Tag data, ChunkData chunkData, BlockPalette palette,
+      BiomePalette biomePalette, int minY, int maxY) {
     Tag sections = getTagFromNames(data, LEVEL_SECTIONS, SECTIONS_POST_21W39A);
     Tag entitiesTag = data.get(LEVEL_ENTITIES);
     Tag tileEntitiesTag = getTagFromNames(data, LEVEL_TILEENTITIES, BLOCK_ENTITIES_POST_21W43A);
@@ -496,23 +559,18 @@ public class Chunk {
         }
       }
     }
+  }
 
-    // post 20w45A entities
-    if (dataVersion >= DATAVERSION_20W45A) {
-      Set<String> entitiesRequest = new HashSet<>();
-      entitiesRequest.add(ENTITIES_POST_20W45A);
-
-      Map<String, Tag> entitiesMap = getEntityTags(entitiesRequest);
-      if (entitiesMap != null) {
-        entitiesTag = entitiesMap.get(".Entities");
-        if (entitiesTag.isList()) {
-          for (SpecificTag tag : (ListTag) entitiesTag) {
-            if (tag.isCompoundTag())
-              chunkData.addEntity((CompoundTag) tag);
-          }
-        }
-      }
+  /**
+   * Create a chunk data object for the given bounds, or clear the reused one.
+   */
+  private ChunkData prepareChunkData(Mutable<ChunkData> reuseChunkData, IntIntImmutablePair chunkBounds) {
+    if(reuseChunkData.get() == null || reuseChunkData.get() instanceof EmptyChunkData) {
+      reuseChunkData.set(dimension.createChunkData(reuseChunkData.get(), chunkBounds.leftInt(), chunkBounds.rightInt()));
+    } else {
+      reuseChunkData.get().clear();
     }
+    return reuseChunkData.get(); //unwrap mutable, for ease of use
   }
 
   /**
@@ -19,21 +19,28 @@ package se.llbit.chunky.world;
 import it.unimi.dsi.fastutil.io.FastBufferedInputStream;
 import net.jpountz.lz4.LZ4BlockInputStream;
 import net.jpountz.lz4.LZ4Factory;
+import se.llbit.util.io.ByteBufferInflaterInputStream;
+import se.llbit.util.io.ByteBufferInputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
 /**
- * Container representing a handle to a singular chunk's data with its last modified timestamp.
+ * Container representing a handle to a singular chunk's data with its last modified timestamp
+ * and the location table entry it was read from.
  *
  * @author Jesper Öqvist <jesper@llbit.se>
  */
 public class ChunkDataSource {
   public final int timestamp;
+  /** Sector offset and sector count of the chunk data in the region file, 0 if not known. */
+  public final int location;
   private final byte[] data;
+  private final ByteBuffer buffer;
   private final CompressionScheme compressionScheme;
 
   public ChunkDataSource(int timestamp) {
@@ -42,15 +49,44 @@ public class ChunkDataSource {
 
   public ChunkDataSource(int timestamp, byte[] data, CompressionScheme compressionScheme) {
     this.timestamp = timestamp;
+    this.location = 0;
     this.data = data;
+    this.buffer = null;
+    this.compressionScheme = compressionScheme;
+  }
+
+  /**
+   * Create a data source that reads the remaining bytes of a buffer, e.g. a reused
+   * read buffer. The buffer is not copied.
+   */
+  public ChunkDataSource(int timestamp, ByteBuffer buffer, CompressionScheme compressionScheme) {
+    this(timestamp, 0, buffer, compressionScheme);
+  }
+
+  /**
+   * Create a data source that reads the remaining bytes of a buffer, e.g. a reused
+   * read buffer, for chunk data read from the given location in a region file.
+   */
+  public ChunkDataSource(int timestamp, int location, ByteBuffer buffer,
+      CompressionScheme compressionScheme) {
+    this.timestamp = timestamp;
+    this.location = location;
+    this.data = null;
+    this.buffer = buffer;
     this.compressionScheme = compressionScheme;
   }
 
   public boolean hasData() {
+    if (buffer != null) {
+      return buffer.hasRemaining();
+    }
     return data != null && data.length > 0;
   }
 
   public InputStream getInputStream() throws IOException {
+    if (buffer != null) {
+      return new FastBufferedInputStream(compressionScheme.wrapBuffer(buffer.duplicate()));
+    }
     return new FastBufferedInputStream(
       compressionScheme.wrapInputStream(
         new ByteArrayInputStream(data)
@@ -78,5 +114,16 @@ public class ChunkDataSource {
     public InputStream wrapInputStream(InputStream in) throws IOException {
       return wrapper.wrap(in);
     }
+
+    /**
+     * Decompress the remaining bytes of a buffer. Zlib data is inflated
+     * directly from the buffer.
+     */
+    public InputStream wrapBuffer(ByteBuffer buffer) throws IOException {
+      if (this == ZLIB) {
+        return new ByteBufferInflaterInputStream(buffer);
+      }
+      return wrapper.wrap(new ByteBufferInputStream(buffer));
+    }
   }
 }
@@ -0,0 +1,545 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.world;
+
+import it.unimi.dsi.fastutil.ints.IntIntImmutablePair;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.chunk.ChunkData;
+import se.llbit.chunky.chunk.biome.BiomeData;
+import se.llbit.chunky.chunk.biome.GenericQuartBiomeData3d;
+import se.llbit.chunky.world.biome.Biome;
+import se.llbit.chunky.world.biome.BiomePalette;
+import se.llbit.chunky.world.biome.Biomes;
+import se.llbit.log.Log;
+import se.llbit.math.QuickMath;
+import se.llbit.nbt.CompoundTag;
+import se.llbit.nbt.Tag;
+import se.llbit.util.BitBuffer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static se.llbit.chunky.world.Chunk.*;
+
+/**
+ * Decodes chunks in the 1.18+ format (sections at the root of the chunk tag) straight
+ * from the inflated NBT stream, without building a tag tree for the whole chunk.
+ *
+ * <p>Only the section Y, block state and biome palettes and data, and the block entities
+ * are read. Everything else, like light data and heightmaps, is skipped in the stream.
+ * Tags are only built for block palette entries and block entities. Older chunks, with
+ * their data in the "Level" tag, are left to the tag tree loader.
+ *
+ * <p>The decoder keeps its buffers between chunks, so one instance is used per thread.
+ */
+class StreamingChunkDecoder {
+  private static final ThreadLocal<StreamingChunkDecoder> decoders =
+      ThreadLocal.withInitial(StreamingChunkDecoder::new);
+
+  private static final byte[] DATA_VERSION = key("DataVersion");
+  private static final byte[] LEVEL = key("Level");
+  private static final byte[] SECTIONS = key("sections");
+  private static final byte[] BLOCK_ENTITIES = key("block_entities");
+  private static final byte[] ENTITIES = key("Entities");
+  private static final byte[] SECTION_Y = key("Y");
+  private static final byte[] BLOCK_STATES = key("block_states");
+  private static final byte[] BIOMES = key("biomes");
+  private static final byte[] PALETTE = key("palette");
+  private static final byte[] DATA = key("data");
+
+  /** Per-section data, kept until the chunk bounds are known. */
+  private static class Section {
+    int y;
+    boolean hasY;
+    boolean hasBlockPalette;
+    final List<Tag> blockPalette = new ArrayList<>();
+    long[] blockStates = new long[256];
+    int blockStatesLength;
+    boolean hasBiomePalette;
+    final List<String> biomePalette = new ArrayList<>();
+    long[] biomes = new long[1];
+    int biomesLength;
+
+    void reset() {
+      y = 0;
+      hasY = false;
+      hasBlockPalette = false;
+      blockPalette.clear();
+      blockStatesLength = -1;
+      hasBiomePalette = false;
+      biomePalette.clear();
+      biomesLength = -1;
+    }
+  }
+
+  private DataInputStream in;
+  private byte[] name = new byte[64];
+  private int nameLength;
+  private final byte[] skipBuffer = new byte[4096];
+
+  private int minY;
+  private int maxY;
+  private int dataVersion;
+  private Section[] sections = new Section[0];
+  private int sectionCount;
+  private final List<CompoundTag> blockEntities = new ArrayList<>();
+  private int[] subpalette = new int[16];
+
+  /**
+   * @return the decoder for the current thread
+   */
+  static StreamingChunkDecoder get() {
+    return decoders.get();
+  }
+
+  /**
+   * Read the block, biome and block entity data of a chunk.
+   *
+   * @param minY the requested minimum block Y (inclusive)
+   * @param maxY the requested maximum block Y (exclusive)
+   * @return {@code false} if the chunk is not in a format that this decoder handles,
+   * in which case nothing has been decoded
+   */
+  boolean parse(ChunkDataSource data, int minY, int maxY) throws IOException {
+    this.minY = minY;
+    this.maxY = maxY;
+    dataVersion = 0;
+    sectionCount = 0;
+    blockEntities.clear();
+    boolean hasSections = false;
+    try (DataInputStream in = new DataInputStream(data.getInputStream())) {
+      this.in = in;
+      if (in.readByte() != Tag.TAG_COMPOUND) {
+        return false;
+      }
+      readName();
+      for (int type = in.readByte(); type != Tag.TAG_END; type = in.readByte()) {
+        readName();
+        if (type == Tag.TAG_COMPOUND && nameIs(LEVEL)) {
+          // Pre-21w39a chunk.
+          return false;
+        } else if (type == Tag.TAG_INT && nameIs(DATA_VERSION)) {
+          dataVersion = in.readInt();
+        } else if (type == Tag.TAG_LIST && nameIs(SECTIONS)) {
+          hasSections = readSections();
+        } else if (type == Tag.TAG_LIST && nameIs(BLOCK_ENTITIES)) {
+          readBlockEntities();
+        } else {
+          skip(type);
+        }
+      }
+    } finally {
+      this.in = null;
+    }
+    return hasSections;
+  }
+
+  /**
+   * Add the entities from an entity region chunk to the chunk data.
+   */
+  void loadEntities(ChunkDataSource data, ChunkData chunkData) throws IOException {
+    try (DataInputStream in = new DataInputStream(data.getInputStream())) {
+      this.in = in;
+      if (in.readByte() != Tag.TAG_COMPOUND) {
+        return;
+      }
+      readName();
+      for (int type = in.readByte(); type != Tag.TAG_END; type = in.readByte()) {
+        readName();
+        if (type == Tag.TAG_LIST && nameIs(ENTITIES)) {
+          int itemType = in.readByte();
+          int count = in.readInt();
+          for (int i = 0; i < count; ++i) {
+            if (itemType == Tag.TAG_COMPOUND) {
+              Tag entity = CompoundTag.read(in);
+              if (entity.isCompoundTag()) {
+                chunkData.addEntity((CompoundTag) entity);
+              }
+            } else {
+              skip(itemType);
+            }
+          }
+        } else {
+          skip(type);
+        }
+      }
+    } finally {
+      this.in = null;
+    }
+  }
+
+  /**
+   * @return the data version of the last parsed chunk
+   */
+  int getDataVersion() {
+    return dataVersion;
+  }
+
+  /**
+   * @return The min and max block Y of the sections in the last parsed chunk
+   */
+  IntIntImmutablePair inclusiveChunkBounds() {
+    int minSectionY = Integer.MAX_VALUE;
+    int maxSectionY = Integer.MIN_VALUE;
+    for (int i = 0; i < sectionCount; ++i) {
+      minSectionY = Math.min(minSectionY, sections[i].y);
+      maxSectionY = Math.max(maxSectionY, sections[i].y);
+    }
+    return new IntIntImmutablePair(minSectionY << 4, (maxSectionY << 4) + 15);
+  }
+
+  /**
+   * Write the blocks, biomes and block entities of the last parsed chunk into the chunk data.
+   */
+  void load(ChunkData chunkData, BlockPalette blockPalette, BiomePalette biomePalette) {
+    BiomeData biomeData = chunkData.getBiomeData();
+    if (!(biomeData instanceof GenericQuartBiomeData3d)) {
+      biomeData = new GenericQuartBiomeData3d();
+      chunkData.setBiomeData(biomeData);
+    }
+    for (int i = 0; i < sectionCount; ++i) {
+      Section section = sections[i];
+      if (isOutside(section.y)) {
+        continue;
+      }
+      if (section.hasBiomePalette) {
+        loadBiomes(section, (GenericQuartBiomeData3d) biomeData, biomePalette);
+      }
+      if (section.hasBlockPalette) {
+        loadBlocks(section, chunkData, blockPalette);
+      }
+    }
+    for (CompoundTag blockEntity : blockEntities) {
+      chunkData.addTileEntity(blockEntity);
+    }
+    blockEntities.clear();
+  }
+
+  private void loadBlocks(Section section, ChunkData chunkData, BlockPalette blockPalette) {
+    List<Tag> palette = section.blockPalette;
+    int sectionMinBlockY = section.y << 4;
+    // Bits per block:
+    int bpb = 4;
+    if (palette.size() > 16) {
+      bpb = QuickMath.log2(QuickMath.nextPow2(palette.size()));
+    }
+    if (section.blockStatesLength >= (4096 * bpb) / 64) {
+      boolean isAligned = dataVersion >= DATAVERSION_20W17A;
+      if (isAligned) {
+        bpb = section.blockStatesLength / 64;
+      }
+      if (subpalette.length < palette.size()) {
+        subpalette = new int[palette.size()];
+      }
+      for (int i = 0; i < palette.size(); ++i) {
+        subpalette[i] = blockPalette.put(palette.get(i));
+      }
+      int paletteSize = palette.size();
+      BitBuffer buffer = new BitBuffer(section.blockStates, bpb, isAligned);
+      for (int y = 0; y < SECTION_Y_MAX; y++) {
+        int blockY = sectionMinBlockY + y;
+        for (int z = 0; z < Z_MAX; z++) {
+          for (int x = 0; x < X_MAX; x++) {
+            int b0 = buffer.read();
+            if (b0 < paletteSize) {
+              chunkData.setBlockAt(x, blockY, z, subpalette[b0]);
+            }
+          }
+        }
+      }
+    } else if (palette.size() == 1) {
+      // Single block palette.
+      int block = blockPalette.put(palette.get(0));
+      if (block != blockPalette.airId) {
+        for (int y = 0; y < SECTION_Y_MAX; y++) {
+          int blockY = sectionMinBlockY + y;
+          for (int z = 0; z < Z_MAX; z++) {
+            for (int x = 0; x < X_MAX; x++) {
+              chunkData.setBlockAt(x, blockY, z, block);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void loadBiomes(Section section, GenericQuartBiomeData3d biomeData,
+      BiomePalette biomePalette) {
+    List<String> palette = section.biomePalette;
+    int sectionMinBlockY = section.y << 4;
+    int bitsPerBiome = Math.max(1, QuickMath.log2(QuickMath.nextPow2(palette.size())));
+    if (section.biomesLength >= bitsPerBiome) {
+      if (subpalette.length < palette.size()) {
+        subpalette = new int[palette.size()];
+      }
+      for (int i = 0; i < palette.size(); ++i) {
+        subpalette[i] = putBiome(biomePalette, palette.get(i));
+      }
+      // Each entry covers a 4x4x4 block quart, so one block per quart is set.
+      BitBuffer buffer = new BitBuffer(section.biomes, bitsPerBiome, true);
+      for (int biomeY = 0; biomeY < 4; biomeY++) {
+        int quartY = sectionMinBlockY + (biomeY << 2);
+        for (int biomeZ = 0; biomeZ < 4; biomeZ++) {
+          for (int biomeX = 0; biomeX < 4; biomeX++) {
+            int b0 = buffer.read();
+            if (b0 < palette.size()) {
+              biomeData.setBiomeAt(biomeX << 2, quartY, biomeZ << 2, subpalette[b0]);
+            }
+          }
+        }
+      }
+    } else if (palette.size() == 1) {
+      // Biome palette exists, but data does not, the section is filled with one biome.
+      int biomeId = putBiome(biomePalette, palette.get(0));
+      for (int quartY = 0; quartY < SECTION_Y_MAX; quartY += 4) {
+        for (int quartZ = 0; quartZ < Z_MAX; quartZ += 4) {
+          for (int quartX = 0; quartX < X_MAX; quartX += 4) {
+            biomeData.setBiomeAt(quartX, sectionMinBlockY + quartY, quartZ, biomeId);
+          }
+        }
+      }
+    } else {
+      Log.warn("Biome palette of size != 1 had no data?!");
+    }
+  }
+
+  private static int putBiome(BiomePalette biomePalette, String resourceLocation) {
+    Biome biome = Biomes.biomesByResourceLocation.get(resourceLocation);
+    if (biome == null) {
+      Log.infof("Unknown biome %s, will be rendered like minecraft:ocean", resourceLocation);
+      return biomePalette.put(Biomes.unknown);
+    }
+    return biomePalette.put(biome);
+  }
+
+  /**
+   * Skip sections that are outside the requested bounds.
+   */
+  private boolean isOutside(int sectionY) {
+    return sectionY < minY >> 4 || sectionY - 1 > (maxY >> 4) + 1;
+  }
+
+  private boolean readSections() throws IOException {
+    int itemType = in.readByte();
+    int count = in.readInt();
+    if (itemType != Tag.TAG_COMPOUND) {
+      skipItems(itemType, count);
+      return count == 0;
+    }
+    if (sections.length < count) {
+      Section[] grown = new Section[count];
+      System.arraycopy(sections, 0, grown, 0, sections.length);
+      for (int i = sections.length; i < count; ++i) {
+        grown[i] = new Section();
+      }
+      sections = grown;
+    }
+    for (int i = 0; i < count; ++i) {
+      Section section = sections[i];
+      section.reset();
+      for (int type = in.readByte(); type != Tag.TAG_END; type = in.readByte()) {
+        readName();
+        if (type == Tag.TAG_BYTE && nameIs(SECTION_Y)) {
+          section.y = in.readByte();
+          section.hasY = true;
+        } else if (type == Tag.TAG_COMPOUND && nameIs(BLOCK_STATES)
+            && !(section.hasY && isOutside(section.y))) {
+          readBlockStates(section);
+        } else if (type == Tag.TAG_COMPOUND && nameIs(BIOMES)
+            && !(section.hasY && isOutside(section.y))) {
+          readBiomes(section);
+        } else {
+          skip(type);
+        }
+      }
+    }
+    sectionCount = count;
+    return true;
+  }
+
+  private void readBlockStates(Section section) throws IOException {
+    for (int type = in.readByte(); type != Tag.TAG_END; type = in.readByte()) {
+      readName();
+      if (type == Tag.TAG_LIST && nameIs(PALETTE)) {
+        section.hasBlockPalette = true;
+        int itemType = in.readByte();
+        int count = in.readInt();
+        if (itemType == Tag.TAG_COMPOUND) {
+          for (int i = 0; i < count; ++i) {
+            section.blockPalette.add(CompoundTag.read(in));
+          }
+        } else {
+          skipItems(itemType, count);
+        }
+      } else if (type == Tag.TAG_LONG_ARRAY && nameIs(DATA)) {
+        int length = in.readInt();
+        if (section.blockStates.length < length) {
+          section.blockStates = new long[length];
+        }
+        readLongs(section.blockStates, length);
+        section.blockStatesLength = length;
+      } else {
+        skip(type);
+      }
+    }
+  }
+
+  private void readBiomes(Section section) throws IOException {
+    for (int type = in.readByte(); type != Tag.TAG_END; type = in.readByte()) {
+      readName();
+      if (type == Tag.TAG_LIST && nameIs(PALETTE)) {
+        section.hasBiomePalette = true;
+        int itemType = in.readByte();
+        int count = in.readInt();
+        if (itemType == Tag.TAG_STRING) {
+          for (int i = 0; i < count; ++i) {
+            section.biomePalette.add(in.readUTF());
+          }
+        } else {
+          skipItems(itemType, count);
+        }
+      } else if (type == Tag.TAG_LONG_ARRAY && nameIs(DATA)) {
+        int length = in.readInt();
+        if (section.biomes.length < length) {
+          section.biomes = new long[length];
+        }
+        readLongs(section.biomes, length);
+        section.biomesLength = length;
+      } else {
+        skip(type);
+      }
+    }
+  }
+
+  /**
+   * All block entities are kept, as in the tag tree loader.
+   */
+  private void readBlockEntities() throws IOException {
+    int itemType = in.readByte();
+    int count = in.readInt();
+    if (itemType != Tag.TAG_COMPOUND) {
+      skipItems(itemType, count);
+      return;
+    }
+    for (int i = 0; i < count; ++i) {
+      Tag tag = CompoundTag.read(in);
+      if (tag.isCompoundTag()) {
+        blockEntities.add((CompoundTag) tag);
+      }
+    }
+  }
+
+  private void readLongs(long[] data, int length) throws IOException {
+    for (int i = 0; i < length; ++i) {
+      data[i] = in.readLong();
+    }
+  }
+
+  private void readName() throws IOException {
+    nameLength = in.readUnsignedShort();
+    if (name.length < nameLength) {
+      name = new byte[nameLength];
+    }
+    in.readFully(name, 0, nameLength);
+  }
+
+  private boolean nameIs(byte[] key) {
+    if (nameLength != key.length) {
+      return false;
+    }
+    for (int i = 0; i < nameLength; ++i) {
+      if (name[i] != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void skipItems(int itemType, int count) throws IOException {
+    for (int i = 0; i < count; ++i) {
+      skip(itemType);
+    }
+  }
+
+  /**
+   * Skip the payload of a tag.
+   */
+  private void skip(int type) throws IOException {
+    switch (type) {
+      case Tag.TAG_END:
+        break;
+      case Tag.TAG_BYTE:
+        skipBytes(1);
+        break;
+      case Tag.TAG_SHORT:
+        skipBytes(2);
+        break;
+      case Tag.TAG_INT:
+      case Tag.TAG_FLOAT:
+        skipBytes(4);
+        break;
+      case Tag.TAG_LONG:
+      case Tag.TAG_DOUBLE:
+        skipBytes(8);
+        break;
+      case Tag.TAG_BYTE_ARRAY:
+        skipBytes(in.readInt());
+        break;
+      case Tag.TAG_INT_ARRAY:
+        skipBytes(4L * in.readInt());
+        break;
+      case Tag.TAG_LONG_ARRAY:
+        skipBytes(8L * in.readInt());
+        break;
+      case Tag.TAG_STRING:
+        skipBytes(in.readUnsignedShort());
+        break;
+      case Tag.TAG_LIST:
+        skipItems(in.readByte(), in.readInt());
+        break;
+      case Tag.TAG_COMPOUND:
+        for (int itemType = in.readByte(); itemType != Tag.TAG_END; itemType = in.readByte()) {
+          // Item name.
+          skip(Tag.TAG_STRING);
+          skip(itemType);
+        }
+        break;
+      default:
+        throw new IOException("Unknown NBT tag type: " + type);
+    }
+  }
+
+  private void skipBytes(long count) throws IOException {
+    if (count < 0) {
+      throw new IOException("Negative NBT array length");
+    }
+    while (count > 0) {
+      int chunk = (int) Math.min(count, skipBuffer.length);
+      // skipBytes may skip less than requested, read the rest.
+      int skipped = in.skipBytes(chunk);
+      in.readFully(skipBuffer, 0, chunk - skipped);
+      count -= chunk;
+    }
+  }
+
+  private static byte[] key(String name) {
+    return name.getBytes(StandardCharsets.UTF_8);
+  }
+}
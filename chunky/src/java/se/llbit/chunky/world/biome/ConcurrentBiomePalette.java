@@ -0,0 +1,49 @@
+package se.llbit.chunky.world.biome;
+
+import se.llbit.util.annotation.NotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A biome palette that can be shared by multiple chunk loading threads.
+ *
+ * <p>Lookups in both directions do not lock. Adding a new biome locks the palette, which is rare
+ * since there are only a few biomes in a world.
+ */
+public class ConcurrentBiomePalette implements BiomePalette {
+  private final List<Biome> palette = new CopyOnWriteArrayList<>();
+  private final Map<Biome, Integer> ids = new ConcurrentHashMap<>();
+
+  @Override
+  public Biome get(int id) {
+    if (id < 0 || id >= palette.size()) {
+      // this should not happen but is very common with WorldPainter generated worlds
+      return Biomes.biomesPrePalette[1];
+    }
+    return this.palette.get(id);
+  }
+
+  @Override
+  public int put(@NotNull Biome biome) {
+    assert biome != null;
+
+    Integer id = ids.get(biome);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      return ids.computeIfAbsent(biome, b -> {
+        palette.add(b);
+        return palette.size() - 1;
+      });
+    }
+  }
+
+  @Override
+  public int size() {
+    return palette.size();
+  }
+}
@@ -17,6 +17,7 @@
 package se.llbit.chunky.world.region;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -67,6 +68,14 @@ public class MCRegion implements Region {
   private final String fileName;
   private long regionFileTime = 0;
   private final int[] chunkTimestamps = new int[NUM_CHUNKS];
+  private final int[] chunkLocations = new int[NUM_CHUNKS];
+
+  /**
+   * Read buffers for chunk and entity data. They are separate because the entities
+   * of a chunk are read while the chunk data may still be in use.
+   */
+  private static final RegionFileCache.ReadBuffer chunkBuffer = new RegionFileCache.ReadBuffer();
+  private static final RegionFileCache.ReadBuffer entityBuffer = new RegionFileCache.ReadBuffer();
 
   private static int getMCAChunkIndex(int x, int z) {
     return (x & 0b11111) + ((z & 0b11111) << 5);
@@ -138,13 +147,13 @@ public class MCRegion implements Region {
       return;
     }
     regionFileTime = modtime;
-    try (RandomAccessFile file = new RandomAccessFile(regionFile, "r")) {
-      long length = file.length();
-      if (length == 0) {
+    try {
+      RegionFileCache.RegionFile file = RegionFileCache.get(regionFile);
+      if (file.length == 0) {
         return; // vanilla will occasionally save empty region files, we shouldn't warn the user about these.
       }
 
-      if (length < 2 * SECTOR_SIZE) {
+      if (!file.hasHeader()) {
         Log.warnf("Missing header in region file %s!", this.position);
         return;
       }
@@ -153,7 +162,7 @@ public class MCRegion implements Region {
         for (int x = 0; x < 32; ++x) {
           ChunkPosition pos = new ChunkPosition((position.x << 5) + x, (position.z << 5) + z);
           Chunk chunk = getChunk(x, z);
-          int loc = file.readInt();
+          int loc = file.getLocation(getMCAChunkIndex(x, z));
           if (loc != 0) {
             if (chunk.isEmpty()) {
               chunk = new Chunk(pos, dimension);
@@ -168,7 +177,8 @@ public class MCRegion implements Region {
       }
 
       for (int i = 0; i < NUM_CHUNKS; ++i) {
-        chunkTimestamps[i] = file.readInt();
+        chunkTimestamps[i] = file.getTimestamp(i);
+        chunkLocations[i] = file.getLocation(i);
       }
 
       dimension.regionUpdated(position);
@@ -211,8 +221,27 @@ public class MCRegion implements Region {
     return parseNbtFromChunkDataSource(position, request, data);
   }
 
+  /**
+   * @return the data source for the given chunk, which has no data if the chunk could not be read.
+   * The data is only valid until the next chunk is read on the current thread.
+   */
+  @NotNull
+  public ChunkDataSource getChunkDataSource(ChunkPosition position) {
+    return this.getChunkData(position);
+  }
+
+  /**
+   * @return the data source for the entities of the given chunk, which has no data if
+   * there are no entities. The data is only valid until the next entities are read on the
+   * current thread.
+   */
+  @NotNull
+  public ChunkDataSource getEntityDataSource(ChunkPosition position) {
+    return this.getEntityData(position);
+  }
+
   @Nullable
-  private static Map<String, Tag> parseNbtFromChunkDataSource(ChunkPosition position, Set<String> request, ChunkDataSource data) throws ChunkLoadingException {
+  public static Map<String, Tag> parseNbtFromChunkDataSource(ChunkPosition position, Set<String> request, ChunkDataSource data) throws ChunkLoadingException {
     if (data.hasData()) {
       try (DataInputStream in = new DataInputStream(data.getInputStream())) {
         Map<String, Tag> result = NamedTag.quickParse(in, request);
@@ -239,25 +268,26 @@ public class MCRegion implements Region {
   @NotNull
   private ChunkDataSource getChunkData(ChunkPosition chunkPos) {
     File regionDirectory = dimension.getRegionDirectory();
-    ChunkDataSource data = getChunkDataSource(chunkPos, regionDirectory);
+    ChunkDataSource data = getChunkDataSource(chunkPos, regionDirectory, chunkBuffer);
     chunkTimestamps[getMCAChunkIndex(chunkPos)] = data.timestamp;
+    chunkLocations[getMCAChunkIndex(chunkPos)] = data.location;
     return data;
   }
   @NotNull
   private ChunkDataSource getEntityData(ChunkPosition chunkPos) {
     File regionDirectory = dimension.getRegionDirectory();
     regionDirectory = new File(regionDirectory.getParentFile(), "entities");
-    return getChunkDataSource(chunkPos, regionDirectory);
+    return getChunkDataSource(chunkPos, regionDirectory, entityBuffer);
   }
 
   @NotNull
-  private ChunkDataSource getChunkDataSource(ChunkPosition chunkPos, File regionDirectory) {
+  private ChunkDataSource getChunkDataSource(ChunkPosition chunkPos, File regionDirectory,
+      RegionFileCache.ReadBuffer buffer) {
     File regionFile = new File(regionDirectory, fileName);
     ChunkDataSource data = null;
     if (regionFile.exists()) {
-      // TODO: reuse RandomAccessFile instances when loading world map
-      try (RandomAccessFile raf = new RandomAccessFile(regionFile, "r")) {
-        data = readChunkData(raf, chunkPos);
+      try {
+        data = readChunkData(RegionFileCache.get(regionFile), chunkPos, buffer);
       } catch (IOException ex) {
         Log.warn(
           String.format(
@@ -275,28 +305,30 @@ public class MCRegion implements Region {
   }
 
   /**
-   * Read chunk data from region file.
+   * Read chunk data from a region file. The allocated sectors of the chunk are read
+   * into the given buffer, and the returned data source reads the chunk directly from
+   * that buffer, so it is only valid until the next read into the buffer on this thread.
    * <a href="https://wiki.vg/Region_Files#Structure">Format documentation</a>
    *
    * @return {@code null} if the chunk could not be loaded
    */
-  private static ChunkDataSource readChunkData(RandomAccessFile file, ChunkPosition chunkPos) throws IOException {
-    long index = getMCAChunkIndex(chunkPos);
+  private static ChunkDataSource readChunkData(RegionFileCache.RegionFile file,
+      ChunkPosition chunkPos, RegionFileCache.ReadBuffer buffer) throws IOException {
+    int index = getMCAChunkIndex(chunkPos);
 
-    long length = file.length();
+    long length = file.length;
 
     if (length == 0) {
       return null; // vanilla will occasionally save empty region files, we shouldn't warn the user about these.
     }
 
     // header is 2 sectors long: location table + timestamp table
-    if (length < 2 * SECTOR_SIZE) {
+    if (!file.hasHeader()) {
       throw new ChunkReadException(chunkPos, "Missing header in region file");
     }
 
     // query location table for chunk location in file
-    file.seek(index << 2);
-    int locationEntry = file.readInt();
+    int locationEntry = file.getLocation(index);
     int sectorCount = locationEntry & 0xFF;
     int sectorOffset = locationEntry >> 8;
     if (sectorOffset == 0 || sectorCount == 0) {
@@ -305,8 +337,7 @@ public class MCRegion implements Region {
     }
 
     // query timestamp table (chunk last modified time)
-    file.seek(SECTOR_SIZE + (index << 2));
-    int lastModifiedTimestamp = file.readInt();
+    int lastModifiedTimestamp = file.getTimestamp(index);
 
     long fileOffset = (long) sectorOffset * SECTOR_SIZE;
     if (fileOffset + 4 >= length) {
@@ -315,9 +346,12 @@ public class MCRegion implements Region {
         sectorOffset * SECTOR_SIZE, length
       ));
     }
-    file.seek(fileOffset);
 
-    int chunkSize = file.readInt();
+    // Read the allocated sectors and the length field (or up to the end of the file) at once.
+    int allocated = (int) Math.min((long) sectorCount * SECTOR_SIZE + 4, length - fileOffset);
+    ByteBuffer data = file.read(fileOffset, allocated, buffer);
+
+    int chunkSize = data.getInt(0);
 
     if (chunkSize > sectorCount * SECTOR_SIZE) {
       throw new ChunkReadException(chunkPos, "Chunk length does not fit in allocated sectors");
@@ -337,15 +371,14 @@ public class MCRegion implements Region {
       ));
     }
 
-    ChunkDataSource.CompressionScheme compressionScheme = readCompressionScheme(file, chunkPos);
+    ChunkDataSource.CompressionScheme compressionScheme =
+      readCompressionScheme(data.get(4), chunkPos);
 
-    byte[] buf = new byte[chunkSize - 1];
-    file.read(buf);
-    return new ChunkDataSource(lastModifiedTimestamp, buf, compressionScheme);
+    return new ChunkDataSource(lastModifiedTimestamp, locationEntry,
+      data.position(5).limit(4 + chunkSize), compressionScheme);
   }
 
-  private static ChunkDataSource.CompressionScheme readCompressionScheme(RandomAccessFile file, ChunkPosition chunkPos) throws IOException {
-    byte compressionType = file.readByte();
+  private static ChunkDataSource.CompressionScheme readCompressionScheme(byte compressionType, ChunkPosition chunkPos) throws IOException {
     switch (compressionType) {
       case 1:
         return ChunkDataSource.CompressionScheme.GZIP;
@@ -383,6 +416,8 @@ public class MCRegion implements Region {
       file.writeInt(0);
     } catch (IOException e) {
       Log.warnf("Failed to delete chunk: %s", e.getMessage());
+    } finally {
+      RegionFileCache.invalidate(regionFile);
     }
   }
 
@@ -452,6 +487,18 @@ public class MCRegion implements Region {
     return timestamp != chunkTimestamps[(chunkPos.x & 31) + (chunkPos.z & 31) * 32];
   }
 
+  /**
+   * The timestamps in region files are in seconds, so a chunk that is saved twice within a
+   * second keeps its timestamp. It is then usually moved to other sectors or changes its length.
+   *
+   * @return {@code true} if the chunk has changed since the timestamp and location
+   */
+  @Override
+  public boolean chunkChangedSince(ChunkPosition chunkPos, int timestamp, int location) {
+    int index = (chunkPos.x & 31) + (chunkPos.z & 31) * 32;
+    return timestamp != chunkTimestamps[index] || location != chunkLocations[index];
+  }
+
   @Override public Iterator<Chunk> iterator() {
     return new Iterator<Chunk>() {
       private int index = 0;
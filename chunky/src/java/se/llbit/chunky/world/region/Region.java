@@ -43,4 +43,14 @@ public interface Region extends Iterable<Chunk> {
   boolean hasChanged();
 
   boolean chunkChangedSince(ChunkPosition chunkPos, int timestamp);
+
+  /**
+   * @param location the location table entry (sector offset and sector count) of the chunk
+   * data when it was read
+   * @return {@code true} if the chunk has changed since it was read with the given timestamp
+   * and location
+   */
+  default boolean chunkChangedSince(ChunkPosition chunkPos, int timestamp, int location) {
+    return chunkChangedSince(chunkPos, timestamp);
+  }
 }
@@ -0,0 +1,243 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.world.region;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of open region files and their headers, shared by all regions.
+ *
+ * <p>A region file is opened and its location and timestamp tables are read the first
+ * time the file is accessed. Later accesses reuse the open file and the tables as long
+ * as the modification time and length of the file are unchanged. The least recently
+ * used files are evicted and closed when the cache is full.
+ *
+ * <p>Chunk data is read with positional reads on the shared channel into a
+ * {@link ReadBuffer}, which keeps one reusable buffer per thread.
+ */
+public final class RegionFileCache {
+  /**
+   * Maximum number of region files kept open in the cache.
+   */
+  static final int MAX_FILES = 64;
+
+  static final int SECTOR_SIZE = 4096;
+
+  private static final int NUM_CHUNKS = 32 * 32;
+
+  private static final Map<File, RegionFile> cache =
+      new LinkedHashMap<File, RegionFile>(MAX_FILES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, RegionFile> eldest) {
+          if (size() > MAX_FILES) {
+            eldest.getValue().close();
+            return true;
+          }
+          return false;
+        }
+      };
+
+  private RegionFileCache() {
+  }
+
+  /**
+   * A reusable read buffer for each thread. The buffer returned by
+   * {@link RegionFile#read} is overwritten by the next read into the same
+   * {@code ReadBuffer} on the same thread.
+   */
+  static final class ReadBuffer {
+    private static final int INITIAL_CAPACITY = 16 * SECTOR_SIZE;
+
+    private final ThreadLocal<ByteBuffer> buffer =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_CAPACITY));
+
+    /**
+     * @return the buffer of the current thread, cleared and limited to the given length
+     */
+    ByteBuffer get(int length) {
+      ByteBuffer result = buffer.get();
+      if (result.capacity() < length) {
+        result = ByteBuffer.allocate(Math.max(length, result.capacity() * 2));
+        buffer.set(result);
+      }
+      result.clear().limit(length);
+      return result;
+    }
+  }
+
+  /**
+   * An open region file with its parsed header.
+   */
+  static final class RegionFile {
+    final File file;
+    final long lastModified;
+    final long length;
+
+    private final FileChannel channel;
+    private final int[] locations = new int[NUM_CHUNKS];
+    private final int[] timestamps = new int[NUM_CHUNKS];
+
+    private RegionFile(File file, long lastModified, long length) throws IOException {
+      this.file = file;
+      this.lastModified = lastModified;
+      this.length = length;
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      if (!hasHeader()) {
+        return;
+      }
+      ByteBuffer header = ByteBuffer.allocate(2 * SECTOR_SIZE);
+      try {
+        readFully(channel, header, 0);
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+      for (int i = 0; i < NUM_CHUNKS; ++i) {
+        locations[i] = header.getInt(i * 4);
+        timestamps[i] = header.getInt(SECTOR_SIZE + i * 4);
+      }
+    }
+
+    /**
+     * @return {@code true} if the file is long enough to contain the location and timestamp tables
+     */
+    boolean hasHeader() {
+      return length >= 2 * SECTOR_SIZE;
+    }
+
+    /**
+     * @return the location table entry for the chunk with the given index
+     */
+    int getLocation(int index) {
+      return locations[index];
+    }
+
+    /**
+     * @return the last modified timestamp of the chunk with the given index
+     */
+    int getTimestamp(int index) {
+      return timestamps[index];
+    }
+
+    /**
+     * Read a part of the file into the buffer of the current thread.
+     *
+     * @return the buffer, positioned at the first byte read and limited to the bytes read.
+     * The contents are valid until the next read into the same buffer on this thread.
+     * @throws EOFException if the file ends before the requested bytes were read
+     */
+    ByteBuffer read(long offset, int length, ReadBuffer into) throws IOException {
+      ByteBuffer buffer = into.get(length);
+      try {
+        readFully(channel, buffer, offset);
+      } catch (ClosedChannelException e) {
+        // The file was evicted while it was used, or another reader was interrupted.
+        if (Thread.currentThread().isInterrupted()) {
+          throw e;
+        }
+        remove(this);
+        buffer = into.get(length);
+        try (FileChannel reopened = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+          readFully(reopened, buffer, offset);
+        }
+      }
+      return buffer;
+    }
+
+    /**
+     * @return {@code true} if the file has not been closed
+     */
+    boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    private void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // Nothing was written, so there is nothing to lose.
+      }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset)
+        throws IOException {
+      long position = offset;
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, position);
+        if (read < 0) {
+          throw new EOFException("Unexpected end of region file");
+        }
+        position += read;
+      }
+      buffer.flip();
+    }
+  }
+
+  /**
+   * Get the region file header, reading it if it is not cached or the file has changed on disk.
+   */
+  static RegionFile get(File file) throws IOException {
+    long lastModified = file.lastModified();
+    long length = file.length();
+    synchronized (cache) {
+      RegionFile cached = cache.get(file);
+      if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+        return cached;
+      }
+    }
+    // Read outside the lock so that other files can be accessed meanwhile.
+    RegionFile regionFile = new RegionFile(file, lastModified, length);
+    RegionFile previous;
+    synchronized (cache) {
+      previous = cache.put(file, regionFile);
+    }
+    if (previous != null) {
+      previous.close();
+    }
+    return regionFile;
+  }
+
+  /**
+   * Remove a region file from the cache and close it, e.g. after it was modified by Chunky.
+   */
+  static void invalidate(File file) {
+    RegionFile removed;
+    synchronized (cache) {
+      removed = cache.remove(file);
+    }
+    if (removed != null) {
+      removed.close();
+    }
+  }
+
+  /**
+   * Remove a closed region file from the cache, unless it was already replaced.
+   */
+  private static void remove(RegionFile regionFile) {
+    synchronized (cache) {
+      cache.remove(regionFile.file, regionFile);
+    }
+  }
+}
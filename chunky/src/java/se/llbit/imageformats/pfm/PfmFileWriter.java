@@ -17,6 +17,7 @@
  */
 package se.llbit.imageformats.pfm;
 
+import se.llbit.chunky.renderer.SampleBuffer;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.util.TaskTracker;
 
@@ -78,7 +79,7 @@ public class PfmFileWriter implements AutoCloseable {
     int width = scene.canvasConfig.getWidth();
     int height = scene.canvasConfig.getHeight();
 
-    double[] sampleBuffer = scene.getSampleBuffer();
+    SampleBuffer sampleBuffer = scene.getSamples();
 
     // width * (r,g,b) * float size (= 4 byte)
     ByteBuffer rowBuffer = ByteBuffer.allocate(width * 3 * 4).order(byteOrder);
@@ -91,7 +92,7 @@ public class PfmFileWriter implements AutoCloseable {
       // get the row's data as floats from raw pixel data
       // (ignores post-processing because that would clip the value range and defeat the purpose of HDR)
       for (int x = 0; x < 3 * width; x++) {
-        rowFloatBuffer.put((float) sampleBuffer[y * width * 3 + x]);
+        rowFloatBuffer.put((float) sampleBuffer.get(y * width * 3 + x));
       }
 
       // Write buffer to stream
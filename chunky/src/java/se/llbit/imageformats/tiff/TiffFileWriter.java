@@ -26,6 +26,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 import se.llbit.chunky.main.Version;
+import se.llbit.chunky.renderer.SampleBuffer;
 import se.llbit.chunky.renderer.postprocessing.PixelPostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilter;
 import se.llbit.chunky.renderer.postprocessing.PostProcessingFilters;
@@ -120,7 +121,7 @@ public class TiffFileWriter implements AutoCloseable {
 
     return idf.write(out, ifdOffset, (out) -> {
       PixelPostProcessingFilter filter = requirePixelPostProcessingFilter(scene);
-      double[] sampleBuffer = scene.getSampleBuffer();
+      SampleBuffer sampleBuffer = filter.prepareFrame(scene.getSamples());
       AlphaBuffer alpha = scene.getAlphaBuffer();
       FloatBuffer buffer = null;
       if(embedAlpha) {
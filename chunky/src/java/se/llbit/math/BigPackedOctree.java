@@ -336,6 +336,45 @@ public class BigPackedOctree implements Octree.OctreeImplementation {
     }
   }
 
+  /**
+   * Incremental leaf lookup: the traversal stack holds the node indices on the path to the previous leaf, so
+   * only the part of the path below the common ancestor of the previous leaf and the new position is descended.
+   *
+   * x, y, z are in octree coordinates, NOT world coordinates.
+   */
+  @Override
+  public void getWithLevel(Octree.Traversal traversal, int x, int y, int z) {
+    long[] nodes;
+    long nodeIndex;
+    int level;
+    if (traversal.valid) {
+      nodes = traversal.nodes;
+      level = traversal.commonAncestorLevel(x, y, z);
+      nodeIndex = nodes[level];
+    } else {
+      traversal.ensureDepth(depth);
+      nodes = traversal.nodes;
+      level = depth;
+      nodeIndex = 0;
+      nodes[level] = nodeIndex;
+      traversal.valid = true;
+    }
+    long value;
+    while((value = getAt(nodeIndex)) > 0) {
+      level -= 1;
+      int lx = x >>> level;
+      int ly = y >>> level;
+      int lz = z >>> level;
+      nodeIndex = value + (((lx & 1) << 2) | ((ly & 1) << 1) | (lz & 1));
+      nodes[level] = nodeIndex;
+    }
+    traversal.x = x;
+    traversal.y = y;
+    traversal.z = z;
+    traversal.level = level;
+    traversal.typeAndLevel.left(typeFromValue(value)).right(level);
+  }
+
   private long getNodeIndex(int x, int y, int z) {
     long nodeIndex = 0;
     int level = depth;
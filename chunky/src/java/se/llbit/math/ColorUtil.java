@@ -201,6 +201,13 @@ public final class ColorUtil {
     components[2] = toLinearLut[(0xFF & argb)];
   }
 
+  /**
+   * @return the linear value of a gamma corrected 8-bit color component
+   */
+  public static float toLinear(int component) {
+    return toLinearLut[component];
+  }
+
   /**
    * Wraps {@link ColorUtil#getRGBAComponentsGammaCorrected} creating a new float[4]
    */
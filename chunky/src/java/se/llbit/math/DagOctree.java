@@ -0,0 +1,593 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math;
+
+import it.unimi.dsi.fastutil.ints.IntIntMutablePair;
+import se.llbit.chunky.block.minecraft.UnknownBlock;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.world.Material;
+import se.llbit.log.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static se.llbit.math.Octree.*;
+
+/**
+ * An octree where identical subtrees are stored only once, i.e. a sparse voxel directed
+ * acyclic graph (DAG).
+ *
+ * <p>The node layout is the same as {@link PackedOctree}: every node is an int, a positive value
+ * is the index of the first of the eight children of a branch node and other values are the
+ * negation of the type of a leaf node. Different branch nodes may point to the same children.
+ *
+ * <p>While the octree is built it is stored in a {@link PackedOctree}. When the finalization ends
+ * the subtrees are hash-consed bottom-up: every group of eight children is looked up in a hash
+ * table and replaced by an identical group that was already added. Large volumes of stone, water
+ * or air and repeated structures then only take up the memory of one subtree.
+ *
+ * <p>Blocks set after the DAG has been built are handled by copying the shared nodes on the path
+ * from the root to the block, so that shared nodes are never changed. Nodes copied this way are
+ * only used once and are changed in place by later writes. The copies are shared again, and the
+ * nodes that are no longer used are freed, the next time the finalization ends.
+ */
+public class DagOctree implements Octree.OctreeImplementation {
+  /**
+   * The max size of an array we allow is a bit less than the max value an integer can have
+   */
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 16;
+
+  private static final int DEFAULT_INITIAL_SIZE = 64;
+
+  /**
+   * The octree is stored in this packed octree until the DAG is built.
+   */
+  private PackedOctree building;
+
+  /**
+   * The DAG nodes. The root is at index 0 and the groups of eight children start at index 1.
+   * Only valid once {@link #building} is {@code null}.
+   */
+  private int[] treeData;
+
+  /**
+   * Number of used ints in {@link #treeData}.
+   */
+  private int size;
+
+  /**
+   * Size of {@link #treeData} when the DAG was last built. Nodes before this index may be shared,
+   * nodes after it were copied by {@link #set} and are only used once.
+   */
+  private int sharedSize;
+
+  /**
+   * Nodes on the path to the block in {@link #set}, reused between calls.
+   */
+  private int[] parents;
+
+  private final int depth;
+
+  private static final class NodeId implements Octree.NodeId {
+    final int nodeIndex;
+
+    NodeId(int nodeIndex) {
+      this.nodeIndex = nodeIndex;
+    }
+  }
+
+  /**
+   * Creates an empty octree. Blocks are stored in a {@link PackedOctree} until
+   * {@link #endFinalization()} is called.
+   */
+  public DagOctree(int depth) {
+    this.depth = depth;
+    this.building = new PackedOctree(depth);
+  }
+
+  private DagOctree(int depth, DagBuilder dag) {
+    this.depth = depth;
+    this.treeData = dag.trimmed();
+    this.size = dag.size;
+    this.sharedSize = dag.size;
+  }
+
+  private DagOctree(DagOctree other) {
+    depth = other.depth;
+    if (other.building != null) {
+      building = other.building.copy();
+    } else {
+      treeData = Arrays.copyOf(other.treeData, other.size);
+      size = other.size;
+      sharedSize = other.sharedSize;
+    }
+  }
+
+  @Override
+  public DagOctree copy() {
+    return new DagOctree(this);
+  }
+
+  /**
+   * Builds a DAG by adding groups of eight children bottom-up, reusing identical groups.
+   */
+  private static final class DagBuilder {
+    private int[] data = new int[DEFAULT_INITIAL_SIZE];
+    private int size = 1; // Index 0 is the root.
+
+    /** Open addressing hash table of the index of each group of children, 0 for empty slots. */
+    private int[] table = new int[1024];
+    private int groups = 0;
+
+    /**
+     * Find or add a group of children.
+     *
+     * <p>Groups where all children are leaves of the same type (or {@link Octree#ANY_TYPE}) are
+     * merged into a single leaf, like at the end of finalization of the other implementations.
+     *
+     * @return the value of the parent node, i.e. the index of the group or a leaf value
+     */
+    int intern(int[] children) {
+      int merged = -ANY_TYPE;
+      for (int i = 0; i < 8; ++i) {
+        int child = children[i];
+        if (child > 0) {
+          merged = 1;
+          break;
+        }
+        if (merged == -ANY_TYPE) {
+          merged = child;
+        } else if (child != -ANY_TYPE && child != merged) {
+          merged = 1;
+          break;
+        }
+      }
+      if (merged <= 0) {
+        return merged;
+      }
+
+      int mask = table.length - 1;
+      int slot = hash(children) & mask;
+      while (table[slot] != 0) {
+        int group = table[slot];
+        if (Arrays.equals(data, group, group + 8, children, 0, 8)) {
+          return group;
+        }
+        slot = (slot + 1) & mask;
+      }
+      int group = size;
+      ensureCapacity(size + 8);
+      System.arraycopy(children, 0, data, group, 8);
+      size += 8;
+      table[slot] = group;
+      groups += 1;
+      if (groups * 2 > table.length) {
+        rehash();
+      }
+      return group;
+    }
+
+    private static int hash(int[] children) {
+      int hash = 0;
+      for (int i = 0; i < 8; ++i) {
+        hash = (hash + children[i]) * 0x9E3779B1;
+      }
+      return hash ^ (hash >>> 16);
+    }
+
+    private int hashGroup(int group) {
+      int hash = 0;
+      for (int i = 0; i < 8; ++i) {
+        hash = (hash + data[group + i]) * 0x9E3779B1;
+      }
+      return hash ^ (hash >>> 16);
+    }
+
+    private void rehash() {
+      int[] newTable = new int[table.length * 2];
+      int mask = newTable.length - 1;
+      for (int group : table) {
+        if (group != 0) {
+          int slot = hashGroup(group) & mask;
+          while (newTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          newTable[slot] = group;
+        }
+      }
+      table = newTable;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > MAX_ARRAY_SIZE) {
+        throw new PackedOctree.OctreeTooBigException();
+      }
+      if (capacity > data.length) {
+        data = Arrays.copyOf(data, (int) Math.min(MAX_ARRAY_SIZE, Math.max(capacity, data.length * 3L / 2)));
+      }
+    }
+
+    int[] trimmed() {
+      return Arrays.copyOf(data, size);
+    }
+  }
+
+  /**
+   * Build a DAG from an octree in the packed layout.
+   *
+   * @param shared {@code true} if nodes of the source may be shared, then each group of
+   * children is only converted once
+   */
+  private static DagBuilder compress(int[] source, int depth, boolean shared) {
+    DagBuilder dag = new DagBuilder();
+    int[] memo = null;
+    if (shared) {
+      memo = new int[source.length / 8 + 1];
+      Arrays.fill(memo, Integer.MIN_VALUE);
+    }
+    int[][] scratch = new int[depth + 1][8];
+    int root = compressNode(dag, source, source[0], depth, memo, scratch);
+    dag.data[0] = root;
+    return dag;
+  }
+
+  private static int compressNode(DagBuilder dag, int[] source, int value, int level, int[] memo, int[][] scratch) {
+    if (value <= 0) {
+      return value;
+    }
+    int group = (value - 1) >>> 3;
+    if (memo != null && memo[group] != Integer.MIN_VALUE) {
+      return memo[group];
+    }
+    int[] children = scratch[level];
+    for (int i = 0; i < 8; ++i) {
+      children[i] = compressNode(dag, source, source[value + i], level - 1, memo, scratch);
+    }
+    int result = dag.intern(children);
+    if (memo != null) {
+      memo[group] = result;
+    }
+    return result;
+  }
+
+  @Override
+  public Octree.NodeId getRoot() {
+    return building != null ? building.getRoot() : new NodeId(0);
+  }
+
+  @Override
+  public boolean isBranch(Octree.NodeId node) {
+    return building != null ? building.isBranch(node) : treeData[((NodeId) node).nodeIndex] > 0;
+  }
+
+  @Override
+  public Octree.NodeId getChild(Octree.NodeId parent, int childNo) {
+    return building != null
+        ? building.getChild(parent, childNo)
+        : new NodeId(treeData[((NodeId) parent).nodeIndex] + childNo);
+  }
+
+  @Override
+  public int getType(Octree.NodeId node) {
+    return building != null ? building.getType(node) : -treeData[((NodeId) node).nodeIndex];
+  }
+
+  /**
+   * Sets a block. Once the DAG has been built the shared nodes on the path to the block are
+   * copied, since they may be used by other parts of the octree. Writing
+   * {@link Octree#ANY_TYPE} then does nothing, since the block that is already there is as
+   * good as any other.
+   *
+   * x, y, z are in octree coordinates, NOT world coordinates.
+   */
+  @Override
+  public void set(int type, int x, int y, int z) {
+    if (building != null) {
+      building.set(type, x, y, z);
+      return;
+    }
+    if (type == ANY_TYPE || treeData[getNodeIndex(x, y, z)] == -type) {
+      return;
+    }
+
+    if (parents == null) {
+      parents = new int[depth];
+    }
+    int nodeIndex = 0;
+    for (int i = depth - 1; i >= 0; --i) {
+      parents[i] = nodeIndex;
+      int value = treeData[nodeIndex];
+      int childrenIndex = value;
+      if (value < sharedSize) {
+        // A leaf or a shared group of children.
+        childrenIndex = allocate();
+        if (value <= 0) {
+          Arrays.fill(treeData, childrenIndex, childrenIndex + 8, value);
+        } else {
+          System.arraycopy(treeData, value, treeData, childrenIndex, 8);
+        }
+        treeData[nodeIndex] = childrenIndex;
+      }
+      int position = ((1 & (x >> i)) << 2) | ((1 & (y >> i)) << 1) | (1 & (z >> i));
+      nodeIndex = childrenIndex + position;
+    }
+    treeData[nodeIndex] = -type;
+
+    // Merge nodes where all children have been set to the same type, starting from the bottom.
+    for (int i = 0; i < depth; ++i) {
+      int childrenIndex = treeData[parents[i]];
+      for (int j = 0; j < 8; ++j) {
+        if (treeData[childrenIndex + j] != -type) {
+          return;
+        }
+      }
+      treeData[parents[i]] = -type;
+    }
+  }
+
+  /**
+   * Allocate eight nodes at the end of the array.
+   */
+  private int allocate() {
+    if (size + 8 > treeData.length) {
+      if (size + 8 > MAX_ARRAY_SIZE) {
+        throw new PackedOctree.OctreeTooBigException();
+      }
+      treeData = Arrays.copyOf(treeData, (int) Math.min(MAX_ARRAY_SIZE, Math.max(size + 8, treeData.length * 3L / 2)));
+    }
+    int index = size;
+    size += 8;
+    return index;
+  }
+
+  @Override
+  public void setCube(int cubeDepth, int[] types, int x, int y, int z) {
+    if (building != null) {
+      building.setCube(cubeDepth, types, x, y, z);
+    } else {
+      Octree.OctreeImplementation.super.setCube(cubeDepth, types, x, y, z);
+    }
+  }
+
+  private int getNodeIndex(int x, int y, int z) {
+    int nodeIndex = 0;
+    int level = depth;
+    while (treeData[nodeIndex] > 0) {
+      level -= 1;
+      int lx = 1 & (x >>> level);
+      int ly = 1 & (y >>> level);
+      int lz = 1 & (z >>> level);
+      nodeIndex = treeData[nodeIndex] + ((lx << 2) | (ly << 1) | lz);
+    }
+    return nodeIndex;
+  }
+
+  @Override
+  public void getWithLevel(IntIntMutablePair outTypeAndLevel, int x, int y, int z) {
+    if (building != null) {
+      building.getWithLevel(outTypeAndLevel, x, y, z);
+      return;
+    }
+    int nodeIndex = 0;
+    int level = depth;
+    while (treeData[nodeIndex] > 0) {
+      level -= 1;
+      int lx = x >>> level;
+      int ly = y >>> level;
+      int lz = z >>> level;
+      nodeIndex = treeData[nodeIndex] + (((lx & 1) << 2) | ((ly & 1) << 1) | (lz & 1));
+    }
+    outTypeAndLevel.left(-treeData[nodeIndex]).right(level);
+  }
+
+  /**
+   * Incremental leaf lookup, see {@link PackedOctree#getWithLevel(Octree.Traversal, int, int, int)}.
+   * The path to the previous leaf is valid in a DAG too, since it only depends on the position.
+   *
+   * x, y, z are in octree coordinates, NOT world coordinates.
+   */
+  @Override
+  public void getWithLevel(Octree.Traversal traversal, int x, int y, int z) {
+    if (building != null) {
+      building.getWithLevel(traversal, x, y, z);
+      return;
+    }
+    long[] nodes;
+    int nodeIndex;
+    int level;
+    if (traversal.valid) {
+      nodes = traversal.nodes;
+      level = traversal.commonAncestorLevel(x, y, z);
+      nodeIndex = (int) nodes[level];
+    } else {
+      traversal.ensureDepth(depth);
+      nodes = traversal.nodes;
+      level = depth;
+      nodeIndex = 0;
+      nodes[level] = nodeIndex;
+      traversal.valid = true;
+    }
+    while (treeData[nodeIndex] > 0) {
+      level -= 1;
+      int lx = x >>> level;
+      int ly = y >>> level;
+      int lz = z >>> level;
+      nodeIndex = treeData[nodeIndex] + (((lx & 1) << 2) | ((ly & 1) << 1) | (lz & 1));
+      nodes[level] = nodeIndex;
+    }
+    traversal.x = x;
+    traversal.y = y;
+    traversal.z = z;
+    traversal.level = level;
+    traversal.typeAndLevel.left(-treeData[nodeIndex]).right(level);
+  }
+
+  @Override
+  @Deprecated
+  public Material getMaterial(int x, int y, int z, BlockPalette palette) {
+    if (building != null) {
+      return building.getMaterial(x, y, z, palette);
+    }
+    int nodeIndex = getNodeIndex(x, y, z);
+    if (treeData[nodeIndex] > 0) {
+      return UnknownBlock.UNKNOWN;
+    }
+    return palette.get(-treeData[nodeIndex]);
+  }
+
+  /**
+   * Stores the octree in the same format as the other implementations, i.e. shared
+   * subtrees are written once for every place they are used.
+   */
+  @Override
+  public void store(DataOutputStream output) throws IOException {
+    if (building != null) {
+      building.store(output);
+      return;
+    }
+    output.writeInt(depth);
+    storeNode(output, 0);
+  }
+
+  private void storeNode(DataOutputStream out, int nodeIndex) throws IOException {
+    int value = treeData[nodeIndex];
+    if (value > 0) {
+      out.writeInt(BRANCH_NODE);
+      for (int i = 0; i < 8; ++i) {
+        storeNode(out, value + i);
+      }
+    } else {
+      out.writeInt(-value);
+    }
+  }
+
+  /**
+   * Load an octree, adding the nodes to the DAG as they are read.
+   */
+  public static DagOctree load(DataInputStream in) throws IOException {
+    int depth = in.readInt();
+    DagBuilder dag = new DagBuilder();
+    int[][] scratch = new int[depth + 1][8];
+    int root = loadNode(in, dag, depth, scratch);
+    dag.data[0] = root;
+    return new DagOctree(depth, dag);
+  }
+
+  private static int loadNode(DataInputStream in, DagBuilder dag, int level, int[][] scratch) throws IOException {
+    int type = in.readInt();
+    if (type == BRANCH_NODE) {
+      int[] children = scratch[level];
+      for (int i = 0; i < 8; ++i) {
+        children[i] = loadNode(in, dag, level - 1, scratch);
+      }
+      return dag.intern(children);
+    } else {
+      return -type;
+    }
+  }
+
+  @Override
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Count the nodes of the octree that this DAG represents, i.e. shared nodes are counted
+   * once for every place they are used.
+   */
+  @Override
+  public long nodeCount() {
+    if (building != null) {
+      return building.nodeCount();
+    }
+    long[] memo = new long[size / 8 + 1];
+    return countNodes(0, memo);
+  }
+
+  private long countNodes(int nodeIndex, long[] memo) {
+    int value = treeData[nodeIndex];
+    if (value <= 0) {
+      return 1;
+    }
+    int group = (value - 1) >>> 3;
+    if (memo[group] == 0) {
+      long total = 0;
+      for (int i = 0; i < 8; ++i) {
+        total += countNodes(value + i, memo);
+      }
+      memo[group] = total;
+    }
+    return 1 + memo[group];
+  }
+
+  @Override
+  public void startFinalization() {
+    if (building != null) {
+      building.startFinalization();
+    }
+  }
+
+  /**
+   * Build the DAG. This also merges {@link Octree#ANY_TYPE} nodes, like the end of finalization
+   * of the other implementations.
+   */
+  @Override
+  public void endFinalization() {
+    DagBuilder dag;
+    if (building != null) {
+      dag = compress(building.treeData, depth, false);
+      building = null;
+    } else {
+      dag = compress(treeData, depth, true);
+    }
+    treeData = dag.trimmed();
+    size = dag.size;
+    sharedSize = dag.size;
+    Log.infof("Octree DAG has %d unique nodes", size);
+  }
+
+  static public void initImplementation() {
+    Octree.addImplementationFactory("DAG", new Octree.ImplementationFactory() {
+      @Override
+      public Octree.OctreeImplementation create(int depth) {
+        return new DagOctree(depth);
+      }
+
+      @Override
+      public Octree.OctreeImplementation load(DataInputStream in) throws IOException {
+        return DagOctree.load(in);
+      }
+
+      @Override
+      public Octree.OctreeImplementation loadWithNodeCount(long nodeCount, DataInputStream in) throws IOException {
+        return DagOctree.load(in);
+      }
+
+      @Override
+      public boolean isOfType(Octree.OctreeImplementation implementation) {
+        return implementation instanceof DagOctree;
+      }
+
+      @Override
+      public String getDescription() {
+        return "Stores identical parts of the octree only once. Uses much less memory than PACKED for large worlds, but the octree is built in the PACKED format first.";
+      }
+    });
+  }
+}
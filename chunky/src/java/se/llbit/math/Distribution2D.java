@@ -0,0 +1,134 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math;
+
+/**
+ * A piecewise constant 2D probability distribution over the unit square.
+ *
+ * <p>The square is divided into a grid of cells with the given weights. A point is sampled
+ * by first choosing a row from the marginal distribution of the row weights, then a cell
+ * in that row from the conditional distribution, and finally a uniformly distributed
+ * point inside the cell.
+ */
+public class Distribution2D {
+  private final int width;
+  private final int height;
+  private final float[] weights;
+
+  /** Cumulative distribution of the rows, height + 1 entries. */
+  private final float[] marginal;
+
+  /** Cumulative distribution of the cells in each row, width + 1 entries per row. */
+  private final float[] conditional;
+
+  private final double total;
+
+  /**
+   * @param weights non-negative cell weights, stored row by row
+   */
+  public Distribution2D(float[] weights, int width, int height) {
+    if (weights.length != width * height) {
+      throw new IllegalArgumentException("Expected " + (width * height) + " weights");
+    }
+    this.width = width;
+    this.height = height;
+    this.weights = weights;
+    marginal = new float[height + 1];
+    conditional = new float[height * (width + 1)];
+    double sum = 0;
+    for (int y = 0; y < height; ++y) {
+      int row = y * (width + 1);
+      double rowSum = 0;
+      for (int x = 0; x < width; ++x) {
+        rowSum += weights[y * width + x];
+        conditional[row + x + 1] = (float) rowSum;
+      }
+      for (int x = 1; x <= width; ++x) {
+        conditional[row + x] = rowSum > 0 ? (float) (conditional[row + x] / rowSum) : 0;
+      }
+      sum += rowSum;
+      marginal[y + 1] = (float) sum;
+    }
+    for (int y = 1; y <= height; ++y) {
+      marginal[y] = sum > 0 ? (float) (marginal[y] / sum) : 0;
+    }
+    total = sum;
+  }
+
+  /**
+   * @return {@code false} if all weights are zero, in which case nothing can be sampled
+   */
+  public boolean isValid() {
+    return total > 0;
+  }
+
+  /**
+   * Sample a point in the unit square.
+   *
+   * @param u1 uniform random number in [0, 1), selects the row
+   * @param u2 uniform random number in [0, 1), selects the column
+   * @param result the sampled point
+   * @return the probability density of the sampled point, zero if nothing could be sampled
+   */
+  public double sample(double u1, double u2, Vector2 result) {
+    if (total <= 0) {
+      return 0;
+    }
+    int y = find(marginal, 0, height, u1);
+    int row = y * (width + 1);
+    int x = find(conditional, row, width, u2);
+    double dy = marginal[y + 1] - marginal[y];
+    double dx = conditional[row + x + 1] - conditional[row + x];
+    result.y = (y + Math.min((u1 - marginal[y]) / dy, Math.nextDown(1.0))) / height;
+    result.x = (x + Math.min((u2 - conditional[row + x]) / dx, Math.nextDown(1.0))) / width;
+    return pdf(x, y);
+  }
+
+  /**
+   * @return the probability density at the given point in the unit square
+   */
+  public double pdf(double u, double v) {
+    if (total <= 0) {
+      return 0;
+    }
+    int x = Math.max(0, Math.min(width - 1, (int) (u * width)));
+    int y = Math.max(0, Math.min(height - 1, (int) (v * height)));
+    return pdf(x, y);
+  }
+
+  private double pdf(int x, int y) {
+    return weights[y * width + x] * width * height / total;
+  }
+
+  /**
+   * Find the interval of the cumulative distribution containing the value, which is
+   * the first interval whose upper end is greater than the value.
+   */
+  private static int find(float[] cdf, int offset, int size, double value) {
+    int lo = 0;
+    int hi = size - 1;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (cdf[offset + mid + 1] <= value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}
@@ -0,0 +1,393 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math;
+
+import se.llbit.math.Grid.EmitterPosition;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A light tree for importance sampling one emitter out of all emitters in the scene.
+ *
+ * <p>The tree is a binary BVH over the emitter blocks. Each node stores the bounds and the
+ * summed power (emittance times surface area) of the emitters below it. An emitter is
+ * selected by walking from the root to a leaf, choosing a child with probability
+ * proportional to its importance for the shading point. The importance of a node is
+ * its power divided by the squared distance to the node, and scaled by a conservative
+ * bound on the cosine between the surface normal and the directions to the node. Block
+ * emitters radiate in all directions, so there is no orientation bound on the emitter side.
+ *
+ * <p>Selecting an emitter costs O(log n) for a balanced tree, and the probability of the
+ * selection is returned along with the emitter so that the contribution can be weighted.
+ */
+public class EmitterLightTree {
+  /**
+   * Subtrees deeper than this are split at the median, to keep the tree depth bounded.
+   */
+  private static final int MAX_SAH_DEPTH = 64;
+
+  /**
+   * The selected emitter and the probability of selecting it.
+   */
+  public static class Selection {
+    public EmitterPosition emitter;
+    public double pdf;
+  }
+
+  private final List<EmitterPosition> emitters;
+
+  /** Six ints per node: the minimum and maximum corners of the node bounds, in blocks. */
+  private int[] bounds;
+
+  /** The summed power of the emitters in each node. */
+  private float[] power;
+
+  /**
+   * For an interior node, the index of the second child. The first child is stored right
+   * after its parent. For a leaf, the bitwise complement of the emitter index.
+   */
+  private int[] links;
+
+  private int nodeCount;
+
+  private EmitterLightTree(List<EmitterPosition> emitters, int nodeCount) {
+    this.emitters = emitters;
+    this.bounds = new int[nodeCount * 6];
+    this.power = new float[nodeCount];
+    this.links = new int[nodeCount];
+  }
+
+  /**
+   * Build a light tree over the given emitters. The list is referenced by the tree,
+   * so it must not be modified afterwards.
+   */
+  public static EmitterLightTree build(List<EmitterPosition> emitters) {
+    int size = emitters.size();
+    EmitterLightTree tree = new EmitterLightTree(emitters, Math.max(0, 2 * size - 1));
+    if (size > 0) {
+      int[] order = new int[size];
+      for (int i = 0; i < size; ++i) {
+        order[i] = i;
+      }
+      tree.buildNode(order, 0, size, 0);
+    }
+    return tree;
+  }
+
+  private int buildNode(int[] order, int start, int end, int depth) {
+    int node = nodeCount++;
+    int[] box = new int[6];
+    float nodePower = 0;
+    initBox(box);
+    for (int i = start; i < end; ++i) {
+      EmitterPosition pos = emitters.get(order[i]);
+      includeBlock(box, pos);
+      nodePower += emitterPower(pos);
+    }
+    System.arraycopy(box, 0, bounds, node * 6, 6);
+    power[node] = nodePower;
+
+    if (end - start == 1) {
+      links[node] = ~order[start];
+      return node;
+    }
+
+    // Split along the axis where the emitter positions are spread the most.
+    int axis = 0;
+    int extent = -1;
+    for (int i = 0; i < 3; ++i) {
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int j = start; j < end; ++j) {
+        int coordinate = coordinate(emitters.get(order[j]), i);
+        min = Math.min(min, coordinate);
+        max = Math.max(max, coordinate);
+      }
+      if (max - min > extent) {
+        extent = max - min;
+        axis = i;
+      }
+    }
+    sortByAxis(order, start, end, axis);
+
+    int split = (start + end) / 2;
+    if (extent > 0 && depth < MAX_SAH_DEPTH) {
+      split = bestSplit(order, start, end);
+    }
+    buildNode(order, start, split, depth + 1);
+    links[node] = buildNode(order, split, end, depth + 1);
+    return node;
+  }
+
+  /**
+   * Find the split of the sorted range with the lowest surface area and power cost.
+   * Both sides of the split contain at least one emitter.
+   */
+  private int bestSplit(int[] order, int start, int end) {
+    int count = end - start;
+    double[] rightCost = new double[count];
+    int[] box = new int[6];
+    float sidePower = 0;
+    initBox(box);
+    for (int i = count - 1; i > 0; --i) {
+      EmitterPosition pos = emitters.get(order[start + i]);
+      includeBlock(box, pos);
+      sidePower += emitterPower(pos);
+      rightCost[i] = sidePower * surfaceArea(box);
+    }
+    int split = start + count / 2;
+    double bestCost = Double.POSITIVE_INFINITY;
+    initBox(box);
+    sidePower = 0;
+    for (int i = 1; i < count; ++i) {
+      EmitterPosition pos = emitters.get(order[start + i - 1]);
+      includeBlock(box, pos);
+      sidePower += emitterPower(pos);
+      double cost = sidePower * surfaceArea(box) + rightCost[i];
+      if (cost < bestCost) {
+        bestCost = cost;
+        split = start + i;
+      }
+    }
+    return split;
+  }
+
+  private void sortByAxis(int[] order, int start, int end, int axis) {
+    long[] keys = new long[end - start];
+    for (int i = start; i < end; ++i) {
+      keys[i - start] = ((long) coordinate(emitters.get(order[i]), axis) << 32) | order[i];
+    }
+    Arrays.sort(keys);
+    for (int i = start; i < end; ++i) {
+      order[i] = (int) keys[i - start];
+    }
+  }
+
+  private static int coordinate(EmitterPosition pos, int axis) {
+    switch (axis) {
+      case 0:
+        return pos.x;
+      case 1:
+        return pos.y;
+      default:
+        return pos.z;
+    }
+  }
+
+  private static void initBox(int[] box) {
+    box[0] = box[1] = box[2] = Integer.MAX_VALUE;
+    box[3] = box[4] = box[5] = Integer.MIN_VALUE;
+  }
+
+  private static void includeBlock(int[] box, EmitterPosition pos) {
+    box[0] = Math.min(box[0], pos.x);
+    box[1] = Math.min(box[1], pos.y);
+    box[2] = Math.min(box[2], pos.z);
+    box[3] = Math.max(box[3], pos.x + 1);
+    box[4] = Math.max(box[4], pos.y + 1);
+    box[5] = Math.max(box[5], pos.z + 1);
+  }
+
+  private static double surfaceArea(int[] box) {
+    double dx = box[3] - box[0];
+    double dy = box[4] - box[1];
+    double dz = box[5] - box[2];
+    return 2 * (dx * dy + dy * dz + dz * dx);
+  }
+
+  /**
+   * The power of an emitter. Emittance can be changed after the tree is built, so every
+   * emitter keeps a non-zero power to make sure that it can still be selected.
+   */
+  private static float emitterPower(EmitterPosition pos) {
+    double area = 0;
+    for (int face = 0; face < pos.block.faceCount(); ++face) {
+      area += pos.block.surfaceArea(face);
+    }
+    return (float) Math.max(pos.block.emittance * area, Float.MIN_NORMAL);
+  }
+
+  /**
+   * @return the number of emitters in this tree
+   */
+  public int size() {
+    return emitters.size();
+  }
+
+  /**
+   * Select an emitter for the given shading point.
+   *
+   * @param point the shading point, in octree coordinates
+   * @param normal the surface normal at the shading point
+   * @param random random number source
+   * @param selection stores the selected emitter and its probability
+   * @return {@code false} if no emitter can light the shading point
+   */
+  public boolean sample(Vector3 point, Vector3 normal, Random random, Selection selection) {
+    if (nodeCount == 0) {
+      return false;
+    }
+    double u = random.nextDouble();
+    double pdf = 1;
+    int node = 0;
+    while (links[node] >= 0) {
+      int left = node + 1;
+      int right = links[node];
+      double leftImportance = importance(left, point, normal);
+      double rightImportance = importance(right, point, normal);
+      double total = leftImportance + rightImportance;
+      if (total <= 0) {
+        return false;
+      }
+      double pLeft = leftImportance / total;
+      if (u < pLeft) {
+        u = Math.min(u / pLeft, Math.nextDown(1.0));
+        pdf *= pLeft;
+        node = left;
+      } else {
+        u = Math.min((u - pLeft) / (1 - pLeft), Math.nextDown(1.0));
+        pdf *= 1 - pLeft;
+        node = right;
+      }
+    }
+    selection.emitter = emitters.get(~links[node]);
+    selection.pdf = pdf;
+    return true;
+  }
+
+  /**
+   * Get the probability that {@link #sample} selects the emitter with the given index
+   * for the given shading point.
+   */
+  public double pdf(Vector3 point, Vector3 normal, int emitter) {
+    if (nodeCount == 0) {
+      return 0;
+    }
+    return pdf(0, point, normal, emitter);
+  }
+
+  private double pdf(int node, Vector3 point, Vector3 normal, int emitter) {
+    if (links[node] < 0) {
+      return ~links[node] == emitter ? 1 : 0;
+    }
+    EmitterPosition pos = emitters.get(emitter);
+    int left = node + 1;
+    int right = links[node];
+    double leftImportance = importance(left, point, normal);
+    double rightImportance = importance(right, point, normal);
+    double total = leftImportance + rightImportance;
+    if (total <= 0) {
+      return 0;
+    }
+    double pdf = 0;
+    if (contains(left, pos)) {
+      pdf += leftImportance / total * pdf(left, point, normal, emitter);
+    }
+    if (pdf == 0 && contains(right, pos)) {
+      pdf += rightImportance / total * pdf(right, point, normal, emitter);
+    }
+    return pdf;
+  }
+
+  private boolean contains(int node, EmitterPosition pos) {
+    int offset = node * 6;
+    return pos.x >= bounds[offset] && pos.x < bounds[offset + 3]
+        && pos.y >= bounds[offset + 1] && pos.y < bounds[offset + 4]
+        && pos.z >= bounds[offset + 2] && pos.z < bounds[offset + 5];
+  }
+
+  /**
+   * Estimate how much light the emitters in a node can contribute to the shading point.
+   */
+  private double importance(int node, Vector3 point, Vector3 normal) {
+    int offset = node * 6;
+    double cx = (bounds[offset] + bounds[offset + 3]) * 0.5;
+    double cy = (bounds[offset + 1] + bounds[offset + 4]) * 0.5;
+    double cz = (bounds[offset + 2] + bounds[offset + 5]) * 0.5;
+    double hx = (bounds[offset + 3] - bounds[offset]) * 0.5;
+    double hy = (bounds[offset + 4] - bounds[offset + 1]) * 0.5;
+    double hz = (bounds[offset + 5] - bounds[offset + 2]) * 0.5;
+    double radius2 = hx * hx + hy * hy + hz * hz;
+
+    double dx = cx - point.x;
+    double dy = cy - point.y;
+    double dz = cz - point.z;
+    double distance2 = dx * dx + dy * dy + dz * dz;
+
+    double cosine = 1;
+    if (distance2 > radius2) {
+      // The node is seen within a cone around the direction to its center. Reduce the angle
+      // between the normal and that direction by the cone angle.
+      double distance = Math.sqrt(distance2);
+      double cosTheta = (dx * normal.x + dy * normal.y + dz * normal.z) / distance;
+      double sinBound2 = radius2 / distance2;
+      double cosBound = Math.sqrt(1 - sinBound2);
+      if (cosTheta < cosBound) {
+        double sinTheta = Math.sqrt(Math.max(0, 1 - cosTheta * cosTheta));
+        cosine = Math.max(0, cosTheta * cosBound + sinTheta * Math.sqrt(sinBound2));
+      }
+    }
+    // Emitter contributions are divided by the squared distance clamped to at least one block.
+    return power[node] * cosine / Math.max(distance2, Math.max(radius2, 1));
+  }
+
+  /**
+   * Write the tree to the given stream. The emitters are not written, they are
+   * stored by the emitter grid.
+   */
+  public void store(DataOutputStream out) throws IOException {
+    out.writeInt(nodeCount);
+    for (int i = 0; i < nodeCount; ++i) {
+      for (int j = 0; j < 6; ++j) {
+        out.writeInt(bounds[i * 6 + j]);
+      }
+      out.writeFloat(power[i]);
+      out.writeInt(links[i]);
+    }
+  }
+
+  /**
+   * Read a tree written by {@link #store}.
+   *
+   * @param emitters the emitters of the grid that the tree was stored with
+   */
+  public static EmitterLightTree load(DataInputStream in, List<EmitterPosition> emitters)
+      throws IOException {
+    int nodeCount = in.readInt();
+    if (nodeCount != Math.max(0, 2 * emitters.size() - 1)) {
+      throw new IOException("Light tree does not match the emitter grid");
+    }
+    EmitterLightTree tree = new EmitterLightTree(emitters, nodeCount);
+    tree.nodeCount = nodeCount;
+    for (int i = 0; i < nodeCount; ++i) {
+      for (int j = 0; j < 6; ++j) {
+        tree.bounds[i * 6 + j] = in.readInt();
+      }
+      tree.power[i] = in.readFloat();
+      tree.links[i] = in.readInt();
+      if (tree.links[i] >= nodeCount || (tree.links[i] < 0 && ~tree.links[i] >= emitters.size())) {
+        throw new IOException("Invalid light tree node");
+      }
+    }
+    return tree;
+  }
+}
@@ -10,9 +10,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.function.Predicate;
 
 public class Grid {
-  private static final int GRID_FORMAT_VERSION = 3;
+  private static final int GRID_FORMAT_VERSION = 4;
 
   /**
    * Holds a 3D grid of blocks cube
@@ -79,6 +80,9 @@ public class Grid {
   // This way of storing the data is more difficult to manipulate but more
   // memory efficient by virtue of only having 2 flat arrays
 
+  // Light tree over all emitters, used by the light tree emitter sampling strategy
+  private EmitterLightTree lightTree;
+
   // Only used during construction
   private int minX, maxX, minY, maxY, minZ, maxZ;
 
@@ -105,6 +109,20 @@ public class Grid {
       maxZ = pos.z;
   }
 
+  /**
+   * Create a new grid with the same cell size that contains the emitters of this grid
+   * that match the filter. The new grid must be prepared after more emitters are added.
+   */
+  public Grid filter(Predicate<EmitterPosition> filter) {
+    Grid grid = new Grid(cellSize);
+    for (EmitterPosition pos : emitterPositions) {
+      if(filter.test(pos)) {
+        grid.addEmitter(pos);
+      }
+    }
+    return grid;
+  }
+
   private int cellIndex(int x, int y, int z) {
     return (((y - offsetY) * sizeX) + (x - offsetX)) * sizeZ + (z - offsetZ);
   }
@@ -175,6 +193,8 @@ public class Grid {
       constructedGrid[2*i+1] = numberOfIndexes;
       constructedGridCurrentIndex += numberOfIndexes;
     }
+
+    lightTree = EmitterLightTree.build(emitterPositions);
   }
 
   /**
@@ -222,6 +242,13 @@ public class Grid {
     return pos;
   }
 
+  /**
+   * Get the light tree for importance sampling emitters in the whole scene
+   */
+  public EmitterLightTree getLightTree() {
+    return lightTree;
+  }
+
   /**
    * Stores the grid in the given stream
    * @param out The output stream
@@ -260,6 +287,8 @@ public class Grid {
         out.writeInt(positionIndexes[start+j]);
       }
     }
+
+    lightTree.store(out);
   }
 
   /**
@@ -317,7 +346,8 @@ public class Grid {
           in.readFloat();
           grid.emitterPositions.add(EmitterPosition.create((int) x, (int) y, (int) z, scene));
         }
-        case 3: {
+        case 3:
+        case 4: {
           int x = in.readInt();
           int y = in.readInt();
           int z = in.readInt();
@@ -347,6 +377,12 @@ public class Grid {
     for(int i = 0; i < positionIndexesList.size(); ++i)
       grid.positionIndexes[i] = positionIndexesList.get(i);
 
+    if (version >= 4) {
+      grid.lightTree = EmitterLightTree.load(in, grid.emitterPositions);
+    } else {
+      grid.lightTree = EmitterLightTree.build(grid.emitterPositions);
+    }
+
     return grid;
   }
 }
@@ -0,0 +1,572 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math;
+
+import it.unimi.dsi.fastutil.ints.IntIntMutablePair;
+import se.llbit.chunky.PersistentSettings;
+import se.llbit.chunky.block.minecraft.UnknownBlock;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.world.Material;
+import se.llbit.log.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static se.llbit.math.Octree.*;
+
+/**
+ * An octree stored outside of the Java heap, in a memory-mapped temporary file.
+ *
+ * <p>The node layout is the same as {@link BigPackedOctree}: every node is a long, a positive
+ * value is the index of the first child of a branch node and other values are the negation of
+ * the type of a leaf node. The nodes are stored in fixed size segments that are mapped one by one
+ * as the tree grows, so the octree size is only limited by the available disk space. The first
+ * segment is mapped with a size estimated from the depth and grows up to the full segment size.
+ * The operating system pages the mapped data in and out on demand, so cold subtrees do not need
+ * to stay in memory.
+ *
+ * <p>The backing file is created in the Chunky cache directory and deleted when the octree is
+ * garbage collected or when Chunky exits.
+ */
+public class MappedOctree implements Octree.OctreeImplementation {
+  /**
+   * Each segment holds 2^24 nodes (128 MiB).
+   */
+  private static final int SEGMENT_SHIFT = 24;
+  private static final long SEGMENT_NODES = 1L << SEGMENT_SHIFT;
+  private static final long SEGMENT_MASK = SEGMENT_NODES - 1;
+
+  /**
+   * Smallest initial mapping, in nodes (8 KiB).
+   */
+  private static final long MIN_INITIAL_NODES = 1 << 10;
+
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  /**
+   * Mapped node segments. Only the first {@code segmentCount} entries are used.
+   * All segments except the last one are mapped with the full segment size.
+   */
+  private LongBuffer[] segments = new LongBuffer[4];
+  private int segmentCount = 0;
+
+  /**
+   * Number of nodes that fit in the mapped segments.
+   */
+  private long capacity = 0;
+
+  private final MappedFile file;
+
+  /**
+   * Number of nodes in use, including free nodes.
+   */
+  private long size;
+
+  /**
+   * Head of the free list, or -1 if there are no holes that can be reused.
+   */
+  private long freeHead;
+
+  private int depth;
+
+  /**
+   * Keeps the channel of the backing file open until the octree is unreachable.
+   * The file is opened with {@code DELETE_ON_CLOSE}.
+   */
+  private static final class MappedFile implements Runnable {
+    final File path;
+    final FileChannel channel;
+
+    MappedFile(File directory) throws IOException {
+      if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+        directory = null;
+      }
+      path = File.createTempFile("octree", ".bin", directory);
+      path.deleteOnExit();
+      channel = FileChannel.open(path.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    @Override
+    public void run() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        Log.warn("Failed to close memory mapped octree file " + path, e);
+      }
+    }
+  }
+
+  private static final class NodeId implements Octree.NodeId {
+    public long nodeIndex;
+
+    public NodeId(long nodeIndex) {
+      this.nodeIndex = nodeIndex;
+    }
+  }
+
+  /**
+   * Constructs an empty octree backed by a file in the Chunky cache directory.
+   * @param depth The depth of the tree
+   */
+  public MappedOctree(int depth) throws IOException {
+    this(depth, PersistentSettings.cacheDirectory());
+  }
+
+  /**
+   * Constructs an empty octree backed by a file in the given directory.
+   * @param depth The depth of the tree
+   * @param directory The directory of the backing file, or {@code null} for the default
+   *                  temporary file directory
+   */
+  public MappedOctree(int depth, File directory) throws IOException {
+    this.depth = depth;
+    this.file = new MappedFile(directory);
+    CLEANER.register(this, file);
+    freeHead = -1;
+    ensureCapacity(initialNodes(depth));
+    setAt(0, 0);
+    size = 1;
+  }
+
+  /**
+   * Estimate the initial number of nodes from the depth. The number of nodes of a typical
+   * scene grows with the surface area of the world, about 4 times per level.
+   */
+  private static long initialNodes(int depth) {
+    if (depth >= SEGMENT_SHIFT / 2) {
+      return SEGMENT_NODES;
+    }
+    return Math.min(SEGMENT_NODES, Math.max(MIN_INITIAL_NODES, 8L << (2 * depth)));
+  }
+
+  @Override
+  public Octree.NodeId getRoot() {
+    return new NodeId(0);
+  }
+
+  @Override
+  public boolean isBranch(Octree.NodeId node) {
+    return getAt(((NodeId) node).nodeIndex) > 0;
+  }
+
+  @Override
+  public Octree.NodeId getChild(Octree.NodeId parent, int childNo) {
+    return new NodeId(getAt(((NodeId) parent).nodeIndex) + childNo);
+  }
+
+  @Override
+  public int getType(Octree.NodeId node) {
+    return typeFromValue(getAt(((NodeId) node).nodeIndex));
+  }
+
+  private long getAt(long index) {
+    return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+  }
+
+  private void setAt(long index, long value) {
+    segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index & SEGMENT_MASK), value);
+  }
+
+  private static int typeFromValue(long value) {
+    return -(int) (value);
+  }
+
+  private static long valueFromType(int type) {
+    return (long) (-type);
+  }
+
+  /**
+   * Map new segments, or grow the last segment, until the tree can hold the given number of nodes.
+   */
+  private void ensureCapacity(long nodes) {
+    while (capacity < nodes) {
+      int segment;
+      long segmentNodes;
+      if (segmentCount > 0 && segments[segmentCount - 1].capacity() < SEGMENT_NODES) {
+        // Remap the last segment with a bigger size. The data is kept in the file.
+        segment = segmentCount - 1;
+        long mapped = segments[segment].capacity();
+        segmentNodes = Math.min(SEGMENT_NODES,
+            Math.max(mapped * 2, nodes - ((long) segment << SEGMENT_SHIFT)));
+        capacity -= mapped;
+      } else {
+        if (segmentCount == segments.length) {
+          segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        segment = segmentCount;
+        segmentNodes = segment == 0
+            ? Math.min(SEGMENT_NODES, Math.max(MIN_INITIAL_NODES, nodes))
+            : SEGMENT_NODES;
+        segmentCount += 1;
+      }
+      long position = ((long) segment << SEGMENT_SHIFT) * Long.BYTES;
+      try {
+        segments[segment] = file.channel
+            .map(FileChannel.MapMode.READ_WRITE, position, segmentNodes * Long.BYTES)
+            .order(ByteOrder.nativeOrder())
+            .asLongBuffer();
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to map octree segment in " + file.path, e);
+      }
+      capacity += segmentNodes;
+    }
+  }
+
+  /**
+   * Finds space for 8 nodes, either from the free list or by appending
+   * at the end of the mapped data.
+   *
+   * @return the index of the first of the 8 nodes
+   */
+  private long findSpace() {
+    if (freeHead != -1) {
+      long index = freeHead;
+      freeHead = getAt(freeHead);
+      return index;
+    }
+    ensureCapacity(size + 8);
+    long index = size;
+    size += 8;
+    return index;
+  }
+
+  /**
+   * Add the 8 nodes beginning at index to the free list.
+   */
+  private void freeSpace(long index) {
+    setAt(index, freeHead);
+    freeHead = index;
+  }
+
+  private void subdivideNode(long nodeIndex) {
+    long childrenIndex = findSpace();
+    for (int i = 0; i < 8; ++i) {
+      setAt(childrenIndex + i, getAt(nodeIndex));
+    }
+    setAt(nodeIndex, childrenIndex);
+  }
+
+  private void mergeNode(long nodeIndex, long value) {
+    long childrenIndex = getAt(nodeIndex);
+    freeSpace(childrenIndex);
+    setAt(nodeIndex, value);
+  }
+
+  @Override
+  public void set(int type, int x, int y, int z) {
+    long[] parents = new long[depth];
+    long nodeIndex = 0;
+    int parentLevel = depth - 1;
+    int position = 0;
+    for (int i = depth - 1; i >= 0; --i) {
+      parents[i] = nodeIndex;
+
+      if (typeFromValue(getAt(nodeIndex)) == type) {
+        return;
+      } else if (getAt(nodeIndex) <= 0) { // It's a leaf node
+        subdivideNode(nodeIndex);
+        parentLevel = i;
+      }
+
+      int xbit = 1 & (x >> i);
+      int ybit = 1 & (y >> i);
+      int zbit = 1 & (z >> i);
+      position = (xbit << 2) | (ybit << 1) | zbit;
+      nodeIndex = getAt(nodeIndex) + position;
+    }
+    long finalNodeIndex = getAt(parents[0]) + position;
+    setAt(finalNodeIndex, valueFromType(type));
+
+    // Merge nodes where all children have been set to the same type.
+    for (int i = 0; i <= parentLevel; ++i) {
+      long parentIndex = parents[i];
+
+      boolean allSame = true;
+      for (int j = 0; j < 8; ++j) {
+        long childIndex = getAt(parentIndex) + j;
+        if (getAt(childIndex) != getAt(nodeIndex)) {
+          allSame = false;
+          break;
+        }
+      }
+
+      if (allSame) {
+        mergeNode(parentIndex, getAt(nodeIndex));
+      } else {
+        break;
+      }
+    }
+  }
+
+  @Override
+  public void getWithLevel(IntIntMutablePair outTypeAndLevel, int x, int y, int z) {
+    long nodeIndex = 0;
+    int level = depth;
+    long value;
+    while ((value = getAt(nodeIndex)) > 0) {
+      level -= 1;
+      int lx = x >>> level;
+      int ly = y >>> level;
+      int lz = z >>> level;
+      nodeIndex = value + (((lx & 1) << 2) | ((ly & 1) << 1) | (lz & 1));
+    }
+    outTypeAndLevel.left(typeFromValue(value)).right(level);
+  }
+
+  @Override
+  public void getWithLevel(Octree.Traversal traversal, int x, int y, int z) {
+    long[] nodes;
+    long nodeIndex;
+    int level;
+    if (traversal.valid) {
+      nodes = traversal.nodes;
+      level = traversal.commonAncestorLevel(x, y, z);
+      nodeIndex = nodes[level];
+    } else {
+      traversal.ensureDepth(depth);
+      nodes = traversal.nodes;
+      level = depth;
+      nodeIndex = 0;
+      nodes[level] = nodeIndex;
+      traversal.valid = true;
+    }
+    long value;
+    while ((value = getAt(nodeIndex)) > 0) {
+      level -= 1;
+      int lx = x >>> level;
+      int ly = y >>> level;
+      int lz = z >>> level;
+      nodeIndex = value + (((lx & 1) << 2) | ((ly & 1) << 1) | (lz & 1));
+      nodes[level] = nodeIndex;
+    }
+    traversal.x = x;
+    traversal.y = y;
+    traversal.z = z;
+    traversal.level = level;
+    traversal.typeAndLevel.left(typeFromValue(value)).right(level);
+  }
+
+  private long getNodeIndex(int x, int y, int z) {
+    long nodeIndex = 0;
+    int level = depth;
+    long value;
+    while ((value = getAt(nodeIndex)) > 0) {
+      level -= 1;
+      int lx = x >>> level;
+      int ly = y >>> level;
+      int lz = z >>> level;
+      nodeIndex = value + (((lx & 1) << 2) | ((ly & 1) << 1) | (lz & 1));
+    }
+    return nodeIndex;
+  }
+
+  @Override
+  public Material getMaterial(int x, int y, int z, BlockPalette palette) {
+    long value = getAt(getNodeIndex(x, y, z));
+    if (value > 0) {
+      return UnknownBlock.UNKNOWN;
+    }
+    return palette.get(typeFromValue(value));
+  }
+
+  @Override
+  public void store(DataOutputStream output) throws IOException {
+    output.writeInt(depth);
+    storeNode(output, 0);
+  }
+
+  private void storeNode(DataOutputStream out, long nodeIndex) throws IOException {
+    long value = getAt(nodeIndex);
+    if (value > 0) {
+      out.writeInt(BRANCH_NODE);
+      for (int i = 0; i < 8; ++i) {
+        storeNode(out, value + i);
+      }
+    } else {
+      out.writeInt(typeFromValue(value));
+    }
+  }
+
+  /**
+   * Load an octree directly into the mapped storage.
+   */
+  public static MappedOctree load(DataInputStream in) throws IOException {
+    return load(in, PersistentSettings.cacheDirectory());
+  }
+
+  /**
+   * Load an octree directly into the mapped storage, backed by a file in the given directory.
+   */
+  public static MappedOctree load(DataInputStream in, File directory) throws IOException {
+    int depth = in.readInt();
+    MappedOctree tree = new MappedOctree(depth, directory);
+    tree.loadNode(in, 0);
+    return tree;
+  }
+
+  /**
+   * Load an octree directly into the mapped storage, mapping enough segments
+   * for the given number of nodes up front.
+   */
+  public static MappedOctree loadWithNodeCount(long nodeCount, DataInputStream in) throws IOException {
+    int depth = in.readInt();
+    MappedOctree tree = new MappedOctree(depth);
+    tree.ensureCapacity(nodeCount);
+    tree.loadNode(in, 0);
+    return tree;
+  }
+
+  private void loadNode(DataInputStream in, long nodeIndex) throws IOException {
+    int type = in.readInt();
+    if (type == BRANCH_NODE) {
+      long childrenIndex = findSpace();
+      setAt(nodeIndex, childrenIndex);
+      for (int i = 0; i < 8; ++i) {
+        loadNode(in, childrenIndex + i);
+      }
+    } else {
+      setAt(nodeIndex, valueFromType(type));
+    }
+  }
+
+  /**
+   * Copy the nodes into a new backing file in the same directory.
+   *
+   * @return the copy, or {@code null} if the new backing file could not be created
+   */
+  @Override
+  public MappedOctree copy() {
+    MappedOctree copy;
+    try {
+      copy = new MappedOctree(depth, file.path.getParentFile());
+    } catch (IOException e) {
+      Log.warn("Failed to create memory mapped octree file", e);
+      return null;
+    }
+    copy.ensureCapacity(size);
+    for (int segment = 0; (long) segment << SEGMENT_SHIFT < size; ++segment) {
+      int count = (int) Math.min(SEGMENT_NODES, size - ((long) segment << SEGMENT_SHIFT));
+      LongBuffer source = segments[segment].duplicate();
+      source.limit(count);
+      LongBuffer target = copy.segments[segment].duplicate();
+      target.put(source);
+    }
+    copy.size = size;
+    copy.freeHead = freeHead;
+    return copy;
+  }
+
+  @Override
+  public int getDepth() {
+    return depth;
+  }
+
+  @Override
+  public long nodeCount() {
+    return countNodes(0);
+  }
+
+  private long countNodes(long nodeIndex) {
+    long value = getAt(nodeIndex);
+    if (value > 0) {
+      long total = 1;
+      for (int i = 0; i < 8; ++i) {
+        total += countNodes(value + i);
+      }
+      return total;
+    } else {
+      return 1;
+    }
+  }
+
+  @Override
+  public void endFinalization() {
+    // There is a bunch of ANY_TYPE nodes we should try to merge
+    finalizationNode(0);
+  }
+
+  private void finalizationNode(long nodeIndex) {
+    if (getAt(nodeIndex) <= 0) {
+      return;
+    }
+    boolean canMerge = true;
+    int mergedType = ANY_TYPE;
+    for (int i = 0; i < 8; ++i) {
+      long childIndex = getAt(nodeIndex) + i;
+      if (getAt(childIndex) > 0) {
+        finalizationNode(childIndex);
+        // The node may have been merged, retest if it still a branch node
+        if (getAt(childIndex) > 0) {
+          canMerge = false;
+        }
+      }
+      if (canMerge) {
+        if (mergedType == ANY_TYPE) {
+          mergedType = typeFromValue(getAt(childIndex));
+        } else if (!(typeFromValue(getAt(childIndex)) == ANY_TYPE || getAt(childIndex) == valueFromType(mergedType))) {
+          canMerge = false;
+        }
+      }
+    }
+    if (canMerge) {
+      mergeNode(nodeIndex, valueFromType(mergedType));
+    }
+  }
+
+  static public void initImplementation() {
+    Octree.addImplementationFactory("MAPPED", new Octree.ImplementationFactory() {
+      @Override
+      public Octree.OctreeImplementation create(int depth) {
+        try {
+          return new MappedOctree(depth);
+        } catch (IOException e) {
+          throw new UncheckedIOException("Failed to create memory mapped octree", e);
+        }
+      }
+
+      @Override
+      public Octree.OctreeImplementation load(DataInputStream in) throws IOException {
+        return MappedOctree.load(in);
+      }
+
+      @Override
+      public Octree.OctreeImplementation loadWithNodeCount(long nodeCount, DataInputStream in) throws IOException {
+        return MappedOctree.loadWithNodeCount(nodeCount, in);
+      }
+
+      @Override
+      public boolean isOfType(Octree.OctreeImplementation implementation) {
+        return implementation instanceof MappedOctree;
+      }
+
+      @Override
+      public String getDescription() {
+        return "Stores the octree in a memory mapped file outside of the Java heap. Slower than BIGPACKED but only limited by disk space, for huge scenes.";
+      }
+    });
+  }
+}
@@ -113,6 +113,15 @@ public class Matrix3 {
         m31 * o.x + m32 * o.y + m33 * o.z);
   }
 
+  /**
+   * Transform a vector using the transpose of this matrix. For a rotation matrix
+   * this is the inverse transform.
+   */
+  public void transformTranspose(Vector3 o) {
+    o.set(m11 * o.x + m21 * o.y + m31 * o.z, m12 * o.x + m22 * o.y + m32 * o.z,
+        m13 * o.x + m23 * o.y + m33 * o.z);
+  }
+
   /**
    * Transform the vector using this matrix.
    * @return X component of the transformed vector
@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import it.unimi.dsi.fastutil.ints.IntIntMutablePair;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.io.FastBufferedInputStream;
 import it.unimi.dsi.fastutil.io.FastBufferedOutputStream;
 import org.apache.commons.math3.util.FastMath;
@@ -71,6 +73,16 @@ public class Octree {
     int getType(NodeId node);
     default void startFinalization() {}
     default void endFinalization() {}
+
+    /**
+     * Create an independent copy of this octree, so that one of them can be modified while the
+     * other one is rendered.
+     *
+     * @return the copy, or {@code null} if this implementation can not be copied
+     */
+    default OctreeImplementation copy() {
+      return null;
+    }
     default void getWithLevel(IntIntMutablePair outTypeAndLevel, int x, int y, int z) {
       NodeId node = getRoot();
       int level = getDepth();
@@ -84,6 +96,22 @@ public class Octree {
       outTypeAndLevel.right(level).left(getType(node));
     }
 
+    /**
+     * Incremental variant of {@link #getWithLevel(IntIntMutablePair, int, int, int)} used while
+     * marching a ray through the octree. The result is stored in {@code traversal.typeAndLevel}.
+     *
+     * <p>Implementations may keep the path to the previous leaf in the traversal stack and only
+     * pop up to the common ancestor of the previous leaf and the new position before descending,
+     * instead of descending from the root. The result must be identical to
+     * {@link #getWithLevel(IntIntMutablePair, int, int, int)}.
+     * The default implementation descends from the root on every call.
+     *
+     * x, y, z are in octree coordinates, NOT world coordinates.
+     */
+    default void getWithLevel(Traversal traversal, int x, int y, int z) {
+      getWithLevel(traversal.typeAndLevel, x, y, z);
+    }
+
     /**
      * Set a whole 2^n * 2^n * 2^n cube of blocks
      * @param cubeDepth the n
@@ -114,6 +142,143 @@ public class Octree {
 
   public interface NodeId {}
 
+  /**
+   * Octree implementation for views that record writes, see {@link #recordChanges()}.
+   *
+   * <p>Block lookups see the recorded writes. The node structure and serialization are those
+   * of the wrapped octree, without the recorded writes.
+   */
+  private static final class ChangeRecorder implements OctreeImplementation {
+    private static final int NONE = BRANCH_NODE;
+
+    private final Octree base;
+    private final Long2IntOpenHashMap changes = new Long2IntOpenHashMap();
+
+    ChangeRecorder(Octree base) {
+      this.base = base;
+      changes.defaultReturnValue(NONE);
+    }
+
+    private static long key(int x, int y, int z) {
+      return ((long) x << (2 * MAX_RECORDING_DEPTH)) | ((long) y << MAX_RECORDING_DEPTH) | z;
+    }
+
+    void apply() {
+      int mask = (1 << MAX_RECORDING_DEPTH) - 1;
+      for (Long2IntMap.Entry change : changes.long2IntEntrySet()) {
+        long key = change.getLongKey();
+        base.set(change.getIntValue(), (int) (key >>> (2 * MAX_RECORDING_DEPTH)),
+            (int) (key >>> MAX_RECORDING_DEPTH) & mask, (int) key & mask);
+      }
+      changes.clear();
+    }
+
+    @Override
+    public void set(int type, int x, int y, int z) {
+      changes.put(key(x, y, z), type);
+    }
+
+    @Override
+    public Block getBlock(int x, int y, int z, BlockPalette palette) {
+      int type = changes.get(key(x, y, z));
+      return type == NONE ? base.getBlock(x, y, z, palette) : palette.get(type);
+    }
+
+    @Override
+    @Deprecated
+    public Material getMaterial(int x, int y, int z, BlockPalette palette) {
+      return getBlock(x, y, z, palette);
+    }
+
+    @Override
+    public int getDepth() {
+      return base.getDepth();
+    }
+
+    @Override
+    public void store(DataOutputStream output) throws IOException {
+      base.implementation.store(output);
+    }
+
+    @Override
+    public long nodeCount() {
+      return base.implementation.nodeCount();
+    }
+
+    @Override
+    public NodeId getRoot() {
+      return base.implementation.getRoot();
+    }
+
+    @Override
+    public boolean isBranch(NodeId node) {
+      return base.implementation.isBranch(node);
+    }
+
+    @Override
+    public NodeId getChild(NodeId parent, int childNo) {
+      return base.implementation.getChild(parent, childNo);
+    }
+
+    @Override
+    public int getType(NodeId node) {
+      return base.implementation.getType(node);
+    }
+  }
+
+  /**
+   * Scratch state for marching a ray through an octree. This holds the output of leaf
+   * lookups and the stack of nodes on the path to the previously visited leaf, which lets
+   * implementations find the next leaf without descending from the root.
+   *
+   * <p>A traversal must only be used by one thread at a time. It is reset at the start of
+   * every ray march, so it can be reused for different octrees.
+   */
+  public static final class Traversal {
+    /** Output of the last leaf lookup: the leaf type and the level of the leaf. */
+    public final IntIntMutablePair typeAndLevel = new IntIntMutablePair(0, 0);
+
+    /**
+     * Implementation-specific node references on the path to the last leaf, indexed by level.
+     * {@code nodes[depth]} is the root and {@code nodes[level]} is the leaf.
+     */
+    public long[] nodes = new long[0];
+
+    /** Position of the last lookup. */
+    public int x, y, z;
+
+    /** Level of the last leaf. */
+    public int level;
+
+    /** {@code true} if the stack holds the path to the last lookup. */
+    public boolean valid = false;
+
+    /**
+     * Invalidate the stack, the next lookup will start from the root.
+     */
+    public void reset() {
+      valid = false;
+    }
+
+    /**
+     * Make sure the stack can hold the path of an octree with the given depth.
+     */
+    public void ensureDepth(int depth) {
+      if (nodes.length < depth + 1) {
+        nodes = new long[depth + 1];
+      }
+    }
+
+    /**
+     * Find the level of the lowest common ancestor of the last leaf and the given position,
+     * i.e. the level to restart descending from. Only valid if {@link #valid} is {@code true}.
+     */
+    public int commonAncestorLevel(int x, int y, int z) {
+      int diff = (x ^ this.x) | (y ^ this.y) | (z ^ this.z);
+      return Math.max(Integer.SIZE - Integer.numberOfLeadingZeros(diff), level);
+    }
+  }
+
   public interface ImplementationFactory {
     OctreeImplementation create(int depth);
     OctreeImplementation load(DataInputStream in) throws IOException;
@@ -248,9 +413,9 @@ public class Octree {
   }
 
   /**
-   * Timestamp of last serialization.
+   * Timestamp of last serialization. Scenes can be saved on a background thread.
    */
-  private long timestamp = 0;
+  private volatile long timestamp = 0;
 
   private OctreeImplementation implementation;
 
@@ -304,6 +469,53 @@ public class Octree {
     return implementation.getBlock(x, y, z, palette);
   }
 
+  /**
+   * Maximum depth of octrees that support {@link #recordChanges()}.
+   */
+  public static final int MAX_RECORDING_DEPTH = 21;
+
+  /**
+   * Create a view of this octree that records writes instead of applying them.
+   * Reads through the view see the recorded writes and otherwise read this octree.
+   *
+   * <p>Several threads can use their own views concurrently, as long as this octree is not
+   * modified meanwhile. The recorded writes are applied with {@link #applyChanges(Octree)}.
+   *
+   * @throws IllegalStateException if the depth of this octree is larger than
+   * {@link #MAX_RECORDING_DEPTH}
+   */
+  public Octree recordChanges() {
+    if (getDepth() > MAX_RECORDING_DEPTH) {
+      throw new IllegalStateException("Octree is too deep to record changes: " + getDepth());
+    }
+    return new Octree(new ChangeRecorder(this));
+  }
+
+  /**
+   * Apply the writes recorded by a view of this octree.
+   *
+   * @param view view created by {@link #recordChanges()} on this octree
+   */
+  public synchronized void applyChanges(Octree view) {
+    if (!(view.implementation instanceof ChangeRecorder)
+        || ((ChangeRecorder) view.implementation).base != this) {
+      throw new IllegalArgumentException("Not a view of this octree");
+    }
+    ((ChangeRecorder) view.implementation).apply();
+  }
+
+  /**
+   * Create an independent copy of this octree. The copy can be modified while this octree is
+   * read by other threads. The serialization timestamp is not copied, so the copy is stored
+   * again the next time the scene is saved.
+   *
+   * @return the copy, or {@code null} if the octree implementation does not support copying
+   */
+  public Octree copy() {
+    OctreeImplementation copy = implementation.copy();
+    return copy != null ? new Octree(copy) : null;
+  }
+
   /**
    * Serialize this octree to a data output stream.
    *
@@ -481,9 +693,22 @@ public class Octree {
    * @return {@code false} if the ray did not hit the geometry
    */
   public boolean enterBlock(Scene scene, Ray ray, BlockPalette palette) {
+    return enterBlock(scene, ray, palette, new Traversal());
+  }
+
+  /**
+   * Intersects the ray with the geometry inside the octree.
+   *
+   * @param traversal scratch storage for leaf lookups, so that the march does not allocate
+   * @return {@code false} if the ray did not hit the geometry
+   */
+  public boolean enterBlock(Scene scene, Ray ray, BlockPalette palette, Traversal traversal) {
     if (!isInside(ray.o) && !enterOctree(ray))
       return false;
 
+    traversal.reset();
+    IntIntMutablePair typeAndLevel = traversal.typeAndLevel;
+
     int depth = implementation.getDepth();
 
     double distance = 0;
@@ -498,10 +723,9 @@ public class Octree {
     double offsetY = -ray.o.y * invDy;
     double offsetZ = -ray.o.z * invDz;
 
-    IntIntMutablePair typeAndLevel = new IntIntMutablePair(0, 0);
-
-    // Marching is done in a top-down fashion: at each step, the octree is descended from the root to find the leaf
-    // node the ray is in. Terminating the march is then decided based on the block type in that leaf node. Finally the
+    // At each step of the march the leaf node the ray is in is looked up. Implementations supporting incremental
+    // traversal only go up to the common ancestor of the previous leaf and descend from there, others descend from
+    // the root. Terminating the march is then decided based on the block type in that leaf node. Finally the
     // ray is advanced to the boundary of the current leaf node and the next, ready for the next iteration.
     while (true) {
       // Add small offset past the intersection to avoid
@@ -517,7 +741,7 @@ public class Octree {
       if (lx != 0 || ly != 0 || lz != 0)
         return false; // outside of octree!
 
-      implementation.getWithLevel(typeAndLevel, x, y, z);
+      implementation.getWithLevel(traversal, x, y, z);
       int type = typeAndLevel.leftInt();
       int level = typeAndLevel.rightInt();
 
@@ -627,15 +851,27 @@ public class Octree {
    * @return {@code false} if the ray doesn't hit anything
    */
   public boolean exitWater(Scene scene, Ray ray, BlockPalette palette) {
+    return exitWater(scene, ray, palette, new Traversal());
+  }
+
+  /**
+   * Advance the ray until it leaves the current water body.
+   *
+   * @param traversal scratch storage for leaf lookups, so that the march does not allocate
+   * @return {@code false} if the ray doesn't hit anything
+   */
+  public boolean exitWater(Scene scene, Ray ray, BlockPalette palette, Traversal traversal) {
     if (!isInside(ray.o) && !enterOctree(ray))
       return false;
 
-    int depth = getDepth();
-    // Marching is done in a top-down fashion: at each step, the octree is descended from the root to find the leaf
-    // node the ray is in. Terminating the march is then decided based on the block type in that leaf node. Finally the
-    // ray is advanced to the boundary of the current leaf node and the next, ready for the next iteration.
+    traversal.reset();
+    IntIntMutablePair typeAndLevel = traversal.typeAndLevel;
 
-    IntIntMutablePair typeAndLevel = new IntIntMutablePair(0, 0);
+    int depth = getDepth();
+    // At each step of the march the leaf node the ray is in is looked up, incrementally from the previous leaf
+    // if the implementation supports it. Terminating the march is then decided based on the block type in that
+    // leaf node. Finally the ray is advanced to the boundary of the current leaf node and the next, ready for the
+    // next iteration.
     while (true) {
       // Add small offset past the intersection to avoid
       // recursion to the same octree node!
@@ -650,8 +886,8 @@ public class Octree {
       if (lx != 0 || ly != 0 || lz != 0)
         return false; // outside of octree!
 
-      // Descend the tree to find the current leaf node
-      implementation.getWithLevel(typeAndLevel, x, y, z);
+      // Find the current leaf node
+      implementation.getWithLevel(traversal, x, y, z);
       int type = typeAndLevel.leftInt();
       int level = typeAndLevel.rightInt();
 
@@ -857,6 +1093,8 @@ public class Octree {
     NodeBasedOctree.initImplementation();
     PackedOctree.initImplementation();
     BigPackedOctree.initImplementation();
+    MappedOctree.initImplementation();
+    DagOctree.initImplementation();
   }
 
   public static Iterable<Map.Entry<String, ImplementationFactory>> getEntries() {
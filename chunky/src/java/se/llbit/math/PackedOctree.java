@@ -25,6 +25,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static se.llbit.math.Octree.*;
@@ -180,6 +181,18 @@ public class PackedOctree implements Octree.OctreeImplementation {
     freeHead = -1;
   }
 
+  private PackedOctree(PackedOctree other) {
+    depth = other.depth;
+    treeData = Arrays.copyOf(other.treeData, Math.max(other.size, DEFAULT_INITIAL_SIZE));
+    size = other.size;
+    freeHead = other.freeHead;
+  }
+
+  @Override
+  public PackedOctree copy() {
+    return new PackedOctree(this);
+  }
+
   /**
    * Finds an open space in the array to put 8 nodes.
    *
@@ -519,6 +532,44 @@ public class PackedOctree implements Octree.OctreeImplementation {
     outTypeAndLevel.left(getTypeFromIndex(nodeIndex)).right(level);
   }
 
+  /**
+   * Incremental leaf lookup: the traversal stack holds the node indices on the path to the previous leaf, so
+   * only the part of the path below the common ancestor of the previous leaf and the new position is descended.
+   *
+   * x, y, z are in octree coordinates, NOT world coordinates.
+   */
+  @Override
+  public void getWithLevel(Octree.Traversal traversal, int x, int y, int z) {
+    long[] nodes;
+    int nodeIndex;
+    int level;
+    if (traversal.valid) {
+      nodes = traversal.nodes;
+      level = traversal.commonAncestorLevel(x, y, z);
+      nodeIndex = (int) nodes[level];
+    } else {
+      traversal.ensureDepth(depth);
+      nodes = traversal.nodes;
+      level = depth;
+      nodeIndex = 0;
+      nodes[level] = nodeIndex;
+      traversal.valid = true;
+    }
+    while(treeData[nodeIndex] > 0) {
+      level -= 1;
+      int lx = x >>> level;
+      int ly = y >>> level;
+      int lz = z >>> level;
+      nodeIndex = treeData[nodeIndex] + (((lx & 1) << 2) | ((ly & 1) << 1) | (lz & 1));
+      nodes[level] = nodeIndex;
+    }
+    traversal.x = x;
+    traversal.y = y;
+    traversal.z = z;
+    traversal.level = level;
+    traversal.typeAndLevel.left(getTypeFromIndex(nodeIndex)).right(level);
+  }
+
   /**
    * Gets the array index of the node which is (or contains) the block specified, via a binary (octnary?) search.
    *
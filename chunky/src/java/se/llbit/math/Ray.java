@@ -121,6 +121,19 @@ public class Ray {
    */
   public boolean specular;
 
+  /**
+   * Approximate angle, in radians, covered by the image pixel this ray was traced for.
+   * Used to select texture mip levels. Zero disables texture filtering.
+   */
+  public double pixelSpread;
+
+  /**
+   * Multiple importance sampling weight for the skymap light seen by this ray if it escapes
+   * to the sky. Diffuse reflection sets the weight when the skymap is also sampled directly.
+   * The weight only applies to the sampled direction, so it is not copied by {@link #set(Ray)}.
+   */
+  public double skymapWeight = 1;
+
   /**
    * Builds an uninitialized ray.
    */
@@ -146,6 +159,8 @@ public class Ray {
     depth = 0;
     color.set(0, 0, 0, 0);
     specular = true;
+    pixelSpread = 0;
+    skymapWeight = 1;
   }
 
   /**
@@ -162,6 +177,22 @@ public class Ray {
     geomN.set(other.geomN);
     color.set(0, 0, 0, 0);
     specular = other.specular;
+    pixelSpread = other.pixelSpread;
+    skymapWeight = 1;
+  }
+
+  /**
+   * Reset this ray to the state of a newly constructed copy of the other ray,
+   * i.e. the same state as {@code new Ray(other)}, without allocating a new ray.
+   */
+  public void setCopy(Ray other) {
+    set(other);
+    prevData = 0;
+    currentData = 0;
+    t = 0;
+    tNext = 0;
+    u = 0;
+    v = 0;
   }
 
   /**
@@ -237,6 +268,22 @@ public class Ray {
     distance += tNext;
   }
 
+  /**
+   * Approximate width, in blocks, of the pixel footprint of this ray on the surface with the
+   * current normal, at distance {@code t} past the distance already traveled.
+   *
+   * @return the footprint width, or zero if the ray has no pixel spread
+   */
+  public double getFootprint(double t) {
+    if (pixelSpread <= 0) {
+      return 0;
+    }
+    // The footprint is stretched on surfaces seen at grazing angles. The stretch is limited
+    // to avoid blurring the full texture along the short axis of the footprint.
+    double cos = Math.max(0.25, Math.abs(d.dot(n)));
+    return (distance + t) * pixelSpread / cos;
+  }
+
   /**
    * @return foliage color for the current block
    */
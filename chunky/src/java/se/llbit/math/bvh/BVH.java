@@ -23,11 +23,13 @@ import se.llbit.log.Log;
 import se.llbit.math.Intersectable;
 import se.llbit.math.Ray;
 import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
 import se.llbit.util.TaskTracker;
 
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 /**
  * Bounding Volume Hierarchy based on AABBs.
@@ -48,6 +50,16 @@ public interface BVH extends Intersectable {
     public interface BVHBuilder {
       BVH create(Collection<Entity> entities, Vector3 worldOffset, TaskTracker.Task task);
 
+      /**
+       * Build a BVH over primitives. This is used for both levels of the instanced entity BVH,
+       * see {@link InstancedBVH}. Builders that don't implement this use the SAH_MA method.
+       *
+       * @param progress called with the number of primitives that have been placed in leaves
+       */
+      default BVH create(Primitive[] primitives, IntConsumer progress) {
+        return new SahMaBVH(primitives, progress);
+      }
+
       String getName();
       String getDescription();
     }
@@ -88,19 +100,44 @@ public interface BVH extends Intersectable {
       MidpointBVH.registerImplementation();
       SahBVH.registerImplementation();
       SahMaBVH.registerImplementation();
+      BinnedSahBVH.registerImplementation();
       DEFAULT_IMPLEMENTATION = implementations.get("SAH_MA");
     }
 
     /**
      * Construct a new BVH containing the given entities. This will generate the BVH using the
-     * persistent BVH method (default is SAH_MA).
+     * persistent BVH method (default is SAH_MA). Identical entities share their geometry,
+     * see {@link InstancedBVH}, and triangles are packed into flat arrays, see
+     * {@link BinaryBVH#packTriangles()}.
      */
     public static BVH create(String implementation, Collection<Entity> entities, Vector3 worldOffset, TaskTracker.Task task) {
       if (entities.isEmpty()) {
         return BVH.EMPTY;
       } else {
-        return getImplementation(implementation).create(entities, worldOffset, task);
+        return packTriangles(InstancedBVH.create(getImplementation(implementation), entities, worldOffset, task));
+      }
+    }
+
+    /**
+     * Construct a new BVH containing the given entities, and store the primitives of each
+     * entity in the map so that the entity can be updated with {@link BinaryBVH#refit}.
+     * Entities that share their model with other entities are not stored in the map.
+     * The triangles of the stored entities are not packed, so that they can be replaced.
+     */
+    public static BVH create(String implementation, Collection<Entity> entities, Vector3 worldOffset,
+        TaskTracker.Task task, Map<Entity, Primitive[]> entityPrimitives) {
+      if (entities.isEmpty()) {
+        return BVH.EMPTY;
+      } else {
+        return InstancedBVH.create(getImplementation(implementation), entities, worldOffset, task, entityPrimitives);
+      }
+    }
+
+    static BVH packTriangles(BVH bvh) {
+      if (bvh instanceof BinaryBVH) {
+        ((BinaryBVH) bvh).packTriangles();
       }
+      return bvh;
     }
   }
 }
@@ -20,12 +20,18 @@ package se.llbit.math.bvh;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntStack;
 import org.apache.commons.math3.util.FastMath;
+import se.llbit.chunky.world.Material;
 import se.llbit.math.AABB;
 import se.llbit.math.Ray;
+import se.llbit.math.Vector4;
 import se.llbit.math.primitive.Primitive;
+import se.llbit.math.primitive.TexturedTriangle;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Stack;
 
 import static se.llbit.math.Ray.OFFSET;
@@ -43,6 +49,42 @@ public abstract class BinaryBVH implements BVH {
     public int depth;
     public Primitive[][] packedPrimitives;
 
+    /** Parent node index of each node (indexed by node index / 7), built when the BVH is first refit. */
+    private int[] parents;
+    /** Node index of each leaf, built when the BVH is first refit. */
+    private int[] leafNodes;
+    /** Leaf index of each primitive, built when the BVH is first refit. */
+    private Map<Primitive, Integer> primitiveLeaves;
+    /** Sum of the surface areas of all nodes when the BVH was built, a measure of the tree quality. */
+    private double builtArea;
+    /** Sum of the surface areas of all nodes, kept up to date by {@link #refit}. */
+    private double nodeArea;
+
+    /**
+     * A refit fails once the summed node surface area grows past this factor of the area the BVH
+     * was built with. The expected cost of tracing a ray grows with the area, so past this point
+     * rebuilding the BVH is cheaper than rendering with the refit one.
+     */
+    public static final double MAX_REFIT_GROWTH = 2;
+
+    /** Number of floats per triangle in {@link #triangleData}: two edges, the normal and three texture coordinates. */
+    private static final int TRIANGLE_STRIDE = 15;
+    private static final double TRIANGLE_EPSILON = 0.000001;
+    private static final Primitive[] NO_PRIMITIVES = new Primitive[0];
+
+    /**
+     * Triangles moved out of the leaves by {@link #packTriangles()}. The triangles of leaf i are at
+     * index {@code leafTriangles[i]} up to (but not including) {@code leafTriangles[i + 1]}.
+     */
+    private int[] leafTriangles;
+    /** First corner of each triangle, 3 doubles per triangle. */
+    private double[] triangleOrigins;
+    /** Edges, normal and texture coordinates of each triangle, {@link #TRIANGLE_STRIDE} floats per triangle. */
+    private float[] triangleData;
+    /** Index into {@link #triangleMaterialPalette} shifted left by one, the lowest bit is set for double sided triangles. */
+    private int[] triangleMaterials;
+    private Material[] triangleMaterialPalette;
+
     public static abstract class Node {
         public final AABB bb;
 
@@ -147,6 +189,12 @@ public abstract class BinaryBVH implements BVH {
         this.depth = packNode(root, data, packedPrimitives);
         this.packed = data.toIntArray();
         this.packedPrimitives = packedPrimitives.toArray(new Primitive[0][]);
+        double area = 0;
+        for (int node = 0; node < packed.length; node += 7) {
+            area += surfaceArea(node);
+        }
+        this.builtArea = area;
+        this.nodeArea = area;
     }
 
     /**
@@ -225,6 +273,9 @@ public abstract class BinaryBVH implements BVH {
             if (packed[currentNode] <= 0) {
                 // Is leaf
                 int primIndex = -packed[currentNode];
+                if (leafTriangles != null) {
+                    hit = intersectTriangles(ray, leafTriangles[primIndex], leafTriangles[primIndex + 1]) | hit;
+                }
                 for (Primitive primitive : packedPrimitives[primIndex]) {
                     hit = primitive.intersect(ray) | hit;
                 }
@@ -266,6 +317,369 @@ public abstract class BinaryBVH implements BVH {
         return hit;
     }
 
+    /**
+     * Move the {@link TexturedTriangle triangles} out of the leaves into flat arrays, and keep only
+     * the other primitives in {@link #packedPrimitives}. This uses much less memory than the triangle
+     * objects and intersecting the triangles of a leaf doesn't need to follow pointers or allocate.
+     * Triangles that have been packed can't be replaced by {@link #refit}.
+     */
+    public void packTriangles() {
+        if (leafTriangles != null) {
+            return;
+        }
+        int count = 0;
+        for (Primitive[] leaf : packedPrimitives) {
+            for (Primitive primitive : leaf) {
+                if (primitive.getClass() == TexturedTriangle.class) {
+                    count += 1;
+                }
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        int[] leafTriangles = new int[packedPrimitives.length + 1];
+        double[] origins = new double[count * 3];
+        float[] data = new float[count * TRIANGLE_STRIDE];
+        int[] materials = new int[count];
+        Map<Material, Integer> paletteIndex = new IdentityHashMap<>();
+        List<Material> palette = new ArrayList<>();
+        List<Primitive> others = new ArrayList<>();
+        int triangle = 0;
+        for (int leaf = 0; leaf < packedPrimitives.length; ++leaf) {
+            leafTriangles[leaf] = triangle;
+            others.clear();
+            for (Primitive primitive : packedPrimitives[leaf]) {
+                if (primitive.getClass() != TexturedTriangle.class) {
+                    others.add(primitive);
+                    continue;
+                }
+                TexturedTriangle t = (TexturedTriangle) primitive;
+                origins[triangle * 3] = t.o.x;
+                origins[triangle * 3 + 1] = t.o.y;
+                origins[triangle * 3 + 2] = t.o.z;
+                int offset = triangle * TRIANGLE_STRIDE;
+                data[offset] = (float) t.e1.x;
+                data[offset + 1] = (float) t.e1.y;
+                data[offset + 2] = (float) t.e1.z;
+                data[offset + 3] = (float) t.e2.x;
+                data[offset + 4] = (float) t.e2.y;
+                data[offset + 5] = (float) t.e2.z;
+                data[offset + 6] = (float) t.n.x;
+                data[offset + 7] = (float) t.n.y;
+                data[offset + 8] = (float) t.n.z;
+                data[offset + 9] = (float) t.t1u;
+                data[offset + 10] = (float) t.t1v;
+                data[offset + 11] = (float) t.t2u;
+                data[offset + 12] = (float) t.t2v;
+                data[offset + 13] = (float) t.t3u;
+                data[offset + 14] = (float) t.t3v;
+                int material = paletteIndex.computeIfAbsent(t.material, m -> {
+                    palette.add(m);
+                    return palette.size() - 1;
+                });
+                materials[triangle] = (material << 1) | (t.doubleSided ? 1 : 0);
+                triangle += 1;
+            }
+            // The leaf arrays may be shared with a copy of this BVH, so they are replaced, not modified.
+            packedPrimitives[leaf] = others.isEmpty() ? NO_PRIMITIVES : others.toArray(new Primitive[0]);
+        }
+        leafTriangles[packedPrimitives.length] = triangle;
+
+        this.leafTriangles = leafTriangles;
+        this.triangleOrigins = origins;
+        this.triangleData = data;
+        this.triangleMaterials = materials;
+        this.triangleMaterialPalette = palette.toArray(new Material[0]);
+        this.primitiveLeaves = null;
+    }
+
+    /**
+     * Intersect the packed triangles in the range {@code [start, end)}. This is the same
+     * Möller-Trumbore intersection as {@link TexturedTriangle#intersect}, with the vector
+     * math written out so that no temporary vectors are allocated.
+     */
+    private boolean intersectTriangles(Ray ray, int start, int end) {
+        boolean hit = false;
+        // The material color is sampled into the ray color. These hold the color of the closest
+        // visible hit, which is restored when a closer hit is transparent.
+        Vector4 color = ray.color;
+        double r = color.x, g = color.y, b = color.z, a = color.w;
+        double dx = ray.d.x;
+        double dy = ray.d.y;
+        double dz = ray.d.z;
+        for (int i = start; i < end; ++i) {
+            int offset = i * TRIANGLE_STRIDE;
+            double e1x = triangleData[offset];
+            double e1y = triangleData[offset + 1];
+            double e1z = triangleData[offset + 2];
+            double e2x = triangleData[offset + 3];
+            double e2y = triangleData[offset + 4];
+            double e2z = triangleData[offset + 5];
+
+            // p = d x e2
+            double px = dy * e2z - dz * e2y;
+            double py = dz * e2x - dx * e2z;
+            double pz = dx * e2y - dy * e2x;
+            double det = e1x * px + e1y * py + e1z * pz;
+            int material = triangleMaterials[i];
+            if ((material & 1) != 0) {
+                if (det > -TRIANGLE_EPSILON && det < TRIANGLE_EPSILON) {
+                    continue;
+                }
+            } else if (det > -TRIANGLE_EPSILON) {
+                continue;
+            }
+            double recip = 1 / det;
+
+            double tx = ray.o.x - triangleOrigins[i * 3];
+            double ty = ray.o.y - triangleOrigins[i * 3 + 1];
+            double tz = ray.o.z - triangleOrigins[i * 3 + 2];
+            double u = (tx * px + ty * py + tz * pz) * recip;
+            if (u < 0 || u > 1) {
+                continue;
+            }
+
+            // q = t x e1
+            double qx = ty * e1z - tz * e1y;
+            double qy = tz * e1x - tx * e1z;
+            double qz = tx * e1y - ty * e1x;
+            double v = (dx * qx + dy * qy + dz * qz) * recip;
+            if (v < 0 || (u + v) > 1) {
+                continue;
+            }
+
+            double t = (e2x * qx + e2y * qy + e2z * qz) * recip;
+            if (t > TRIANGLE_EPSILON && t < ray.t) {
+                double w = 1 - u - v;
+                ray.u = triangleData[offset + 9] * u + triangleData[offset + 11] * v + triangleData[offset + 13] * w;
+                ray.v = triangleData[offset + 10] * u + triangleData[offset + 12] * v + triangleData[offset + 14] * w;
+                Material m = triangleMaterialPalette[material >>> 1];
+                m.getColor(ray);
+                if (color.w <= 0) {
+                    color.set(r, g, b, a);
+                } else {
+                    r = color.x;
+                    g = color.y;
+                    b = color.z;
+                    a = color.w;
+                    ray.setCurrentMaterial(m);
+                    ray.t = t;
+                    ray.setNormal(triangleData[offset + 6], triangleData[offset + 7], triangleData[offset + 8]);
+                    hit = true;
+                }
+            }
+        }
+        return hit;
+    }
+
+    /**
+     * Calculate the bounds of a leaf, including its packed triangles.
+     */
+    private AABB leafBounds(int leaf) {
+        AABB bounds = bb(packedPrimitives[leaf]);
+        if (leafTriangles == null) {
+            return bounds;
+        }
+        double xmin = bounds.xmin;
+        double xmax = bounds.xmax;
+        double ymin = bounds.ymin;
+        double ymax = bounds.ymax;
+        double zmin = bounds.zmin;
+        double zmax = bounds.zmax;
+        for (int i = leafTriangles[leaf]; i < leafTriangles[leaf + 1]; ++i) {
+            double ox = triangleOrigins[i * 3];
+            double oy = triangleOrigins[i * 3 + 1];
+            double oz = triangleOrigins[i * 3 + 2];
+            int offset = i * TRIANGLE_STRIDE;
+            for (int corner = 0; corner < 3; ++corner) {
+                double x = ox;
+                double y = oy;
+                double z = oz;
+                if (corner > 0) {
+                    int edge = offset + (corner - 1) * 3;
+                    x += triangleData[edge];
+                    y += triangleData[edge + 1];
+                    z += triangleData[edge + 2];
+                }
+                xmin = Math.min(xmin, x);
+                xmax = Math.max(xmax, x);
+                ymin = Math.min(ymin, y);
+                ymax = Math.max(ymax, y);
+                zmin = Math.min(zmin, z);
+                zmax = Math.max(zmax, z);
+            }
+        }
+        return new AABB(xmin, xmax, ymin, ymax, zmin, zmax);
+    }
+
+    /**
+     * Create a copy of this BVH that can be refit without changing this BVH. The leaves are
+     * shared until they are modified by {@link #refit}.
+     */
+    public BinaryBVH copy() {
+        BinaryBVH copy = new Copy(this);
+        copy.leafTriangles = leafTriangles;
+        copy.triangleOrigins = triangleOrigins;
+        copy.triangleData = triangleData;
+        copy.triangleMaterials = triangleMaterials;
+        copy.triangleMaterialPalette = triangleMaterialPalette;
+        copy.builtArea = builtArea;
+        copy.nodeArea = nodeArea;
+        // The tree structure never changes, so the node indices can be shared. The primitive
+        // map is moved to the copy, since the copy is the one that will be refit.
+        copy.parents = parents;
+        copy.leafNodes = leafNodes;
+        copy.primitiveLeaves = primitiveLeaves;
+        parents = null;
+        leafNodes = null;
+        primitiveLeaves = null;
+        return copy;
+    }
+
+    /**
+     * Replace primitives in the leaves of this BVH and update the bounds of the nodes on the path
+     * from each modified leaf to the root. The tree structure is kept, so this is much faster than
+     * rebuilding the BVH, but the tree gets worse the further the primitives move.
+     *
+     * <p>This modifies the BVH in place, use {@link #copy()} if the BVH may be in use.
+     *
+     * @param oldPrimitives primitives to replace, they must be in this BVH
+     * @param newPrimitives the replacement for each of the old primitives
+     * @return {@code false} if some old primitive could not be found, then nothing is changed, or
+     * if the summed node surface area grew past {@link #MAX_REFIT_GROWTH} times the area the BVH
+     * was built with, then the BVH is refit but should be rebuilt
+     */
+    public boolean refit(Primitive[] oldPrimitives, Primitive[] newPrimitives) {
+        if (oldPrimitives.length != newPrimitives.length) {
+            return false;
+        }
+        if (parents == null) {
+            buildRefitData();
+        }
+
+        int[] leaves = new int[oldPrimitives.length];
+        int[] slots = new int[oldPrimitives.length];
+        for (int i = 0; i < oldPrimitives.length; ++i) {
+            Integer leaf = primitiveLeaves.get(oldPrimitives[i]);
+            if (leaf == null) {
+                return false;
+            }
+            Primitive[] leafPrimitives = packedPrimitives[leaf];
+            int slot = 0;
+            while (slot < leafPrimitives.length && leafPrimitives[slot] != oldPrimitives[i]) {
+                slot += 1;
+            }
+            if (slot == leafPrimitives.length) {
+                return false;
+            }
+            leaves[i] = leaf;
+            slots[i] = slot;
+        }
+
+        // Leaf arrays may be shared with a copy of this BVH, so modified leaves are copied first.
+        boolean[] copied = new boolean[packedPrimitives.length];
+        for (int i = 0; i < oldPrimitives.length; ++i) {
+            int leaf = leaves[i];
+            if (!copied[leaf]) {
+                packedPrimitives[leaf] = packedPrimitives[leaf].clone();
+                copied[leaf] = true;
+            }
+            packedPrimitives[leaf][slots[i]] = newPrimitives[i];
+            primitiveLeaves.remove(oldPrimitives[i]);
+        }
+        for (int i = 0; i < newPrimitives.length; ++i) {
+            primitiveLeaves.put(newPrimitives[i], leaves[i]);
+        }
+
+        for (int leaf = 0; leaf < copied.length; ++leaf) {
+            if (copied[leaf]) {
+                int node = leafNodes[leaf];
+                nodeArea -= surfaceArea(node);
+                setBounds(node, leafBounds(leaf));
+                nodeArea += surfaceArea(node);
+                refitParents(node);
+            }
+        }
+        return nodeArea <= MAX_REFIT_GROWTH * builtArea;
+    }
+
+    /**
+     * Update the bounds of the ancestors of a node. This stops as soon as the bounds of an
+     * ancestor do not change, because then the bounds of the nodes above it don't change either.
+     */
+    private void refitParents(int node) {
+        int parent = parents[node / 7];
+        while (parent != -1) {
+            int child1 = parent + 7;
+            int child2 = packed[parent];
+            boolean changed = false;
+            nodeArea -= surfaceArea(parent);
+            for (int i = 1; i <= 6; i += 2) {
+                float min = Math.min(Float.intBitsToFloat(packed[child1 + i]), Float.intBitsToFloat(packed[child2 + i]));
+                float max = Math.max(Float.intBitsToFloat(packed[child1 + i + 1]), Float.intBitsToFloat(packed[child2 + i + 1]));
+                int minBits = Float.floatToIntBits(min);
+                int maxBits = Float.floatToIntBits(max);
+                changed |= packed[parent + i] != minBits || packed[parent + i + 1] != maxBits;
+                packed[parent + i] = minBits;
+                packed[parent + i + 1] = maxBits;
+            }
+            nodeArea += surfaceArea(parent);
+            if (!changed) {
+                break;
+            }
+            parent = parents[parent / 7];
+        }
+    }
+
+    private double surfaceArea(int node) {
+        double x = Float.intBitsToFloat(packed[node + 2]) - (double) Float.intBitsToFloat(packed[node + 1]);
+        double y = Float.intBitsToFloat(packed[node + 4]) - (double) Float.intBitsToFloat(packed[node + 3]);
+        double z = Float.intBitsToFloat(packed[node + 6]) - (double) Float.intBitsToFloat(packed[node + 5]);
+        return 2 * (x * y + y * z + x * z);
+    }
+
+    private void setBounds(int node, AABB box) {
+        packed[node + 1] = Float.floatToIntBits((float) box.xmin);
+        packed[node + 2] = Float.floatToIntBits((float) box.xmax);
+        packed[node + 3] = Float.floatToIntBits((float) box.ymin);
+        packed[node + 4] = Float.floatToIntBits((float) box.ymax);
+        packed[node + 5] = Float.floatToIntBits((float) box.zmin);
+        packed[node + 6] = Float.floatToIntBits((float) box.zmax);
+    }
+
+    private void buildRefitData() {
+        int[] parents = new int[packed.length / 7];
+        int[] leafNodes = new int[packedPrimitives.length];
+        parents[0] = -1;
+        for (int node = 0; node < packed.length; node += 7) {
+            if (packed[node] <= 0) {
+                leafNodes[-packed[node]] = node;
+            } else {
+                parents[(node + 7) / 7] = node;
+                parents[packed[node] / 7] = node;
+            }
+        }
+        Map<Primitive, Integer> primitiveLeaves = new IdentityHashMap<>();
+        for (int leaf = 0; leaf < packedPrimitives.length; ++leaf) {
+            for (Primitive primitive : packedPrimitives[leaf]) {
+                primitiveLeaves.put(primitive, leaf);
+            }
+        }
+        this.parents = parents;
+        this.leafNodes = leafNodes;
+        this.primitiveLeaves = primitiveLeaves;
+    }
+
+    private static final class Copy extends BinaryBVH {
+        Copy(BinaryBVH other) {
+            packed = other.packed.clone();
+            depth = other.depth;
+            packedPrimitives = other.packedPrimitives.clone();
+        }
+    }
+
     /**
      * Perform a fast AABB intersection with cached reciprocal direction. This is a branchless approach based on:
      * https://gamedev.stackexchange.com/a/146362
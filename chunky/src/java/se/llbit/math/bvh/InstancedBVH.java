@@ -0,0 +1,195 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import se.llbit.chunky.entity.Entity;
+import se.llbit.json.JsonMember;
+import se.llbit.json.JsonObject;
+import se.llbit.json.JsonValue;
+import se.llbit.log.Log;
+import se.llbit.math.AABB;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.util.TaskTracker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Two-level BVH construction for entities.
+ *
+ * <p>Entities that are identical except for their position share one bottom-level BVH
+ * over their model, built in the space of the entity. Each entity is then an
+ * {@link Instance} in the top-level BVH, which translates rays into the space of the model.
+ * Entities that are not shared are added to the top-level BVH as world space primitives.
+ *
+ * <p>Entities are considered identical if their JSON representation, without the position,
+ * is equal. Entity rotations are part of the model, so instances are only translated.
+ */
+public final class InstancedBVH {
+  private InstancedBVH() {
+  }
+
+  /**
+   * A translated instance of a shared model.
+   */
+  public static class Instance implements Primitive {
+    public final BVH model;
+    public final Vector3 translation;
+    private final AABB bounds;
+
+    /**
+     * @param model the BVH of the model, in model space
+     * @param modelBounds the bounds of the model, in model space
+     * @param translation the translation from model space to world space
+     */
+    public Instance(BVH model, AABB modelBounds, Vector3 translation) {
+      this.model = model;
+      this.translation = new Vector3(translation);
+      this.bounds = modelBounds.getTranslated(translation.x, translation.y, translation.z);
+    }
+
+    @Override public boolean intersect(Ray ray) {
+      // Translating the origin does not change distances or normals, so the
+      // intersection found in model space is also valid in world space.
+      double ox = ray.o.x;
+      double oy = ray.o.y;
+      double oz = ray.o.z;
+      ray.o.set(ox - translation.x, oy - translation.y, oz - translation.z);
+      boolean hit = model.closestIntersection(ray);
+      ray.o.set(ox, oy, oz);
+      return hit;
+    }
+
+    @Override public AABB bounds() {
+      return bounds;
+    }
+  }
+
+  /**
+   * Build a BVH for the entities, sharing models between identical entities. If no model
+   * is shared, the BVH is built by the builder directly from the entities.
+   */
+  public static BVH create(BVH.Factory.BVHBuilder builder, Collection<Entity> entities,
+      Vector3 worldOffset, TaskTracker.Task task) {
+    return create(builder, entities, worldOffset, task, null);
+  }
+
+  /**
+   * Build a BVH for the entities, sharing models between identical entities.
+   *
+   * @param entityPrimitives if not {@code null}, the world space primitives of each entity
+   * that is not shared are stored in this map. The BVH is then always built from the
+   * primitives, so that they can be replaced later, see {@link BinaryBVH#refit}.
+   */
+  public static BVH create(BVH.Factory.BVHBuilder builder, Collection<Entity> entities,
+      Vector3 worldOffset, TaskTracker.Task task, Map<Entity, Primitive[]> entityPrimitives) {
+    Map<String, List<Entity>> models = new LinkedHashMap<>();
+    List<Entity> unique = new ArrayList<>();
+    for (Entity entity : entities) {
+      String key = modelKey(entity);
+      if (key == null) {
+        unique.add(entity);
+      } else {
+        models.computeIfAbsent(key, k -> new ArrayList<>()).add(entity);
+      }
+    }
+    boolean shared = false;
+    for (List<Entity> instances : models.values()) {
+      if (instances.size() > 1) {
+        shared = true;
+        break;
+      }
+    }
+    if (!shared && entityPrimitives == null) {
+      return builder.create(entities, worldOffset, task);
+    }
+
+    task.update(1000, 0);
+    double entityScaler = 500.0 / entities.size();
+    int done = 0;
+    int modelCount = 0;
+    int instanceCount = 0;
+    List<Primitive> primitives = new ArrayList<>();
+    Vector3 translation = new Vector3();
+    for (List<Entity> instances : models.values()) {
+      if (instances.size() == 1) {
+        unique.add(instances.get(0));
+        continue;
+      }
+      Entity first = instances.get(0);
+      Vector3 modelOffset = new Vector3(-first.position.x, -first.position.y, -first.position.z);
+      Primitive[] modelPrimitives = first.primitives(modelOffset).toArray(new Primitive[0]);
+      if (modelPrimitives.length > 0) {
+        BVH model = BVH.Factory.packTriangles(builder.create(modelPrimitives, i -> {}));
+        AABB modelBounds = BinaryBVH.bb(modelPrimitives);
+        for (Entity entity : instances) {
+          translation.add(entity.position, worldOffset);
+          primitives.add(new Instance(model, modelBounds, translation));
+        }
+        modelCount += 1;
+        instanceCount += instances.size();
+      }
+      done += instances.size();
+      task.updateInterval((int) (done * entityScaler), 1);
+    }
+    for (Entity entity : unique) {
+      Collection<Primitive> entityModel = entity.primitives(worldOffset);
+      primitives.addAll(entityModel);
+      if (entityPrimitives != null) {
+        entityPrimitives.put(entity, entityModel.toArray(new Primitive[0]));
+      }
+      done += 1;
+      task.updateInterval((int) (done * entityScaler), 1);
+    }
+    if (modelCount > 0) {
+      Log.infof("Sharing %d entity models between %d instances", modelCount, instanceCount);
+    }
+    if (primitives.isEmpty()) {
+      return BVH.EMPTY;
+    }
+
+    Primitive[] allPrimitives = primitives.toArray(new Primitive[0]);
+    primitives = null; // Allow the collection to be garbage collected during construction when only the array is used
+
+    double primitiveScaler = 500.0 / allPrimitives.length;
+    return builder.create(allPrimitives, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
+  }
+
+  /**
+   * @return a key that is equal for entities with the same model, or {@code null} if the
+   * entity can't be shared
+   */
+  private static String modelKey(Entity entity) {
+    JsonValue json = entity.toJson();
+    if (!json.isObject()) {
+      return null;
+    }
+    JsonObject key = new JsonObject();
+    key.add("class", entity.getClass().getName());
+    for (JsonMember member : json.object()) {
+      if (!member.name.equals("position")) {
+        key.add(member.name, member.value);
+      }
+    }
+    return key.toCompactString();
+  }
+}
@@ -51,6 +51,11 @@ public class MidpointBVH extends BinaryBVH {
                 return new MidpointBVH(allPrimitives, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
             }
 
+            @Override
+            public BVH create(Primitive[] primitives, IntConsumer progress) {
+                return new MidpointBVH(primitives, progress);
+            }
+
             @Override
             public String getName() {
                 return "MIDPOINT";
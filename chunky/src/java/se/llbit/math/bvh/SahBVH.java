@@ -51,6 +51,11 @@ public class SahBVH extends BinaryBVH {
                 return new SahBVH(allPrimitives, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
             }
 
+            @Override
+            public BVH create(Primitive[] primitives, IntConsumer progress) {
+                return new SahBVH(primitives, progress);
+            }
+
             @Override
             public String getName() {
                 return "SAH";
@@ -52,6 +52,11 @@ public class SahMaBVH extends BinaryBVH {
                 return new SahMaBVH(allPrimitives, i -> task.updateInterval((int) (i * primitiveScaler) + 500, 1));
             }
 
+            @Override
+            public BVH create(Primitive[] primitives, IntConsumer progress) {
+                return new SahMaBVH(primitives, progress);
+            }
+
             @Override
             public String getName() {
                 return "SAH_MA";
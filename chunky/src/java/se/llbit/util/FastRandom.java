@@ -0,0 +1,93 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+import java.util.Random;
+
+/**
+ * A fast pseudo random number generator using the xoshiro256++ algorithm.
+ *
+ * <p>Unlike {@link Random} the state is not updated atomically, so an instance
+ * must only be used by one thread at a time.
+ */
+public class FastRandom extends Random {
+  // The state is set by setSeed, which is called from the Random constructor
+  // before field initializers would run, so the fields must not have initializers.
+  private long s0, s1, s2, s3;
+
+  public FastRandom() {
+    this(System.nanoTime() ^ Thread.currentThread().getId());
+  }
+
+  public FastRandom(long seed) {
+    super(seed);
+  }
+
+  @Override
+  public void setSeed(long seed) {
+    // Expand the seed with SplitMix64, which never gives an all-zero state.
+    long x = seed;
+    s0 = splitMix(x += 0x9E3779B97F4A7C15L);
+    s1 = splitMix(x += 0x9E3779B97F4A7C15L);
+    s2 = splitMix(x += 0x9E3779B97F4A7C15L);
+    s3 = splitMix(x + 0x9E3779B97F4A7C15L);
+  }
+
+  private static long splitMix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  @Override
+  public long nextLong() {
+    long result = Long.rotateLeft(s0 + s3, 23) + s0;
+    long t = s1 << 17;
+    s2 ^= s0;
+    s3 ^= s1;
+    s1 ^= s2;
+    s0 ^= s3;
+    s2 ^= t;
+    s3 = Long.rotateLeft(s3, 45);
+    return result;
+  }
+
+  @Override
+  protected int next(int bits) {
+    return (int) (nextLong() >>> (64 - bits));
+  }
+
+  @Override
+  public int nextInt() {
+    return (int) (nextLong() >>> 32);
+  }
+
+  @Override
+  public double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+
+  @Override
+  public float nextFloat() {
+    return (nextLong() >>> 40) * 0x1.0p-24f;
+  }
+
+  @Override
+  public boolean nextBoolean() {
+    return nextLong() < 0;
+  }
+}
@@ -0,0 +1,123 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The offset and size of every block written by a {@link ParallelDeflaterOutputStream}.
+ * Offsets are relative to the start of the block stream and point at the block header.
+ *
+ * <p>The index is stored as the number of blocks followed by the offset, uncompressed length
+ * and compressed length of each block.
+ */
+public class BlockIndex {
+  private long[] offsets = new long[16];
+  private int[] lengths = new int[16];
+  private int[] compressedLengths = new int[16];
+  private int size = 0;
+
+  void add(long offset, int length, int compressedLength) {
+    if (size == offsets.length) {
+      offsets = Arrays.copyOf(offsets, size * 2);
+      lengths = Arrays.copyOf(lengths, size * 2);
+      compressedLengths = Arrays.copyOf(compressedLengths, size * 2);
+    }
+    offsets[size] = offset;
+    lengths[size] = length;
+    compressedLengths[size] = compressedLength;
+    size += 1;
+  }
+
+  /**
+   * @return the number of blocks
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the offset of the header of the given block
+   */
+  public long getOffset(int block) {
+    return offsets[block];
+  }
+
+  /**
+   * @return the uncompressed length of the given block
+   */
+  public int getLength(int block) {
+    return lengths[block];
+  }
+
+  /**
+   * @return the compressed length of the given block, without the block header
+   */
+  public int getCompressedLength(int block) {
+    return compressedLengths[block];
+  }
+
+  /**
+   * @return the total uncompressed length of all blocks
+   */
+  public long getUncompressedSize() {
+    long total = 0;
+    for (int i = 0; i < size; ++i) {
+      total += lengths[i];
+    }
+    return total;
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(size);
+    for (int i = 0; i < size; ++i) {
+      out.writeLong(offsets[i]);
+      out.writeInt(lengths[i]);
+      out.writeInt(compressedLengths[i]);
+    }
+  }
+
+  /**
+   * Read an index written by {@link #write}.
+   *
+   * @param streamLength length of the block stream, used to check the index
+   * @throws IOException if the index is corrupt
+   */
+  public static BlockIndex read(DataInput in, long streamLength) throws IOException {
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Corrupt block index");
+    }
+    BlockIndex index = new BlockIndex();
+    long end = 0;
+    for (int i = 0; i < count; ++i) {
+      long offset = in.readLong();
+      int length = in.readInt();
+      int compressedLength = in.readInt();
+      if (offset < end || length <= 0 || compressedLength < 0
+          || offset + 2 * Integer.BYTES + compressedLength > streamLength) {
+        throw new IOException("Corrupt block index");
+      }
+      end = offset + 2 * Integer.BYTES + compressedLength;
+      index.add(offset, length, compressedLength);
+    }
+    return index;
+  }
+}
@@ -0,0 +1,90 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses zlib data from a byte buffer. Unlike {@link java.util.zip.InflaterInputStream}
+ * the compressed data is handed to the inflater directly, without copying it through an
+ * intermediate array first. For a memory-mapped buffer the inflater reads straight from the mapping.
+ */
+public class ByteBufferInflaterInputStream extends InputStream {
+  private final Inflater inflater = new Inflater();
+  private final byte[] single = new byte[1];
+  private boolean closed = false;
+
+  /**
+   * @param input zlib compressed data. The position of the buffer is advanced
+   *              as data is consumed by the inflater.
+   */
+  public ByteBufferInflaterInputStream(ByteBuffer input) {
+    inflater.setInput(input);
+  }
+
+  @Override
+  public int read() throws IOException {
+    return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (len == 0) {
+      return 0;
+    }
+    try {
+      int n;
+      while ((n = inflater.inflate(b, off, len)) == 0) {
+        if (inflater.finished()) {
+          return -1;
+        }
+        if (inflater.needsDictionary()) {
+          throw new ZipException("Preset dictionaries are not supported");
+        }
+        if (inflater.needsInput()) {
+          throw new EOFException("Unexpected end of zlib input stream");
+        }
+      }
+      return n;
+    } catch (DataFormatException e) {
+      String message = e.getMessage();
+      throw new ZipException(message != null ? message : "Invalid zlib data format");
+    }
+  }
+
+  @Override
+  public int available() {
+    return closed || inflater.finished() ? 0 : 1;
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that splits the written data into blocks which are compressed
+ * independently on an executor. The compressed blocks are written in order.
+ *
+ * <p>Every block is stored as the uncompressed length, the compressed length and the
+ * zlib compressed data. The end of the stream is marked by a block with length zero.
+ * Use {@link ParallelInflaterInputStream} to read the data.
+ *
+ * <p>The offset and size of every block are recorded in a {@link BlockIndex}. Closing this
+ * stream only ends the block stream, the underlying stream is left open so that the index can
+ * be written after the blocks and used to read them in parallel.
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+  private final DataOutputStream out;
+  private final ExecutorService executor;
+  private final int maxPendingBlocks;
+  private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+  private final ArrayDeque<Integer> pendingLengths = new ArrayDeque<>();
+  private final BlockIndex index = new BlockIndex();
+
+  private byte[] buffer;
+  private int count = 0;
+  private long compressedPosition = 0;
+  private long uncompressedPosition = 0;
+  private boolean finished = false;
+
+  /**
+   * @param out the stream to write compressed blocks to
+   * @param executor the executor to compress the blocks on
+   * @param maxPendingBlocks maximum number of blocks that are compressed at the same time
+   */
+  public ParallelDeflaterOutputStream(OutputStream out, ExecutorService executor, int maxPendingBlocks) {
+    this.out = new DataOutputStream(out);
+    this.executor = executor;
+    this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+    this.buffer = new byte[DEFAULT_BLOCK_SIZE];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (count == buffer.length) {
+      submitBlock();
+    }
+    buffer[count++] = (byte) b;
+    uncompressedPosition += 1;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (count == buffer.length) {
+        submitBlock();
+      }
+      int n = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, n);
+      count += n;
+      uncompressedPosition += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Ends the current block and waits until all blocks have been written.
+   *
+   * @return the number of compressed bytes written so far, which is the offset of the next block
+   * relative to the start of this stream
+   */
+  public long endBlock() throws IOException {
+    if (count > 0) {
+      submitBlock();
+    }
+    while (!pending.isEmpty()) {
+      writeBlock();
+    }
+    return compressedPosition;
+  }
+
+  /**
+   * Writes all remaining blocks and the end marker. Does not close the underlying stream.
+   */
+  public void finish() throws IOException {
+    if (!finished) {
+      endBlock();
+      out.writeInt(0);
+      out.writeInt(0);
+      compressedPosition += 2 * Integer.BYTES;
+      out.flush();
+      finished = true;
+    }
+  }
+
+  /**
+   * @return the number of bytes written to this stream
+   */
+  public long getUncompressedSize() {
+    return uncompressedPosition;
+  }
+
+  /**
+   * @return the number of compressed bytes written to the underlying stream
+   */
+  public long getCompressedSize() {
+    return compressedPosition;
+  }
+
+  /**
+   * @return the index of the blocks written so far, with offsets relative to the start of
+   * this stream
+   */
+  public BlockIndex getIndex() {
+    return index;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      finish();
+    } finally {
+      for (Future<byte[]> block : pending) {
+        block.cancel(false);
+      }
+      pending.clear();
+      buffer = null;
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    if (pending.size() >= maxPendingBlocks) {
+      writeBlock();
+    }
+    byte[] data = count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+    int length = count;
+    pending.add(executor.submit(() -> deflate(data, length)));
+    pendingLengths.add(length);
+    buffer = new byte[buffer.length];
+    count = 0;
+  }
+
+  private void writeBlock() throws IOException {
+    byte[] compressed;
+    try {
+      compressed = pending.peek().get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to compress block", e.getCause());
+    }
+    pending.poll();
+    int length = pendingLengths.poll();
+    index.add(compressedPosition, length, compressed.length);
+    out.writeInt(length);
+    out.writeInt(compressed.length);
+    out.write(compressed);
+    compressedPosition += 2 * Integer.BYTES + compressed.length;
+  }
+
+  private static byte[] deflate(byte[] data, int length) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(data, 0, length);
+      deflater.finish();
+      // Incompressible data grows slightly, leave some room for that.
+      byte[] output = new byte[length + length / 1000 + 64];
+      int size = 0;
+      while (!deflater.finished()) {
+        if (size == output.length) {
+          output = Arrays.copyOf(output, output.length * 2);
+        }
+        size += deflater.deflate(output, size, output.length - size);
+      }
+      return Arrays.copyOf(output, size);
+    } finally {
+      deflater.end();
+    }
+  }
+}
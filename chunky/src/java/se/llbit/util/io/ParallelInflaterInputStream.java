@@ -0,0 +1,226 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util.io;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a block stream written by {@link ParallelDeflaterOutputStream}. The compressed blocks
+ * are read ahead and decompressed on an executor, while the caller reads the decompressed data
+ * in order.
+ *
+ * <p>With a {@link BlockIndex} the blocks are read from a file channel with positional reads,
+ * so that reading the compressed data is also done on the executor.
+ *
+ * <p>Closing this stream closes the underlying stream or channel.
+ */
+public class ParallelInflaterInputStream extends InputStream {
+  private final DataInputStream in;
+  private final FileChannel channel;
+  private final long start;
+  private final BlockIndex index;
+  private final ExecutorService executor;
+  private final int maxPendingBlocks;
+  private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+
+  private int nextBlock = 0;
+  private boolean endOfBlocks = false;
+  private byte[] block = new byte[0];
+  private int position = 0;
+
+  /**
+   * @param in the stream to read compressed blocks from
+   * @param executor the executor to decompress the blocks on
+   * @param maxPendingBlocks maximum number of blocks that are read ahead
+   */
+  public ParallelInflaterInputStream(InputStream in, ExecutorService executor, int maxPendingBlocks) {
+    this.in = new DataInputStream(in);
+    this.channel = null;
+    this.start = 0;
+    this.index = null;
+    this.executor = executor;
+    this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+  }
+
+  /**
+   * @param channel the file to read compressed blocks from
+   * @param start the position of the block stream in the file
+   * @param index the index of the blocks, with offsets relative to the start of the block stream
+   * @param executor the executor to read and decompress the blocks on
+   * @param maxPendingBlocks maximum number of blocks that are read ahead
+   */
+  public ParallelInflaterInputStream(FileChannel channel, long start, BlockIndex index,
+      ExecutorService executor, int maxPendingBlocks) {
+    this.in = null;
+    this.channel = channel;
+    this.start = start;
+    this.index = index;
+    this.executor = executor;
+    this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (position == block.length && !nextBlock()) {
+      return -1;
+    }
+    return block[position++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (position == block.length && !nextBlock()) {
+      return -1;
+    }
+    int n = Math.min(len, block.length - position);
+    System.arraycopy(block, position, b, off, n);
+    position += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return block.length - position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (Future<byte[]> future : pending) {
+      future.cancel(false);
+    }
+    pending.clear();
+    if (in != null) {
+      in.close();
+    } else {
+      channel.close();
+    }
+  }
+
+  private boolean nextBlock() throws IOException {
+    readAhead();
+    Future<byte[]> next = pending.poll();
+    if (next == null) {
+      return false;
+    }
+    try {
+      block = next.get();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to decompress block", e.getCause());
+    }
+    position = 0;
+    readAhead();
+    return true;
+  }
+
+  /**
+   * Read compressed blocks and submit them for decompression until enough blocks are pending.
+   */
+  private void readAhead() throws IOException {
+    if (index != null) {
+      while (nextBlock < index.size() && pending.size() < maxPendingBlocks) {
+        long offset = start + index.getOffset(nextBlock);
+        int length = index.getLength(nextBlock);
+        int compressedLength = index.getCompressedLength(nextBlock);
+        pending.add(executor.submit(
+            () -> inflate(readBlock(offset, length, compressedLength), 2 * Integer.BYTES, length)));
+        nextBlock += 1;
+      }
+      return;
+    }
+    while (!endOfBlocks && pending.size() < maxPendingBlocks) {
+      int length = in.readInt();
+      int compressedLength = in.readInt();
+      if (length == 0) {
+        endOfBlocks = true;
+        break;
+      }
+      if (length < 0 || compressedLength < 0) {
+        throw new IOException("Corrupt block header");
+      }
+      byte[] compressed = new byte[compressedLength];
+      in.readFully(compressed);
+      pending.add(executor.submit(() -> inflate(compressed, 0, length)));
+    }
+  }
+
+  /**
+   * Read a block from the channel and check that its header matches the index.
+   *
+   * @return the block header followed by the compressed data
+   */
+  private byte[] readBlock(long offset, int length, int compressedLength) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + compressedLength);
+    long position = offset;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of block stream");
+      }
+      position += read;
+    }
+    if (buffer.getInt(0) != length || buffer.getInt(Integer.BYTES) != compressedLength) {
+      throw new IOException("Block header does not match the block index");
+    }
+    return buffer.array();
+  }
+
+  /**
+   * @param offset the position of the compressed data in the array
+   */
+  private static byte[] inflate(byte[] compressed, int offset, int length) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed, offset, compressed.length - offset);
+      byte[] output = new byte[length];
+      int size = 0;
+      while (size < length && !inflater.finished()) {
+        int n = inflater.inflate(output, size, length - size);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        size += n;
+      }
+      if (size != length) {
+        throw new IOException("Corrupt block: expected " + length + " bytes but got " + size);
+      }
+      return output;
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt block", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
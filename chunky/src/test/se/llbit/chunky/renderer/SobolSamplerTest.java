@@ -0,0 +1,109 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import org.junit.jupiter.api.Test;
+import se.llbit.util.FastRandom;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SobolSamplerTest {
+  /**
+   * The first 2^m samples of a pixel have exactly one value in each interval
+   * [k/2^m, (k+1)/2^m), in every stratified dimension.
+   */
+  @Test public void testDimensionStratification() {
+    SobolSampler sampler = new SobolSampler(new FastRandom(1));
+    int count = 256;
+    double[][] values = samples(sampler, 3, 5, count);
+    for (int d = 0; d < SobolSampler.DIMENSIONS; ++d) {
+      boolean[] strata = new boolean[count];
+      for (int i = 0; i < count; ++i) {
+        double value = values[i][d];
+        assertTrue(value >= 0 && value < 1);
+        int stratum = (int) (value * count);
+        assertFalse(strata[stratum], "dimension " + d + " has two samples in stratum " + stratum);
+        strata[stratum] = true;
+      }
+    }
+  }
+
+  /**
+   * Each pair of dimensions is stratified in two dimensions: for 256 samples there is
+   * exactly one sample in each cell of a 16 by 16 grid.
+   */
+  @Test public void testPairStratification() {
+    SobolSampler sampler = new SobolSampler(new FastRandom(1));
+    int count = 256;
+    double[][] values = samples(sampler, 17, 2, count);
+    for (int d = 0; d < SobolSampler.DIMENSIONS; d += 2) {
+      boolean[] cells = new boolean[count];
+      for (int i = 0; i < count; ++i) {
+        int cell = (int) (values[i][d] * 16) * 16 + (int) (values[i][d + 1] * 16);
+        assertFalse(cells[cell], "dimensions " + d + ", " + (d + 1) + " have two samples in cell " + cell);
+        cells[cell] = true;
+      }
+    }
+  }
+
+  /**
+   * Neighbouring pixels and different dimension pairs are scrambled independently.
+   */
+  @Test public void testDecorrelation() {
+    SobolSampler sampler = new SobolSampler(new FastRandom(1));
+    double[][] a = samples(sampler, 0, 0, 4);
+    double[][] b = samples(sampler, 1, 0, 4);
+    for (int i = 0; i < 4; ++i) {
+      assertTrue(a[i][0] != b[i][0]);
+      assertTrue(a[i][0] != a[i][2]);
+    }
+  }
+
+  /**
+   * Dimensions after the stratified ones, and numbers drawn outside a pixel sample,
+   * come from the pseudo random number generator.
+   */
+  @Test public void testFallbackToPrng() {
+    Random reference = new FastRandom(5);
+    SobolSampler sampler = new SobolSampler(new FastRandom(5));
+    assertEquals(reference.nextDouble(), sampler.nextDouble());
+
+    sampler.startSample(0, 0, 0);
+    for (int d = 0; d < SobolSampler.DIMENSIONS; ++d) {
+      sampler.nextDouble();
+    }
+    assertEquals(reference.nextDouble(), sampler.nextDouble());
+    sampler.finishSample();
+    assertEquals(reference.nextFloat(), sampler.nextFloat());
+  }
+
+  private static double[][] samples(SobolSampler sampler, int x, int y, int count) {
+    double[][] values = new double[count][SobolSampler.DIMENSIONS];
+    for (int i = 0; i < count; ++i) {
+      sampler.startSample(x, y, i);
+      for (int d = 0; d < SobolSampler.DIMENSIONS; ++d) {
+        values[i][d] = sampler.nextDouble();
+      }
+      sampler.finishSample();
+    }
+    return values;
+  }
+}
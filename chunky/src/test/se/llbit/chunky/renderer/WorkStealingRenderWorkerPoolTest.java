@@ -0,0 +1,72 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkStealingRenderWorkerPoolTest {
+  @Test public void testAwaitEmptyRunsAllJobs() throws InterruptedException {
+    WorkStealingRenderWorkerPool pool = new WorkStealingRenderWorkerPool(4, 0);
+    try {
+      AtomicInteger count = new AtomicInteger();
+      for (int pass = 1; pass <= 20; ++pass) {
+        for (int i = 0; i < 1000; ++i) {
+          pool.submit(worker -> count.incrementAndGet());
+        }
+        pool.awaitEmpty();
+        assertEquals(pass * 1000, count.get());
+      }
+    } finally {
+      pool.interrupt();
+    }
+  }
+
+  @Test public void testChangeThreadCount() throws InterruptedException {
+    WorkStealingRenderWorkerPool pool = new WorkStealingRenderWorkerPool(8, 0);
+    try {
+      AtomicInteger count = new AtomicInteger();
+      for (int i = 0; i < 1000; ++i) {
+        pool.submit(worker -> count.incrementAndGet());
+      }
+      pool.setThreadCount(2);
+      assertEquals(2, pool.getThreadCount());
+      for (int i = 0; i < 1000; ++i) {
+        pool.submit(worker -> count.incrementAndGet());
+      }
+      pool.awaitEmpty();
+      assertEquals(2000, count.get());
+    } finally {
+      pool.interrupt();
+    }
+  }
+
+  @Test public void testJobFuture() throws InterruptedException {
+    WorkStealingRenderWorkerPool pool = new WorkStealingRenderWorkerPool(2, 0);
+    try {
+      RenderWorkerPool.RenderJobFuture future = pool.submit(worker -> Thread.sleep(10));
+      future.awaitFinish();
+      assertTrue(future.isDone());
+    } finally {
+      pool.interrupt();
+    }
+  }
+}
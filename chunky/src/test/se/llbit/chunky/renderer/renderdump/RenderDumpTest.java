@@ -18,6 +18,9 @@ package se.llbit.chunky.renderer.renderdump;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import se.llbit.chunky.renderer.SampleBuffer;
+import se.llbit.chunky.renderer.SamplePrecision;
+import se.llbit.chunky.renderer.SampleStatistics;
 import se.llbit.chunky.renderer.scene.CanvasConfig;
 import se.llbit.chunky.renderer.scene.Scene;
 import se.llbit.util.ProgressListener;
@@ -151,10 +154,114 @@ public class RenderDumpTest {
     Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
     System.arraycopy(testSampleBuffer, 0, scene.getSampleBuffer(), 0, testSampleBuffer.length);
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    RenderDump.save(outputStream, scene, taskTracker);
+    RenderDump.save(outputStream, scene, taskTracker, FloatingPointCompressorDumpFormat.INSTANCE.getVersion());
     assertArrayEquals(getTestDump(dumpName), outputStream.toByteArray());
   }
 
+  @Test
+  public void testBandedFormatRoundTrip() throws IOException {
+    // Large enough to be split into several bands, with a partial last band.
+    int width = 400;
+    int height = 417;
+    Scene scene = createTestScene(width, height, testSPP, testRenderTime);
+    double[] samples = scene.getSampleBuffer();
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = testSampleBuffer[i % testSampleBuffer.length] * (1 + i % 13);
+    }
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker, BandedDumpFormat.INSTANCE.getVersion());
+
+    Scene loaded = createTestScene(width, height, 0, 0);
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertArrayEquals(samples, loaded.getSampleBuffer(), 0.0);
+    assertEquals(testSPP, loaded.spp);
+    assertEquals(testRenderTime, loaded.renderTime);
+
+    RenderDump.merge(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertArrayEquals(samples, loaded.getSampleBuffer(), 1e-12);
+    assertEquals(2 * testSPP, loaded.spp);
+    assertEquals(2 * testRenderTime, loaded.renderTime);
+  }
+
+  @Test
+  public void testAdaptiveFormatRoundTrip() throws IOException {
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    System.arraycopy(testSampleBuffer, 0, scene.getSampleBuffer(), 0, testSampleBuffer.length);
+    SampleStatistics statistics = scene.getSampleStatistics();
+    int pixels = scene.canvasConfig.getPixelCount();
+    statistics.start(pixels, 10);
+    for (int i = 0; i < pixels; i++) {
+      statistics.addSamples(i, i % 7, i % 5, 0.5 * (i % 5));
+    }
+
+    // Scenes with sample statistics are saved in the adaptive format by default.
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker);
+    byte[] dump = outputStream.toByteArray();
+    assertEquals(AdaptiveDumpFormat.INSTANCE.getVersion(), dump[7]);
+
+    Scene loaded = createTestScene(testWidth, testHeight, 0, 0);
+    RenderDump.load(new ByteArrayInputStream(dump), loaded, taskTracker);
+    assertArrayEquals(testSampleBuffer, loaded.getSampleBuffer(), 0.0);
+    assertEquals(testSPP, loaded.spp);
+    SampleStatistics loadedStatistics = loaded.getSampleStatistics();
+    assertEquals(pixels, loadedStatistics.getPixelCount());
+    for (int i = 0; i < pixels; i++) {
+      assertEquals(statistics.getSampleCount(i), loadedStatistics.getSampleCount(i));
+      assertEquals(statistics.getObservationCount(i), loadedStatistics.getObservationCount(i));
+    }
+
+    RenderDump.merge(new ByteArrayInputStream(dump), loaded, taskTracker);
+    assertArrayEquals(testSampleBuffer, loaded.getSampleBuffer(), 1e-12);
+    assertEquals(2 * testSPP, loaded.spp);
+    for (int i = 0; i < pixels; i++) {
+      assertEquals(2 * statistics.getSampleCount(i), loadedStatistics.getSampleCount(i));
+    }
+  }
+
+  /**
+   * Loading a dump without statistics discards the statistics of the scene.
+   */
+  @Test
+  public void testLoadWithoutStatistics() throws IOException {
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    System.arraycopy(testSampleBuffer, 0, scene.getSampleBuffer(), 0, testSampleBuffer.length);
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker, BandedDumpFormat.INSTANCE.getVersion());
+
+    Scene loaded = createTestScene(testWidth, testHeight, 0, 0);
+    SampleStatistics statistics = loaded.getSampleStatistics();
+    statistics.start(loaded.canvasConfig.getPixelCount(), 10);
+    assertTrue(statistics.hasData());
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    assertFalse(statistics.hasData());
+  }
+
+  @Test
+  public void testFloatSampleBufferRoundTrip() throws IOException {
+    Scene scene = createTestScene(testWidth, testHeight, testSPP, testRenderTime);
+    scene.setSamplePrecision(SamplePrecision.FLOAT);
+    SampleBuffer samples = scene.getSamples();
+    for (int i = 0; i < samples.length(); i++) {
+      samples.set(i, testSampleBuffer[i] / 3);
+    }
+    double[] converted = scene.getSampleBuffer();
+    for (int i = 0; i < samples.length(); i++) {
+      assertEquals(samples.get(i), converted[i], 0.0);
+    }
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    RenderDump.save(outputStream, scene, taskTracker);
+
+    // Float samples are stored exactly by the dump, and can be loaded into a double buffer.
+    Scene loaded = createTestScene(testWidth, testHeight, 0, 0);
+    RenderDump.load(new ByteArrayInputStream(outputStream.toByteArray()), loaded, taskTracker);
+    for (int i = 0; i < samples.length(); i++) {
+      assertEquals(samples.get(i), loaded.getSampleBuffer()[i], 0.0);
+      assertEquals(testSampleBuffer[i] / 3, loaded.getSampleBuffer()[i], 1e-7);
+    }
+  }
+
   // This is just at the bottom because the strings are soooo lllooooonnnnngggggg
   private static final Map<String, String> testDumps = new HashMap<String, String>() {{
 
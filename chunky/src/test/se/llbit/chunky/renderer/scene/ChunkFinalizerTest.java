@@ -0,0 +1,138 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import org.junit.jupiter.api.Test;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.math.Octree;
+import se.llbit.math.Vector3i;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkFinalizerTest {
+  private static final int DEPTH = 6;
+  private static final int SIZE = 1 << DEPTH;
+  private static final Vector3i ORIGIN = new Vector3i(0, 0, 0);
+
+  @Test public void testCheckerboardClassesAreNotAdjacent() {
+    List<List<ChunkPosition>> classes = ChunkFinalizer.checkerboard(chunks());
+    assertEquals(4, classes.size());
+    int total = 0;
+    for (List<ChunkPosition> chunkClass : classes) {
+      total += chunkClass.size();
+      for (ChunkPosition a : chunkClass) {
+        for (ChunkPosition b : chunkClass) {
+          if (a != b) {
+            assertTrue(Math.abs(a.x - b.x) > 1 || Math.abs(a.z - b.z) > 1);
+          }
+        }
+      }
+    }
+    assertEquals(chunks().size(), total);
+  }
+
+  /**
+   * Finalizing the chunks of each checkerboard class concurrently through recording views
+   * must give the same octrees as finalizing all chunks one by one.
+   */
+  @Test public void testCheckerboardMatchesSerial() {
+    BlockPalette palette = new BlockPalette();
+    Set<ChunkPosition> loadedChunks = new HashSet<>(chunks());
+
+    Octree serialWorld = new Octree("PACKED", DEPTH);
+    Octree serialWater = new Octree("PACKED", DEPTH);
+    generate(serialWorld, serialWater, palette);
+    for (ChunkPosition cp : chunks()) {
+      OctreeFinalizer.finalizeChunk(serialWorld, serialWater, palette, loadedChunks, ORIGIN, cp,
+          0, SIZE);
+    }
+
+    Octree world = new Octree("PACKED", DEPTH);
+    Octree water = new Octree("PACKED", DEPTH);
+    generate(world, water, palette);
+    for (List<ChunkPosition> chunkClass : ChunkFinalizer.checkerboard(chunks())) {
+      Octree[] worldViews = new Octree[chunkClass.size()];
+      Octree[] waterViews = new Octree[chunkClass.size()];
+      IntStream.range(0, chunkClass.size()).parallel().forEach(i -> {
+        worldViews[i] = world.recordChanges();
+        waterViews[i] = water.recordChanges();
+        OctreeFinalizer.finalizeChunk(worldViews[i], waterViews[i], palette, loadedChunks,
+            ORIGIN, chunkClass.get(i), 0, SIZE);
+      });
+      for (int i = 0; i < chunkClass.size(); ++i) {
+        world.applyChanges(worldViews[i]);
+        water.applyChanges(waterViews[i]);
+      }
+    }
+
+    assertEquals(serialWorld.getImplementation().nodeCount(), world.getImplementation().nodeCount());
+    assertEquals(serialWater.getImplementation().nodeCount(), water.getImplementation().nodeCount());
+    for (int y = 0; y < SIZE; ++y) {
+      for (int z = 0; z < SIZE; ++z) {
+        for (int x = 0; x < SIZE; ++x) {
+          assertSame(serialWorld.getBlock(x, y, z, palette), world.getBlock(x, y, z, palette));
+          assertSame(serialWater.getBlock(x, y, z, palette), water.getBlock(x, y, z, palette));
+        }
+      }
+    }
+  }
+
+  /** The 4x4 chunks covered by the octrees. */
+  private static List<ChunkPosition> chunks() {
+    List<ChunkPosition> chunks = new ArrayList<>();
+    for (int cz = 0; cz < SIZE / 16; ++cz) {
+      for (int cx = 0; cx < SIZE / 16; ++cx) {
+        chunks.add(new ChunkPosition(cx, cz));
+      }
+    }
+    return chunks;
+  }
+
+  /**
+   * Fill the octrees with uneven stone terrain under a lake of flowing water, with some lava
+   * pools, so that the finalizer hides blocks and changes water and lava at chunk edges.
+   */
+  private static void generate(Octree world, Octree water, BlockPalette palette) {
+    Random random = new Random(7);
+    int seaLevel = SIZE / 2;
+    for (int z = 0; z < SIZE; ++z) {
+      for (int x = 0; x < SIZE; ++x) {
+        int ground = seaLevel - 6 + random.nextInt(10);
+        for (int y = 0; y < ground; ++y) {
+          world.set(palette.stoneId, x, y, z);
+        }
+        if (random.nextInt(8) == 0) {
+          world.set(palette.getLavaId(random.nextInt(8), 0), x, ground, z);
+        } else {
+          for (int y = ground; y < seaLevel; ++y) {
+            water.set(palette.getWaterId(y == seaLevel - 1 ? random.nextInt(8) : 0, 0), x, y, z);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import org.junit.jupiter.api.Test;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.renderer.WorkerState;
+import se.llbit.chunky.renderer.scene.sky.Sky;
+import se.llbit.math.Octree;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector3;
+import se.llbit.nbt.CompoundTag;
+import se.llbit.nbt.StringTag;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class IterativePathTracerTest {
+  private static final int SAMPLES = 50000;
+
+  /**
+   * The iterative tracer uses Russian roulette and a different order of random
+   * numbers, so only the mean over many paths is compared.
+   */
+  @Test public void testMeanMatchesPathTracer() {
+    Scene scene = scene();
+    double[] expected = mean(new PathTracer(), scene);
+    double[] actual = mean(new IterativePathTracer(), scene);
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(expected[i], actual[i], 0.03 * expected[i], "channel " + i);
+    }
+  }
+
+  /**
+   * A stone floor with a stained glass block and a glowstone block on it, under a
+   * solid sky and the sun.
+   */
+  private static Scene scene() {
+    Scene scene = new Scene();
+    BlockPalette palette = scene.getPalette();
+    Octree octree = scene.getWorldOctree();
+    for (int x = 0; x < 2; ++x) {
+      for (int z = 0; z < 2; ++z) {
+        octree.set(palette.stoneId, x, 0, z);
+      }
+    }
+    octree.set(palette.put(block("minecraft:red_stained_glass")), 0, 1, 0);
+    octree.set(palette.put(block("minecraft:glowstone")), 1, 1, 1);
+    scene.sky().setSkyMode(Sky.SkyMode.SOLID_COLOR);
+    scene.sky().setColor(new Vector3(0.6, 0.7, 1.0));
+    scene.emittersEnabled = true;
+    scene.rayDepth = 6;
+    scene.setBranchCount(1);
+    return scene;
+  }
+
+  private static CompoundTag block(String name) {
+    CompoundTag tag = new CompoundTag();
+    tag.add("Name", new StringTag(name));
+    return tag;
+  }
+
+  /**
+   * Trace rays from above towards the floor and return the mean color.
+   */
+  private static double[] mean(RayTracer tracer, Scene scene) {
+    Random rays = new Random(1);
+    WorkerState state = new WorkerState();
+    state.random = new Random(2);
+    state.ray = new Ray();
+    double[] sum = new double[3];
+    for (int i = 0; i < SAMPLES; ++i) {
+      Ray ray = state.ray;
+      ray.setDefault();
+      ray.o.set(0.25 + 1.5 * rays.nextDouble(), 3, 0.25 + 1.5 * rays.nextDouble());
+      ray.d.set(0.1, -1, 0.05);
+      ray.d.normalize();
+      tracer.trace(scene, state);
+      sum[0] += ray.color.x;
+      sum[1] += ray.color.y;
+      sum[2] += ray.color.z;
+    }
+    for (int i = 0; i < 3; ++i) {
+      sum[i] /= SAMPLES;
+    }
+    return sum;
+  }
+}
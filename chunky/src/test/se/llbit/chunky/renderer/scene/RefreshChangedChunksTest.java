@@ -0,0 +1,261 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.renderer.scene;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.llbit.chunky.world.ChunkPosition;
+import se.llbit.chunky.world.Dimension;
+import se.llbit.chunky.world.World;
+import se.llbit.json.JsonArray;
+import se.llbit.json.JsonObject;
+import se.llbit.json.JsonValue;
+import se.llbit.math.Vector3i;
+import se.llbit.nbt.ByteTag;
+import se.llbit.nbt.CompoundTag;
+import se.llbit.nbt.IntTag;
+import se.llbit.nbt.ListTag;
+import se.llbit.nbt.NamedTag;
+import se.llbit.nbt.SpecificTag;
+import se.llbit.nbt.StringTag;
+import se.llbit.nbt.Tag;
+import se.llbit.util.NbtUtil;
+import se.llbit.util.TaskTracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that refreshing the changed chunks of a scene only rewrites the changed chunk and the
+ * chunks next to it, and gives the same octree as loading all chunks again.
+ */
+public class RefreshChangedChunksTest {
+  /** Data version of 1.18.2. */
+  private static final int DATA_VERSION = 2975;
+  private static final int SECTOR_SIZE = 4096;
+
+  /** Number of chunks along each side of the test world. */
+  private static final int SIZE = 5;
+
+  @TempDir File worldDirectory;
+
+  @Test public void testRefreshChangedChunk() throws IOException {
+    writeLevel();
+    File regionFile = new File(new File(worldDirectory, "region"), "r.0.0.mca");
+    String[][] blocks = new String[SIZE][SIZE];
+    fill(blocks, "minecraft:stone");
+    writeRegion(regionFile, blocks, -1, 1000);
+
+    List<ChunkPosition> chunks = chunks();
+    Scene scene = new Scene();
+    scene.setOctreeImplementation("PACKED");
+    scene.loadChunks(TaskTracker.NONE, loadWorld(), chunks);
+
+    // The center chunk is saved again within the same second, so only its location changes.
+    // The other chunks are changed without updating the region header, so they are only
+    // read again if they are rewritten.
+    fill(blocks, "minecraft:glass");
+    blocks[2][2] = "minecraft:dirt";
+    writeRegion(regionFile, blocks, 2 + 2 * 32, 3000);
+    scene.refreshChangedChunks(TaskTracker.NONE);
+
+    for (int x = 0; x < SIZE; ++x) {
+      for (int z = 0; z < SIZE; ++z) {
+        String expected;
+        if (x == 2 && z == 2) {
+          expected = "minecraft:dirt";
+        } else if (Math.abs(x - 2) <= 1 && Math.abs(z - 2) <= 1) {
+          expected = "minecraft:glass";
+        } else {
+          expected = "minecraft:stone";
+        }
+        assertEquals(expected, blockAt(scene, x * 16 + 8, 4, z * 16 + 8),
+            String.format("chunk %d, %d", x, z));
+        blocks[x][z] = expected;
+      }
+    }
+
+    // A full reload of the same blocks gives the same octree.
+    writeRegion(regionFile, blocks, 2 + 2 * 32, 5000);
+    Scene reloaded = new Scene();
+    reloaded.setOctreeImplementation("PACKED");
+    reloaded.loadChunks(TaskTracker.NONE, loadWorld(), chunks);
+    assertEquals(reloaded.getOrigin().x, scene.getOrigin().x);
+    assertEquals(reloaded.getOrigin().y, scene.getOrigin().y);
+    assertEquals(reloaded.getOrigin().z, scene.getOrigin().z);
+    assertEquals(reloaded.getWorldOctree().getDepth(), scene.getWorldOctree().getDepth());
+    for (int x = 0; x < SIZE * 16; ++x) {
+      for (int y = 0; y < 32; ++y) {
+        for (int z = 0; z < SIZE * 16; ++z) {
+          assertEquals(blockAt(reloaded, x, y, z), blockAt(scene, x, y, z));
+        }
+      }
+    }
+  }
+
+  /**
+   * The region timestamp and location of each chunk are saved in the scene description, so
+   * that the changed chunks of a saved scene can be refreshed.
+   */
+  @Test public void testChunkVersionsAreSaved() throws IOException {
+    writeLevel();
+    File regionFile = new File(new File(worldDirectory, "region"), "r.0.0.mca");
+    String[][] blocks = new String[SIZE][SIZE];
+    fill(blocks, "minecraft:stone");
+    writeRegion(regionFile, blocks, -1, 1000);
+
+    Scene scene = new Scene();
+    scene.setOctreeImplementation("PACKED");
+    scene.loadChunks(TaskTracker.NONE, loadWorld(), chunks());
+    JsonObject json = scene.toJson();
+    assertChunkVersions(json.get("chunkList").array());
+
+    Scene loaded = new Scene();
+    loaded.fromJson(json);
+    assertChunkVersions(loaded.toJson().get("chunkList").array());
+  }
+
+  private static void assertChunkVersions(JsonArray chunkList) {
+    assertEquals(SIZE * SIZE, chunkList.size());
+    for (JsonValue value : chunkList) {
+      JsonArray chunk = value.array();
+      int x = chunk.get(0).intValue(-1);
+      int z = chunk.get(1).intValue(-1);
+      assertEquals(1, chunk.get(2).intValue(0));
+      assertEquals(((2 + x + z * SIZE) << 8) | 1, chunk.get(3).intValue(0));
+    }
+  }
+
+  private static List<ChunkPosition> chunks() {
+    List<ChunkPosition> chunks = new ArrayList<>();
+    for (int x = 0; x < SIZE; ++x) {
+      for (int z = 0; z < SIZE; ++z) {
+        chunks.add(new ChunkPosition(x, z));
+      }
+    }
+    return chunks;
+  }
+
+  private World loadWorld() {
+    return World.loadWorld(worldDirectory, Dimension.Identifier.OVERWORLD,
+        World.LoggedWarnings.SILENT);
+  }
+
+  private static String blockAt(Scene scene, int x, int y, int z) {
+    Vector3i origin = scene.getOrigin();
+    return scene.getWorldOctree()
+        .getBlock(x - origin.x, y - origin.y, z - origin.z, scene.getPalette()).name;
+  }
+
+  private static void fill(String[][] blocks, String block) {
+    for (String[] column : blocks) {
+      Arrays.fill(column, block);
+    }
+  }
+
+  private void writeLevel() throws IOException {
+    CompoundTag version = new CompoundTag();
+    version.add("Id", new IntTag(DATA_VERSION));
+    CompoundTag data = new CompoundTag();
+    data.add("version", new IntTag(19133));
+    data.add("Version", version);
+    data.add("LevelName", new StringTag("test"));
+    CompoundTag root = new CompoundTag();
+    root.add("Data", data);
+    try (DataOutputStream out = new DataOutputStream(
+        new GZIPOutputStream(new FileOutputStream(new File(worldDirectory, "level.dat"))))) {
+      NbtUtil.safeSerialize(out, new NamedTag("", root));
+    }
+  }
+
+  /**
+   * Write a region file with one uncompressed chunk per sector, all with the same timestamp.
+   * The chunk with index {@code moved} is stored after the other chunks instead.
+   */
+  private static void writeRegion(File file, String[][] blocks, int moved, long lastModified)
+      throws IOException {
+    file.getParentFile().mkdirs();
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.setLength(0);
+      for (int x = 0; x < SIZE; ++x) {
+        for (int z = 0; z < SIZE; ++z) {
+          int index = x + z * 32;
+          int sector = index == moved ? 2 + SIZE * SIZE : 2 + x + z * SIZE;
+          out.seek(index * 4);
+          out.writeInt((sector << 8) | 1);
+          out.seek(SECTOR_SIZE + index * 4);
+          out.writeInt(1);
+          byte[] chunk = chunk(x, z, blocks[x][z]);
+          out.seek((long) sector * SECTOR_SIZE);
+          out.writeInt(chunk.length + 1);
+          out.writeByte(3); // Uncompressed.
+          out.write(chunk);
+        }
+      }
+      out.setLength((long) (3 + SIZE * SIZE) * SECTOR_SIZE);
+    }
+    assertTrue(file.setLastModified(lastModified));
+  }
+
+  /**
+   * Build a 1.18 chunk with a single section filled with one block.
+   */
+  private static byte[] chunk(int x, int z, String block) throws IOException {
+    CompoundTag state = new CompoundTag();
+    state.add("Name", new StringTag(block));
+    List<SpecificTag> blockPalette = new ArrayList<>();
+    blockPalette.add(state);
+    CompoundTag blockStates = new CompoundTag();
+    blockStates.add("palette", new ListTag(Tag.TAG_COMPOUND, blockPalette));
+
+    List<SpecificTag> biomePalette = new ArrayList<>();
+    biomePalette.add(new StringTag("minecraft:plains"));
+    CompoundTag biomes = new CompoundTag();
+    biomes.add("palette", new ListTag(Tag.TAG_STRING, biomePalette));
+
+    CompoundTag section = new CompoundTag();
+    section.add("Y", new ByteTag(0));
+    section.add("block_states", blockStates);
+    section.add("biomes", biomes);
+    List<SpecificTag> sections = new ArrayList<>();
+    sections.add(section);
+
+    CompoundTag root = new CompoundTag();
+    root.add("DataVersion", new IntTag(DATA_VERSION));
+    root.add("xPos", new IntTag(x));
+    root.add("yPos", new IntTag(-4));
+    root.add("zPos", new IntTag(z));
+    root.add("Status", new StringTag("full"));
+    root.add("sections", new ListTag(Tag.TAG_COMPOUND, sections));
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      NbtUtil.safeSerialize(out, new NamedTag("", root));
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -18,6 +18,13 @@
 package se.llbit.chunky.renderer.scene;
 
 import org.junit.jupiter.api.Test;
+import se.llbit.chunky.renderer.SamplerType;
+import se.llbit.json.JsonObject;
+import se.llbit.json.JsonString;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SceneTest {
   /**
@@ -30,4 +37,47 @@ public class SceneTest {
     new Scene().setSpecular("minecraft:gravel", 0.3f);
     new Scene().setIor("minecraft:gravel", 0.3f);
   }
+
+  /**
+   * New scenes use the Sobol sampler, but scenes saved without a sampler setting,
+   * or with an unknown one, use random sampling.
+   */
+  @Test public void testSamplerTypeDefault() {
+    Scene scene = new Scene();
+    assertEquals(SamplerType.SOBOL, scene.getSamplerType());
+
+    JsonObject json = scene.toJson();
+    JsonObject withoutSampler = json.copy();
+    withoutSampler.remove("samplerType");
+    Scene loaded = new Scene();
+    loaded.fromJson(withoutSampler);
+    assertEquals(SamplerType.RANDOM, loaded.getSamplerType());
+
+    json.set("samplerType", new JsonString("NO_SUCH_SAMPLER"));
+    loaded = new Scene();
+    loaded.fromJson(json);
+    assertEquals(SamplerType.RANDOM, loaded.getSamplerType());
+
+    json.set("samplerType", new JsonString(SamplerType.SOBOL.name()));
+    loaded.fromJson(json);
+    assertEquals(SamplerType.SOBOL, loaded.getSamplerType());
+  }
+
+  /**
+   * New scenes filter textures, but scenes saved without the setting do not.
+   */
+  @Test public void testTextureFilteringDefault() {
+    Scene scene = new Scene();
+    assertTrue(scene.getTextureFiltering());
+
+    JsonObject json = scene.toJson();
+    JsonObject withoutFiltering = json.copy();
+    withoutFiltering.remove("textureFiltering");
+    Scene loaded = new Scene();
+    loaded.fromJson(withoutFiltering);
+    assertFalse(loaded.getTextureFiltering());
+
+    loaded.fromJson(json);
+    assertTrue(loaded.getTextureFiltering());
+  }
 }
@@ -0,0 +1,116 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.resources;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.renderer.scene.biome.BiomeStructure;
+import se.llbit.math.Octree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OctreeFileFormatTest {
+  @TempDir File tempDir;
+
+  @Test public void testRoundTrip() throws IOException {
+    BiomeStructure.registerDefaults();
+    BlockPalette palette = new BlockPalette();
+    int[] types = { palette.airId, palette.stoneId, palette.waterId };
+
+    // Random blocks, so that the octree spans several compressed blocks.
+    int depth = 6;
+    int size = 1 << depth;
+    Octree worldTree = new Octree("PACKED", depth);
+    Octree waterTree = new Octree("PACKED", depth);
+    Random random = new Random(0);
+    for (int x = 0; x < size; x++) {
+      for (int y = 0; y < size; y++) {
+        for (int z = 0; z < size; z++) {
+          worldTree.set(types[random.nextInt(types.length)], x, y, z);
+          if (random.nextInt(10) == 0) {
+            waterTree.set(palette.waterId, x, y, z);
+          }
+        }
+      }
+    }
+    BiomeStructure grassColors = BiomeStructure.get(BiomeStructure.DEFAULT_IMPLEMENTATION).create();
+    for (int x = 0; x < size; x++) {
+      for (int z = 0; z < size; z++) {
+        grassColors.set(x, 0, z, new float[] { x / (float) size, z / (float) size, 0.5f });
+      }
+    }
+    grassColors.compact();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    OctreeFileFormat.store(bytes, worldTree, waterTree, palette, grassColors, null, null, null);
+    byte[] file = bytes.toByteArray();
+    // The version number is stored uncompressed.
+    assertEquals(9, new DataInputStream(new ByteArrayInputStream(file)).readInt());
+
+    OctreeFileFormat.OctreeData data = OctreeFileFormat.load(
+        new ByteArrayInputStream(file), "PACKED", BiomeStructure.DEFAULT_IMPLEMENTATION, step -> {});
+    assertEquals(9, data.version);
+    assertEquals(palette.getPalette().size(), data.palette.getPalette().size());
+    assertArrayEquals(storeOctree(worldTree), storeOctree(data.worldTree));
+    assertArrayEquals(storeOctree(waterTree), storeOctree(data.waterTree));
+    for (int x = 0; x < size; x++) {
+      for (int z = 0; z < size; z++) {
+        assertArrayEquals(grassColors.get(x, 0, z), data.grassColors.get(x, 0, z));
+      }
+    }
+    assertNull(data.foliageColors);
+    assertNull(data.dryFoliageColors);
+    assertNull(data.waterColors);
+
+    // Files are loaded using the block index.
+    File octreeFile = new File(tempDir, "test.octree2");
+    Files.write(octreeFile.toPath(), file);
+    long[] progress = { 0 };
+    OctreeFileFormat.OctreeData fromFile = OctreeFileFormat.load(octreeFile, "PACKED",
+        BiomeStructure.DEFAULT_IMPLEMENTATION, step -> {}, pos -> progress[0] = pos);
+    assertEquals(9, fromFile.version);
+    assertArrayEquals(storeOctree(worldTree), storeOctree(fromFile.worldTree));
+    assertArrayEquals(storeOctree(waterTree), storeOctree(fromFile.waterTree));
+    for (int x = 0; x < size; x++) {
+      for (int z = 0; z < size; z++) {
+        assertArrayEquals(grassColors.get(x, 0, z), fromFile.grassColors.get(x, 0, z));
+      }
+    }
+    assertTrue(progress[0] > 0);
+  }
+
+  private static byte[] storeOctree(Octree octree) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      octree.store(out);
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,162 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.resources;
+
+import org.junit.jupiter.api.Test;
+import se.llbit.math.Vector4;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TextureAtlasTest {
+  /** Floats needed for a 4x4 texture with its 2x2 and 1x1 mip levels. */
+  private static final int CHAIN_SIZE = 4 * (16 + 4 + 1);
+
+  @Test public void testPackIntoPages() {
+    Texture a = createTexture(0);
+    Texture b = createTexture(1);
+    Texture c = createTexture(2);
+    float[][] before = { texels(a), texels(b), texels(c) };
+    assertEquals(CHAIN_SIZE, a.getMipChainSize());
+
+    // Two textures fit in one page, the third one starts a new page.
+    assertEquals(2, TextureAtlas.pack(Arrays.asList(a, b, c), 2 * CHAIN_SIZE + 1));
+
+    assertArrayEquals(before[0], texels(a));
+    assertArrayEquals(before[1], texels(b));
+    assertArrayEquals(before[2], texels(c));
+  }
+
+  @Test public void testTextureLargerThanPage() {
+    Texture texture = createTexture(0);
+    float[] before = texels(texture);
+    assertEquals(1, TextureAtlas.pack(Collections.singletonList(texture), CHAIN_SIZE / 2));
+    assertArrayEquals(before, texels(texture));
+  }
+
+  @Test public void testCompactTexturesAreNotPacked() {
+    boolean wasCompact = Texture.compactTexels;
+    Texture texture;
+    try {
+      Texture.compactTexels = true;
+      texture = createTexture(0);
+    } finally {
+      Texture.compactTexels = wasCompact;
+    }
+    assertEquals(0, texture.getMipChainSize());
+    assertEquals(0, TextureAtlas.pack(Collections.singletonList(texture), TextureAtlas.PAGE_SIZE));
+  }
+
+  @Test public void testMipSelection() {
+    Texture texture = createTexture(0);
+    float[] full = texels(texture);
+    TextureAtlas.pack(Collections.singletonList(texture), TextureAtlas.PAGE_SIZE);
+
+    Vector4 color = new Vector4();
+    for (int y = 0; y < 4; ++y) {
+      for (int x = 0; x < 4; ++x) {
+        double u = (x + 0.5) / 4;
+        double v = 1 - (y + 0.5) / 4;
+        int i = 4 * (4 * y + x);
+
+        // A footprint smaller than two texels uses the full resolution texture.
+        texture.getColor(u, v, 0.25, color);
+        assertColor(full[i], full[i + 1], full[i + 2], full[i + 3], color);
+
+        // A footprint of two texels uses the 2x2 level.
+        texture.getColor(u, v, 0.5, color);
+        float[] level1 = average(full, x & ~1, y & ~1, 2);
+        assertColor(level1[0], level1[1], level1[2], full[i + 3], color);
+
+        // Larger footprints are clamped to the 1x1 level.
+        float[] level2 = average(full, 0, 0, 4);
+        texture.getColor(u, v, 1, color);
+        assertColor(level2[0], level2[1], level2[2], full[i + 3], color);
+        texture.getColor(u, v, 100, color);
+        assertColor(level2[0], level2[1], level2[2], full[i + 3], color);
+      }
+    }
+  }
+
+  @Test public void testUnpackedTextureIgnoresFootprint() {
+    Texture texture = createTexture(0);
+    Vector4 expected = new Vector4();
+    Vector4 color = new Vector4();
+    texture.getColor(0.3, 0.6, expected);
+    texture.getColor(0.3, 0.6, 1, color);
+    assertColor((float) expected.x, (float) expected.y, (float) expected.z, (float) expected.w,
+        color);
+  }
+
+  /**
+   * Create an opaque 4x4 texture where every texel has a different color.
+   */
+  private static Texture createTexture(int seed) {
+    BitmapImage image = new BitmapImage(4, 4);
+    for (int y = 0; y < 4; ++y) {
+      for (int x = 0; x < 4; ++x) {
+        image.setPixel(x, y, 0xFF000000 | (x * 60 << 16) | (y * 60 << 8) | (seed * 100));
+      }
+    }
+    return new Texture(image);
+  }
+
+  /**
+   * @return the linear RGBA components of all texels in the texture
+   */
+  private static float[] texels(Texture texture) {
+    float[] result = new float[4 * texture.getWidth() * texture.getHeight()];
+    Vector4 color = new Vector4();
+    for (int y = 0; y < texture.getHeight(); ++y) {
+      for (int x = 0; x < texture.getWidth(); ++x) {
+        texture.getColor(x, y, color);
+        int i = 4 * (texture.getWidth() * y + x);
+        result[i] = (float) color.x;
+        result[i + 1] = (float) color.y;
+        result[i + 2] = (float) color.z;
+        result[i + 3] = (float) color.w;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the average color of a square block of opaque texels in a 4x4 texture
+   */
+  private static float[] average(float[] texels, int x0, int y0, int size) {
+    float[] result = new float[3];
+    for (int y = y0; y < y0 + size; ++y) {
+      for (int x = x0; x < x0 + size; ++x) {
+        int i = 4 * (4 * y + x);
+        result[0] += texels[i] / (size * size);
+        result[1] += texels[i + 1] / (size * size);
+        result[2] += texels[i + 2] / (size * size);
+      }
+    }
+    return result;
+  }
+
+  private static void assertColor(float r, float g, float b, float a, Vector4 color) {
+    assertEquals(r, color.x, 1e-6);
+    assertEquals(g, color.y, 1e-6);
+    assertEquals(b, color.z, 1e-6);
+    assertEquals(a, color.w, 1e-6);
+  }
+}
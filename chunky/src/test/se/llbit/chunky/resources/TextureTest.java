@@ -0,0 +1,97 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.resources;
+
+import org.junit.jupiter.api.Test;
+import se.llbit.math.Vector4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TextureTest {
+
+  /**
+   * The allocation free lookup must return the same texels as the array lookup when
+   * the decoded texels are stored.
+   */
+  @Test public void testVectorLookupLinearTexels() {
+    checkVectorLookup(false);
+  }
+
+  /**
+   * The allocation free lookup must return the same texels as the array lookup when
+   * texels are decoded on every lookup.
+   */
+  @Test public void testVectorLookupCompactTexels() {
+    checkVectorLookup(true);
+  }
+
+  @Test public void testCompactMatchesLinear() {
+    Texture linear = createTexture(false);
+    Texture compact = createTexture(true);
+    Vector4 expected = new Vector4();
+    Vector4 actual = new Vector4();
+    for (int i = 0; i <= 32; ++i) {
+      for (int j = 0; j <= 32; ++j) {
+        double u = i / 32.0;
+        double v = j / 32.0;
+        linear.getColor(u, v, expected);
+        compact.getColor(u, v, actual);
+        assertEquals(expected.x, actual.x, 0);
+        assertEquals(expected.y, actual.y, 0);
+        assertEquals(expected.z, actual.z, 0);
+        assertEquals(expected.w, actual.w, 0);
+      }
+    }
+  }
+
+  private static void checkVectorLookup(boolean compact) {
+    Texture texture = createTexture(compact);
+    Vector4 color = new Vector4();
+    for (int i = 0; i <= 32; ++i) {
+      for (int j = 0; j <= 32; ++j) {
+        double u = i / 32.0;
+        double v = j / 32.0;
+        float[] expected = texture.getColor(u, v);
+        texture.getColor(u, v, color);
+        assertEquals(expected[0], color.x, 0);
+        assertEquals(expected[1], color.y, 0);
+        assertEquals(expected[2], color.z, 0);
+        assertEquals(expected[3], color.w, 0);
+      }
+    }
+  }
+
+  /**
+   * Create a 16x8 texture where every texel has a different color and alpha.
+   */
+  private static Texture createTexture(boolean compact) {
+    BitmapImage image = new BitmapImage(16, 8);
+    for (int y = 0; y < image.height; ++y) {
+      for (int x = 0; x < image.width; ++x) {
+        int alpha = 255 - 7 * (y * image.width + x) % 256;
+        image.setPixel(x, y, (alpha << 24) | (x * 16 << 16) | (y * 32 << 8) | (x * y));
+      }
+    }
+    boolean wasCompact = Texture.compactTexels;
+    try {
+      Texture.compactTexels = compact;
+      return new Texture(image);
+    } finally {
+      Texture.compactTexels = wasCompact;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.world;
+
+import it.unimi.dsi.fastutil.ints.IntIntImmutablePair;
+import org.junit.jupiter.api.Test;
+import se.llbit.chunky.chunk.BlockPalette;
+import se.llbit.chunky.chunk.ChunkLoadingException;
+import se.llbit.chunky.chunk.GenericChunkData;
+import se.llbit.chunky.world.biome.ArrayBiomePalette;
+import se.llbit.chunky.world.biome.BiomePalette;
+import se.llbit.chunky.world.region.MCRegion;
+import se.llbit.nbt.ByteArrayTag;
+import se.llbit.nbt.ByteTag;
+import se.llbit.nbt.CompoundTag;
+import se.llbit.nbt.IntTag;
+import se.llbit.nbt.ListTag;
+import se.llbit.nbt.LongArrayTag;
+import se.llbit.nbt.NamedTag;
+import se.llbit.nbt.SpecificTag;
+import se.llbit.nbt.StringTag;
+import se.llbit.nbt.Tag;
+import se.llbit.util.NbtUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the streaming chunk decoder gives the same chunk data as the tag tree loader.
+ */
+public class StreamingChunkDecoderTest {
+  /** Data version of 1.18.2. */
+  private static final int DATA_VERSION = 2975;
+
+  private static final String[] BLOCKS = {
+      "minecraft:white_wool", "minecraft:orange_wool", "minecraft:magenta_wool",
+      "minecraft:light_blue_wool", "minecraft:yellow_wool", "minecraft:lime_wool",
+      "minecraft:pink_wool", "minecraft:gray_wool", "minecraft:light_gray_wool",
+      "minecraft:cyan_wool", "minecraft:purple_wool", "minecraft:blue_wool",
+      "minecraft:brown_wool", "minecraft:green_wool", "minecraft:red_wool",
+      "minecraft:black_wool", "minecraft:stone", "minecraft:dirt", "minecraft:sand",
+      "minecraft:gravel",
+  };
+
+  @Test public void testMatchesTagTreeLoader() throws IOException, ChunkLoadingException {
+    byte[] chunk = chunk();
+    compare(chunk, -64, 320);
+    // Sections outside the requested range are skipped.
+    compare(chunk, 0, 32);
+  }
+
+  @Test public void testOldFormatIsLeftToTagTreeLoader() throws IOException {
+    CompoundTag level = new CompoundTag();
+    level.add("Sections", new ListTag(Tag.TAG_COMPOUND, new ArrayList<>()));
+    CompoundTag root = new CompoundTag();
+    root.add("DataVersion", new IntTag(1343));
+    root.add("Level", level);
+    assertFalse(StreamingChunkDecoder.get().parse(source(serialize(root)), -64, 320));
+  }
+
+  private static void compare(byte[] chunk, int minY, int maxY)
+      throws IOException, ChunkLoadingException {
+    BlockPalette palette = new BlockPalette();
+    BiomePalette biomePalette = new ArrayBiomePalette();
+
+    GenericChunkData expected = new GenericChunkData();
+    Map<String, Tag> tags = MCRegion.parseNbtFromChunkDataSource(
+        new ChunkPosition(0, 0), Chunk.chunkTagRequest(), source(chunk));
+    assertNotNull(tags);
+    Chunk.loadChunkTags(NbtUtil.tagFromMap(tags), expected, palette, biomePalette, minY, maxY);
+
+    GenericChunkData actual = new GenericChunkData();
+    StreamingChunkDecoder decoder = StreamingChunkDecoder.get();
+    assertTrue(decoder.parse(source(chunk), minY, maxY));
+    assertEquals(DATA_VERSION, decoder.getDataVersion());
+    assertEquals(new IntIntImmutablePair(-64, 10 * 16 + 15), decoder.inclusiveChunkBounds());
+    decoder.load(actual, palette, biomePalette);
+
+    for (int y = minY; y < maxY; ++y) {
+      for (int z = 0; z < Chunk.Z_MAX; ++z) {
+        for (int x = 0; x < Chunk.X_MAX; ++x) {
+          assertEquals(expected.getBlockAt(x, y, z), actual.getBlockAt(x, y, z),
+              String.format("block at (%d, %d, %d)", x, y, z));
+          assertEquals(expected.getBiomeData().getBiome(x, y, z),
+              actual.getBiomeData().getBiome(x, y, z),
+              String.format("biome at (%d, %d, %d)", x, y, z));
+        }
+      }
+    }
+    assertEquals(new ArrayList<>(expected.getTileEntities()),
+        new ArrayList<>(actual.getTileEntities()));
+    assertEquals(3, actual.getTileEntities().size());
+  }
+
+  private static ChunkDataSource source(byte[] chunk) {
+    return new ChunkDataSource(0, chunk, ChunkDataSource.CompressionScheme.UNCOMPRESSED);
+  }
+
+  /**
+   * Build a 1.18 chunk with sections of different palette sizes, biomes, block entities
+   * and some tags that the decoders skip.
+   */
+  private static byte[] chunk() throws IOException {
+    Random random = new Random(1);
+    List<SpecificTag> sections = new ArrayList<>();
+    sections.add(section(-4, random, 3, true));
+    sections.add(section(0, random, 1, false));
+    sections.add(section(1, random, BLOCKS.length, true));
+    sections.add(section(2, random, 2, true));
+    sections.add(section(10, random, 5, true));
+
+    List<SpecificTag> blockEntities = new ArrayList<>();
+    blockEntities.add(blockEntity("minecraft:chest", 1, -60, 2));
+    blockEntities.add(blockEntity("minecraft:sign", 3, 40, 4));
+    blockEntities.add(blockEntity("minecraft:furnace", 5, 170, 6));
+
+    CompoundTag heightmaps = new CompoundTag();
+    heightmaps.add("WORLD_SURFACE", new LongArrayTag(new long[37]));
+
+    CompoundTag root = new CompoundTag();
+    root.add("DataVersion", new IntTag(DATA_VERSION));
+    root.add("xPos", new IntTag(0));
+    root.add("yPos", new IntTag(-4));
+    root.add("zPos", new IntTag(0));
+    root.add("Status", new StringTag("full"));
+    root.add("Heightmaps", heightmaps);
+    root.add("sections", new ListTag(Tag.TAG_COMPOUND, sections));
+    root.add("block_entities", new ListTag(Tag.TAG_COMPOUND, blockEntities));
+    return serialize(root);
+  }
+
+  private static CompoundTag section(int y, Random random, int paletteSize, boolean hasData) {
+    List<SpecificTag> blockPalette = new ArrayList<>();
+    for (int i = 0; i < paletteSize; ++i) {
+      CompoundTag block = new CompoundTag();
+      block.add("Name", new StringTag(BLOCKS[(y + 16 + i) % BLOCKS.length]));
+      blockPalette.add(block);
+    }
+    CompoundTag blockStates = new CompoundTag();
+    blockStates.add("palette", new ListTag(Tag.TAG_COMPOUND, blockPalette));
+    if (hasData) {
+      int bits = Math.max(4, 32 - Integer.numberOfLeadingZeros(paletteSize - 1));
+      blockStates.add("data", new LongArrayTag(pack(random, 4096, paletteSize, bits)));
+    }
+
+    List<SpecificTag> biomePalette = new ArrayList<>();
+    biomePalette.add(new StringTag("minecraft:plains"));
+    biomePalette.add(new StringTag("minecraft:desert"));
+    CompoundTag biomes = new CompoundTag();
+    biomes.add("palette", new ListTag(Tag.TAG_STRING, biomePalette));
+    biomes.add("data", new LongArrayTag(pack(random, 64, 2, 1)));
+
+    CompoundTag section = new CompoundTag();
+    section.add("Y", new ByteTag(y));
+    section.add("block_states", blockStates);
+    section.add("biomes", biomes);
+    section.add("SkyLight", new ByteArrayTag(new byte[2048]));
+    return section;
+  }
+
+  /**
+   * Pack random palette indices the way 1.16+ does, without entries spanning longs.
+   */
+  private static long[] pack(Random random, int count, int paletteSize, int bits) {
+    int perLong = 64 / bits;
+    long[] data = new long[(count + perLong - 1) / perLong];
+    for (int i = 0; i < count; ++i) {
+      data[i / perLong] |= (long) random.nextInt(paletteSize) << (bits * (i % perLong));
+    }
+    return data;
+  }
+
+  private static CompoundTag blockEntity(String id, int x, int y, int z) {
+    CompoundTag tag = new CompoundTag();
+    tag.add("id", new StringTag(id));
+    tag.add("x", new IntTag(x));
+    tag.add("y", new IntTag(y));
+    tag.add("z", new IntTag(z));
+    tag.add("Items", new ListTag(Tag.TAG_COMPOUND, new ArrayList<>()));
+    return tag;
+  }
+
+  private static byte[] serialize(CompoundTag root) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      NbtUtil.safeSerialize(out, new NamedTag("", root));
+    }
+    return bytes.toByteArray();
+  }
+}
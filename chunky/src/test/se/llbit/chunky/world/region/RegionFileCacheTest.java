@@ -0,0 +1,181 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.chunky.world.region;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RegionFileCacheTest {
+  private static final int SECTOR_SIZE = RegionFileCache.SECTOR_SIZE;
+
+  @TempDir File tempDir;
+
+  /**
+   * Write a region file with one chunk at index 0, stored in the given sectors.
+   * The chunk data is {@code size} bytes with the value {@code fill}.
+   */
+  private static void writeRegion(File file, int sectorOffset, int sectorCount, int size,
+      byte fill, int timestamp) throws IOException {
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.setLength(0);
+      out.writeInt((sectorOffset << 8) | sectorCount);
+      out.seek(SECTOR_SIZE);
+      out.writeInt(timestamp);
+      out.seek((long) sectorOffset * SECTOR_SIZE);
+      out.writeInt(size);
+      for (int i = 0; i < size; ++i) {
+        out.writeByte(fill);
+      }
+      out.setLength((long) (sectorOffset + sectorCount) * SECTOR_SIZE);
+    }
+  }
+
+  @Test public void testHeader() throws IOException {
+    File file = new File(tempDir, "r.0.0.mca");
+    writeRegion(file, 2, 1, 100, (byte) 7, 1234);
+    RegionFileCache.RegionFile region = RegionFileCache.get(file);
+    assertTrue(region.hasHeader());
+    assertEquals((2 << 8) | 1, region.getLocation(0));
+    assertEquals(0, region.getLocation(1));
+    assertEquals(1234, region.getTimestamp(0));
+    assertEquals(3 * SECTOR_SIZE, region.length);
+  }
+
+  @Test public void testMissingHeader() throws IOException {
+    File file = new File(tempDir, "r.0.1.mca");
+    assertTrue(file.createNewFile());
+    RegionFileCache.RegionFile region = RegionFileCache.get(file);
+    assertFalse(region.hasHeader());
+    assertEquals(0, region.getLocation(0));
+  }
+
+  @Test public void testRead() throws IOException {
+    File file = new File(tempDir, "r.1.0.mca");
+    // Larger than the initial read buffer, so the buffer has to grow.
+    int size = 40 * SECTOR_SIZE;
+    writeRegion(file, 2, 41, size, (byte) 3, 1);
+    RegionFileCache.RegionFile region = RegionFileCache.get(file);
+    RegionFileCache.ReadBuffer buffer = new RegionFileCache.ReadBuffer();
+    ByteBuffer data = region.read(2 * SECTOR_SIZE, size + 4, buffer);
+    assertEquals(0, data.position());
+    assertEquals(size + 4, data.remaining());
+    assertEquals(size, data.getInt(0));
+    for (int i = 4; i < size + 4; ++i) {
+      assertEquals(3, data.get(i));
+    }
+
+    // The next read reuses the buffer of this thread.
+    ByteBuffer small = region.read(2 * SECTOR_SIZE, 8, buffer);
+    assertSame(data, small);
+    assertEquals(8, small.remaining());
+  }
+
+  @Test public void testReadPastEnd() throws IOException {
+    File file = new File(tempDir, "r.1.1.mca");
+    writeRegion(file, 2, 1, 10, (byte) 1, 1);
+    RegionFileCache.RegionFile region = RegionFileCache.get(file);
+    assertThrows(IOException.class,
+        () -> region.read(2 * SECTOR_SIZE, 2 * SECTOR_SIZE, new RegionFileCache.ReadBuffer()));
+  }
+
+  @Test public void testCached() throws IOException {
+    File file = new File(tempDir, "r.2.0.mca");
+    writeRegion(file, 2, 1, 10, (byte) 1, 1);
+    assertSame(RegionFileCache.get(file), RegionFileCache.get(file));
+  }
+
+  @Test public void testStaleLength() throws IOException {
+    File file = new File(tempDir, "r.2.1.mca");
+    writeRegion(file, 2, 1, 10, (byte) 1, 1);
+    long lastModified = file.lastModified();
+    RegionFileCache.RegionFile before = RegionFileCache.get(file);
+
+    // Same modification time, but the chunk moved to a new sector at the end of the file.
+    writeRegion(file, 3, 1, 10, (byte) 2, 2);
+    assertTrue(file.setLastModified(lastModified));
+    RegionFileCache.RegionFile after = RegionFileCache.get(file);
+    assertNotSame(before, after);
+    assertEquals((3 << 8) | 1, after.getLocation(0));
+    assertEquals(2, after.getTimestamp(0));
+  }
+
+  @Test public void testStaleModificationTime() throws IOException {
+    File file = new File(tempDir, "r.3.0.mca");
+    writeRegion(file, 2, 1, 10, (byte) 1, 1);
+    RegionFileCache.RegionFile before = RegionFileCache.get(file);
+
+    // Same length, new modification time.
+    writeRegion(file, 2, 1, 10, (byte) 2, 5);
+    assertTrue(file.setLastModified(before.lastModified + 2000));
+    RegionFileCache.RegionFile after = RegionFileCache.get(file);
+    assertNotSame(before, after);
+    assertEquals(5, after.getTimestamp(0));
+    assertSame(after, RegionFileCache.get(file));
+  }
+
+  @Test public void testInvalidate() throws IOException {
+    File file = new File(tempDir, "r.3.1.mca");
+    writeRegion(file, 2, 1, 10, (byte) 1, 1);
+    RegionFileCache.RegionFile before = RegionFileCache.get(file);
+    assertTrue(before.isOpen());
+    RegionFileCache.invalidate(file);
+    assertFalse(before.isOpen());
+    RegionFileCache.RegionFile after = RegionFileCache.get(file);
+    assertNotSame(before, after);
+    assertTrue(after.isOpen());
+  }
+
+  @Test public void testStaleFileIsClosed() throws IOException {
+    File file = new File(tempDir, "r.4.0.mca");
+    writeRegion(file, 2, 1, 10, (byte) 1, 1);
+    RegionFileCache.RegionFile before = RegionFileCache.get(file);
+    writeRegion(file, 2, 2, 10, (byte) 1, 1);
+    RegionFileCache.RegionFile after = RegionFileCache.get(file);
+    assertNotSame(before, after);
+    assertFalse(before.isOpen());
+    assertTrue(after.isOpen());
+  }
+
+  @Test public void testEvictedFileIsClosed() throws IOException {
+    File first = new File(tempDir, "r.5.0.mca");
+    writeRegion(first, 2, 1, 10, (byte) 1, 1);
+    RegionFileCache.RegionFile evicted = RegionFileCache.get(first);
+    for (int i = 0; i < RegionFileCache.MAX_FILES; ++i) {
+      File file = new File(tempDir, "r.6." + i + ".mca");
+      writeRegion(file, 2, 1, 10, (byte) 1, 1);
+      RegionFileCache.get(file);
+    }
+    assertFalse(evicted.isOpen());
+
+    // A file that was closed while it was used can still be read.
+    ByteBuffer data = evicted.read(2 * SECTOR_SIZE, 14, new RegionFileCache.ReadBuffer());
+    assertEquals(10, data.getInt(0));
+    assertEquals(1, data.get(4));
+  }
+}
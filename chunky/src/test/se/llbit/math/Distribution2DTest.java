@@ -0,0 +1,69 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Distribution2DTest {
+  @Test
+  public void testSampledPdfMatches() {
+    Random random = new Random(1);
+    int width = 16;
+    int height = 8;
+    float[] weights = new float[width * height];
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] = random.nextInt(3) == 0 ? 0 : random.nextFloat();
+    }
+    Distribution2D distribution = new Distribution2D(weights, width, height);
+    assertTrue(distribution.isValid());
+    Vector2 uv = new Vector2();
+    for (int i = 0; i < 10000; ++i) {
+      double pdf = distribution.sample(random.nextDouble(), random.nextDouble(), uv);
+      assertTrue(uv.x >= 0 && uv.x < 1 && uv.y >= 0 && uv.y < 1);
+      int cell = (int) (uv.y * height) * width + (int) (uv.x * width);
+      assertNotEquals(0, weights[cell]);
+      assertEquals(distribution.pdf(uv.x, uv.y), pdf, 1e-9);
+    }
+  }
+
+  @Test
+  public void testPdfIntegratesToOne() {
+    float[] weights = {1, 2, 0, 4, 0, 0, 5, 3, 1};
+    Distribution2D distribution = new Distribution2D(weights, 3, 3);
+    double sum = 0;
+    for (int y = 0; y < 3; ++y) {
+      for (int x = 0; x < 3; ++x) {
+        sum += distribution.pdf((x + 0.5) / 3, (y + 0.5) / 3) / 9;
+      }
+    }
+    assertEquals(1, sum, 1e-9);
+  }
+
+  @Test
+  public void testZeroWeights() {
+    Distribution2D distribution = new Distribution2D(new float[4], 2, 2);
+    assertFalse(distribution.isValid());
+    assertEquals(0, distribution.sample(0.5, 0.5, new Vector2()));
+  }
+}
@@ -0,0 +1,109 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math;
+
+import org.junit.jupiter.api.Test;
+import se.llbit.chunky.block.Block;
+import se.llbit.chunky.block.MinecraftBlock;
+import se.llbit.chunky.resources.Texture;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EmitterLightTreeTest {
+  private static List<Grid.EmitterPosition> randomEmitters(int count, long seed) {
+    Block dim = new MinecraftBlock("test_dim_light", Texture.glowstone);
+    dim.emittance = 0.1f;
+    Block bright = new MinecraftBlock("test_bright_light", Texture.glowstone);
+    bright.emittance = 1;
+    Random random = new Random(seed);
+    List<Grid.EmitterPosition> emitters = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      emitters.add(new Grid.EmitterPosition(random.nextInt(64), 10 + random.nextInt(64),
+          random.nextInt(64), random.nextBoolean() ? dim : bright));
+    }
+    return emitters;
+  }
+
+  @Test
+  public void testPdfSumsToOne() {
+    List<Grid.EmitterPosition> emitters = randomEmitters(500, 1);
+    EmitterLightTree tree = EmitterLightTree.build(emitters);
+    Vector3 point = new Vector3(20.5, 2, 40.5);
+    Vector3 normal = new Vector3(0, 1, 0);
+    double sum = 0;
+    for (int i = 0; i < emitters.size(); ++i) {
+      sum += tree.pdf(point, normal, i);
+    }
+    assertEquals(1, sum, 1e-9);
+  }
+
+  @Test
+  public void testSampledPdfMatches() {
+    List<Grid.EmitterPosition> emitters = randomEmitters(200, 2);
+    EmitterLightTree tree = EmitterLightTree.build(emitters);
+    Vector3 point = new Vector3(30.5, 40, 12.5);
+    Vector3 normal = new Vector3(0.6, 0.8, 0);
+    Random random = new Random(3);
+    EmitterLightTree.Selection selection = new EmitterLightTree.Selection();
+    int selected = 0;
+    for (int i = 0; i < 1000; ++i) {
+      if (tree.sample(point, normal, random, selection)) {
+        int index = emitters.indexOf(selection.emitter);
+        assertEquals(tree.pdf(point, normal, index), selection.pdf, 1e-12);
+        selected += 1;
+      }
+    }
+    assertTrue(selected > 0);
+  }
+
+  @Test
+  public void testEmittersBehindSurfaceAreSkipped() {
+    List<Grid.EmitterPosition> emitters = randomEmitters(100, 4);
+    EmitterLightTree tree = EmitterLightTree.build(emitters);
+    Vector3 point = new Vector3(32, 5, 32);
+    Vector3 normal = new Vector3(0, -1, 0);
+    assertFalse(tree.sample(point, normal, new Random(5), new EmitterLightTree.Selection()));
+  }
+
+  @Test
+  public void testStoreAndLoad() throws IOException {
+    List<Grid.EmitterPosition> emitters = randomEmitters(300, 6);
+    EmitterLightTree tree = EmitterLightTree.build(emitters);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      tree.store(out);
+    }
+    EmitterLightTree loaded = EmitterLightTree.load(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), emitters);
+    Vector3 point = new Vector3(10, 50, 10);
+    Vector3 normal = new Vector3(0, 0, 1);
+    for (int i = 0; i < emitters.size(); ++i) {
+      assertEquals(tree.pdf(point, normal, i), loaded.pdf(point, normal, i), 0);
+    }
+  }
+}
@@ -1,10 +1,25 @@
 package se.llbit.math;
 
+import it.unimi.dsi.fastutil.ints.IntIntMutablePair;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static se.llbit.testutil.TestUtils.assertThrowsWithExpectedMessage;
 
 public class OctreeTest {
+  @TempDir
+  File tempDir;
+
   @Test
   public void test() {
     int depth = 5;
@@ -40,4 +55,262 @@ public class OctreeTest {
       "setCube position must not be negative (17,9,-32)");
 
   }
+
+  @Test
+  public void testIncrementalTraversal() throws IOException {
+    int depth = 6;
+    checkIncrementalTraversal(new PackedOctree(depth), depth);
+    checkIncrementalTraversal(new BigPackedOctree(depth), depth);
+    checkIncrementalTraversal(new MappedOctree(depth, tempDir), depth);
+  }
+
+  /**
+   * Checks that incremental leaf lookups give the same results as descending from the root,
+   * both for neighbouring positions and for arbitrary jumps.
+   */
+  private static void checkIncrementalTraversal(Octree.OctreeImplementation octree, int depth) {
+    Random random = new Random(0);
+    int size = 1 << depth;
+    for (int i = 0; i < 2000; i++) {
+      // Few types and some large regions so that the tree contains leaves on several levels.
+      int x = random.nextInt(size);
+      int y = random.nextInt(size);
+      int z = random.nextInt(size);
+      octree.set(random.nextInt(3), x, y, z);
+    }
+    int[] cube = new int[8 * 8 * 8];
+    java.util.Arrays.fill(cube, 7);
+    octree.setCube(3, cube, 16, 8, 24);
+
+    Octree.Traversal traversal = new Octree.Traversal();
+    IntIntMutablePair expected = new IntIntMutablePair(0, 0);
+    int x = 0, y = 0, z = 0;
+    for (int i = 0; i < 20000; i++) {
+      if (i % 100 == 0) {
+        traversal.reset();
+      }
+      if (random.nextInt(10) == 0) {
+        x = random.nextInt(size);
+        y = random.nextInt(size);
+        z = random.nextInt(size);
+      } else {
+        x = Math.floorMod(x + random.nextInt(3) - 1, size);
+        y = Math.floorMod(y + random.nextInt(3) - 1, size);
+        z = Math.floorMod(z + random.nextInt(3) - 1, size);
+      }
+      octree.getWithLevel(expected, x, y, z);
+      octree.getWithLevel(traversal, x, y, z);
+      assertEquals(expected.leftInt(), traversal.typeAndLevel.leftInt());
+      assertEquals(expected.rightInt(), traversal.typeAndLevel.rightInt());
+    }
+  }
+
+  @Test
+  public void testDagOctree() throws IOException {
+    int depth = 6;
+    int size = 1 << depth;
+    PackedOctree packed = new PackedOctree(depth);
+    DagOctree dag = new DagOctree(depth);
+
+    // A repeated structure, including ANY_TYPE nodes that are merged at the end of finalization.
+    int[] cube = new int[8 * 8 * 8];
+    for (int i = 0; i < cube.length; ++i) {
+      cube[i] = i % 7 == 0 ? Octree.ANY_TYPE : (i / 64) % 3;
+    }
+    for (int x = 0; x < size; x += 8) {
+      for (int z = 0; z < size; z += 8) {
+        packed.setCube(3, cube, x, 0, z);
+        dag.setCube(3, cube, x, 0, z);
+      }
+    }
+    Random random = new Random(0);
+    for (int i = 0; i < 2000; i++) {
+      int type = random.nextInt(4);
+      int x = random.nextInt(size);
+      int y = 8 + random.nextInt(size - 8);
+      int z = random.nextInt(size);
+      packed.set(type, x, y, z);
+      dag.set(type, x, y, z);
+    }
+    packed.startFinalization();
+    dag.startFinalization();
+    packed.endFinalization();
+    dag.endFinalization();
+    assertSameLeaves(packed, dag, size);
+    assertEquals(packed.nodeCount(), dag.nodeCount());
+
+    // Blocks set after the DAG has been built must not change shared nodes.
+    for (int i = 0; i < 2000; i++) {
+      int type = random.nextInt(4);
+      int x = random.nextInt(size);
+      int y = random.nextInt(size);
+      int z = random.nextInt(size);
+      packed.set(type, x, y, z);
+      dag.set(type, x, y, z);
+    }
+    assertSameLeaves(packed, dag, size);
+    dag.endFinalization();
+    assertSameLeaves(packed, dag, size);
+
+    // The DAG is stored in the same format as the other implementations.
+    ByteArrayOutputStream packedData = new ByteArrayOutputStream();
+    packed.store(new DataOutputStream(packedData));
+    ByteArrayOutputStream dagData = new ByteArrayOutputStream();
+    dag.store(new DataOutputStream(dagData));
+    assertArrayEquals(packedData.toByteArray(), dagData.toByteArray());
+    DagOctree loaded = DagOctree.load(new DataInputStream(new ByteArrayInputStream(dagData.toByteArray())));
+    assertSameLeaves(packed, loaded, size);
+    checkIncrementalTraversal(loaded, depth);
+  }
+
+  @Test
+  public void testDagOctreeWritesAfterBuild() {
+    int depth = 5;
+    int size = 1 << depth;
+    PackedOctree packed = new PackedOctree(depth);
+    DagOctree dag = new DagOctree(depth);
+
+    // Repeated cubes, so that the DAG shares their nodes.
+    int[] cube = new int[4 * 4 * 4];
+    for (int i = 0; i < cube.length; ++i) {
+      cube[i] = i % 3;
+    }
+    for (int x = 0; x < size; x += 4) {
+      for (int y = 0; y < size; y += 4) {
+        for (int z = 0; z < size; z += 4) {
+          packed.setCube(2, cube, x, y, z);
+          dag.setCube(2, cube, x, y, z);
+        }
+      }
+    }
+    packed.startFinalization();
+    dag.startFinalization();
+    packed.endFinalization();
+    dag.endFinalization();
+
+    // Writing ANY_TYPE keeps the block that is already there.
+    IntIntMutablePair before = new IntIntMutablePair(0, 0);
+    IntIntMutablePair after = new IntIntMutablePair(0, 0);
+    dag.getWithLevel(before, 5, 6, 7);
+    dag.set(Octree.ANY_TYPE, 5, 6, 7);
+    dag.getWithLevel(after, 5, 6, 7);
+    assertEquals(before.leftInt(), after.leftInt());
+    assertEquals(before.rightInt(), after.rightInt());
+
+    // Later writes into the same cube change the copied nodes, the other cubes are unchanged.
+    for (int x = 0; x < 4; ++x) {
+      for (int z = 0; z < 4; ++z) {
+        packed.set(3, x, 1, z);
+        dag.set(3, x, 1, z);
+      }
+    }
+    assertSameLeaves(packed, dag, size);
+
+    // Filling the whole cube merges it into one leaf.
+    for (int x = 0; x < 4; ++x) {
+      for (int y = 0; y < 4; ++y) {
+        for (int z = 0; z < 4; ++z) {
+          packed.set(3, x, y, z);
+          dag.set(3, x, y, z);
+        }
+      }
+    }
+    assertSameLeaves(packed, dag, size);
+    dag.getWithLevel(after, 0, 0, 0);
+    assertEquals(3, after.leftInt());
+    assertEquals(2, after.rightInt());
+    dag.endFinalization();
+    assertSameLeaves(packed, dag, size);
+  }
+
+  @Test
+  public void testMappedOctree() throws IOException {
+    // The full tree needs more nodes than the initial mapping, so the mapping has to grow.
+    int depth = 4;
+    int size = 1 << depth;
+    PackedOctree packed = new PackedOctree(depth);
+    MappedOctree mapped = new MappedOctree(depth, tempDir);
+    Random random = new Random(0);
+    for (int x = 0; x < size; x++) {
+      for (int y = 0; y < size; y++) {
+        for (int z = 0; z < size; z++) {
+          int type = random.nextInt(4);
+          packed.set(type, x, y, z);
+          mapped.set(type, x, y, z);
+        }
+      }
+    }
+    assertSameLeaves(packed, mapped, size);
+    assertEquals(packed.nodeCount(), mapped.nodeCount());
+
+    ByteArrayOutputStream packedData = new ByteArrayOutputStream();
+    packed.store(new DataOutputStream(packedData));
+    ByteArrayOutputStream mappedData = new ByteArrayOutputStream();
+    mapped.store(new DataOutputStream(mappedData));
+    assertArrayEquals(packedData.toByteArray(), mappedData.toByteArray());
+    MappedOctree loaded = MappedOctree.load(
+        new DataInputStream(new ByteArrayInputStream(mappedData.toByteArray())), tempDir);
+    assertSameLeaves(packed, loaded, size);
+    checkIncrementalTraversal(loaded, depth);
+  }
+
+  @Test
+  public void testCopy() throws IOException {
+    int depth = 5;
+    int size = 1 << depth;
+    PackedOctree reference = new PackedOctree(depth);
+    PackedOctree packed = new PackedOctree(depth);
+    DagOctree dag = new DagOctree(depth);
+    MappedOctree mapped = new MappedOctree(depth, tempDir);
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      int type = random.nextInt(4);
+      int x = random.nextInt(size);
+      int y = random.nextInt(size);
+      int z = random.nextInt(size);
+      reference.set(type, x, y, z);
+      packed.set(type, x, y, z);
+      dag.set(type, x, y, z);
+      mapped.set(type, x, y, z);
+    }
+    dag.endFinalization();
+
+    PackedOctree packedCopy = packed.copy();
+    DagOctree dagCopy = dag.copy();
+    MappedOctree mappedCopy = mapped.copy();
+    assertSameLeaves(reference, packedCopy, size);
+    assertSameLeaves(reference, dagCopy, size);
+    assertSameLeaves(reference, mappedCopy, size);
+
+    // Changing the copies must not change the original octrees.
+    for (int i = 0; i < 1000; i++) {
+      int type = random.nextInt(4);
+      int x = random.nextInt(size);
+      int y = random.nextInt(size);
+      int z = random.nextInt(size);
+      packedCopy.set(type, x, y, z);
+      dagCopy.set(type, x, y, z);
+      mappedCopy.set(type, x, y, z);
+    }
+    assertSameLeaves(packedCopy, dagCopy, size);
+    assertSameLeaves(packedCopy, mappedCopy, size);
+    assertSameLeaves(reference, packed, size);
+    assertSameLeaves(reference, dag, size);
+    assertSameLeaves(reference, mapped, size);
+  }
+
+  private static void assertSameLeaves(Octree.OctreeImplementation expected, Octree.OctreeImplementation actual, int size) {
+    IntIntMutablePair expectedLeaf = new IntIntMutablePair(0, 0);
+    IntIntMutablePair actualLeaf = new IntIntMutablePair(0, 0);
+    for (int x = 0; x < size; x++) {
+      for (int y = 0; y < size; y++) {
+        for (int z = 0; z < size; z++) {
+          expected.getWithLevel(expectedLeaf, x, y, z);
+          actual.getWithLevel(actualLeaf, x, y, z);
+          assertEquals(expectedLeaf.leftInt(), actualLeaf.leftInt());
+          assertEquals(expectedLeaf.rightInt(), actualLeaf.rightInt());
+        }
+      }
+    }
+  }
 }
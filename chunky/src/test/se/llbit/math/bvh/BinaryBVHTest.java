@@ -0,0 +1,83 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import org.junit.jupiter.api.Test;
+import se.llbit.chunky.world.Material;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector2;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.math.primitive.TexturedTriangle;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class BinaryBVHTest {
+  private static final Material OPAQUE = new Material("opaque", null) {
+    @Override public void getColor(Ray ray) {
+      ray.color.set(1, 1, 1, 1);
+    }
+
+    @Override public float[] getColor(double u, double v) {
+      return new float[] { 1, 1, 1, 1 };
+    }
+  };
+
+  private static Primitive[] randomTriangles(Random random, int count) {
+    Primitive[] triangles = new Primitive[count];
+    for (int i = 0; i < count; ++i) {
+      Vector3 c1 = new Vector3(random.nextDouble() * 50, random.nextDouble() * 50, random.nextDouble() * 50);
+      Vector3 c2 = new Vector3(c1.x + random.nextDouble(), c1.y + random.nextDouble(), c1.z);
+      Vector3 c3 = new Vector3(c1.x, c1.y + random.nextDouble(), c1.z + random.nextDouble());
+      triangles[i] = new TexturedTriangle(c1, c2, c3, new Vector2(0, 0), new Vector2(1, 0),
+          new Vector2(0, 1), OPAQUE, random.nextBoolean());
+    }
+    return triangles;
+  }
+
+  @Test
+  public void testPackedTrianglesMatchObjects() {
+    Primitive[] triangles = randomTriangles(new Random(1), 3000);
+    BinaryBVH objects = new BinnedSahBVH(triangles.clone(), i -> {});
+    BinaryBVH packed = new BinnedSahBVH(triangles.clone(), i -> {});
+    packed.packTriangles();
+
+    Random random = new Random(2);
+    Ray ray1 = new Ray();
+    Ray ray2 = new Ray();
+    for (int i = 0; i < 1000; ++i) {
+      ray1.o.set(random.nextDouble() * 50, random.nextDouble() * 50, -10);
+      ray1.d.set(random.nextDouble() - 0.5, random.nextDouble() - 0.5, 1);
+      ray1.d.normalize();
+      ray1.t = Double.POSITIVE_INFINITY;
+      ray2.o.set(ray1.o);
+      ray2.d.set(ray1.d);
+      ray2.t = Double.POSITIVE_INFINITY;
+      assertEquals(objects.closestIntersection(ray1), packed.closestIntersection(ray2));
+      assertEquals(ray1.t, ray2.t, 1e-5);
+      if (ray1.t != Double.POSITIVE_INFINITY) {
+        assertEquals(ray1.getNormal().x, ray2.getNormal().x, 1e-6);
+        assertEquals(ray1.getNormal().y, ray2.getNormal().y, 1e-6);
+        assertEquals(ray1.getNormal().z, ray2.getNormal().z, 1e-6);
+        assertSame(OPAQUE, ray2.getCurrentMaterial());
+      }
+    }
+  }
+}
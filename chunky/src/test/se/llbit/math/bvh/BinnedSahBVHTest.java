@@ -0,0 +1,163 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import org.junit.jupiter.api.Test;
+import se.llbit.math.AABB;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinnedSahBVHTest {
+  /** Sphere primitive for testing, the BVH only needs the bounds and the closest hit. */
+  private static class Sphere implements Primitive {
+    final Vector3 center;
+    final double radius;
+
+    Sphere(Vector3 center, double radius) {
+      this.center = center;
+      this.radius = radius;
+    }
+
+    @Override public boolean intersect(Ray ray) {
+      double ox = ray.o.x - center.x;
+      double oy = ray.o.y - center.y;
+      double oz = ray.o.z - center.z;
+      double b = ox * ray.d.x + oy * ray.d.y + oz * ray.d.z;
+      double c = ox * ox + oy * oy + oz * oz - radius * radius;
+      double disc = b * b - c;
+      if (disc < 0) {
+        return false;
+      }
+      double t = -b - Math.sqrt(disc);
+      if (t > 0 && t < ray.t) {
+        ray.t = t;
+        return true;
+      }
+      return false;
+    }
+
+    @Override public AABB bounds() {
+      return new AABB(center.x - radius, center.x + radius, center.y - radius, center.y + radius,
+          center.z - radius, center.z + radius);
+    }
+  }
+
+  private static Primitive[] randomSpheres(Random random, int count) {
+    Primitive[] spheres = new Primitive[count];
+    for (int i = 0; i < count; ++i) {
+      spheres[i] = new Sphere(new Vector3(random.nextDouble() * 100, random.nextDouble() * 100,
+          random.nextDouble() * 100), 0.2 + random.nextDouble());
+    }
+    return spheres;
+  }
+
+  private static double closest(BVH bvh, Ray ray) {
+    ray.t = Double.POSITIVE_INFINITY;
+    return bvh.closestIntersection(ray) ? ray.t : -1;
+  }
+
+  private static double closest(Primitive[] primitives, Ray ray) {
+    ray.t = Double.POSITIVE_INFINITY;
+    boolean hit = false;
+    for (Primitive primitive : primitives) {
+      hit = primitive.intersect(ray) | hit;
+    }
+    return hit ? ray.t : -1;
+  }
+
+  private static void assertSameHits(BVH bvh, Primitive[] primitives, long seed) {
+    Random random = new Random(seed);
+    Ray ray = new Ray();
+    for (int i = 0; i < 500; ++i) {
+      ray.o.set(random.nextDouble() * 100, random.nextDouble() * 100, -10);
+      ray.d.set(random.nextDouble() - 0.5, random.nextDouble() - 0.5, 1);
+      ray.d.normalize();
+      assertEquals(closest(primitives, ray), closest(bvh, ray), 1e-9);
+    }
+  }
+
+  @Test
+  public void testClosestIntersection() {
+    Primitive[] spheres = randomSpheres(new Random(1), 5000);
+    BinnedSahBVH bvh = new BinnedSahBVH(spheres.clone(), i -> {});
+    assertSameHits(bvh, spheres, 2);
+  }
+
+  @Test
+  public void testRefit() {
+    Random random = new Random(3);
+    Primitive[] spheres = randomSpheres(random, 2000);
+    BinnedSahBVH bvh = new BinnedSahBVH(spheres.clone(), i -> {});
+
+    // Move some of the spheres far away, like dragging an actor across the scene.
+    Primitive[] oldSpheres = new Primitive[20];
+    Primitive[] newSpheres = new Primitive[20];
+    Primitive[] moved = spheres.clone();
+    for (int i = 0; i < oldSpheres.length; ++i) {
+      Sphere sphere = (Sphere) spheres[i * 7];
+      oldSpheres[i] = sphere;
+      newSpheres[i] = new Sphere(new Vector3(sphere.center.x, sphere.center.y, sphere.center.z - 50), sphere.radius);
+      moved[i * 7] = newSpheres[i];
+    }
+
+    BinaryBVH refit = bvh.copy();
+    assertTrue(refit.refit(oldSpheres, newSpheres));
+    assertSameHits(refit, moved, 4);
+    // The original BVH is not changed by refitting the copy.
+    assertSameHits(bvh, spheres, 4);
+  }
+
+  @Test
+  public void testRefitTooMuchGrowth() {
+    Random random = new Random(4);
+    Primitive[] spheres = randomSpheres(random, 2000);
+    BinnedSahBVH bvh = new BinnedSahBVH(spheres.clone(), i -> {});
+
+    // Scatter half of the spheres through a much larger volume, the tree is then too loose to keep.
+    Primitive[] oldSpheres = new Primitive[1000];
+    Primitive[] newSpheres = new Primitive[1000];
+    Primitive[] moved = spheres.clone();
+    for (int i = 0; i < oldSpheres.length; ++i) {
+      Sphere sphere = (Sphere) spheres[i * 2];
+      oldSpheres[i] = sphere;
+      newSpheres[i] = new Sphere(new Vector3(sphere.center.x, sphere.center.y,
+          sphere.center.z + random.nextDouble() * 1000), sphere.radius);
+      moved[i * 2] = newSpheres[i];
+    }
+
+    BinaryBVH refit = bvh.copy();
+    assertFalse(refit.refit(oldSpheres, newSpheres));
+    // The BVH is still refit, even though it should be rebuilt.
+    assertSameHits(refit, moved, 6);
+  }
+
+  @Test
+  public void testRefitUnknownPrimitive() {
+    Primitive[] spheres = randomSpheres(new Random(5), 100);
+    BinnedSahBVH bvh = new BinnedSahBVH(spheres.clone(), i -> {});
+    Primitive[] unknown = randomSpheres(new Random(6), 1);
+    assertFalse(bvh.refit(unknown, unknown));
+    assertFalse(bvh.refit(new Primitive[] { spheres[0] }, new Primitive[0]));
+  }
+}
@@ -0,0 +1,121 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.math.bvh;
+
+import org.junit.jupiter.api.Test;
+import se.llbit.chunky.entity.Entity;
+import se.llbit.chunky.entity.LilyPadEntity;
+import se.llbit.math.Ray;
+import se.llbit.math.Vector3;
+import se.llbit.math.primitive.Primitive;
+import se.llbit.util.TaskTracker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InstancedBVHTest {
+  private static final Vector3 WORLD_OFFSET = new Vector3(-8.5, -60, 3.25);
+
+  /**
+   * A field of lily pads in all four rotations, so that every rotation is shared by many
+   * instances.
+   */
+  private static List<Entity> lilyPads() {
+    List<Entity> entities = new ArrayList<>();
+    for (int x = 0; x < 12; ++x) {
+      for (int z = 0; z < 12; ++z) {
+        Vector3 position = new Vector3(x, 62 + (x + z) % 2, z);
+        if (x < 6) {
+          entities.add(new LilyPadEntity(position, (x + 2 * z) & 3));
+        } else {
+          // Rotation derived from the position.
+          entities.add(new LilyPadEntity(position));
+        }
+      }
+    }
+    return entities;
+  }
+
+  @Test public void testInstancedMatchesFlat() {
+    List<Entity> entities = lilyPads();
+    BVH.Factory.BVHBuilder builder = BVH.Factory.getImplementation("SAH_MA");
+    BVH flat = BVH.Factory.packTriangles(
+        builder.create(entities, WORLD_OFFSET, TaskTracker.Task.NONE));
+    BVH instanced = BVH.Factory.create("SAH_MA", entities, WORLD_OFFSET, TaskTracker.Task.NONE);
+    assertSameHits(flat, instanced, 1);
+  }
+
+  /**
+   * Instanced BVHs that keep the primitives of unshared entities for refitting must give
+   * the same hits as well.
+   */
+  @Test public void testInstancedWithEntityPrimitivesMatchesFlat() {
+    List<Entity> entities = lilyPads();
+    // The model of an entity includes its class, so this entity is not shared.
+    Entity unique = new LilyPadEntity(new Vector3(3, 65, 3), 1) {};
+    entities.add(unique);
+    BVH.Factory.BVHBuilder builder = BVH.Factory.getImplementation("SAH_MA");
+    BVH flat = builder.create(entities, WORLD_OFFSET, TaskTracker.Task.NONE);
+    Map<Entity, Primitive[]> entityPrimitives = new HashMap<>();
+    BVH instanced = BVH.Factory.create("SAH_MA", entities, WORLD_OFFSET,
+        TaskTracker.Task.NONE, entityPrimitives);
+    assertEquals(1, entityPrimitives.size());
+    assertTrue(entityPrimitives.containsKey(unique));
+    assertSameHits(flat, instanced, 2);
+  }
+
+  private static void assertSameHits(BVH expected, BVH actual, long seed) {
+    Random random = new Random(seed);
+    Ray a = new Ray();
+    Ray b = new Ray();
+    int hits = 0;
+    for (int i = 0; i < 2000; ++i) {
+      a.setDefault();
+      a.o.set(WORLD_OFFSET.x - 1 + 14 * random.nextDouble(), WORLD_OFFSET.y + 70,
+          WORLD_OFFSET.z - 1 + 14 * random.nextDouble());
+      a.d.set(random.nextDouble() - 0.5, -2, random.nextDouble() - 0.5);
+      a.d.normalize();
+      a.t = Double.POSITIVE_INFINITY;
+      b.set(a);
+      b.t = Double.POSITIVE_INFINITY;
+      boolean hit = expected.closestIntersection(a);
+      assertEquals(hit, actual.closestIntersection(b));
+      if (hit) {
+        hits += 1;
+        assertEquals(a.t, b.t, 1e-9);
+        // The texture coordinates are also written by nearer transparent candidates, which
+        // depend on the traversal order, so the texel color of the hit is compared instead.
+        // Texels are stored as floats, so only float precision is expected.
+        assertEquals(a.color.x, b.color.x, 1e-6);
+        assertEquals(a.color.y, b.color.y, 1e-6);
+        assertEquals(a.color.z, b.color.z, 1e-6);
+        assertEquals(a.color.w, b.color.w, 1e-6);
+        assertEquals(a.getNormal().x, b.getNormal().x, 1e-9);
+        assertEquals(a.getNormal().y, b.getNormal().y, 1e-9);
+        assertEquals(a.getNormal().z, b.getNormal().z, 1e-9);
+        assertEquals(a.getCurrentMaterial(), b.getCurrentMaterial());
+      }
+    }
+    assertTrue(hits > 100);
+  }
+}
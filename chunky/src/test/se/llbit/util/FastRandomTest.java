@@ -0,0 +1,64 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class FastRandomTest {
+  /**
+   * Outputs of the xoshiro256++ reference implementation, with the state seeded by the
+   * first four outputs of the SplitMix64 reference implementation.
+   */
+  @Test public void testReferenceSequence() {
+    long[] seed0 = {
+        0x53175D61490B23DFL, 0x61DA6F3DC380D507L, 0x5C0FDF91EC9A7BFCL,
+        0x02EEBF8C3BBE5E1AL, 0x7ECA04EBAF4A5EEAL, 0x0543C37757F08D9AL,
+    };
+    FastRandom random = new FastRandom(0);
+    for (long expected : seed0) {
+      assertEquals(expected, random.nextLong());
+    }
+
+    long[] seed42 = { 0xD0764D4F4476689FL, 0x519E4174576F3791L, 0xFBE07CFB0C24ED8CL };
+    random = new FastRandom(42);
+    for (long expected : seed42) {
+      assertEquals(expected, random.nextLong());
+    }
+  }
+
+  @Test public void testSetSeedRestartsSequence() {
+    FastRandom random = new FastRandom(7);
+    long first = random.nextLong();
+    random.nextLong();
+    random.setSeed(7);
+    assertEquals(first, random.nextLong());
+  }
+
+  /**
+   * The narrower outputs use the high bits of the 64-bit output.
+   */
+  @Test public void testDerivedOutputs() {
+    FastRandom random = new FastRandom(0);
+    assertEquals((int) (0x53175D61490B23DFL >>> 32), random.nextInt());
+    assertEquals((0x61DA6F3DC380D507L >>> 11) * 0x1.0p-53, random.nextDouble());
+    assertEquals((0x5C0FDF91EC9A7BFCL >>> 40) * 0x1.0p-24f, random.nextFloat());
+    assertFalse(random.nextBoolean());
+  }
+}
@@ -0,0 +1,134 @@
+/* Copyright (c) 2024 Chunky contributors
+ *
+ * This file is part of Chunky.
+ *
+ * Chunky is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Chunky is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with Chunky.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.llbit.util.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ParallelDeflaterOutputStreamTest {
+  @TempDir File tempDir;
+
+  /**
+   * Mix of compressible and random data, spanning several blocks.
+   */
+  private static byte[] testData(Random random) {
+    byte[] data = new byte[3 * ParallelDeflaterOutputStream.DEFAULT_BLOCK_SIZE + 12345];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (i / 100000) % 2 == 0 ? (byte) (i % 7) : (byte) random.nextInt();
+    }
+    return data;
+  }
+
+  @Test public void testRoundTrip() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Random random = new Random(0);
+      byte[] data = testData(random);
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(bytes, executor, 3);
+      int offset = 0;
+      while (offset < data.length) {
+        int length = Math.min(random.nextInt(100000), data.length - offset);
+        out.write(data, offset, length);
+        offset += length;
+        if (random.nextInt(10) == 0) {
+          out.endBlock();
+        }
+      }
+      out.finish();
+      assertEquals(data.length, out.getUncompressedSize());
+      assertEquals(bytes.size(), out.getCompressedSize());
+      // Data after the blocks must be left alone by the reader.
+      new DataOutputStream(bytes).writeInt(0xC0FFEE);
+
+      DataInputStream raw = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+      ParallelInflaterInputStream in = new ParallelInflaterInputStream(raw, executor, 3);
+      byte[] result = new byte[data.length];
+      new DataInputStream(in).readFully(result);
+      assertEquals(-1, in.read());
+      assertArrayEquals(data, result);
+      assertEquals(0xC0FFEE, raw.readInt());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void testIndexedRoundTrip() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Random random = new Random(1);
+      byte[] data = testData(random);
+
+      // A header before the blocks, and the index after them.
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream raw = new DataOutputStream(bytes);
+      raw.writeInt(0xC0FFEE);
+      ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(raw, executor, 3);
+      out.write(data, 0, 1000);
+      long secondBlock = out.endBlock();
+      out.write(data, 1000, data.length - 1000);
+      out.finish();
+      BlockIndex index = out.getIndex();
+      assertEquals(5, index.size());
+      assertEquals(0, index.getOffset(0));
+      assertEquals(1000, index.getLength(0));
+      assertEquals(secondBlock, index.getOffset(1));
+      assertEquals(data.length, index.getUncompressedSize());
+      index.write(raw);
+
+      BlockIndex read = BlockIndex.read(new DataInputStream(new ByteArrayInputStream(
+          bytes.toByteArray(), Integer.BYTES + (int) out.getCompressedSize(), bytes.size())),
+          out.getCompressedSize());
+      assertEquals(index.size(), read.size());
+      for (int i = 0; i < index.size(); ++i) {
+        assertEquals(index.getOffset(i), read.getOffset(i));
+        assertEquals(index.getLength(i), read.getLength(i));
+        assertEquals(index.getCompressedLength(i), read.getCompressedLength(i));
+      }
+
+      File file = new File(tempDir, "blocks");
+      Files.write(file.toPath(), bytes.toByteArray());
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      try (ParallelInflaterInputStream in =
+          new ParallelInflaterInputStream(channel, Integer.BYTES, read, executor, 3)) {
+        byte[] result = new byte[data.length];
+        new DataInputStream(in).readFully(result);
+        assertEquals(-1, in.read());
+        assertArrayEquals(data, result);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
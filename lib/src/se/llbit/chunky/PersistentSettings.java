@@ -450,6 +450,15 @@ public final class PersistentSettings {
     return settings.getBool("singleColorTextures", false);
   }
 
+  public static void setCompactTextures(boolean value) {
+    settings.setBool("compactTextures", value);
+    save();
+  }
+
+  public static boolean getCompactTextures() {
+    return settings.getBool("compactTextures", false);
+  }
+
   public static void setDimension(String value) {
     settings.setString("dimension", value);
     save();
@@ -617,6 +626,18 @@ public final class PersistentSettings {
     return settings.getString("bvhMethod", "SAH_MA");
   }
 
+  public static void setRenderWorkerPool(String pool) {
+    settings.setString("renderWorkerPool", pool);
+    save();
+  }
+
+  /**
+   * @return the render worker pool implementation, either {@code DEFAULT} or {@code WORK_STEALING}
+   */
+  public static String getRenderWorkerPool() {
+    return settings.getString("renderWorkerPool", "DEFAULT");
+  }
+
   public static void setBiomeStructureImplementation(String implementation) {
     settings.setString("biomeStructureImplementation", implementation);
     save();